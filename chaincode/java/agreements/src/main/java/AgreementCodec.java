@@ -0,0 +1,122 @@
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hyperledger.fabric.samples.json.JsonReader;
+import org.hyperledger.fabric.samples.json.JsonWriter;
+import org.hyperledger.fabric.samples.metrics.TransactionMetrics;
+
+/**
+ * Reflection free JSON codec for Agreement that reads and writes the byte[]
+ * values of the world state directly. The output matches Genson's, properties
+ * in alphabetical order, so values written by either can be read by the other.
+ */
+public final class AgreementCodec {
+
+    private static final byte[][] FIELDS = {
+        "party1".getBytes(UTF_8),
+        "party2".getBytes(UTF_8),
+        "status".getBytes(UTF_8),
+        "key".getBytes(UTF_8)
+    };
+
+    private static final byte[] PARTY1 = JsonWriter.name("party1");
+    private static final byte[] PARTY2 = JsonWriter.name("party2");
+    private static final byte[] STATUS = JsonWriter.name("status");
+
+    private final ThreadLocal<JsonWriter> writers = ThreadLocal.withInitial(JsonWriter::new);
+
+    public byte[] encode(final Agreement agreement) {
+        long start = TransactionMetrics.serializationStart();
+        try {
+            return writers.get().beginObject()
+                    .field(PARTY1, agreement.getParty1())
+                    .field(PARTY2, agreement.getParty2())
+                    .field(STATUS, agreement.getStatus())
+                    .endObject();
+        } finally {
+            TransactionMetrics.serialized(start);
+        }
+    }
+
+    public Agreement decode(final byte[] data) {
+        long start = TransactionMetrics.serializationStart();
+        try {
+            return read(data);
+        } finally {
+            TransactionMetrics.serialized(start);
+        }
+    }
+
+    private Agreement read(final byte[] data) {
+        try {
+            JsonReader reader = new JsonReader(data);
+            Agreement agreement = readAgreement(reader, null);
+            reader.endDocument();
+            return agreement;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed JSON: unexpected end of document", e);
+        }
+    }
+
+    /**
+     * Decodes the JSON array taken by AgreementRepository.createAgreements, where
+     * every agreement object also carries its ledger key in a "key" property.
+     */
+    public List<AgreementQueryResult> decodeBatch(final byte[] data) {
+        List<AgreementQueryResult> items = new ArrayList<>();
+        List<String> keys = new ArrayList<>(1);
+
+        try {
+            JsonReader reader = new JsonReader(data);
+            reader.beginArray();
+            while (reader.hasNextElement()) {
+                keys.clear();
+                Agreement agreement = readAgreement(reader, keys);
+                items.add(new AgreementQueryResult(keys.isEmpty() ? null : keys.get(0), agreement));
+            }
+            reader.endDocument();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed JSON: unexpected end of document", e);
+        }
+
+        return items;
+    }
+
+    /**
+     * Reads one agreement object. The value of a "key" property is added to
+     * keys, or skipped when keys is null.
+     */
+    private Agreement readAgreement(final JsonReader reader, final List<String> keys) {
+        String party1 = null;
+        String party2 = null;
+        String status = null;
+
+        reader.beginObject();
+        while (reader.hasNextField()) {
+            switch (reader.nextField(FIELDS)) {
+                case 0:
+                    party1 = reader.nextString();
+                    break;
+                case 1:
+                    party2 = reader.nextString();
+                    break;
+                case 2:
+                    status = reader.nextString();
+                    break;
+                case 3:
+                    if (keys != null) {
+                        keys.add(reader.nextString());
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        return new Agreement(party1, party2, status);
+    }
+}
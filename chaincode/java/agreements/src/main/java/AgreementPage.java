@@ -0,0 +1,42 @@
+import java.util.List;
+
+import com.owlike.genson.annotation.JsonProperty;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+/**
+ * One page of agreements together with the bookmark to fetch the next page.
+ * An empty bookmark means there are no more pages.
+ */
+@DataType
+public final class AgreementPage {
+
+    @Property()
+    private final List<AgreementQueryResult> records;
+
+    @Property()
+    private final String bookmark;
+
+    @Property()
+    private final int fetchedCount;
+
+    public AgreementPage(@JsonProperty("records") final List<AgreementQueryResult> records,
+                         @JsonProperty("bookmark") final String bookmark,
+                         @JsonProperty("fetchedCount") final int fetchedCount) {
+        this.records = records;
+        this.bookmark = bookmark;
+        this.fetchedCount = fetchedCount;
+    }
+
+    public List<AgreementQueryResult> getRecords() {
+        return records;
+    }
+
+    public String getBookmark() {
+        return bookmark;
+    }
+
+    public int getFetchedCount() {
+        return fetchedCount;
+    }
+}
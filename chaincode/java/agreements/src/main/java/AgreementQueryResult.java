@@ -0,0 +1,52 @@
+import java.util.Objects;
+
+import com.owlike.genson.annotation.JsonProperty;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+/**
+ * AgreementQueryResult structure used for handling result of query
+ *
+ */
+@DataType
+public final class AgreementQueryResult {
+
+    @Property()
+    private final String key;
+
+    @Property()
+    private final Agreement record;
+
+    public AgreementQueryResult(@JsonProperty("Key") final String key, @JsonProperty("Record") final Agreement record) {
+        this.key = key;
+        this.record = record;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Agreement getRecord() {
+        return record;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+
+        AgreementQueryResult other = (AgreementQueryResult) obj;
+
+        return Objects.equals(getKey(), other.getKey()) && Objects.equals(getRecord(), other.getRecord());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getKey(), getRecord());
+    }
+}
@@ -1,16 +1,28 @@
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import com.owlike.genson.Genson;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.*;
+import org.hyperledger.fabric.samples.cache.QueryCache;
+import org.hyperledger.fabric.samples.metrics.TransactionMetrics;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
 @Contract(
         name = "Agreements",
@@ -21,30 +33,56 @@ import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
 
 @Default
     public final class AgreementRepository implements ContractInterface{
-    private final Genson genson = new Genson();
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Namespace of the agreements: every agreement lives under a composite key,
+     * so they are listed with one prefix scan that other keys never fall in.
+     * Agreements written earlier under their plain keys are read until
+     * migrateKeys moves them.
+     */
+    private static final String AGREEMENT_NAMESPACE = "agreement";
+
+    // shared, as the shim creates a contract instance per transaction
+    private static final Genson GENSON = new Genson();
+
+    private static final AgreementCodec AGREEMENT_CODEC = new AgreementCodec();
+
+    private static final QueryCache QUERY_CACHE = QueryCache.fromEnvironment();
+
+    static final TransactionMetrics METRICS = new TransactionMetrics();
+
+    private final QueryCache queryCache;
+
+    public AgreementRepository() {
+        this(QUERY_CACHE);
+    }
+
+    AgreementRepository(final QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
 
     @Transaction()
     public void initLedger(final Context ctx) {
         ChaincodeStub stub = ctx.getStub();
         Agreement agreement = new Agreement("MyCompany", "OtherCompany", "open");
 
-        String agreementState = genson.serialize(agreement);
-        stub.putStringState("ARG001", agreementState);
+        putAgreement(stub, "ARG001", agreement);
     }
 
 
     @Transaction()
     public Agreement getAgreement(final Context ctx, final String key) {
         ChaincodeStub stub = ctx.getStub();
-        String agreementState = stub.getStringState(key);
+        byte[] agreementState = getAgreementState(stub, key);
 
-        if (agreementState.isEmpty()) {
+        if (agreementState.length == 0) {
             String errorMessage = String.format("Agreement %s does not exist", key);
             System.out.println(errorMessage);
             throw new ChaincodeException(errorMessage, "Agreement not found");
         }
 
-        Agreement agreement = genson.deserialize(agreementState, Agreement.class);
+        Agreement agreement = AGREEMENT_CODEC.decode(agreementState);
 
         return agreement;
     }
@@ -54,44 +92,103 @@ import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
                                     final String stats) {
         ChaincodeStub stub = ctx.getStub();
 
-        String agreementState = stub.getStringState(key);
-        if (!agreementState.isEmpty()) {
+        byte[] agreementState = getAgreementState(stub, key);
+        if (agreementState.length != 0) {
             String errorMessage = String.format("Agreement %s already exists", key);
             System.out.println(errorMessage);
             throw new ChaincodeException(errorMessage, "Agreement already exists");
         }
 
         Agreement agreement = new Agreement(party1, party2, stats);
-        agreementState = genson.serialize(agreement);
-        stub.putStringState(key, agreementState);
+        putAgreement(stub, key, agreement);
 
         return agreement;
     }
 
+    /**
+     * Creates many agreements in one transaction.
+     *
+     * @param ctx the transaction context
+     * @param agreements JSON array of agreements, each with its key in a "key"
+     *                   property next to party1, party2 and status
+     * @param continueOnError true to write the valid agreements and report the
+     *                        rejected ones, false to fail the whole transaction
+     *                        on the first rejected agreement
+     * @return the keys created and the agreements rejected, as {created, failed}
+     */
+    @Transaction()
+    public String createAgreements(final Context ctx, final String agreements, final boolean continueOnError) {
+        ChaincodeStub stub = ctx.getStub();
+
+        List<AgreementQueryResult> items;
+        try {
+            items = AGREEMENT_CODEC.decodeBatch(agreements.getBytes(UTF_8));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            throw new ChaincodeException(e.getMessage(), "Invalid batch");
+        }
+
+        List<String> created = new ArrayList<String>(items.size());
+        List<BatchResult.Failure> failed = new ArrayList<BatchResult.Failure>();
+        Set<String> batchKeys = new HashSet<String>();
+
+        for (int i = 0; i < items.size(); i++) {
+            String key = items.get(i).getKey();
+            Agreement agreement = items.get(i).getRecord();
+            String errorMessage = invalidAgreement(key, agreement);
+            String error = "Invalid batch";
+
+            if (errorMessage == null && !batchKeys.add(key)) {
+                errorMessage = String.format("Agreement %s appears more than once in the batch", key);
+            } else if (errorMessage == null && getAgreementState(stub, key).length != 0) {
+                errorMessage = String.format("Agreement %s already exists", key);
+                error = "Agreement already exists";
+            }
+
+            if (errorMessage != null) {
+                if (!continueOnError) {
+                    errorMessage = String.format("Item %d: %s", i, errorMessage);
+                    System.out.println(errorMessage);
+                    throw new ChaincodeException(errorMessage, error);
+                }
+                failed.add(new BatchResult.Failure(i, key, errorMessage));
+                continue;
+            }
+
+            putAgreement(stub, key, agreement);
+            created.add(key);
+        }
+
+        return GENSON.serialize(new BatchResult(created, failed));
+    }
+
 
     @Transaction()
     public Agreement changeAgreementStatus(final Context ctx, final String key, final String newStatus) {
         ChaincodeStub stub = ctx.getStub();
 
-        String agreementState = stub.getStringState(key);
+        byte[] agreementState = getAgreementState(stub, key);
 
-        if (agreementState.isEmpty()) {
+        if (agreementState.length == 0) {
             String errorMessage = String.format("Agreement %s does not exist", key);
             System.out.println(errorMessage);
             throw new ChaincodeException(errorMessage, "Agreement not found");
         }
 
-        Agreement agreement = genson.deserialize(agreementState, Agreement.class);
+        Agreement agreement = AGREEMENT_CODEC.decode(agreementState);
 
         Agreement newAgreement = new Agreement(agreement.getParty1(), agreement.getParty2(),newStatus);
-        String newAgreementState = genson.serialize(newAgreement);
-        stub.putStringState(key, newAgreementState);
+        putAgreement(stub, key, newAgreement);
 
         return newAgreement;
     }
     
     /**
-     * Retrieves all agreements from the ledger.
+     * Retrieves all agreements from the ledger, including those still under the
+     * plain keys of earlier versions until migrateKeys has moved them.
+     *
+     * The response may be served from the query cache, up to the cache TTL
+     * stale, when an evaluated proposal asks for it in its transient data.
      *
      * @param ctx the transaction context
      * @return array of agreements found on the ledger
@@ -99,24 +196,192 @@ import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public String GetAllAgreements(final Context ctx) {
         ChaincodeStub stub = ctx.getStub();
+        final List<String> query = Collections.singletonList("GetAllAgreements");
+
+        String cached = queryCache.get(stub, query);
+        if (cached != null) {
+            return cached;
+        }
 
-        List<Agreement> queryResults = new ArrayList<Agreement>();
+        // in key order, the plain keys of the agreements migrateKeys has not moved
+        // yet merged in, and shadowed by their newer copy in the namespace if any
+        SortedMap<String, Agreement> agreements = new TreeMap<String, Agreement>();
 
-        // To retrieve all assets from the ledger use getStateByRange with empty startKey & endKey.
-        // Giving empty startKey & endKey is interpreted as all the keys from beginning to end.
-        // As another example, if you use startKey = 'asset0', endKey = 'asset9' ,
-        // then getStateByRange will retrieve asset with keys between asset0 (inclusive) and asset9 (exclusive) in lexical order.
-        QueryResultsIterator<KeyValue> results = stub.getStateByRange("", "");
+        final CompositeKey namespace = new CompositeKey(AGREEMENT_NAMESPACE);
+        final String prefix = namespace.toString();
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(namespace);
 
         for (KeyValue result: results) {
-            Agreement agreement = genson.deserialize(result.getStringValue(), Agreement.class);
-            queryResults.add(agreement);
-            System.out.println(agreement.toString());
+            String key = CompositeKey.parseCompositeKey(result.getKey()).getAttributes().get(0);
+            agreements.put(key, AGREEMENT_CODEC.decode(result.getValue()));
+        }
+
+        // an open range holds the plain keys only, composite keys sort before it
+        for (KeyValue result: stub.getStateByRange("", "")) {
+            if (!agreements.containsKey(result.getKey())) {
+                agreements.put(result.getKey(), AGREEMENT_CODEC.decode(result.getValue()));
+            }
         }
 
-        final String response = genson.serialize(queryResults);
+        final String response = GENSON.serialize(new ArrayList<Agreement>(agreements.values()));
+        queryCache.put(query, Collections.singletonList(prefix), response);
 
         return response;
     }
 
+    /**
+     * Retrieves one page of agreements from the ledger. Only pageSize records are
+     * read and held in memory, so large ledgers are walked page by page using
+     * the returned bookmark.
+     *
+     * @param ctx the transaction context
+     * @param pageSize the maximum number of agreements to return
+     * @param bookmark the bookmark returned by the previous page, empty for the first page
+     * @return the page as {records, bookmark, fetchedCount}
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetAgreementsWithPagination(final Context ctx, final int pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            String errorMessage = String.format("Page size must be between 1 and %d", MAX_PAGE_SIZE);
+            throw new ChaincodeException(errorMessage, "Invalid page size");
+        }
+
+        QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(
+                new CompositeKey(AGREEMENT_NAMESPACE), pageSize, bookmark);
+
+        List<AgreementQueryResult> records = new ArrayList<AgreementQueryResult>(pageSize);
+        for (KeyValue result: results) {
+            Agreement agreement = AGREEMENT_CODEC.decode(result.getValue());
+            String key = CompositeKey.parseCompositeKey(result.getKey()).getAttributes().get(0);
+            records.add(new AgreementQueryResult(key, agreement));
+        }
+
+        QueryResponseMetadata metadata = results.getMetadata();
+        AgreementPage page = new AgreementPage(records, metadata.getBookmark(), metadata.getFetchedRecordsCount());
+
+        return GENSON.serialize(page);
+    }
+
+    /**
+     * Moves up to chunkSize agreements written under their plain keys into the
+     * agreement namespace, starting from bookmark, empty for the first chunk.
+     * Call it again with the returned bookmark until it comes back empty. An
+     * agreement already written under its new key is newer, and only its plain
+     * key is deleted.
+     *
+     * @param ctx the transaction context
+     * @param chunkSize the maximum number of agreements to move
+     * @param bookmark the bookmark returned by the previous chunk, empty for the first
+     * @return the chunk as {bookmark, migrated}
+     */
+    @Transaction()
+    public String migrateKeys(final Context ctx, final int chunkSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+
+        if (chunkSize < 1 || chunkSize > MAX_PAGE_SIZE) {
+            String errorMessage = String.format("Chunk size must be between 1 and %d", MAX_PAGE_SIZE);
+            throw new ChaincodeException(errorMessage, "Invalid chunk size");
+        }
+
+        // composite keys sort before an open range, which holds the plain keys only;
+        // paginated queries cannot be submitted, so the chunk stops the scan itself
+        int migrated = 0;
+        String next = "";
+        for (KeyValue result: stub.getStateByRange(bookmark, "")) {
+            if (migrated == chunkSize) {
+                next = result.getKey();
+                break;
+            }
+            String key = agreementKey(result.getKey());
+            if (stub.getState(key).length == 0) {
+                stub.putState(key, result.getValue());
+                queryCache.invalidate(key);
+            }
+            stub.delState(result.getKey());
+            migrated++;
+        }
+
+        return GENSON.serialize(new KeyMigration(migrated, next));
+    }
+
+    static String agreementKey(final String key) {
+        return new CompositeKey(AGREEMENT_NAMESPACE, key).toString();
+    }
+
+    /**
+     * Why an agreement of a batch cannot be written under key, or null when it
+     * can. Every field is required, and the key, an attribute of the composite
+     * key of the agreement, may not hold the composite key delimiter.
+     */
+    private static String invalidAgreement(final String key, final Agreement agreement) {
+        if (key == null || key.isEmpty()) {
+            return "Agreement key is missing";
+        }
+        if (key.contains(CompositeKey.NAMESPACE)) {
+            return String.format("Agreement %s has a key containing U+0000", key);
+        }
+        String[] names = {"party1", "party2", "status"};
+        String[] values = {agreement.getParty1(), agreement.getParty2(), agreement.getStatus()};
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] == null) {
+                return String.format("Agreement %s has no %s", key, names[i]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The state of an agreement, under its key in the agreement namespace or,
+     * until migrateKeys has moved it, under its plain key.
+     */
+    private static byte[] getAgreementState(final ChaincodeStub stub, final String key) {
+        byte[] agreementState = stub.getState(agreementKey(key));
+        return agreementState.length != 0 ? agreementState : stub.getState(key);
+    }
+
+    private void putAgreement(final ChaincodeStub stub, final String key, final Agreement agreement) {
+        String agreementKey = agreementKey(key);
+        stub.putState(agreementKey, AGREEMENT_CODEC.encode(agreement));
+        queryCache.invalidate(agreementKey);
+    }
+
+    /**
+     * Meters the transaction's stub when metrics are enabled.
+     */
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new Context(METRICS.meter(stub));
+    }
+
+    @Override
+    public void beforeTransaction(final Context ctx) {
+        METRICS.begin();
+    }
+
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        METRICS.end();
+    }
+
+    /**
+     * Runs sample documents through the codec and Genson, so their classes are
+     * loaded and Genson's converters built before the first transaction rather
+     * than during it.
+     */
+    static void warmUp() {
+        Agreement agreement = AGREEMENT_CODEC.decode(AGREEMENT_CODEC.encode(new Agreement("Alice", "Bob", "DRAFT")));
+        AGREEMENT_CODEC.decodeBatch("[{\"key\":\"AGR0\",\"party1\":\"Alice\",\"party2\":\"Bob\"}]"
+                .getBytes(UTF_8));
+
+        List<AgreementQueryResult> records = Collections.singletonList(new AgreementQueryResult("AGR0", agreement));
+        GENSON.serialize(records);
+        GENSON.serialize(new AgreementPage(records, "", records.size()));
+        GENSON.serialize(new BatchResult(Collections.singletonList("AGR0"),
+                Collections.singletonList(new BatchResult.Failure(1, "AGR1", "warm-up"))));
+        GENSON.deserialize(GENSON.serialize(agreement), Agreement.class);
+        GENSON.serialize(new KeyMigration(1, "AGR1"));
+    }
 }
+
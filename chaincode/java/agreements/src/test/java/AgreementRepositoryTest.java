@@ -1,13 +1,30 @@
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.samples.cache.QueryCache;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -22,8 +39,9 @@ public final class AgreementRepositoryTest {
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("ARG000"))
-                    .thenReturn("{\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\",\"status\":\"issued\"}");
+            when(stub.getState(AgreementRepository.agreementKey("ARG000")))
+                    .thenReturn("{\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\",\"status\":\"issued\"}"
+                            .getBytes(UTF_8));
 
             Agreement agreement = contract.getAgreement(ctx, "ARG000");
 
@@ -41,7 +59,8 @@ public final class AgreementRepositoryTest {
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("ARG000")).thenReturn("");
+            when(stub.getState(AgreementRepository.agreementKey("ARG000"))).thenReturn(new byte[0]);
+            when(stub.getState("ARG000")).thenReturn(new byte[0]);
 
             Throwable thrown = catchThrowable(() -> {
                 contract.getAgreement(ctx, "ARG000");
@@ -53,4 +72,304 @@ public final class AgreementRepositoryTest {
 
     }
 
+    @Nested
+    class InvokeCreateAgreementsTransaction {
+
+        private static final String BATCH = "[{\"key\":\"ARG001\",\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\","
+                + "\"status\":\"open\"},{\"key\":\"ARG002\",\"party1\":\"MyCompany\",\"party2\":\"ThirdCompany\","
+                + "\"status\":\"open\"},{\"key\":\"ARG001\",\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\","
+                + "\"status\":\"open\"}]";
+
+        @Test
+        public void whenContinuingOnError() {
+            AgreementRepository contract = new AgreementRepository();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState(AgreementRepository.agreementKey("ARG001"))).thenReturn(new byte[0]);
+            when(stub.getState("ARG001")).thenReturn(new byte[0]);
+            when(stub.getState(AgreementRepository.agreementKey("ARG002"))).thenReturn(new byte[0]);
+            when(stub.getState("ARG002")).thenReturn("{\"party1\":\"MyCompany\"}".getBytes(UTF_8));
+
+            String result = contract.createAgreements(ctx, BATCH, true);
+
+            assertThat(result).isEqualTo("{\"created\":[\"ARG001\"],\"failed\":["
+                    + "{\"index\":1,\"key\":\"ARG002\",\"message\":\"Agreement ARG002 already exists\"},"
+                    + "{\"index\":2,\"key\":\"ARG001\",\"message\":\"Agreement ARG001 appears more than once in the batch\"}]}");
+            verify(stub).putState(AgreementRepository.agreementKey("ARG001"),
+                    "{\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\",\"status\":\"open\"}".getBytes(UTF_8));
+            verify(stub, never()).putState(eq(AgreementRepository.agreementKey("ARG002")), any());
+        }
+
+        @Test
+        public void whenStoppingOnError() {
+            AgreementRepository contract = new AgreementRepository();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState(AgreementRepository.agreementKey("ARG001"))).thenReturn(new byte[0]);
+            when(stub.getState("ARG001")).thenReturn(new byte[0]);
+            when(stub.getState(AgreementRepository.agreementKey("ARG002"))).thenReturn(new byte[0]);
+            when(stub.getState("ARG002")).thenReturn("{\"party1\":\"MyCompany\"}".getBytes(UTF_8));
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.createAgreements(ctx, BATCH, false);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Item 1: Agreement ARG002 already exists");
+        }
+
+        @Test
+        public void whenAnAgreementHasNoParty() {
+            AgreementRepository contract = new AgreementRepository();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState(anyString())).thenReturn(new byte[0]);
+
+            String result = contract.createAgreements(ctx, "[{\"key\":\"ARG001\",\"party1\":\"MyCompany\","
+                    + "\"status\":\"open\"},{\"key\":\"ARG002\",\"party1\":\"MyCompany\","
+                    + "\"party2\":\"OtherCompany\"}]", true);
+
+            assertThat(result).isEqualTo("{\"created\":[],\"failed\":["
+                    + "{\"index\":0,\"key\":\"ARG001\",\"message\":\"Agreement ARG001 has no party2\"},"
+                    + "{\"index\":1,\"key\":\"ARG002\",\"message\":\"Agreement ARG002 has no status\"}]}");
+            verify(stub, never()).putState(anyString(), any());
+        }
+
+        @Test
+        public void whenTheBatchIsMalformed() {
+            AgreementRepository contract = new AgreementRepository();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState(anyString())).thenReturn(new byte[0]);
+            String agreement = "{\"key\":\"ARG001\",\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\","
+                    + "\"status\":\"open\"}";
+
+            Throwable missingComma = catchThrowable(() -> {
+                contract.createAgreements(ctx, "[" + agreement + agreement.replace("ARG001", "ARG002") + "]", true);
+            });
+            Throwable trailingData = catchThrowable(() -> {
+                contract.createAgreements(ctx, "[" + agreement + "]{}", true);
+            });
+
+            assertThat(missingComma).isInstanceOf(ChaincodeException.class).hasMessageContaining("',' expected");
+            assertThat(trailingData).isInstanceOf(ChaincodeException.class)
+                    .hasMessageContaining("unexpected data after the document");
+            verify(stub, never()).putState(anyString(), any());
+        }
+    }
+
+    @Nested
+    class InvokeGetAllAgreementsTransaction {
+
+        private final Context ctx = mock(Context.class);
+        private final ChaincodeStub stub = mock(ChaincodeStub.class);
+
+        InvokeGetAllAgreementsTransaction() {
+            when(ctx.getStub()).thenReturn(stub);
+
+            KeyValue record = mock(KeyValue.class);
+            when(record.getKey()).thenReturn(AgreementRepository.agreementKey("ARG001"));
+            when(record.getValue())
+                    .thenReturn("{\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\",\"status\":\"open\"}"
+                            .getBytes(UTF_8));
+
+            @SuppressWarnings("unchecked")
+            QueryResultsIterator<KeyValue> results = mock(QueryResultsIterator.class);
+            when(results.iterator()).thenAnswer(invocation -> Collections.singletonList(record).iterator());
+            when(stub.getStateByPartialCompositeKey(any(CompositeKey.class))).thenReturn(results);
+            when(stub.getState(AgreementRepository.agreementKey("ARG001"))).thenReturn(new byte[0]);
+            when(stub.getState("ARG001")).thenReturn(new byte[0]);
+            when(stub.getTransient()).thenReturn(Collections.singletonMap(QueryCache.TRANSIENT_KEY, new byte[0]));
+
+            @SuppressWarnings("unchecked")
+            QueryResultsIterator<KeyValue> legacy = mock(QueryResultsIterator.class);
+            when(legacy.iterator()).thenAnswer(invocation -> Collections.emptyIterator());
+            when(stub.getStateByRange("", "")).thenReturn(legacy);
+        }
+
+        @Test
+        public void whenHalfMigratedEveryAgreementIsListedOnce() {
+            KeyValue stale = mock(KeyValue.class);
+            when(stale.getKey()).thenReturn("ARG001");
+            when(stale.getValue()).thenReturn("{\"party1\":\"OldCompany\"}".getBytes(UTF_8));
+            KeyValue unmoved = mock(KeyValue.class);
+            when(unmoved.getKey()).thenReturn("ARG002");
+            when(unmoved.getValue())
+                    .thenReturn("{\"party1\":\"ThirdCompany\",\"party2\":\"MyCompany\",\"status\":\"closed\"}"
+                            .getBytes(UTF_8));
+            @SuppressWarnings("unchecked")
+            QueryResultsIterator<KeyValue> legacy = mock(QueryResultsIterator.class);
+            when(legacy.iterator()).thenAnswer(invocation -> Arrays.asList(stale, unmoved).iterator());
+            when(stub.getStateByRange("", "")).thenReturn(legacy);
+
+            String agreements = new AgreementRepository(new QueryCache(0, 1000)).GetAllAgreements(ctx);
+
+            assertThat(agreements).isEqualTo(
+                    "[{\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\",\"status\":\"open\"},"
+                    + "{\"party1\":\"ThirdCompany\",\"party2\":\"MyCompany\",\"status\":\"closed\"}]");
+        }
+
+        @Test
+        public void whenCacheIsDisabled() {
+            AgreementRepository contract = new AgreementRepository(new QueryCache(0, 1000));
+
+            contract.GetAllAgreements(ctx);
+            contract.GetAllAgreements(ctx);
+
+            verify(stub, times(2)).getStateByPartialCompositeKey(any(CompositeKey.class));
+        }
+
+        @Test
+        public void whenResponseIsCached() {
+            AgreementRepository contract = new AgreementRepository(new QueryCache(1024, 60_000));
+
+            String first = contract.GetAllAgreements(ctx);
+            String second = contract.GetAllAgreements(ctx);
+
+            assertThat(second).isEqualTo(first)
+                    .isEqualTo("[{\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\",\"status\":\"open\"}]");
+            verify(stub, times(1)).getStateByPartialCompositeKey(any(CompositeKey.class));
+        }
+
+        @Test
+        public void whenSubmittedTheCacheIsSkipped() {
+            AgreementRepository contract = new AgreementRepository(new QueryCache(1024, 60_000));
+
+            contract.GetAllAgreements(ctx);
+            // a submitted proposal carries no query cache transient entry
+            when(stub.getTransient()).thenReturn(Collections.emptyMap());
+            clearInvocations(stub);
+            contract.GetAllAgreements(ctx);
+
+            // so its read set holds the agreements MVCC validation checks
+            verify(stub, times(1)).getStateByPartialCompositeKey(any(CompositeKey.class));
+        }
+
+        @Test
+        public void whenAgreementIsWrittenAfterCaching() {
+            AgreementRepository contract = new AgreementRepository(new QueryCache(1024, 60_000));
+
+            contract.GetAllAgreements(ctx);
+            contract.createAgreement(ctx, "ARG001", "MyCompany", "OtherCompany", "open");
+            contract.GetAllAgreements(ctx);
+
+            verify(stub, times(2)).getStateByPartialCompositeKey(any(CompositeKey.class));
+        }
+    }
+
+    @Nested
+    class InvokeGetAgreementsWithPaginationTransaction {
+
+        @Test
+        public void whenMorePagesRemain() {
+            AgreementRepository contract = new AgreementRepository();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            KeyValue record = mock(KeyValue.class);
+            when(record.getKey()).thenReturn(AgreementRepository.agreementKey("ARG001"));
+            when(record.getValue())
+                    .thenReturn("{\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\",\"status\":\"open\"}"
+                            .getBytes(UTF_8));
+
+            @SuppressWarnings("unchecked")
+            QueryResultsIteratorWithMetadata<KeyValue> results = mock(QueryResultsIteratorWithMetadata.class);
+            when(results.iterator()).thenReturn(Collections.singletonList(record).iterator());
+            when(results.getMetadata()).thenReturn(QueryResponseMetadata.newBuilder()
+                    .setFetchedRecordsCount(1).setBookmark("ARG002").build());
+            when(stub.getStateByPartialCompositeKeyWithPagination(any(CompositeKey.class), eq(1), eq("")))
+                    .thenReturn(results);
+
+            String page = contract.GetAgreementsWithPagination(ctx, 1, "");
+
+            assertThat(page).isEqualTo("{\"bookmark\":\"ARG002\",\"fetchedCount\":1,\"records\":[{\"key\":\"ARG001\","
+                    + "\"record\":{\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\",\"status\":\"open\"}}]}");
+        }
+
+        @Test
+        public void whenPageSizeIsInvalid() {
+            AgreementRepository contract = new AgreementRepository();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.GetAgreementsWithPagination(ctx, 0, "");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Page size must be between 1 and 1000");
+        }
+    }
+
+    @Nested
+    class InvokeMigrateKeysTransaction {
+
+        private final Context ctx = mock(Context.class);
+        private final ChaincodeStub stub = mock(ChaincodeStub.class);
+
+        InvokeMigrateKeysTransaction() {
+            when(ctx.getStub()).thenReturn(stub);
+        }
+
+        private KeyValue record(final String key) {
+            KeyValue record = mock(KeyValue.class);
+            when(record.getKey()).thenReturn(key);
+            when(record.getValue()).thenReturn(("{\"party1\":\"" + key + "\"}").getBytes(UTF_8));
+            return record;
+        }
+
+        @SuppressWarnings("unchecked")
+        private QueryResultsIterator<KeyValue> results(final KeyValue... records) {
+            QueryResultsIterator<KeyValue> results = mock(QueryResultsIterator.class);
+            when(results.iterator()).thenReturn(Arrays.asList(records).iterator());
+            return results;
+        }
+
+        @Test
+        public void whenMoreKeysRemain() {
+            QueryResultsIterator<KeyValue> results = results(record("ARG001"), record("ARG002"), record("ARG003"));
+            when(stub.getStateByRange("", "")).thenReturn(results);
+            when(stub.getState(AgreementRepository.agreementKey("ARG001"))).thenReturn(new byte[0]);
+            when(stub.getState(AgreementRepository.agreementKey("ARG002"))).thenReturn("{}".getBytes(UTF_8));
+
+            String result = new AgreementRepository().migrateKeys(ctx, 2, "");
+
+            assertThat(result).isEqualTo("{\"bookmark\":\"ARG003\",\"migrated\":2}");
+            verify(stub).putState(AgreementRepository.agreementKey("ARG001"), "{\"party1\":\"ARG001\"}".getBytes(UTF_8));
+            verify(stub, never()).putState(eq(AgreementRepository.agreementKey("ARG002")), any());
+            verify(stub).delState("ARG001");
+            verify(stub).delState("ARG002");
+            verify(stub, never()).delState("ARG003");
+        }
+
+        @Test
+        public void whenLastChunkIsMigrated() {
+            QueryResultsIterator<KeyValue> results = results(record("ARG003"));
+            when(stub.getStateByRange("ARG003", "")).thenReturn(results);
+            when(stub.getState(AgreementRepository.agreementKey("ARG003"))).thenReturn(new byte[0]);
+
+            String result = new AgreementRepository().migrateKeys(ctx, 2, "ARG003");
+
+            assertThat(result).isEqualTo("{\"bookmark\":\"\",\"migrated\":1}");
+            verify(stub).delState("ARG003");
+        }
+
+        @Test
+        public void whenChunkSizeIsInvalid() {
+            Throwable thrown = catchThrowable(() -> {
+                new AgreementRepository().migrateKeys(ctx, 1001, "");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Chunk size must be between 1 and 1000");
+        }
+    }
+
 }
+
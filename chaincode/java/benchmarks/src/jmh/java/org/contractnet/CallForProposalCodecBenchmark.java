@@ -0,0 +1,70 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Encoding and decoding one CallForProposal of partecipantCount members with
+ * CallForProposalCodec compared to Genson.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CallForProposalCodecBenchmark {
+
+    @Param({"10", "1000"})
+    public int partecipantCount;
+
+    private final Genson genson = new Genson();
+    private final CallForProposalCodec codec = new CallForProposalCodec();
+    private CallForProposal callForProposal;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        List<String> partecipants = new ArrayList<>();
+        for (int i = 0; i < partecipantCount; i++) {
+            partecipants.add(String.format("prt%d", i));
+        }
+        callForProposal = new CallForProposal("Paul", "Paint car", CallForProposal.CALLING, partecipants);
+        encoded = codec.encode(callForProposal);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        return codec.encode(callForProposal);
+    }
+
+    @Benchmark
+    public byte[] encodeGenson() {
+        return genson.serialize(callForProposal).getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public CallForProposal decodeCodec() {
+        return codec.decode(encoded);
+    }
+
+    @Benchmark
+    public CallForProposal decodeGenson() {
+        return genson.deserialize(new String(encoded, UTF_8), CallForProposal.class);
+    }
+}
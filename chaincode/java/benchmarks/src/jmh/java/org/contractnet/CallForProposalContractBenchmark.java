@@ -0,0 +1,108 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Cost of closing a call for proposal with bidders bidders, at most keyCount,
+ * against a world state of keyCount participants. Offers repeat every 100
+ * bidders, so the winner is decided by the tie-break.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CallForProposalContractBenchmark {
+
+    private static final byte[] INDEX_VALUE = {0};
+
+    private static final int TOP_K = 10;
+
+    @Param({"10", "10000", "1000000"})
+    public int keyCount;
+
+    @Param({"10", "1000", "10000"})
+    public int bidders;
+
+    private final Genson genson = new Genson();
+    private final CallForProposalContract contract = new CallForProposalContract();
+    private InMemoryChaincodeStub stub;
+    private CallForProposalContext ctx;
+    private List<String> bidderKeys;
+
+    @Setup
+    public void setUp() {
+        stub = new InMemoryChaincodeStub();
+        for (int i = 1; i <= keyCount; i++) {
+            Partecipant partecipant = new Partecipant("partecipant" + i, Partecipant.WAITING, -1);
+            stub.putStringState(CallForProposalContract.partecipantLedgerKey(String.format("prt%d", i)),
+                    genson.serialize(partecipant));
+            stub.putState(indexKey(Partecipant.WAITING, String.format("prt%d", i)), INDEX_VALUE);
+        }
+        bidderKeys = new ArrayList<>();
+        for (int i = 1; i <= Math.min(bidders, keyCount); i++) {
+            bidderKeys.add(String.format("prt%d", i));
+        }
+    }
+
+    /**
+     * Closing is destructive, so every invocation starts from a calling cfp with
+     * all bidders called, in the PROPOSED state with one bid each, and a fresh
+     * transaction context.
+     */
+    @Setup(Level.Invocation)
+    public void openCall() {
+        CallForProposal callForProposal = new CallForProposal("Paul", "Paint car", CallForProposal.CALLING,
+                new ArrayList<>());
+        stub.putStringState(CallForProposalContract.callForProposalLedgerKey("cfp1"), genson.serialize(callForProposal));
+        for (int i = 0; i < bidderKeys.size(); i++) {
+            String key = bidderKeys.get(i);
+            int offer = 100 + i % 100;
+            Partecipant partecipant = new Partecipant("partecipant" + (i + 1), Partecipant.PROPOSED, offer);
+            stub.putStringState(CallForProposalContract.partecipantLedgerKey(key), genson.serialize(partecipant));
+            stub.delState(indexKey(Partecipant.WAITING, key));
+            stub.delState(indexKey(Partecipant.WORKING, key));
+            stub.putState(indexKey(Partecipant.PROPOSED, key), INDEX_VALUE);
+            stub.putStringState(stub.createCompositeKey("cfp~partecipant", "cfp1", key).toString(),
+                    Partecipant.CALLED);
+            stub.putStringState(stub.createCompositeKey("cfp~partecipant~txid", "cfp1", key, "tx" + i)
+                    .toString(), Integer.toString(offer));
+        }
+        ctx = (CallForProposalContext) contract.createContext(stub);
+    }
+
+    private String indexKey(final String state, final String key) {
+        return stub.createCompositeKey("state~partecipantKey", state, key).toString();
+    }
+
+    @Benchmark
+    public String closeCallForProposal() {
+        String winner = contract.closeCallForProposal(ctx, "cfp1");
+        contract.afterTransaction(ctx, winner);
+        return winner;
+    }
+
+    @Benchmark
+    public String closeCallForProposalTopK() {
+        String best = contract.closeCallForProposalTopK(ctx, "cfp1", TOP_K);
+        contract.afterTransaction(ctx, best);
+        return best;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.hyperledger.fabric.samples.benchmark.LedgerSimulation;
+import org.hyperledger.fabric.samples.benchmark.LedgerSimulator;
+import org.hyperledger.fabric.samples.benchmark.LedgerSimulator.ValidationCode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Conflict rates of proposeForCallForProposal and refuseCallForProposal on a
+ * simulated ledger: keys partecipants are called for one call for proposal,
+ * and every client answers it on behalf of random partecipants. Both
+ * transactions read the call and read and rewrite the partecipant, so two
+ * answers of the same partecipant in flight together conflict.
+ *
+ * Run with {@code ./gradlew ledgerSimulation -Psimulation=org.contractnet.CallForProposalSimulation}.
+ */
+public final class CallForProposalSimulation {
+
+    private static final String CFP_KEY = "cfp0";
+
+    private static final CallForProposalContract CONTRACT = new CallForProposalContract();
+
+    private CallForProposalSimulation() {
+    }
+
+    public static void main(final String[] args) throws InterruptedException {
+        LedgerSimulation.runAll(new Answer("proposeForCallForProposal"), new Answer("refuseCallForProposal"));
+    }
+
+    private static CallForProposalContext begin(final ChaincodeStub stub) {
+        CallForProposalContext ctx = (CallForProposalContext) CONTRACT.createContext(stub);
+        CONTRACT.beforeTransaction(ctx);
+        return ctx;
+    }
+
+    private static void end(final CallForProposalContext ctx, final Object result) {
+        CONTRACT.afterTransaction(ctx, result);
+    }
+
+    private static void require(final ValidationCode code) {
+        if (code != ValidationCode.VALID) {
+            throw new IllegalStateException("Set-up transaction was invalidated: " + code);
+        }
+    }
+
+    /**
+     * A partecipant answering the call, with a proposal or a refusal.
+     */
+    private static final class Answer implements LedgerSimulation.Workload {
+
+        private final String function;
+
+        Answer(final String function) {
+            this.function = function;
+        }
+
+        @Override
+        public String getName() {
+            return function;
+        }
+
+        @Override
+        public void setUp(final LedgerSimulator ledger, final int keys) {
+            require(ledger.execute("setup-cfp", Collections.singletonList("createPartecipant"), stub -> {
+                CallForProposalContext ctx = begin(stub);
+                CONTRACT.createCallForProposal(ctx, CFP_KEY, "Paul", "Paint car", CallForProposal.CREATED);
+                for (int i = 0; i < keys; i++) {
+                    CONTRACT.createPartecipant(ctx, "prt" + i, "partecipant" + i);
+                }
+                end(ctx, null);
+            }));
+            require(ledger.execute("setup-call", Arrays.asList("callAllPartecipants", CFP_KEY), stub -> {
+                CallForProposalContext ctx = begin(stub);
+                end(ctx, CONTRACT.callAllPartecipants(ctx, CFP_KEY));
+            }));
+        }
+
+        @Override
+        public List<String> nextTransaction(final Random random, final int client, final int keys) {
+            String partecipantKey = "prt" + random.nextInt(keys);
+            if (function.equals("refuseCallForProposal")) {
+                return Arrays.asList(function, partecipantKey, CFP_KEY);
+            }
+            return Arrays.asList(function, partecipantKey, CFP_KEY, Integer.toString(100 + random.nextInt(100)));
+        }
+
+        @Override
+        public void execute(final ChaincodeStub stub, final List<String> args) {
+            CallForProposalContext ctx = begin(stub);
+            if (function.equals("refuseCallForProposal")) {
+                end(ctx, CONTRACT.refuseCallForProposal(ctx, args.get(1), args.get(2)));
+            } else {
+                end(ctx, CONTRACT.proposeForCallForProposal(ctx, args.get(1), args.get(2),
+                        Integer.parseInt(args.get(3))));
+            }
+        }
+    }
+}
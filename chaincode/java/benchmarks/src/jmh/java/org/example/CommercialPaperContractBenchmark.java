@@ -0,0 +1,63 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of CommercialPaperContract.buy against a world state of keyCount papers.
+ * Papers are written straight to the stub so that setup does not go through
+ * the chatty StateList path being measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommercialPaperContractBenchmark {
+
+    @Param({"10", "10000", "1000000"})
+    public int keyCount;
+
+    private final CommercialPaperContract contract = new CommercialPaperContract();
+    private InMemoryChaincodeStub stub;
+    private CommercialPaperContext ctx;
+    private String[] owners;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        stub = new InMemoryChaincodeStub();
+        owners = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            String paperNumber = String.format("%08d", i);
+            CommercialPaper paper = CommercialPaper.createInstance("MagnetoCorp", paperNumber,
+                    "2020-05-31", "2020-11-30", 5000000, "MagnetoCorp", CommercialPaper.ISSUED);
+            String ledgerKey = stub.createCompositeKey(PaperList.class.getSimpleName(), paperNumber).toString();
+            stub.putState(ledgerKey, CommercialPaper.serialize(paper));
+            owners[i] = "MagnetoCorp";
+        }
+        ctx = (CommercialPaperContext) contract.createContext(stub);
+    }
+
+    @Benchmark
+    public CommercialPaper buy() {
+        int i = next++ % keyCount;
+        String newOwner = "MagnetoCorp".equals(owners[i]) ? "DigiBank" : "MagnetoCorp";
+        CommercialPaper paper = contract.buy(ctx, "MagnetoCorp", String.format("%08d", i), owners[i], newOwner,
+                4900000, "2020-05-31");
+        contract.afterTransaction(ctx, paper);
+        owners[i] = newOwner;
+        return paper;
+    }
+}
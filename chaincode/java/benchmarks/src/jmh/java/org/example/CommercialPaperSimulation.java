@@ -0,0 +1,77 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.hyperledger.fabric.samples.benchmark.LedgerSimulation;
+import org.hyperledger.fabric.samples.benchmark.LedgerSimulator;
+import org.hyperledger.fabric.samples.benchmark.LedgerSimulator.ValidationCode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Conflict rate of buy on a simulated ledger: keys papers are issued, and
+ * every client buys random papers from whoever owns them in the snapshot it
+ * endorses against. A buy reads and rewrites its paper, so two buys of the
+ * same paper in flight together conflict.
+ *
+ * Run with {@code ./gradlew ledgerSimulation -Psimulation=org.example.CommercialPaperSimulation}.
+ */
+public final class CommercialPaperSimulation implements LedgerSimulation.Workload {
+
+    private static final String ISSUER = "MagnetoCorp";
+
+    private static final CommercialPaperContract CONTRACT = new CommercialPaperContract();
+
+    public static void main(final String[] args) throws InterruptedException {
+        LedgerSimulation.runAll(new CommercialPaperSimulation());
+    }
+
+    @Override
+    public String getName() {
+        return "buy";
+    }
+
+    @Override
+    public void setUp(final LedgerSimulator ledger, final int keys) {
+        ValidationCode code = ledger.execute("setup-issue", Collections.singletonList("issue"), stub -> {
+            CommercialPaperContext ctx = (CommercialPaperContext) CONTRACT.createContext(stub);
+            CONTRACT.beforeTransaction(ctx);
+            for (int i = 0; i < keys; i++) {
+                CONTRACT.issue(ctx, ISSUER, paperNumber(i), "2020-05-31", "2020-11-30", 5000000);
+            }
+            CONTRACT.afterTransaction(ctx, null);
+        });
+        if (code != ValidationCode.VALID) {
+            throw new IllegalStateException("Set-up transaction was invalidated: " + code);
+        }
+    }
+
+    @Override
+    public List<String> nextTransaction(final Random random, final int client, final int keys) {
+        return Arrays.asList("buy", ISSUER, paperNumber(random.nextInt(keys)), "Buyer" + client);
+    }
+
+    /**
+     * Buys the paper from its owner in the snapshot, as a client that has just
+     * evaluated the paper would.
+     */
+    @Override
+    public void execute(final ChaincodeStub stub, final List<String> args) {
+        CommercialPaperContext ctx = (CommercialPaperContext) CONTRACT.createContext(stub);
+        CONTRACT.beforeTransaction(ctx);
+        String currentOwner = ctx.paperList.getPaper(args.get(2)).getOwner();
+        CommercialPaper paper = CONTRACT.buy(ctx, args.get(1), args.get(2), currentOwner, args.get(3), 4900000,
+                "2020-06-30");
+        CONTRACT.afterTransaction(ctx, paper);
+    }
+
+    private static String paperNumber(final int i) {
+        return String.format("%05d", i);
+    }
+}
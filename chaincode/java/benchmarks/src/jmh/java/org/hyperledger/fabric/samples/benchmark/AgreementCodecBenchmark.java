@@ -0,0 +1,59 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Decoding one Agreement with AgreementCodec compared to Genson.
+ *
+ * Like AgreementRepositoryBenchmark, the default package classes are bound
+ * through method handles once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AgreementCodecBenchmark {
+
+    private final Genson genson = new Genson();
+    private final byte[] encoded = "{\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\",\"status\":\"open\"}"
+            .getBytes(UTF_8);
+    private Class<?> agreement;
+    private MethodHandle decode;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        agreement = Class.forName("Agreement");
+        Class<?> codec = Class.forName("AgreementCodec");
+        decode = MethodHandles.publicLookup()
+                .findVirtual(codec, "decode", MethodType.methodType(agreement, byte[].class))
+                .bindTo(codec.getConstructor().newInstance());
+    }
+
+    @Benchmark
+    public Object decodeCodec() throws Throwable {
+        return decode.invoke(encoded);
+    }
+
+    @Benchmark
+    public Object decodeGenson() {
+        return genson.deserialize(new String(encoded, UTF_8), agreement);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.contract.ContractInterface;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of AgreementRepository.GetAllAgreements, and of reading one page through
+ * GetAgreementsWithPagination, against a world state of keyCount agreements.
+ *
+ * The agreements contract lives in the default package, which JMH benchmarks
+ * cannot, so it is bound through a method handle once per trial, and its
+ * agreements are written under the contract's agreement namespace directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AgreementRepositoryBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"10", "10000", "1000000"})
+    public int keyCount;
+
+    private Context ctx;
+    private MethodHandle getAllAgreements;
+    private MethodHandle getAgreementsWithPagination;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+        for (int i = 0; i < keyCount; i++) {
+            stub.putStringState(new CompositeKey("agreement", String.format("ARG%07d", i)).toString(),
+                    "{\"party1\":\"MyCompany\",\"party2\":\"OtherCompany\",\"status\":\"open\"}");
+        }
+
+        Class<?> repository = Class.forName("AgreementRepository");
+        ContractInterface contract = (ContractInterface) repository.getConstructor().newInstance();
+        ctx = contract.createContext(stub);
+        getAllAgreements = MethodHandles.publicLookup()
+                .findVirtual(repository, "GetAllAgreements", MethodType.methodType(String.class, Context.class))
+                .bindTo(contract);
+        getAgreementsWithPagination = MethodHandles.publicLookup()
+                .findVirtual(repository, "GetAgreementsWithPagination",
+                        MethodType.methodType(String.class, Context.class, int.class, String.class))
+                .bindTo(contract);
+    }
+
+    @Benchmark
+    public String getAllAgreements() throws Throwable {
+        return (String) getAllAgreements.invoke(ctx);
+    }
+
+    @Benchmark
+    public String getAgreementsWithPagination() throws Throwable {
+        return (String) getAgreementsWithPagination.invoke(ctx, PAGE_SIZE, "");
+    }
+}
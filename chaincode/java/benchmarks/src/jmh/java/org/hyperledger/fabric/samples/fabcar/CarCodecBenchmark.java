@@ -0,0 +1,58 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Encoding and decoding one Car with CarCodec compared to Genson.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CarCodecBenchmark {
+
+    private final Genson genson = new Genson();
+    private final CarCodec codec = new CarCodec();
+    private final Car car = new Car("Toyota", "Prius", "blue", "Tomoko");
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        encoded = codec.encode(car);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        return codec.encode(car);
+    }
+
+    @Benchmark
+    public byte[] encodeGenson() {
+        return genson.serialize(car).getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public Car decodeCodec() {
+        return codec.decode(encoded);
+    }
+
+    @Benchmark
+    public Car decodeGenson() {
+        return genson.deserialize(new String(encoded, UTF_8), Car.class);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Cost of FabCar.changeCarOwner, and of reading one page of an owner's cars
+ * through the owner~key index, against a world state of keyCount cars spread
+ * over OWNERS owners.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FabCarBenchmark {
+
+    private static final int OWNERS = 100;
+
+    private static final int PAGE_SIZE = 100;
+
+    private static final byte[] INDEX_VALUE = {0};
+
+    @Param({"10", "10000", "1000000"})
+    public int keyCount;
+
+    private final FabCar contract = new FabCar();
+    private InMemoryChaincodeStub stub;
+    private Context ctx;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Genson genson = new Genson();
+        stub = new InMemoryChaincodeStub();
+        for (int i = 0; i < keyCount; i++) {
+            String key = String.format("CAR%d", i);
+            Car car = new Car("Toyota", "Prius", "blue", "owner" + i % OWNERS);
+            stub.putStringState(FabCar.carKey(key).toString(), genson.serialize(car));
+            stub.putState(stub.createCompositeKey("owner~key", car.getOwner(), key).toString(), INDEX_VALUE);
+            stub.putState(stub.createCompositeKey("make~key", car.getMake(), key).toString(), INDEX_VALUE);
+        }
+        ctx = contract.createContext(stub);
+    }
+
+    @Benchmark
+    public Car changeCarOwner() {
+        int i = next++ % keyCount;
+        return contract.changeCarOwner(ctx, "CAR" + i, (next & 1) == 0 ? "Alice" : "Bob");
+    }
+
+    @Benchmark
+    public String queryCarsByOwner() {
+        return contract.queryCarsByOwner(ctx, "owner1", PAGE_SIZE, "");
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hyperledger.fabric.protos.common.Common.ChannelHeader;
+import org.hyperledger.fabric.protos.common.Common.Header;
+import org.hyperledger.fabric.protos.common.Common.HeaderType;
+import org.hyperledger.fabric.protos.common.Common.SignatureHeader;
+import org.hyperledger.fabric.protos.ledger.queryresult.KvQueryResult.KV;
+import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeInput;
+import org.hyperledger.fabric.protos.peer.ChaincodeGrpc;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.DelState;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.GetState;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.GetStateByRange;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.PutState;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryMetadata;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponse;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResultBytes;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.ChaincodeProposalPayload;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.Proposal;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.protos.peer.ProposalResponsePackage.Response;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import io.grpc.ManagedChannel;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Load driver for a chaincode run as an external service. It plays the peer:
+ * it connects to the chaincode server, sends transactions and answers their
+ * state calls from an in-memory world state, so the throughput of the
+ * chaincode process can be measured on one box without a network.
+ *
+ * Usage: {@code ChaincodeLoadDriver host:port function [args...]}, where {n}
+ * in an argument is replaced by the transaction number and {k} by the
+ * transaction number modulo the keys property. System properties:
+ * concurrency (transactions in flight, 16), transactions (100000), warmup
+ * (10000), keys (10) and init, a function sent once before the load.
+ *
+ * As on a peer, a transaction does not read its own writes; they are applied
+ * to the world state when it completes. There is no MVCC validation, so
+ * conflicting transactions all commit. Range scans return every result in one
+ * response, and rich queries, history and private data are not supported.
+ */
+public final class ChaincodeLoadDriver implements StreamObserver<ChaincodeMessage> {
+
+    private static final String CHANNEL = "mychannel";
+
+    private final InMemoryChaincodeStub worldState = new InMemoryChaincodeStub();
+    private final ByteString creator = ByteString.copyFrom(worldState.getCreator());
+    private final Map<String, Transaction> inFlight = new ConcurrentHashMap<>();
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private final AtomicInteger failures = new AtomicInteger();
+    private final ManagedChannel channel;
+    private final Semaphore permits;
+    private StreamObserver<ChaincodeMessage> chaincode;
+    private volatile boolean closed;
+
+    private static final class Transaction {
+        private final long startNanos = System.nanoTime();
+        private final CountDownLatch done = new CountDownLatch(1);
+        // a null value is a delete
+        private final Map<String, byte[]> writes = new HashMap<>();
+        private long latencyNanos;
+        private Response response;
+    }
+
+    private ChaincodeLoadDriver(final ManagedChannel channel, final int concurrency) {
+        this.channel = channel;
+        this.permits = new Semaphore(concurrency);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ChaincodeLoadDriver host:port function [args...]");
+            System.exit(2);
+        }
+        int concurrency = Integer.getInteger("concurrency", 16);
+        int transactions = Integer.getInteger("transactions", 100_000);
+        int warmup = Integer.getInteger("warmup", 10_000);
+        int keys = Integer.getInteger("keys", 10);
+        String init = System.getProperty("init");
+
+        ChaincodeLoadDriver driver = connect(args[0], concurrency);
+
+        if (init != null) {
+            Response result = driver.invoke("init", init);
+            System.out.printf("%s: %d %s%n", init, result.getStatus(), result.getMessage());
+        }
+
+        String[] template = Arrays.copyOfRange(args, 1, args.length);
+        driver.run("warmup", template, warmup, keys, 0);
+        driver.run("load", template, transactions, keys, warmup);
+
+        driver.close();
+        System.exit(0);
+    }
+
+    /**
+     * Connects to the chaincode server at host:port and waits for the chaincode
+     * to register.
+     */
+    static ChaincodeLoadDriver connect(final String target, final int concurrency) throws InterruptedException {
+        String[] address = target.split(":");
+        ManagedChannel channel = NettyChannelBuilder.forAddress(address[0], Integer.parseInt(address[1]))
+                .usePlaintext().maxInboundMessageSize(Integer.MAX_VALUE).build();
+        ChaincodeLoadDriver driver = new ChaincodeLoadDriver(channel, concurrency);
+        // holds back replies to the chaincode until its stream is known
+        synchronized (driver) {
+            driver.chaincode = ChaincodeGrpc.newStub(channel).connect(driver);
+        }
+        if (!driver.ready.await(30, TimeUnit.SECONDS)) {
+            driver.close();
+            throw new IllegalStateException("Chaincode did not register");
+        }
+        return driver;
+    }
+
+    /**
+     * Sends one transaction and waits for its response.
+     */
+    Response invoke(final String txId, final String... args) throws InterruptedException {
+        Transaction transaction = submit(txId, args);
+        transaction.done.await();
+        return transaction.response;
+    }
+
+    /**
+     * Drops the connection; the chaincode going away afterwards is expected.
+     */
+    void close() {
+        closed = true;
+        channel.shutdownNow();
+    }
+
+    private void run(final String prefix, final String[] template, final int count, final int keys, final int offset)
+            throws InterruptedException {
+        failures.set(0);
+        List<Transaction> sent = new ArrayList<>(count);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int n = offset + i;
+            String[] args = new String[template.length];
+            for (int a = 0; a < args.length; a++) {
+                args[a] = template[a].replace("{n}", Integer.toString(n)).replace("{k}", Integer.toString(n % keys));
+            }
+            sent.add(submit(prefix + n, args));
+        }
+        for (Transaction transaction : sent) {
+            transaction.done.await();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] latencies = new long[count];
+        for (int i = 0; i < count; i++) {
+            latencies[i] = sent.get(i).latencyNanos;
+        }
+        Arrays.sort(latencies);
+        double tps = count / (elapsed / 1e9);
+        System.out.printf("%s: %d transactions, %d failed, %.0f tx/s, %.0f tx/s per core, "
+                + "latency p50 %d us, p99 %d us, max %d us%n", prefix, count, failures.get(), tps,
+                tps / Runtime.getRuntime().availableProcessors(), percentile(latencies, 0.50) / 1000,
+                percentile(latencies, 0.99) / 1000, count == 0 ? 0 : latencies[count - 1] / 1000);
+    }
+
+    private static long percentile(final long[] sorted, final double p) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.round(p * sorted.length))];
+    }
+
+    private Transaction submit(final String txId, final String[] args) throws InterruptedException {
+        permits.acquire();
+        ChaincodeInput.Builder input = ChaincodeInput.newBuilder();
+        for (String arg : args) {
+            input.addArgs(ByteString.copyFrom(arg, UTF_8));
+        }
+        Transaction transaction = new Transaction();
+        inFlight.put(txId, transaction);
+        send(ChaincodeMessage.newBuilder()
+                .setType(ChaincodeMessage.Type.TRANSACTION)
+                .setTxid(txId)
+                .setChannelId(CHANNEL)
+                .setPayload(input.build().toByteString())
+                .setProposal(proposal(txId, input.build()))
+                .build());
+        return transaction;
+    }
+
+    private SignedProposal proposal(final String txId, final ChaincodeInput input) {
+        Instant now = Instant.now();
+        ChannelHeader channelHeader = ChannelHeader.newBuilder()
+                .setType(HeaderType.ENDORSER_TRANSACTION_VALUE)
+                .setTxId(txId)
+                .setChannelId(CHANNEL)
+                .setTimestamp(com.google.protobuf.Timestamp.newBuilder()
+                        .setSeconds(now.getEpochSecond()).setNanos(now.getNano()))
+                .build();
+        SignatureHeader signatureHeader = SignatureHeader.newBuilder()
+                .setCreator(creator)
+                .setNonce(ByteString.copyFrom(txId, UTF_8))
+                .build();
+        Header header = Header.newBuilder()
+                .setChannelHeader(channelHeader.toByteString())
+                .setSignatureHeader(signatureHeader.toByteString())
+                .build();
+        Proposal proposal = Proposal.newBuilder()
+                .setHeader(header.toByteString())
+                .setPayload(ChaincodeProposalPayload.newBuilder().setInput(input.toByteString()).build().toByteString())
+                .build();
+        return SignedProposal.newBuilder().setProposalBytes(proposal.toByteString()).build();
+    }
+
+    @Override
+    public void onNext(final ChaincodeMessage message) {
+        try {
+            handle(message);
+        } catch (InvalidProtocolBufferException | RuntimeException e) {
+            send(reply(message, ChaincodeMessage.Type.ERROR, ByteString.copyFrom(String.valueOf(e), UTF_8)));
+        }
+    }
+
+    private void handle(final ChaincodeMessage message) throws InvalidProtocolBufferException {
+        Transaction transaction = inFlight.get(message.getTxid());
+        switch (message.getType()) {
+            case REGISTER:
+                send(ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.REGISTERED).build());
+                send(ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.READY).build());
+                ready.countDown();
+                break;
+            case GET_STATE:
+                GetState get = GetState.parseFrom(message.getPayload());
+                send(reply(message, ChaincodeMessage.Type.RESPONSE, ByteString.copyFrom(worldState.getState(get.getKey()))));
+                break;
+            case PUT_STATE:
+                PutState put = PutState.parseFrom(message.getPayload());
+                transaction.writes.put(put.getKey(), put.getValue().toByteArray());
+                send(reply(message, ChaincodeMessage.Type.RESPONSE, ByteString.EMPTY));
+                break;
+            case DEL_STATE:
+                DelState del = DelState.parseFrom(message.getPayload());
+                transaction.writes.put(del.getKey(), null);
+                send(reply(message, ChaincodeMessage.Type.RESPONSE, ByteString.EMPTY));
+                break;
+            case GET_STATE_BY_RANGE:
+                send(reply(message, ChaincodeMessage.Type.RESPONSE,
+                        range(GetStateByRange.parseFrom(message.getPayload())).toByteString()));
+                break;
+            case QUERY_STATE_CLOSE:
+                send(reply(message, ChaincodeMessage.Type.RESPONSE, QueryResponse.getDefaultInstance().toByteString()));
+                break;
+            case COMPLETED:
+            case ERROR:
+                complete(message, transaction);
+                break;
+            default:
+                send(reply(message, ChaincodeMessage.Type.ERROR,
+                        ByteString.copyFrom(message.getType() + " is not supported by the load driver", UTF_8)));
+        }
+    }
+
+    private QueryResponse range(final GetStateByRange request) throws InvalidProtocolBufferException {
+        QueryResponse.Builder response = QueryResponse.newBuilder().setHasMore(false).setId("range");
+        Iterable<KeyValue> results;
+        if (request.getMetadata().isEmpty()) {
+            results = worldState.getStateByRange(request.getStartKey(), request.getEndKey());
+        } else {
+            QueryMetadata metadata = QueryMetadata.parseFrom(request.getMetadata());
+            QueryResultsIteratorWithMetadata<KeyValue> page = worldState.getStateByRangeWithPagination(
+                    request.getStartKey(), request.getEndKey(), metadata.getPageSize(), metadata.getBookmark());
+            response.setMetadata(page.getMetadata().toByteString());
+            results = page;
+        }
+        for (KeyValue result : results) {
+            KV kv = KV.newBuilder().setNamespace("chaincode").setKey(result.getKey())
+                    .setValue(ByteString.copyFrom(result.getValue())).build();
+            response.addResults(QueryResultBytes.newBuilder().setResultBytes(kv.toByteString()));
+        }
+        return response.build();
+    }
+
+    private void complete(final ChaincodeMessage message, final Transaction transaction)
+            throws InvalidProtocolBufferException {
+        inFlight.remove(message.getTxid());
+        transaction.latencyNanos = System.nanoTime() - transaction.startNanos;
+        if (message.getType() == ChaincodeMessage.Type.COMPLETED) {
+            transaction.response = Response.parseFrom(message.getPayload());
+        } else {
+            transaction.response = Response.newBuilder().setStatus(500)
+                    .setMessage(message.getPayload().toStringUtf8()).build();
+        }
+        if (transaction.response.getStatus() < 400) {
+            for (Map.Entry<String, byte[]> write : transaction.writes.entrySet()) {
+                if (write.getValue() == null) {
+                    worldState.delState(write.getKey());
+                } else {
+                    worldState.putState(write.getKey(), write.getValue());
+                }
+            }
+        } else {
+            failures.incrementAndGet();
+        }
+        transaction.done.countDown();
+        permits.release();
+    }
+
+    private static ChaincodeMessage reply(final ChaincodeMessage request, final ChaincodeMessage.Type type,
+            final ByteString payload) {
+        return ChaincodeMessage.newBuilder().setType(type).setTxid(request.getTxid())
+                .setChannelId(request.getChannelId()).setPayload(payload).build();
+    }
+
+    private void send(final ChaincodeMessage message) {
+        // StreamObserver is not thread safe
+        synchronized (this) {
+            chaincode.onNext(message);
+        }
+    }
+
+    @Override
+    public void onError(final Throwable t) {
+        if (closed) {
+            return;
+        }
+        System.err.println("Connection to chaincode failed: " + t);
+        System.exit(1);
+    }
+
+    @Override
+    public void onCompleted() {
+        if (closed) {
+            return;
+        }
+        System.err.println("Chaincode closed the connection");
+        System.exit(1);
+    }
+}
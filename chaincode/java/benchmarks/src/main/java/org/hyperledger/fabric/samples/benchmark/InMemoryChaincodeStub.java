@@ -0,0 +1,631 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.hyperledger.fabric.protos.msp.Identities.SerializedIdentity;
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * ChaincodeStub stand-in backed by a sorted in-memory world state, used to
+ * drive the contracts without a peer.
+ *
+ * Unlike a peer, writes are applied immediately and are visible to later reads
+ * of the same transaction. Keys are ordered by String.compareTo, which matches
+ * the peer's byte ordering for the ASCII keys used by the samples.
+ *
+ * Rich queries are evaluated by {@link MangoQuery} against the values that are
+ * JSON objects, as CouchDB would. Once indexes have been added with addIndex(),
+ * a query no index can serve fails instead of falling back to a full scan.
+ *
+ * The history of each key is only recorded after keepHistory(), as the
+ * benchmarks write the same keys millions of times.
+ */
+public class InMemoryChaincodeStub implements ChaincodeStub {
+
+    static final String UNSPECIFIED_START_KEY = new String(Character.toChars(0x000001));
+    static final String MAX_UNICODE_RUNE = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+    /**
+     * Self-signed test identity, needed because Context parses the creator
+     * certificate when it is constructed.
+     */
+    private static final String CREATOR_CERT = "-----BEGIN CERTIFICATE-----\n"
+            + "MIIB6jCCAY+gAwIBAgIUc2PwJi59eIuVobVyVMfEtbcDeDgwCgYIKoZIzj0EAwIw\n"
+            + "STELMAkGA1UEBhMCVVMxGTAXBgNVBAoMEG9yZzEuZXhhbXBsZS5jb20xHzAdBgNV\n"
+            + "BAMMFlVzZXIxQG9yZzEuZXhhbXBsZS5jb20wIBcNMjYxMDE4MTUxNTE1WhgPMjEy\n"
+            + "NjA5MjQxNTE1MTVaMEkxCzAJBgNVBAYTAlVTMRkwFwYDVQQKDBBvcmcxLmV4YW1w\n"
+            + "bGUuY29tMR8wHQYDVQQDDBZVc2VyMUBvcmcxLmV4YW1wbGUuY29tMFkwEwYHKoZI\n"
+            + "zj0CAQYIKoZIzj0DAQcDQgAEI9qbYJQ+Xw/mPg72eBg9aKlRc7GQN73N3jW/ST5X\n"
+            + "GBV2FCVPjuVWGSw9VAQnMHAdx69T6EsMVE6ObETXI9nyA6NTMFEwHQYDVR0OBBYE\n"
+            + "FC5pd6wAZ0hahA3BRi0ReHxgISw1MB8GA1UdIwQYMBaAFC5pd6wAZ0hahA3BRi0R\n"
+            + "eHxgISw1MA8GA1UdEwEB/wQFMAMBAf8wCgYIKoZIzj0EAwIDSQAwRgIhAJO/b7GY\n"
+            + "GUeKO4iITCYQP7xkzjaG8qkm109lYxnQzAUbAiEA4rJUK/UVv0ZnmmPMANmepBhV\n"
+            + "bxhjtPdV+im+KQscoCs=\n"
+            + "-----END CERTIFICATE-----\n";
+
+    private final NavigableMap<String, byte[]> worldState = new ConcurrentSkipListMap<>();
+
+    private String mspId = "Org1MSP";
+    private String txId = "tx0";
+    private String channelId = "mychannel";
+    private Instant txTimestamp = Instant.EPOCH;
+    private List<byte[]> args = Collections.emptyList();
+    private final Map<String, JSONObject> indexes = new LinkedHashMap<>();
+    private final Map<String, List<KeyModification>> history = new HashMap<>();
+    private volatile boolean keepHistory;
+
+    @Override
+    public String getTxId() {
+        return txId;
+    }
+
+    public InMemoryChaincodeStub setTxId(final String txId) {
+        this.txId = txId;
+        return this;
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return txTimestamp;
+    }
+
+    public InMemoryChaincodeStub setTxTimestamp(final Instant txTimestamp) {
+        this.txTimestamp = txTimestamp;
+        return this;
+    }
+
+    public InMemoryChaincodeStub setArgs(final List<byte[]> args) {
+        this.args = args;
+        return this;
+    }
+
+    /**
+     * Number of keys, simple and composite, currently held in the world state.
+     */
+    public int size() {
+        return worldState.size();
+    }
+
+    /**
+     * Removes every key from the world state, and its history.
+     */
+    public void clear() {
+        worldState.clear();
+        synchronized (history) {
+            history.clear();
+        }
+    }
+
+    /**
+     * Records the writes and deletes made from now on, so getHistoryForKey()
+     * can return them.
+     */
+    public InMemoryChaincodeStub keepHistory() {
+        keepHistory = true;
+        return this;
+    }
+
+    /**
+     * Declares a CouchDB index, in the format of the files in
+     * META-INF/statedb/couchdb/indexes. From then on every rich query must be
+     * servable by one of the declared indexes.
+     */
+    public InMemoryChaincodeStub addIndex(final String definition) {
+        JSONObject index = new JSONObject(definition);
+        indexes.put(index.optString("ddoc") + "/" + index.optString("name"), index);
+        return this;
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        return args;
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        String[] strings = new String[args.size()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = new String(args.get(i), UTF_8);
+        }
+        return Arrays.asList(strings);
+    }
+
+    @Override
+    public String getFunction() {
+        List<String> strings = getStringArgs();
+        return strings.isEmpty() ? null : strings.get(0);
+    }
+
+    @Override
+    public List<String> getParameters() {
+        List<String> strings = getStringArgs();
+        return strings.isEmpty() ? strings : strings.subList(1, strings.size());
+    }
+
+    @Override
+    public String getChannelId() {
+        return channelId;
+    }
+
+    @Override
+    public Response invokeChaincode(final String chaincodeName, final List<byte[]> args, final String channel) {
+        throw new UnsupportedOperationException("invokeChaincode");
+    }
+
+    /**
+     * Returns the value stored under key, or an empty array when the key is not
+     * present, as the peer does.
+     */
+    @Override
+    public byte[] getState(final String key) {
+        byte[] value = worldState.get(key);
+        return value == null ? new byte[0] : value;
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(final String key) {
+        return null;
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("key must not be null or empty");
+        }
+        worldState.put(key, value);
+        recordHistory(key, value, false);
+    }
+
+    @Override
+    public void setStateValidationParameter(final String key, final byte[] value) {
+        throw new UnsupportedOperationException("setStateValidationParameter");
+    }
+
+    @Override
+    public void delState(final String key) {
+        worldState.remove(key);
+        recordHistory(key, new byte[0], true);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        return new Results(range(startKey, endKey));
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(final String startKey,
+            final String endKey, final int pageSize, final String bookmark) {
+        String from = bookmark == null || bookmark.isEmpty() ? startKey : bookmark;
+        return new Page(range(from, endKey), pageSize);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+        CompositeKey key;
+        if (compositeKey.startsWith(CompositeKey.NAMESPACE)) {
+            key = CompositeKey.parseCompositeKey(compositeKey);
+        } else {
+            key = new CompositeKey(compositeKey);
+        }
+        return getStateByPartialCompositeKey(key);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String objectType,
+            final String... attributes) {
+        return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        String prefix = compositeKey.toString();
+        return new Results(worldState.subMap(prefix, true, prefix + MAX_UNICODE_RUNE, false));
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+            final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+        String prefix = compositeKey.toString();
+        String from = bookmark == null || bookmark.isEmpty() ? prefix : bookmark;
+        return new Page(worldState.subMap(from, true, prefix + MAX_UNICODE_RUNE, false), pageSize);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(final String objectType, final String... attributes) {
+        return new CompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(final String compositeKey) {
+        return CompositeKey.parseCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+        MangoQuery mango = MangoQuery.parse(query);
+        List<Map.Entry<String, byte[]>> matches = query(mango);
+        int from = Math.min(mango.getSkip(), matches.size());
+        int to = (int) Math.min((long) from + mango.getLimit(), matches.size());
+        return new Results(matches.subList(from, to));
+    }
+
+    /**
+     * The bookmark is the key of the first result that was not returned, or
+     * empty when the results are exhausted; a CouchDB bookmark is opaque and
+     * never empty.
+     */
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(final String query,
+            final int pageSize, final String bookmark) {
+        List<Map.Entry<String, byte[]>> matches = query(MangoQuery.parse(query));
+        int from = 0;
+        if (bookmark != null && !bookmark.isEmpty()) {
+            while (from < matches.size() && !matches.get(from).getKey().equals(bookmark)) {
+                from++;
+            }
+        }
+        return new Page(matches.subList(from, matches.size()).iterator(), pageSize);
+    }
+
+    /**
+     * The modifications of key recorded since keepHistory(), newest first as
+     * the peer returns them, one per transaction id.
+     */
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+        if (!keepHistory) {
+            throw new UnsupportedOperationException("getHistoryForKey without keepHistory()");
+        }
+        List<KeyModification> modifications;
+        synchronized (history) {
+            modifications = new ArrayList<>(history.getOrDefault(key, Collections.emptyList()));
+        }
+        Collections.reverse(modifications);
+        return new QueryResultsIterator<KeyModification>() {
+            @Override
+            public Iterator<KeyModification> iterator() {
+                return modifications.iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public byte[] getPrivateData(final String collection, final String key) {
+        throw new UnsupportedOperationException("getPrivateData");
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(final String collection, final String key) {
+        throw new UnsupportedOperationException("getPrivateDataHash");
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(final String collection, final String key) {
+        throw new UnsupportedOperationException("getPrivateDataValidationParameter");
+    }
+
+    @Override
+    public void putPrivateData(final String collection, final String key, final byte[] value) {
+        throw new UnsupportedOperationException("putPrivateData");
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(final String collection, final String key, final byte[] value) {
+        throw new UnsupportedOperationException("setPrivateDataValidationParameter");
+    }
+
+    @Override
+    public void delPrivateData(final String collection, final String key) {
+        throw new UnsupportedOperationException("delPrivateData");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(final String collection, final String startKey,
+            final String endKey) {
+        throw new UnsupportedOperationException("getPrivateDataByRange");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+            final String compositeKey) {
+        throw new UnsupportedOperationException("getPrivateDataByPartialCompositeKey");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+            final CompositeKey compositeKey) {
+        throw new UnsupportedOperationException("getPrivateDataByPartialCompositeKey");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+            final String objectType, final String... attributes) {
+        throw new UnsupportedOperationException("getPrivateDataByPartialCompositeKey");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(final String collection, final String query) {
+        throw new UnsupportedOperationException("getPrivateDataQueryResult");
+    }
+
+    @Override
+    public void setEvent(final String name, final byte[] payload) {
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        return null;
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        return null;
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return SerializedIdentity.newBuilder()
+                .setMspid(mspId)
+                .setIdBytes(ByteString.copyFromUtf8(CREATOR_CERT))
+                .build()
+                .toByteArray();
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return new byte[0];
+    }
+
+    public String getMspId() {
+        return mspId;
+    }
+
+    /**
+     * Appends a modification to the history of key; the peer keeps only the
+     * last write of a transaction, so it replaces one of the same transaction.
+     */
+    private void recordHistory(final String key, final byte[] value, final boolean deleted) {
+        if (!keepHistory) {
+            return;
+        }
+        Modification modification = new Modification(txId, txTimestamp, value, deleted);
+        synchronized (history) {
+            List<KeyModification> modifications = history.computeIfAbsent(key, k -> new ArrayList<>());
+            int last = modifications.size() - 1;
+            if (last >= 0 && modifications.get(last).getTxId().equals(txId)) {
+                modifications.set(last, modification);
+            } else {
+                modifications.add(modification);
+            }
+        }
+    }
+
+    /**
+     * Simple-key range, excluding composite keys, with the peer's treatment of
+     * empty bounds: an empty start key begins after the composite key namespace
+     * and an empty end key is unbounded.
+     */
+    private NavigableMap<String, byte[]> range(final String startKey, final String endKey) {
+        String from = startKey == null || startKey.isEmpty() ? UNSPECIFIED_START_KEY : startKey;
+        if (endKey == null || endKey.isEmpty()) {
+            return worldState.tailMap(from, true);
+        }
+        return worldState.subMap(from, true, endKey, false);
+    }
+
+    /**
+     * The JSON values matching the query, in sort order and then key order.
+     */
+    private List<Map.Entry<String, byte[]>> query(final MangoQuery query) {
+        if (!indexes.isEmpty() && indexes.values().stream().noneMatch(query::isServedBy)) {
+            throw new IllegalStateException("No declared index serves fields " + query.getSelectorFields()
+                    + " sorted by " + query.getSortFields() + ", among " + indexes.keySet());
+        }
+
+        Map<String, JSONObject> docs = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : worldState.entrySet()) {
+            JSONObject doc = parseObject(entry.getValue());
+            if (doc != null && query.matches(doc)) {
+                docs.put(entry.getKey(), doc);
+            }
+        }
+        return docs.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(query.getSortOrder()))
+                .map(entry -> Map.entry(entry.getKey(), worldState.get(entry.getKey())))
+                .collect(Collectors.toList());
+    }
+
+    private static JSONObject parseObject(final byte[] value) {
+        String text = new String(value, UTF_8).trim();
+        if (!text.startsWith("{")) {
+            return null;
+        }
+        try {
+            return new JSONObject(text);
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    private static final class Record implements KeyValue {
+
+        private final String key;
+        private final byte[] value;
+
+        Record(final String key, final byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, UTF_8);
+        }
+    }
+
+    private static final class Modification implements KeyModification {
+
+        private final String txId;
+        private final Instant timestamp;
+        private final byte[] value;
+        private final boolean deleted;
+
+        Modification(final String txId, final Instant timestamp, final byte[] value, final boolean deleted) {
+            this.txId = txId;
+            this.timestamp = timestamp;
+            this.value = value;
+            this.deleted = deleted;
+        }
+
+        @Override
+        public String getTxId() {
+            return txId;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, UTF_8);
+        }
+
+        @Override
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return deleted;
+        }
+    }
+
+    /**
+     * Lazily walks a view of the world state.
+     */
+    private static final class Results implements QueryResultsIterator<KeyValue> {
+
+        private final Iterable<Map.Entry<String, byte[]>> view;
+
+        Results(final NavigableMap<String, byte[]> view) {
+            this(view.entrySet());
+        }
+
+        Results(final Iterable<Map.Entry<String, byte[]>> view) {
+            this.view = view;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            Iterator<Map.Entry<String, byte[]>> entries = view.iterator();
+            return new Iterator<KeyValue>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public KeyValue next() {
+                    Map.Entry<String, byte[]> entry = entries.next();
+                    return new Record(entry.getKey(), entry.getValue());
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * One page of a view of the world state, fetched eagerly as the peer does.
+     * The bookmark is the first key that was not returned, or empty when the
+     * view is exhausted.
+     */
+    private static final class Page implements QueryResultsIteratorWithMetadata<KeyValue> {
+
+        private final List<KeyValue> records = new ArrayList<>();
+        private final String bookmark;
+
+        Page(final NavigableMap<String, byte[]> view, final int pageSize) {
+            this(view.entrySet().iterator(), pageSize);
+        }
+
+        Page(final Iterator<Map.Entry<String, byte[]>> entries, final int pageSize) {
+            while (records.size() < pageSize && entries.hasNext()) {
+                Map.Entry<String, byte[]> entry = entries.next();
+                records.add(new Record(entry.getKey(), entry.getValue()));
+            }
+            this.bookmark = entries.hasNext() ? entries.next().getKey() : "";
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return records.iterator();
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return QueryResponseMetadata.newBuilder()
+                    .setFetchedRecordsCount(records.size())
+                    .setBookmark(bookmark)
+                    .build();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hyperledger.fabric.samples.benchmark.LedgerSimulator.ReadWriteSet;
+import org.hyperledger.fabric.samples.benchmark.LedgerSimulator.ValidationCode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Runs a workload of one transaction type on a {@link LedgerSimulator} with an
+ * increasing number of clients, and prints the committed throughput and the
+ * share of transactions invalidated at commit for each.
+ *
+ * Every client is closed-loop, as an application waiting for its commit
+ * event: it endorses a transaction, submits it and waits for its block before
+ * sending the next. System properties: clients (comma separated counts,
+ * "1,8,32,128"), transactions per client (200), keys (100), the number of
+ * distinct keys the workload picks from, blockSize (10) and batchTimeout in
+ * milliseconds (20).
+ */
+public final class LedgerSimulation {
+
+    /**
+     * A transaction type to simulate.
+     */
+    public interface Workload {
+
+        String getName();
+
+        /**
+         * Commits the state the transactions need, keys being the number of
+         * distinct keys they pick from.
+         */
+        void setUp(LedgerSimulator ledger, int keys);
+
+        /**
+         * Function name and parameters of the next transaction of a client.
+         */
+        List<String> nextTransaction(Random random, int client, int keys);
+
+        /**
+         * Runs the transaction through the contract, as the shim would.
+         */
+        void execute(ChaincodeStub stub, List<String> args);
+    }
+
+    private final int blockSize;
+    private final long batchTimeoutMillis;
+    private final int transactionsPerClient;
+    private final int keys;
+
+    public LedgerSimulation(final int blockSize, final long batchTimeoutMillis, final int transactionsPerClient,
+            final int keys) {
+        this.blockSize = blockSize;
+        this.batchTimeoutMillis = batchTimeoutMillis;
+        this.transactionsPerClient = transactionsPerClient;
+        this.keys = keys;
+    }
+
+    /**
+     * Runs each workload with each number of clients in the system property
+     * clients, configured from the system properties; called by the main
+     * method of a contract's simulation.
+     */
+    public static void runAll(final Workload... workloads) throws InterruptedException {
+        LedgerSimulation simulation = new LedgerSimulation(Integer.getInteger("blockSize", 10),
+                Long.getLong("batchTimeout", 20), Integer.getInteger("transactions", 200),
+                Integer.getInteger("keys", 100));
+        int[] clients = Arrays.stream(System.getProperty("clients", "1,8,32,128").split(","))
+                .mapToInt(count -> Integer.parseInt(count.trim())).toArray();
+
+        System.out.printf("block size %d, batch timeout %d ms, %d keys, %d transactions per client%n",
+                simulation.blockSize, simulation.batchTimeoutMillis, simulation.keys,
+                simulation.transactionsPerClient);
+        for (Workload workload : workloads) {
+            for (int count : clients) {
+                System.out.println(simulation.run(workload, count));
+            }
+        }
+    }
+
+    /**
+     * Runs a workload on a new ledger with clients clients.
+     */
+    public Result run(final Workload workload, final int clients) throws InterruptedException {
+        try (LedgerSimulator ledger = new LedgerSimulator(blockSize, batchTimeoutMillis)) {
+            workload.setUp(ledger, keys);
+            long setUpBlocks = ledger.getBlockHeight();
+            Map<ValidationCode, Long> setUp = ledger.getValidationCounts();
+
+            AtomicInteger endorsementFailures = new AtomicInteger();
+            long[][] latencies = new long[clients][];
+            Thread[] threads = new Thread[clients];
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                threads[c] = new Thread(() -> latencies[client] = runClient(ledger, workload, client,
+                        endorsementFailures), workload.getName() + "-client-" + c);
+            }
+            long start = System.nanoTime();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            Map<ValidationCode, Long> counts = ledger.getValidationCounts();
+            long[] committed = new long[ValidationCode.values().length];
+            for (ValidationCode code : ValidationCode.values()) {
+                committed[code.ordinal()] = counts.get(code) - setUp.get(code);
+            }
+            long[] merged = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+            return new Result(workload.getName(), clients, committed, endorsementFailures.get(), elapsed,
+                    ledger.getBlockHeight() - setUpBlocks, merged);
+        }
+    }
+
+    /**
+     * Sends transactionsPerClient transactions one after the other, and returns
+     * the latencies of those endorsed, from endorsement to commit.
+     */
+    private long[] runClient(final LedgerSimulator ledger, final Workload workload, final int client,
+            final AtomicInteger endorsementFailures) {
+        Random random = new Random(client);
+        long[] latencies = new long[transactionsPerClient];
+        int endorsed = 0;
+        for (int n = 0; n < transactionsPerClient; n++) {
+            List<String> args = workload.nextTransaction(random, client, keys);
+            long start = System.nanoTime();
+            ReadWriteSet readWriteSet;
+            try {
+                readWriteSet = ledger.simulate(client + "-" + n, args, stub -> workload.execute(stub, args));
+            } catch (RuntimeException e) {
+                endorsementFailures.incrementAndGet();
+                continue;
+            }
+            ledger.submit(readWriteSet).join();
+            latencies[endorsed++] = System.nanoTime() - start;
+        }
+        return Arrays.copyOf(latencies, endorsed);
+    }
+
+    /**
+     * Outcome of one run.
+     */
+    public static final class Result {
+
+        private final String workload;
+        private final int clients;
+        private final long[] validated;
+        private final int endorsementFailures;
+        private final long elapsedNanos;
+        private final long blocks;
+        private final long[] latencies;
+
+        Result(final String workload, final int clients, final long[] validated, final int endorsementFailures,
+                final long elapsedNanos, final long blocks, final long[] latencies) {
+            this.workload = workload;
+            this.clients = clients;
+            this.validated = validated;
+            this.endorsementFailures = endorsementFailures;
+            this.elapsedNanos = elapsedNanos;
+            this.blocks = blocks;
+            this.latencies = latencies;
+        }
+
+        public long getCount(final ValidationCode code) {
+            return validated[code.ordinal()];
+        }
+
+        public long getSubmitted() {
+            return Arrays.stream(validated).sum();
+        }
+
+        public int getEndorsementFailures() {
+            return endorsementFailures;
+        }
+
+        /**
+         * Valid transactions committed per second.
+         */
+        public double getCommittedTps() {
+            return getCount(ValidationCode.VALID) / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Share of the submitted transactions found invalid at commit.
+         */
+        public double getInvalidationRate() {
+            long submitted = getSubmitted();
+            return submitted == 0 ? 0 : (double) (submitted - getCount(ValidationCode.VALID)) / submitted;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s, %d clients: %d submitted, %d valid, %d mvcc conflicts, %d phantom reads, "
+                    + "%d endorsement failures, %.0f committed tx/s, %.2f%% invalidated, %d blocks, "
+                    + "commit latency p50 %.1f ms, p99 %.1f ms", workload, clients, getSubmitted(),
+                    getCount(ValidationCode.VALID), getCount(ValidationCode.MVCC_READ_CONFLICT),
+                    getCount(ValidationCode.PHANTOM_READ_CONFLICT), endorsementFailures, getCommittedTps(),
+                    getInvalidationRate() * 100, blocks, percentile(0.50) / 1e6, percentile(0.99) / 1e6);
+        }
+
+        private long percentile(final double p) {
+            return latencies.length == 0 ? 0
+                    : latencies[(int) Math.min(latencies.length - 1, Math.round(p * latencies.length))];
+        }
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * A channel of one peer and one orderer, in process, for measuring how often
+ * transactions are invalidated by read-write conflicts when they commit.
+ *
+ * Transactions are endorsed by simulate(), which runs them against the
+ * committed world state and records their read-write set; as on a peer, a
+ * simulation holds a read lock for its whole run, so it sees a snapshot, and
+ * does not read its own writes. submit() hands the read-write set to the
+ * orderer, which cuts a block when blockSize transactions are waiting or
+ * batchTimeout has passed since the first of them. Blocks are then validated
+ * one at a time with Fabric's MVCC rules: a transaction is invalid if a key it
+ * read has changed version since, or if a range it scanned would now return
+ * other keys or versions, counting the writes of the valid transactions before
+ * it in the same block. The writes of the valid transactions are committed
+ * under the write lock.
+ *
+ * Endorsement policies, signatures and private data are not simulated. Rich
+ * queries and paginated queries are not supported in simulation, as the peer
+ * does not re-execute the former at validation and only allows the latter in
+ * read-only transactions.
+ */
+public final class LedgerSimulator implements AutoCloseable {
+
+    /**
+     * Outcome of the validation of a transaction, named as in Fabric's
+     * TxValidationCode.
+     */
+    public enum ValidationCode {
+        VALID,
+        MVCC_READ_CONFLICT,
+        PHANTOM_READ_CONFLICT
+    }
+
+    /** Version of a key that is not in the world state. */
+    static final long NO_VERSION = 0;
+
+    private final NavigableMap<String, VersionedValue> worldState = new ConcurrentSkipListMap<>();
+    private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+    private final BlockingQueue<Envelope> orderer = new LinkedBlockingQueue<>();
+    private final Map<ValidationCode, Long> validated = new EnumMap<>(ValidationCode.class);
+    private final int blockSize;
+    private final long batchTimeoutNanos;
+    private final Thread committer;
+
+    private volatile boolean closed;
+    private long blockHeight;
+
+    /**
+     * @param blockSize          most transactions in a block, the orderer's
+     *                           BatchSize.MaxMessageCount
+     * @param batchTimeoutMillis longest a transaction waits for its block to
+     *                           fill, the orderer's BatchTimeout
+     */
+    public LedgerSimulator(final int blockSize, final long batchTimeoutMillis) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive, got " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.batchTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(batchTimeoutMillis);
+        for (ValidationCode code : ValidationCode.values()) {
+            validated.put(code, 0L);
+        }
+        this.committer = new Thread(this::cutBlocks, "ledger-simulator-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Endorses a transaction: runs it against a snapshot of the committed world
+     * state and returns its read-write set. An exception thrown by the
+     * transaction is an endorsement failure and is passed on.
+     *
+     * @param args function name and parameters, as the stub reports them
+     */
+    public ReadWriteSet simulate(final String txId, final List<String> args, final Consumer<ChaincodeStub> transaction) {
+        List<byte[]> rawArgs = new ArrayList<>(args.size());
+        for (String arg : args) {
+            rawArgs.add(arg.getBytes(UTF_8));
+        }
+        SimulatedChaincodeStub stub = new SimulatedChaincodeStub(this, txId);
+        stub.setArgs(rawArgs).setTxTimestamp(Instant.now());
+
+        commitLock.readLock().lock();
+        try {
+            transaction.accept(stub);
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        return stub.getReadWriteSet();
+    }
+
+    /**
+     * Orders an endorsed transaction; the future completes once its block has
+     * been validated and committed.
+     */
+    public CompletableFuture<ValidationCode> submit(final ReadWriteSet readWriteSet) {
+        if (closed) {
+            throw new IllegalStateException("Ledger simulator is closed");
+        }
+        Envelope envelope = new Envelope(readWriteSet);
+        orderer.add(envelope);
+        return envelope.result;
+    }
+
+    /**
+     * Endorses, orders and waits for the commit of a transaction.
+     */
+    public ValidationCode execute(final String txId, final List<String> args, final Consumer<ChaincodeStub> transaction) {
+        return submit(simulate(txId, args, transaction)).join();
+    }
+
+    /**
+     * Number of blocks committed.
+     */
+    public synchronized long getBlockHeight() {
+        return blockHeight;
+    }
+
+    /**
+     * Number of transactions validated with each code so far.
+     */
+    public synchronized Map<ValidationCode, Long> getValidationCounts() {
+        return Collections.unmodifiableMap(new EnumMap<>(validated));
+    }
+
+    /**
+     * Committed value of key, or null when it is not in the world state.
+     */
+    public byte[] getCommittedState(final String key) {
+        VersionedValue value = worldState.get(key);
+        return value == null ? null : value.value;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        committer.interrupt();
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    long getVersion(final String key) {
+        VersionedValue value = worldState.get(key);
+        return value == null ? NO_VERSION : value.version;
+    }
+
+    VersionedValue getVersionedValue(final String key) {
+        return worldState.get(key);
+    }
+
+    /**
+     * Committed keys from startKey inclusive to endKey exclusive.
+     */
+    NavigableMap<String, VersionedValue> getCommittedRange(final String startKey, final String endKey) {
+        return worldState.subMap(startKey, true, endKey, false);
+    }
+
+    private void cutBlocks() {
+        List<Envelope> batch = new ArrayList<>(blockSize);
+        try {
+            while (!closed) {
+                Envelope first = orderer.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + batchTimeoutNanos;
+                while (batch.size() < blockSize) {
+                    Envelope next = orderer.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+        IllegalStateException failure = new IllegalStateException("Ledger simulator is closed");
+        batch.addAll(orderer);
+        for (Envelope envelope : batch) {
+            envelope.result.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Validates a block in order, then commits the writes of its valid
+     * transactions.
+     */
+    private void commit(final List<Envelope> block) {
+        long blockNumber;
+        synchronized (this) {
+            blockNumber = ++blockHeight;
+        }
+
+        // writes of the valid transactions so far, null values being deletes
+        NavigableMap<String, VersionedValue> updates = new TreeMap<>();
+        ValidationCode[] codes = new ValidationCode[block.size()];
+        for (int txNumber = 0; txNumber < block.size(); txNumber++) {
+            ReadWriteSet readWriteSet = block.get(txNumber).readWriteSet;
+            codes[txNumber] = validate(readWriteSet, updates);
+            if (codes[txNumber] == ValidationCode.VALID) {
+                long version = version(blockNumber, txNumber);
+                for (Map.Entry<String, byte[]> write : readWriteSet.writes.entrySet()) {
+                    updates.put(write.getKey(), new VersionedValue(write.getValue(), version));
+                }
+            }
+        }
+
+        commitLock.writeLock().lock();
+        try {
+            for (Map.Entry<String, VersionedValue> update : updates.entrySet()) {
+                if (update.getValue().value == null) {
+                    worldState.remove(update.getKey());
+                } else {
+                    worldState.put(update.getKey(), update.getValue());
+                }
+            }
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+
+        synchronized (this) {
+            for (ValidationCode code : codes) {
+                validated.merge(code, 1L, Long::sum);
+            }
+        }
+        for (int txNumber = 0; txNumber < block.size(); txNumber++) {
+            block.get(txNumber).result.complete(codes[txNumber]);
+        }
+    }
+
+    private ValidationCode validate(final ReadWriteSet readWriteSet,
+            final NavigableMap<String, VersionedValue> updates) {
+        for (Map.Entry<String, Long> read : readWriteSet.reads.entrySet()) {
+            VersionedValue update = updates.get(read.getKey());
+            long current = update != null ? versionOf(update) : getVersion(read.getKey());
+            if (current != read.getValue()) {
+                return ValidationCode.MVCC_READ_CONFLICT;
+            }
+        }
+        for (RangeRead range : readWriteSet.ranges) {
+            // a scan abandoned before its first result constrains nothing
+            if (!range.exhausted && range.reads.isEmpty()) {
+                continue;
+            }
+            if (!range.matches(scan(range, updates))) {
+                return ValidationCode.PHANTOM_READ_CONFLICT;
+            }
+        }
+        return ValidationCode.VALID;
+    }
+
+    /**
+     * Re-executes a range scan against the committed state overlaid with the
+     * block's updates, as far as the transaction iterated it.
+     */
+    private Map<String, Long> scan(final RangeRead range, final NavigableMap<String, VersionedValue> updates) {
+        String endKey = range.exhausted ? range.endKey : range.lastKey();
+        boolean endInclusive = !range.exhausted;
+
+        NavigableMap<String, Long> merged = new TreeMap<>();
+        for (Map.Entry<String, VersionedValue> entry
+                : worldState.subMap(range.startKey, true, endKey, endInclusive).entrySet()) {
+            merged.put(entry.getKey(), entry.getValue().version);
+        }
+        for (Map.Entry<String, VersionedValue> entry
+                : updates.subMap(range.startKey, true, endKey, endInclusive).entrySet()) {
+            if (entry.getValue().value == null) {
+                merged.remove(entry.getKey());
+            } else {
+                merged.put(entry.getKey(), entry.getValue().version);
+            }
+        }
+        return merged;
+    }
+
+    private static long versionOf(final VersionedValue update) {
+        return update.value == null ? NO_VERSION : update.version;
+    }
+
+    /**
+     * Height of a transaction in the chain; never NO_VERSION, as blocks are
+     * numbered from 1.
+     */
+    private static long version(final long blockNumber, final int txNumber) {
+        return blockNumber << 32 | txNumber;
+    }
+
+    static final class VersionedValue {
+
+        final byte[] value;
+        final long version;
+
+        VersionedValue(final byte[] value, final long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+
+    /**
+     * A range scan as the transaction saw it: the keys it iterated with their
+     * versions, and whether it iterated to the end of the range.
+     */
+    static final class RangeRead {
+
+        final String startKey;
+        final String endKey;
+        final Map<String, Long> reads = new LinkedHashMap<>();
+        boolean exhausted;
+
+        RangeRead(final String startKey, final String endKey) {
+            this.startKey = startKey;
+            this.endKey = endKey;
+        }
+
+        String lastKey() {
+            String last = null;
+            for (String key : reads.keySet()) {
+                last = key;
+            }
+            return last;
+        }
+
+        boolean matches(final Map<String, Long> current) {
+            if (current.size() != reads.size()) {
+                return false;
+            }
+            Iterator<Map.Entry<String, Long>> expected = reads.entrySet().iterator();
+            for (Map.Entry<String, Long> entry : current.entrySet()) {
+                if (!entry.equals(expected.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * What a transaction read, with the versions it read, and what it wrote.
+     */
+    public static final class ReadWriteSet {
+
+        private final String txId;
+        final Map<String, Long> reads = new LinkedHashMap<>();
+        final List<RangeRead> ranges = new ArrayList<>();
+        final Map<String, byte[]> writes = new LinkedHashMap<>();
+
+        ReadWriteSet(final String txId) {
+            this.txId = txId;
+        }
+
+        public String getTxId() {
+            return txId;
+        }
+
+        /**
+         * Keys read, excluding those read by range scans.
+         */
+        public List<String> getReadKeys() {
+            return new ArrayList<>(reads.keySet());
+        }
+
+        /**
+         * Keys written or deleted.
+         */
+        public List<String> getWriteKeys() {
+            return new ArrayList<>(writes.keySet());
+        }
+
+        public int getRangeCount() {
+            return ranges.size();
+        }
+    }
+
+    private static final class Envelope {
+
+        final ReadWriteSet readWriteSet;
+        final CompletableFuture<ValidationCode> result = new CompletableFuture<>();
+
+        Envelope(final ReadWriteSet readWriteSet) {
+            this.readWriteSet = readWriteSet;
+        }
+    }
+}
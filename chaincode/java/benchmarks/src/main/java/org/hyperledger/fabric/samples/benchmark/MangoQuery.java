@@ -0,0 +1,353 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Embedded evaluator for the CouchDB Mango queries chaincode passes to
+ * getQueryResult(), so rich queries can be run and checked without a peer or a
+ * CouchDB.
+ *
+ * Supports the combination operators $and, $or, $nor and $not, the condition
+ * operators $eq, $ne, $gt, $gte, $lt, $lte, $in, $nin and $exists, implicit
+ * equality, nested fields in dotted or object form, sort, limit, skip and
+ * use_index. Values compare in CouchDB's type order (null, booleans, numbers,
+ * strings, arrays, objects); strings compare by code point rather than by
+ * CouchDB's ICU collation, which agrees for the ASCII values the samples store.
+ */
+public final class MangoQuery {
+
+    private final JSONObject selector;
+    private final List<String> sortFields = new ArrayList<>();
+    private final List<Boolean> sortAscending = new ArrayList<>();
+    private final int limit;
+    private final int skip;
+    private final String useIndexDesignDoc;
+    private final String useIndexName;
+
+    private MangoQuery(final JSONObject query) {
+        if (!query.has("selector")) {
+            throw new IllegalArgumentException("Query has no selector: " + query);
+        }
+        this.selector = query.getJSONObject("selector");
+        this.limit = query.optInt("limit", Integer.MAX_VALUE);
+        this.skip = query.optInt("skip", 0);
+
+        JSONArray sort = query.optJSONArray("sort");
+        for (int i = 0; sort != null && i < sort.length(); i++) {
+            Object field = sort.get(i);
+            if (field instanceof JSONObject) {
+                String name = ((JSONObject) field).keys().next();
+                sortFields.add(name);
+                sortAscending.add(!"desc".equals(((JSONObject) field).getString(name)));
+            } else {
+                sortFields.add(field.toString());
+                sortAscending.add(true);
+            }
+        }
+        if (new LinkedHashSet<>(sortAscending).size() > 1) {
+            throw new IllegalArgumentException("Sort fields must all be in the same direction: " + sort);
+        }
+
+        Object useIndex = query.opt("use_index");
+        if (useIndex instanceof JSONArray) {
+            this.useIndexDesignDoc = designDoc(((JSONArray) useIndex).getString(0));
+            this.useIndexName = ((JSONArray) useIndex).optString(1, null);
+        } else if (useIndex != null) {
+            this.useIndexDesignDoc = designDoc(useIndex.toString());
+            this.useIndexName = null;
+        } else {
+            this.useIndexDesignDoc = null;
+            this.useIndexName = null;
+        }
+    }
+
+    /**
+     * Parses a Mango query, {"selector": {...}, "sort": [...], ...}.
+     */
+    public static MangoQuery parse(final String query) {
+        return new MangoQuery(new JSONObject(query));
+    }
+
+    /**
+     * Whether doc satisfies the selector.
+     */
+    public boolean matches(final JSONObject doc) {
+        return matches(selector, doc);
+    }
+
+    /**
+     * Orders documents by the sort fields; documents equal on every sort field
+     * keep their relative order, which for a query is key order.
+     */
+    public Comparator<JSONObject> getSortOrder() {
+        return (left, right) -> {
+            for (int i = 0; i < sortFields.size(); i++) {
+                int order = collate(field(left, sortFields.get(i)), field(right, sortFields.get(i)));
+                if (order != 0) {
+                    return sortAscending.get(i) ? order : -order;
+                }
+            }
+            return 0;
+        };
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getSkip() {
+        return skip;
+    }
+
+    public List<String> getSortFields() {
+        return Collections.unmodifiableList(sortFields);
+    }
+
+    /**
+     * Fields the selector constrains outside $or, $nor and $not, which are the
+     * only ones an index can be chosen on.
+     */
+    public Set<String> getSelectorFields() {
+        Set<String> fields = new LinkedHashSet<>();
+        collectFields(selector, "", fields);
+        return fields;
+    }
+
+    /**
+     * Whether CouchDB could answer the query from a JSON index, given its
+     * definition as deployed in META-INF/statedb/couchdb/indexes: the index must
+     * be the one named by use_index, if any, every indexed field must be
+     * constrained by the selector, and every sort field must be indexed.
+     */
+    public boolean isServedBy(final JSONObject definition) {
+        if (useIndexDesignDoc != null) {
+            if (!useIndexDesignDoc.equals(designDoc(definition.optString("ddoc")))) {
+                return false;
+            }
+            if (useIndexName != null && !useIndexName.equals(definition.optString("name"))) {
+                return false;
+            }
+        }
+
+        List<String> indexed = new ArrayList<>();
+        JSONArray fields = definition.getJSONObject("index").getJSONArray("fields");
+        for (int i = 0; i < fields.length(); i++) {
+            Object field = fields.get(i);
+            indexed.add(field instanceof JSONObject ? ((JSONObject) field).keys().next() : field.toString());
+        }
+        return getSelectorFields().containsAll(indexed) && indexed.containsAll(sortFields);
+    }
+
+    private static String designDoc(final String name) {
+        return name.startsWith("_design/") ? name : "_design/" + name;
+    }
+
+    private static void collectFields(final JSONObject selector, final String path, final Set<String> fields) {
+        for (String key : selector.keySet()) {
+            Object condition = selector.get(key);
+            if ("$and".equals(key)) {
+                JSONArray clauses = (JSONArray) condition;
+                for (int i = 0; i < clauses.length(); i++) {
+                    collectFields(clauses.getJSONObject(i), path, fields);
+                }
+            } else if (!key.startsWith("$")) {
+                String field = path + key;
+                if (condition instanceof JSONObject && !isOperatorObject((JSONObject) condition)) {
+                    collectFields((JSONObject) condition, field + ".", fields);
+                } else {
+                    fields.add(field);
+                }
+            }
+        }
+    }
+
+    private static boolean matches(final JSONObject selector, final JSONObject doc) {
+        for (String key : selector.keySet()) {
+            Object condition = selector.get(key);
+            boolean matched;
+            switch (key) {
+            case "$and":
+                matched = all((JSONArray) condition, doc);
+                break;
+            case "$or":
+                matched = any((JSONArray) condition, doc);
+                break;
+            case "$nor":
+                matched = !any((JSONArray) condition, doc);
+                break;
+            case "$not":
+                matched = !matches((JSONObject) condition, doc);
+                break;
+            default:
+                if (key.startsWith("$")) {
+                    throw new IllegalArgumentException("Unsupported Mango operator " + key);
+                }
+                matched = matchesField(field(doc, key), condition);
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean all(final JSONArray selectors, final JSONObject doc) {
+        for (int i = 0; i < selectors.length(); i++) {
+            if (!matches(selectors.getJSONObject(i), doc)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean any(final JSONArray selectors, final JSONObject doc) {
+        for (int i = 0; i < selectors.length(); i++) {
+            if (matches(selectors.getJSONObject(i), doc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param value     the field's value, or null when the document lacks it
+     * @param condition an operator object, a nested selector or a value to equal
+     */
+    private static boolean matchesField(final Object value, final Object condition) {
+        if (!(condition instanceof JSONObject)) {
+            return value != null && collate(value, condition) == 0;
+        }
+        JSONObject conditions = (JSONObject) condition;
+        if (!isOperatorObject(conditions)) {
+            return value instanceof JSONObject && matches(conditions, (JSONObject) value);
+        }
+
+        for (String operator : conditions.keySet()) {
+            Object operand = conditions.get(operator);
+            if ("$exists".equals(operator)) {
+                if ((value != null) != conditions.getBoolean(operator)) {
+                    return false;
+                }
+                continue;
+            }
+            // every other operator needs the field to be present
+            if (value == null || !matchesOperator(value, operator, operand)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesOperator(final Object value, final String operator, final Object operand) {
+        switch (operator) {
+        case "$eq":
+            return collate(value, operand) == 0;
+        case "$ne":
+            return collate(value, operand) != 0;
+        case "$gt":
+            return collate(value, operand) > 0;
+        case "$gte":
+            return collate(value, operand) >= 0;
+        case "$lt":
+            return collate(value, operand) < 0;
+        case "$lte":
+            return collate(value, operand) <= 0;
+        case "$in":
+            return contains((JSONArray) operand, value);
+        case "$nin":
+            return !contains((JSONArray) operand, value);
+        default:
+            throw new IllegalArgumentException("Unsupported Mango operator " + operator);
+        }
+    }
+
+    private static boolean contains(final JSONArray values, final Object value) {
+        for (int i = 0; i < values.length(); i++) {
+            if (collate(value, values.get(i)) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOperatorObject(final JSONObject condition) {
+        for (String key : condition.keySet()) {
+            if (key.startsWith("$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Value of a dotted field path, or null when the document lacks it.
+     */
+    private static Object field(final JSONObject doc, final String path) {
+        Object value = doc;
+        for (String name : path.split("\\.")) {
+            if (!(value instanceof JSONObject) || !((JSONObject) value).has(name)) {
+                return null;
+            }
+            value = ((JSONObject) value).get(name);
+        }
+        return value;
+    }
+
+    private static int typeRank(final Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            return 0;
+        } else if (value instanceof Boolean) {
+            return 1;
+        } else if (value instanceof Number) {
+            return 2;
+        } else if (value instanceof String) {
+            return 3;
+        } else if (value instanceof JSONArray) {
+            return 4;
+        }
+        return 5;
+    }
+
+    private static int collate(final Object left, final Object right) {
+        int leftRank = typeRank(left);
+        int rightRank = typeRank(right);
+        if (leftRank != rightRank) {
+            return Integer.compare(leftRank, rightRank);
+        }
+
+        switch (leftRank) {
+        case 1:
+            return Boolean.compare((Boolean) left, (Boolean) right);
+        case 2:
+            return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+        case 3:
+            return ((String) left).compareTo((String) right);
+        case 4:
+            JSONArray leftArray = (JSONArray) left;
+            JSONArray rightArray = (JSONArray) right;
+            for (int i = 0; i < Math.min(leftArray.length(), rightArray.length()); i++) {
+                int order = collate(leftArray.get(i), rightArray.get(i));
+                if (order != 0) {
+                    return order;
+                }
+            }
+            return Integer.compare(leftArray.length(), rightArray.length());
+        case 5:
+            return ((JSONObject) left).similar(right) ? 0 : left.toString().compareTo(right.toString());
+        default:
+            return 0;
+        }
+    }
+}
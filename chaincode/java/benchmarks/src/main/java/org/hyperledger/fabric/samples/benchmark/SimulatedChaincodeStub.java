@@ -0,0 +1,168 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * The stub a transaction is simulated with by {@link LedgerSimulator}: reads
+ * come from the simulator's committed world state and are recorded with their
+ * versions, and writes are recorded without being applied, so, as on a peer, a
+ * transaction does not read its own writes. Range scans record the keys they
+ * return as they are iterated.
+ */
+final class SimulatedChaincodeStub extends InMemoryChaincodeStub {
+
+    private final LedgerSimulator ledger;
+    private final LedgerSimulator.ReadWriteSet readWriteSet;
+
+    SimulatedChaincodeStub(final LedgerSimulator ledger, final String txId) {
+        this.ledger = ledger;
+        this.readWriteSet = new LedgerSimulator.ReadWriteSet(txId);
+        setTxId(txId);
+    }
+
+    LedgerSimulator.ReadWriteSet getReadWriteSet() {
+        return readWriteSet;
+    }
+
+    @Override
+    public byte[] getState(final String key) {
+        LedgerSimulator.VersionedValue value = ledger.getVersionedValue(key);
+        // the first read is the one validated, as later ones see the same snapshot
+        readWriteSet.reads.putIfAbsent(key, value == null ? LedgerSimulator.NO_VERSION : value.version);
+        return value == null ? new byte[0] : value.value;
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("key must not be null or empty");
+        }
+        readWriteSet.writes.put(key, value);
+    }
+
+    @Override
+    public void delState(final String key) {
+        readWriteSet.writes.put(key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        String from = startKey == null || startKey.isEmpty() ? UNSPECIFIED_START_KEY : startKey;
+        String to = endKey == null || endKey.isEmpty() ? MAX_UNICODE_RUNE : endKey;
+        return new RecordedRange(from, to);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        String prefix = compositeKey.toString();
+        return new RecordedRange(prefix, prefix + MAX_UNICODE_RUNE);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(final String startKey,
+            final String endKey, final int pageSize, final String bookmark) {
+        throw new UnsupportedOperationException("Paginated queries are only allowed in read-only transactions");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+            final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+        throw new UnsupportedOperationException("Paginated queries are only allowed in read-only transactions");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+        throw new UnsupportedOperationException("Rich queries are not validated at commit and are not simulated");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(final String query,
+            final int pageSize, final String bookmark) {
+        throw new UnsupportedOperationException("Rich queries are not validated at commit and are not simulated");
+    }
+
+    private static final class Record implements KeyValue {
+
+        private final String key;
+        private final byte[] value;
+
+        Record(final String key, final byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, UTF_8);
+        }
+    }
+
+    /**
+     * A range of the committed world state, recorded as it is iterated.
+     */
+    private final class RecordedRange implements QueryResultsIterator<KeyValue> {
+
+        private final String startKey;
+        private final String endKey;
+
+        RecordedRange(final String startKey, final String endKey) {
+            this.startKey = startKey;
+            this.endKey = endKey;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            LedgerSimulator.RangeRead range = new LedgerSimulator.RangeRead(startKey, endKey);
+            readWriteSet.ranges.add(range);
+            Iterator<Map.Entry<String, LedgerSimulator.VersionedValue>> entries =
+                    ledger.getCommittedRange(startKey, endKey).entrySet().iterator();
+            return new Iterator<KeyValue>() {
+                @Override
+                public boolean hasNext() {
+                    boolean hasNext = entries.hasNext();
+                    if (!hasNext) {
+                        range.exhausted = true;
+                    }
+                    return hasNext;
+                }
+
+                @Override
+                public KeyValue next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Map.Entry<String, LedgerSimulator.VersionedValue> entry = entries.next();
+                    range.reads.put(entry.getKey(), entry.getValue().version);
+                    return new Record(entry.getKey(), entry.getValue().value);
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
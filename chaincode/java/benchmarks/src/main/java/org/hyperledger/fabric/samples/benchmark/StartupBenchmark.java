@@ -0,0 +1,152 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.protos.peer.ProposalResponsePackage.Response;
+
+/**
+ * Startup benchmark for a chaincode run as an external service. Each run
+ * starts a fresh chaincode JVM, waits for its server socket, connects as the
+ * peer with {@link ChaincodeLoadDriver} and sends one transaction, timing from
+ * process start to the first completed transaction. Runs alternate between the
+ * JDK's default class data sharing and the module's own archive, so the
+ * archive's effect on startup can be read off one report.
+ *
+ * Usage: {@code StartupBenchmark launch.properties function [args...]}, where
+ * launch.properties is written by a module's cdsArchive task. System
+ * properties: runs (per mode, 5), port (9999) and jvmArgs, added to both
+ * modes. The chaincode JVM is this JVM's java, which must be the one the
+ * archive was dumped with.
+ */
+public final class StartupBenchmark {
+
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(120);
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: StartupBenchmark launch.properties function [args...]");
+            System.exit(2);
+        }
+        Properties launch = new Properties();
+        try (InputStream in = Files.newInputStream(Paths.get(args[0]))) {
+            launch.load(in);
+        }
+        int runs = Integer.getInteger("runs", 5);
+        int port = Integer.getInteger("port", 9999);
+        String[] transaction = Arrays.copyOfRange(args, 1, args.length);
+
+        List<String> shared = new ArrayList<>();
+        shared.add("-XX:SharedArchiveFile=" + launch.getProperty("archive"));
+        List<String> modes = Arrays.asList("default CDS", "app CDS");
+        long[][] listening = new long[2][runs];
+        long[][] firstTransaction = new long[2][runs];
+
+        for (int run = 0; run < runs; run++) {
+            for (int mode = 0; mode < 2; mode++) {
+                long[] times = startOnce(launch, mode == 0 ? new ArrayList<>() : shared, port, transaction);
+                listening[mode][run] = times[0];
+                firstTransaction[mode][run] = times[1];
+            }
+        }
+
+        for (int mode = 0; mode < 2; mode++) {
+            Arrays.sort(listening[mode]);
+            Arrays.sort(firstTransaction[mode]);
+            System.out.printf("%s: %d runs, listening median %d ms min %d ms, "
+                    + "first transaction median %d ms min %d ms%n", modes.get(mode), runs,
+                    millis(listening[mode][runs / 2]), millis(listening[mode][0]),
+                    millis(firstTransaction[mode][runs / 2]), millis(firstTransaction[mode][0]));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Starts the chaincode and runs one transaction against it.
+     *
+     * @return nanoseconds from process start to the server socket accepting
+     *         connections, and to the transaction completing
+     */
+    private static long[] startOnce(final Properties launch, final List<String> jvmArgs, final int port,
+            final String[] transaction) throws InterruptedException, IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.addAll(Arrays.asList(System.getProperty("jvmArgs", "").trim().split("\\s+")));
+        command.removeIf(String::isEmpty);
+        command.add("-cp");
+        command.add(launch.getProperty("classpath"));
+        command.add(launch.getProperty("main"));
+
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(new File("startup-benchmark.log")));
+        builder.environment().put("CHAINCODE_SERVER_ADDRESS", "127.0.0.1:" + port);
+        builder.environment().put("CORE_CHAINCODE_ID_NAME", "startup:0");
+        builder.environment().remove("CHAINCODE_TRAINING_RUN");
+
+        long start = System.nanoTime();
+        Process chaincode = builder.start();
+        try {
+            awaitListening(chaincode, port, start);
+            long listening = System.nanoTime() - start;
+
+            ChaincodeLoadDriver driver = ChaincodeLoadDriver.connect("127.0.0.1:" + port, 1);
+            Response response = driver.invoke("startup", transaction);
+            long firstTransaction = System.nanoTime() - start;
+            driver.close();
+
+            if (response.getStatus() >= 400) {
+                throw new IllegalStateException("Transaction failed: " + response.getMessage());
+            }
+            return new long[] {listening, firstTransaction};
+        } finally {
+            chaincode.destroy();
+            chaincode.waitFor();
+        }
+    }
+
+    /**
+     * Polls until the chaincode accepts connections on port, failing if it
+     * exits or has not started listening two minutes after start.
+     */
+    static void awaitListening(final Process chaincode, final int port, final long start)
+            throws InterruptedException {
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("127.0.0.1", port), 100);
+                return;
+            } catch (IOException e) {
+                if (!chaincode.isAlive()) {
+                    throw new UncheckedIOException("Chaincode exited with " + chaincode.exitValue(), e);
+                }
+                if (System.nanoTime() - start > TIMEOUT_NANOS) {
+                    throw new UncheckedIOException("Chaincode is not listening on " + port, e);
+                }
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private static long millis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+public final class InMemoryChaincodeStubTest {
+
+    private static List<String> keys(final Iterable<KeyValue> results) {
+        List<String> keys = new ArrayList<>();
+        for (KeyValue result : results) {
+            keys.add(result.getKey());
+        }
+        return keys;
+    }
+
+    private static InMemoryChaincodeStub stubWith(final String... keys) {
+        InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+        for (String key : keys) {
+            stub.putStringState(key, key);
+        }
+        return stub;
+    }
+
+    @Nested
+    class PointReads {
+
+        @Test
+        public void whenKeyExists() {
+            InMemoryChaincodeStub stub = stubWith("CAR0");
+
+            assertThat(stub.getStringState("CAR0")).isEqualTo("CAR0");
+        }
+
+        @Test
+        public void whenKeyDoesNotExist() {
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+
+            assertThat(stub.getState("CAR0")).isEmpty();
+            assertThat(stub.getStringState("CAR0")).isEmpty();
+        }
+    }
+
+    @Nested
+    class RangeScans {
+
+        @Test
+        public void whenRangeIsBounded() {
+            InMemoryChaincodeStub stub = stubWith("CAR0", "CAR1", "CAR10", "CAR2", "CAR99");
+
+            assertThat(keys(stub.getStateByRange("CAR1", "CAR99"))).containsExactly("CAR1", "CAR10", "CAR2");
+        }
+
+        @Test
+        public void whenRangeIsOpenItSkipsCompositeKeys() {
+            InMemoryChaincodeStub stub = stubWith("ARG001", "ARG002");
+            stub.putStringState(stub.createCompositeKey("PaperList", "00001").toString(), "paper");
+
+            assertThat(keys(stub.getStateByRange("", ""))).containsExactly("ARG001", "ARG002");
+        }
+
+        @Test
+        public void whenPaginated() throws Exception {
+            InMemoryChaincodeStub stub = stubWith("a1", "a2", "a3");
+
+            QueryResultsIteratorWithMetadata<KeyValue> first = stub.getStateByRangeWithPagination("", "", 2, "");
+            assertThat(keys(first)).containsExactly("a1", "a2");
+            assertThat(first.getMetadata().getFetchedRecordsCount()).isEqualTo(2);
+            assertThat(first.getMetadata().getBookmark()).isEqualTo("a3");
+
+            QueryResultsIteratorWithMetadata<KeyValue> second = stub.getStateByRangeWithPagination("", "", 2,
+                    first.getMetadata().getBookmark());
+            assertThat(keys(second)).containsExactly("a3");
+            assertThat(second.getMetadata().getBookmark()).isEmpty();
+        }
+    }
+
+    @Nested
+    class CompositeKeys {
+
+        @Test
+        public void whenQueryingByPartialKey() {
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+            CompositeKey alice1 = stub.createCompositeKey("owner~key", "alice", "CAR1");
+            CompositeKey alice2 = stub.createCompositeKey("owner~key", "alice", "CAR2");
+            CompositeKey bob = stub.createCompositeKey("owner~key", "bob", "CAR3");
+            stub.putStringState(bob.toString(), "");
+            stub.putStringState(alice2.toString(), "");
+            stub.putStringState(alice1.toString(), "");
+
+            assertThat(keys(stub.getStateByPartialCompositeKey("owner~key", "alice")))
+                    .containsExactly(alice1.toString(), alice2.toString());
+            assertThat(stub.splitCompositeKey(alice1.toString()).getAttributes()).containsExactly("alice", "CAR1");
+        }
+    }
+
+    @Nested
+    class History {
+
+        @Test
+        public void whenKeptItListsOneModificationPerTransactionNewestFirst() {
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub().keepHistory();
+            stub.setTxId("tx1").putStringState("CAR0", "red");
+            stub.setTxId("tx2").putStringState("CAR0", "blue");
+            stub.putStringState("CAR0", "green");
+            stub.setTxId("tx3").delState("CAR0");
+
+            List<String> modifications = new ArrayList<>();
+            for (KeyModification modification : stub.getHistoryForKey("CAR0")) {
+                modifications.add(modification.getTxId() + "="
+                        + (modification.isDeleted() ? "deleted" : modification.getStringValue()));
+            }
+
+            assertThat(modifications).containsExactly("tx3=deleted", "tx2=green", "tx1=red");
+            assertThat(stub.getHistoryForKey("CAR1")).isEmpty();
+        }
+
+        @Test
+        public void whenNotKept() {
+            InMemoryChaincodeStub stub = stubWith("CAR0");
+
+            assertThatThrownBy(() -> stub.getHistoryForKey("CAR0"))
+                    .isInstanceOf(UnsupportedOperationException.class);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.hyperledger.fabric.samples.benchmark.LedgerSimulator.ReadWriteSet;
+import org.hyperledger.fabric.samples.benchmark.LedgerSimulator.ValidationCode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+public final class LedgerSimulatorTest {
+
+    private static final List<String> ARGS = Collections.singletonList("transfer");
+
+    // transactions submitted back to back share a block of two; one submitted
+    // alone is cut into a block of its own after a few milliseconds
+    private final LedgerSimulator ledger = new LedgerSimulator(2, 20);
+
+    private int transactions;
+
+    @AfterEach
+    public void close() {
+        ledger.close();
+    }
+
+    private ReadWriteSet simulate(final Consumer<ChaincodeStub> transaction) {
+        return ledger.simulate("tx" + transactions++, ARGS, transaction);
+    }
+
+    /**
+     * Commits the writes in a block of their own, padded with an empty
+     * transaction.
+     */
+    private void commit(final String... keyValues) {
+        CompletableFuture<ValidationCode> write = ledger.submit(simulate(stub -> {
+            for (int i = 0; i < keyValues.length; i += 2) {
+                stub.putStringState(keyValues[i], keyValues[i + 1]);
+            }
+        }));
+        ledger.submit(simulate(stub -> { }));
+        assertThat(write.join()).isEqualTo(ValidationCode.VALID);
+    }
+
+    private static void increment(final ChaincodeStub stub) {
+        String value = stub.getStringState("counter");
+        stub.putStringState("counter", Integer.toString(Integer.parseInt(value) + 1));
+    }
+
+    private static int count(final QueryResultsIterator<KeyValue> results) {
+        int count = 0;
+        for (KeyValue result : results) {
+            count++;
+        }
+        return count;
+    }
+
+    @Nested
+    class PointReads {
+
+        @Test
+        public void whenKeyChangedAfterTheReadTheLaterTransactionIsInvalid() {
+            commit("counter", "0");
+            ReadWriteSet first = simulate(LedgerSimulatorTest::increment);
+            ReadWriteSet second = simulate(LedgerSimulatorTest::increment);
+
+            CompletableFuture<ValidationCode> firstCode = ledger.submit(first);
+            CompletableFuture<ValidationCode> secondCode = ledger.submit(second);
+
+            assertThat(firstCode.join()).isEqualTo(ValidationCode.VALID);
+            assertThat(secondCode.join()).isEqualTo(ValidationCode.MVCC_READ_CONFLICT);
+            assertThat(new String(ledger.getCommittedState("counter"), UTF_8)).isEqualTo("1");
+            assertThat(ledger.getBlockHeight()).isEqualTo(2);
+        }
+
+        @Test
+        public void whenKeyChangedInAnEarlierBlockTheTransactionIsInvalid() {
+            commit("counter", "0");
+            ReadWriteSet stale = simulate(LedgerSimulatorTest::increment);
+            commit("counter", "5");
+
+            assertThat(ledger.submit(stale).join()).isEqualTo(ValidationCode.MVCC_READ_CONFLICT);
+        }
+
+        @Test
+        public void whenWritesAreBlindTheyNeverConflict() {
+            CompletableFuture<ValidationCode> first = ledger.submit(simulate(stub -> stub.putStringState("a", "1")));
+            CompletableFuture<ValidationCode> second = ledger.submit(simulate(stub -> stub.putStringState("a", "2")));
+
+            assertThat(Arrays.asList(first.join(), second.join()))
+                    .containsExactly(ValidationCode.VALID, ValidationCode.VALID);
+            assertThat(new String(ledger.getCommittedState("a"), UTF_8)).isEqualTo("2");
+        }
+
+        @Test
+        public void whenTransactionReadsItsOwnWriteItSeesTheCommittedValue() {
+            commit("a", "committed");
+
+            ReadWriteSet readWriteSet = simulate(stub -> {
+                stub.putStringState("a", "written");
+                assertThat(stub.getStringState("a")).isEqualTo("committed");
+            });
+
+            assertThat(readWriteSet.getReadKeys()).containsExactly("a");
+            assertThat(readWriteSet.getWriteKeys()).containsExactly("a");
+        }
+
+        @Test
+        public void whenKeyIsDeletedItsReadersAreInvalid() {
+            commit("a", "1");
+            ReadWriteSet reader = simulate(stub -> stub.putStringState("b", stub.getStringState("a")));
+            CompletableFuture<ValidationCode> delete = ledger.submit(simulate(stub -> stub.delState("a")));
+            CompletableFuture<ValidationCode> read = ledger.submit(reader);
+
+            assertThat(delete.join()).isEqualTo(ValidationCode.VALID);
+            assertThat(read.join()).isEqualTo(ValidationCode.MVCC_READ_CONFLICT);
+            assertThat(ledger.getCommittedState("a")).isNull();
+        }
+    }
+
+    @Nested
+    class RangeScans {
+
+        @Test
+        public void whenKeyIsInsertedIntoTheRangeTheScanIsPhantom() {
+            commit("CAR0", "0", "CAR2", "2");
+            ReadWriteSet scan = simulate(stub -> stub.putStringState("count",
+                    Integer.toString(count(stub.getStateByRange("CAR0", "CAR9")))));
+            CompletableFuture<ValidationCode> insert = ledger.submit(simulate(stub -> stub.putStringState("CAR1", "1")));
+            CompletableFuture<ValidationCode> scanned = ledger.submit(scan);
+
+            assertThat(insert.join()).isEqualTo(ValidationCode.VALID);
+            assertThat(scanned.join()).isEqualTo(ValidationCode.PHANTOM_READ_CONFLICT);
+        }
+
+        @Test
+        public void whenKeyIsInsertedBeyondWhereTheScanStoppedItIsValid() {
+            commit("CAR0", "0", "CAR2", "2");
+            ReadWriteSet scan = simulate(stub -> {
+                KeyValue first = stub.getStateByRange("CAR0", "CAR9").iterator().next();
+                stub.putStringState("first", first.getKey());
+            });
+            CompletableFuture<ValidationCode> insert = ledger.submit(simulate(stub -> stub.putStringState("CAR1", "1")));
+            CompletableFuture<ValidationCode> scanned = ledger.submit(scan);
+
+            assertThat(insert.join()).isEqualTo(ValidationCode.VALID);
+            assertThat(scanned.join()).isEqualTo(ValidationCode.VALID);
+        }
+
+        @Test
+        public void whenKeyIsWrittenOutsideThePrefixTheScanIsValid() {
+            commit("CAR0", "0");
+            ReadWriteSet scan = simulate(stub -> stub.putStringState("count",
+                    Integer.toString(count(stub.getStateByPartialCompositeKey("owner~key", "Tomoko")))));
+            CompletableFuture<ValidationCode> insert = ledger.submit(simulate(stub -> stub.putStringState(
+                    stub.createCompositeKey("owner~key", "Brad", "CAR0").toString(), "0")));
+            CompletableFuture<ValidationCode> scanned = ledger.submit(scan);
+
+            assertThat(insert.join()).isEqualTo(ValidationCode.VALID);
+            assertThat(scanned.join()).isEqualTo(ValidationCode.VALID);
+            assertThat(scan.getRangeCount()).isEqualTo(1);
+        }
+
+        @Test
+        public void whenQueriesCannotBeValidatedTheyAreRefused() {
+            assertThatThrownBy(() -> simulate(stub -> stub.getQueryResult("{\"selector\":{}}")))
+                    .isInstanceOf(UnsupportedOperationException.class);
+            assertThatThrownBy(() -> simulate(stub -> stub.getStateByRangeWithPagination("", "", 10, "")))
+                    .isInstanceOf(UnsupportedOperationException.class);
+        }
+    }
+
+    @Nested
+    class BlockCutting {
+
+        @Test
+        public void whenBlockIsNotFullItIsCutAtTheTimeout() {
+            try (LedgerSimulator timed = new LedgerSimulator(100, 10)) {
+                ValidationCode code = timed.execute("tx0", ARGS, stub -> stub.putStringState("a", "1"));
+
+                assertThat(code).isEqualTo(ValidationCode.VALID);
+                assertThat(timed.getBlockHeight()).isEqualTo(1);
+                assertThat(timed.getValidationCounts()).containsEntry(ValidationCode.VALID, 1L);
+            }
+        }
+
+        @Test
+        public void whenTransactionsFillABlockItIsCutAtOnce() {
+            for (int i = 0; i < 3; i++) {
+                commit("k" + i, "v");
+            }
+
+            assertThat(ledger.getBlockHeight()).isEqualTo(3);
+            assertThat(ledger.getValidationCounts()).containsEntry(ValidationCode.VALID, 6L)
+                    .containsEntry(ValidationCode.MVCC_READ_CONFLICT, 0L);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.protos.peer.ProposalResponsePackage.Response;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Starts a chaincode native image, given by the nativeImage system property,
+ * and runs initLedger and a query against it, the in-memory world state of
+ * {@link ChaincodeLoadDriver} standing in for the peer. The nativeQuery
+ * property names the query, queryAllCars by default.
+ */
+@EnabledIfSystemProperty(named = "nativeImage", matches = ".+")
+public final class NativeImageSmokeTest {
+
+    private static String residentMemory(final Process process) throws IOException {
+        Path status = Paths.get("/proc", Long.toString(process.pid()), "status");
+        if (Files.exists(status)) {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return line.substring("VmRSS:".length()).trim();
+                }
+            }
+        }
+        return "unknown";
+    }
+
+    @Test
+    public void servesTransactions() throws Exception {
+        int port = Integer.getInteger("port", 9999);
+        File log = new File("build", "native-smoke-test.log");
+        log.getParentFile().mkdirs();
+        ProcessBuilder builder = new ProcessBuilder(System.getProperty("nativeImage"))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log));
+        builder.environment().put("CHAINCODE_SERVER_ADDRESS", "127.0.0.1:" + port);
+        builder.environment().put("CORE_CHAINCODE_ID_NAME", "smoke:0");
+
+        long start = System.nanoTime();
+        Process chaincode = builder.start();
+        try {
+            StartupBenchmark.awaitListening(chaincode, port, start);
+            long listening = System.nanoTime() - start;
+
+            ChaincodeLoadDriver driver = ChaincodeLoadDriver.connect("127.0.0.1:" + port, 1);
+            try {
+                Response init = driver.invoke("smoke-init", "initLedger");
+                assertThat(init.getStatus()).as(init.getMessage()).isEqualTo(200);
+
+                Response query = driver.invoke("smoke-query", System.getProperty("nativeQuery", "queryAllCars"));
+                assertThat(query.getStatus()).as(query.getMessage()).isEqualTo(200);
+                assertThat(query.getPayload().toStringUtf8()).startsWith("[").isNotEqualTo("[]");
+            } finally {
+                driver.close();
+            }
+
+            System.out.printf("%s listening after %d ms, resident memory %s%n", System.getProperty("nativeImage"),
+                    TimeUnit.NANOSECONDS.toMillis(listening), residentMemory(chaincode));
+        } finally {
+            chaincode.destroy();
+            chaincode.waitFor();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serializing and deserializing one CommercialPaper as JSON and in the binary
+ * format of CommercialPaper.CODEC. The size of the stored value in each format
+ * is printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StateFormatBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    public String format;
+
+    private CommercialPaper paper;
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        paper = CommercialPaper.createInstance("MagnetoCorp", "00000001", "2020-05-31", "2020-11-30",
+                5000000, "MagnetoCorp", CommercialPaper.ISSUED);
+        data = serialize();
+        System.out.println(format + " CommercialPaper: " + data.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        if (format.equals("JSON")) {
+            return org.example.ledgerapi.State.serialize(paper);
+        }
+        return org.example.ledgerapi.State.serialize(paper, CommercialPaper.CODEC);
+    }
+
+    @Benchmark
+    public org.example.ledgerapi.State deserialize() {
+        return org.example.ledgerapi.State.deserialize(data, CommercialPaper.CODEC, CommercialPaper::deserialize);
+    }
+}
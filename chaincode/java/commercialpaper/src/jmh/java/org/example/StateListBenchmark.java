@@ -0,0 +1,86 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Per-call cost of the PaperList / StateListImpl path. With logLevel=OFF the
+ * ledgerapi loggers are silent, as in production; with logLevel=ALL every
+ * message is formatted and written to stdout, which is what the former
+ * System.out.println calls cost on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StateListBenchmark {
+
+    private static final String PAPER_NUMBER = "00000001";
+
+    @Param({"OFF", "ALL"})
+    public String logLevel;
+
+    private final Logger ledgerLog = Logger.getLogger("org.example.ledgerapi");
+    private Handler handler;
+    private CommercialPaperContext ctx;
+    private CommercialPaper paper;
+
+    @Setup
+    public void setUp() {
+        InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+        ctx = (CommercialPaperContext) new CommercialPaperContract().createContext(stub);
+        paper = CommercialPaper.createInstance("MagnetoCorp", PAPER_NUMBER, "2020-05-31", "2020-11-30",
+                5000000, "MagnetoCorp", CommercialPaper.ISSUED);
+        ctx.paperList.addPaper(paper).flush();
+
+        Level level = Level.parse(logLevel);
+        ledgerLog.setLevel(level);
+        if (level != Level.OFF) {
+            handler = new StreamHandler(System.out, new SimpleFormatter());
+            handler.setLevel(level);
+            ledgerLog.addHandler(handler);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (handler != null) {
+            handler.flush();
+            ledgerLog.removeHandler(handler);
+        }
+        ledgerLog.setLevel(null);
+    }
+
+    @Benchmark
+    public PaperList addPaper() {
+        return ctx.paperList.addPaper(paper).flush();
+    }
+
+    @Benchmark
+    public CommercialPaper getPaper() {
+        return ctx.paperList.getPaper(PAPER_NUMBER);
+    }
+
+    @Benchmark
+    public PaperList updatePaper() {
+        return ctx.paperList.updatePaper(paper).flush();
+    }
+}
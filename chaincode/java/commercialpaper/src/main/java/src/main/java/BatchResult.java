@@ -0,0 +1,71 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.List;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+/**
+ * Outcome of a batch transaction: the keys that were written and, when the
+ * caller asked to continue on error, the items that were rejected.
+ */
+@DataType()
+public class BatchResult {
+
+    @Property()
+    private final List<String> created;
+
+    @Property()
+    private final List<Failure> failed;
+
+    public BatchResult(List<String> created, List<Failure> failed) {
+        this.created = created;
+        this.failed = failed;
+    }
+
+    public List<String> getCreated() {
+        return created;
+    }
+
+    public List<Failure> getFailed() {
+        return failed;
+    }
+
+    /**
+     * A rejected item, by its position in the batch.
+     */
+    @DataType()
+    public static class Failure {
+
+        @Property()
+        private final int index;
+
+        @Property()
+        private final String key;
+
+        @Property()
+        private final String message;
+
+        public Failure(int index, String key, String message) {
+            this.index = index;
+            this.key = key;
+            this.message = message;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -7,6 +7,9 @@ package org.example;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import org.example.ledgerapi.State;
+import org.example.ledgerapi.StateCodec;
+import org.example.ledgerapi.StateInput;
+import org.example.ledgerapi.StateOutput;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 import org.json.JSONObject;
@@ -170,6 +173,31 @@ public class CommercialPaper extends State {
         return State.serialize(paper);
     }
 
+    /**
+     * Binary layout of a commercial paper, in the field order of deserialize()
+     */
+    public final static StateCodec CODEC = new StateCodec() {
+        @Override
+        public void write(State state, StateOutput out) {
+            CommercialPaper paper = (CommercialPaper) state;
+            out.writeString(paper.getIssuer()).writeString(paper.getPaperNumber())
+                    .writeString(paper.getIssueDateTime()).writeString(paper.getMaturityDateTime())
+                    .writeInt(paper.getFaceValue()).writeString(paper.getOwner()).writeString(paper.getState());
+        }
+
+        @Override
+        public State read(StateInput in) {
+            String issuer = in.readString();
+            String paperNumber = in.readString();
+            String issueDateTime = in.readString();
+            String maturityDateTime = in.readString();
+            int faceValue = in.readInt();
+            String owner = in.readString();
+            String state = in.readString();
+            return createInstance(issuer, paperNumber, issueDateTime, maturityDateTime, faceValue, owner, state);
+        }
+    };
+
     /**
      * Factory method to create a commercial paper object
      */
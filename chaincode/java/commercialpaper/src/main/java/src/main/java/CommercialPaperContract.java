@@ -3,6 +3,10 @@ SPDX-License-Identifier: Apache-2.0
 */
 package org.example;
 
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.example.ledgerapi.State;
@@ -14,7 +18,11 @@ import org.hyperledger.fabric.contract.annotation.Default;
 import org.hyperledger.fabric.contract.annotation.Info;
 import org.hyperledger.fabric.contract.annotation.License;
 import org.hyperledger.fabric.contract.annotation.Transaction;
+import org.hyperledger.fabric.samples.metrics.TransactionMetrics;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 /**
  * A custom context provides easy access to list of all commercial papers
@@ -31,15 +39,34 @@ public class CommercialPaperContract implements ContractInterface {
     // use the classname for the logger, this way you can refactor
     private final static Logger LOG = Logger.getLogger(CommercialPaperContract.class.getName());
 
+    // largest page a query transaction returns
+    private final static int MAX_PAGE_SIZE = 1000;
+
+    static final TransactionMetrics METRICS = new TransactionMetrics();
+
     @Override
     public Context createContext(ChaincodeStub stub) {
-        return new CommercialPaperContext(stub);
+        return new CommercialPaperContext(METRICS.meter(stub));
     }
 
     public CommercialPaperContract() {
 
     }
 
+    /**
+     * Write the papers added or updated by the transaction to the ledger
+     */
+    @Override
+    public void afterTransaction(Context ctx, Object result) {
+        ((CommercialPaperContext) ctx).paperList.flush();
+        METRICS.end();
+    }
+
+    @Override
+    public void beforeTransaction(Context ctx) {
+        METRICS.begin();
+    }
+
     /**
      * Define a custom context for commercial paper
      */
@@ -63,15 +90,14 @@ public class CommercialPaperContract implements ContractInterface {
      * @param {String} issuer commercial paper issuer
      * @param {Integer} paperNumber paper number for this issuer
      * @param {String} issueDateTime paper issue date
-     * @param {String} maturityDateTime paper maturity date
+     * @param {String} maturityDateTime paper maturity date, starting with
+     *        yyyy-MM-dd
      * @param {Integer} faceValue face value of paper
      */
     @Transaction
     public CommercialPaper issue(CommercialPaperContext ctx, String issuer, String paperNumber, String issueDateTime,
             String maturityDateTime, int faceValue) {
 
-        System.out.println(ctx);
-
         // create an instance of the paper
         CommercialPaper paper = CommercialPaper.createInstance(issuer, paperNumber, issueDateTime, maturityDateTime,
                 faceValue,issuer,"");
@@ -82,7 +108,7 @@ public class CommercialPaperContract implements ContractInterface {
         // Newly issued paper is owned by the issuer
         paper.setOwner(issuer);
 
-        System.out.println(paper);
+        LOG.fine(() -> "Issuing " + paper);
         // Add the paper to the list of all similar commercial papers in the ledger
         // world state
         ctx.paperList.addPaper(paper);
@@ -91,6 +117,51 @@ public class CommercialPaperContract implements ContractInterface {
         return paper;
     }
 
+    /**
+     * Issue many commercial papers in one transaction
+     *
+     * @param {Context} ctx the transaction context
+     * @param {String} papers JSON array of papers, each with issuer, paperNumber,
+     *        issueDateTime, maturityDateTime and faceValue as taken by issue()
+     * @param {Boolean} continueOnError true to issue the valid papers and report
+     *        the rejected ones, false to fail the whole transaction on the first
+     *        rejected paper
+     */
+    @Transaction
+    public BatchResult issuePapers(CommercialPaperContext ctx, String papers, boolean continueOnError) {
+        JSONArray items = new JSONArray(papers);
+
+        List<String> created = new ArrayList<>(items.length());
+        List<BatchResult.Failure> failed = new ArrayList<>();
+
+        for (int i = 0; i < items.length(); i++) {
+            String paperNumber = null;
+            String errorMessage;
+            try {
+                JSONObject json = items.getJSONObject(i);
+                paperNumber = json.getString("paperNumber");
+
+                // papers issued earlier in the batch are already in the list
+                if (ctx.paperList.getPaper(State.makeKey(new String[] { paperNumber })) == null) {
+                    issue(ctx, json.getString("issuer"), paperNumber, json.getString("issueDateTime"),
+                            json.getString("maturityDateTime"), json.getInt("faceValue"));
+                    created.add(paperNumber);
+                    continue;
+                }
+                errorMessage = "Paper " + paperNumber + " already exists";
+            } catch (JSONException | IllegalArgumentException e) {
+                errorMessage = e.getMessage();
+            }
+
+            if (!continueOnError) {
+                throw new RuntimeException("Item " + i + ": " + errorMessage);
+            }
+            failed.add(new BatchResult.Failure(i, paperNumber, errorMessage));
+        }
+
+        return new BatchResult(created, failed);
+    }
+
     /**
      * Buy commercial paper
      *
@@ -167,4 +238,162 @@ public class CommercialPaperContract implements ContractInterface {
         return paper;
     }
 
+    /**
+     * Redeem the papers that have matured by the day of the transaction
+     * timestamp, in UTC, earliest first. Only the maturity index entries of the
+     * papers due are read, so settlement scales with the papers due rather than
+     * with the papers issued. Call it again with the returned bookmark until it
+     * comes back empty; each call is a transaction of its own.
+     *
+     * @param {Context} ctx the transaction context
+     * @param {Integer} limit most papers to redeem, between 1 and 1000
+     * @param {String} bookmark bookmark of the previous call, empty for the first
+     */
+    @Transaction
+    public PaperPage redeemMatured(CommercialPaperContext ctx, int limit, String bookmark) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new RuntimeException("Limit must be between 1 and " + MAX_PAGE_SIZE + ", got " + limit);
+        }
+        String dueDate = ctx.getStub().getTxTimestamp().atZone(ZoneOffset.UTC).toLocalDate()
+                .format(DateTimeFormatter.BASIC_ISO_DATE);
+
+        PaperPage due = ctx.paperList.getMaturedPapers(dueDate, limit, bookmark);
+        for (CommercialPaper paper : due.getRecords()) {
+            paper.setOwner(paper.getIssuer());
+            paper.setRedeemed();
+            ctx.paperList.updatePaper(paper);
+        }
+        LOG.fine(() -> "Redeemed " + due.getFetchedCount() + " papers due by " + dueDate);
+        return due;
+    }
+
+    /**
+     * Query the papers held by an owner, one page at a time, with the indexOwner
+     * CouchDB index. Must be evaluated, not submitted.
+     *
+     * @param {Context} ctx the transaction context
+     * @param {String} owner owner of the papers
+     * @param {Integer} pageSize most papers to return, between 1 and 1000
+     * @param {String} bookmark bookmark of the previous page, empty for the first
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public PaperPage queryPapersByOwner(CommercialPaperContext ctx, String owner, int pageSize, String bookmark) {
+        JSONObject selector = new JSONObject().put("owner", owner);
+        return queryPapers(ctx, selector, null, "indexOwner", pageSize, bookmark);
+    }
+
+    /**
+     * Query the papers of an issuer in a state, one page at a time, with the
+     * indexIssuerState CouchDB index. Must be evaluated, not submitted.
+     *
+     * @param {Context} ctx the transaction context
+     * @param {String} issuer commercial paper issuer
+     * @param {String} state ISSUED, TRADING or REDEEMED
+     * @param {Integer} pageSize most papers to return, between 1 and 1000
+     * @param {String} bookmark bookmark of the previous page, empty for the first
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public PaperPage queryPapersByIssuerAndState(CommercialPaperContext ctx, String issuer, String state,
+            int pageSize, String bookmark) {
+        if (!CommercialPaper.ISSUED.equals(state) && !CommercialPaper.TRADING.equals(state)
+                && !CommercialPaper.REDEEMED.equals(state)) {
+            throw new RuntimeException("Unknown paper state " + state);
+        }
+        JSONObject selector = new JSONObject().put("issuer", issuer).put("state", state);
+        return queryPapers(ctx, selector, null, "indexIssuerState", pageSize, bookmark);
+    }
+
+    /**
+     * Query the papers maturing before a date, earliest first, one page at a
+     * time, with the indexMaturity CouchDB index. Dates compare as strings, so
+     * the date must be written like the papers' maturity dates, e.g. 2020-11-30.
+     * Must be evaluated, not submitted.
+     *
+     * @param {Context} ctx the transaction context
+     * @param {String} maturityDateTime papers maturing before this date are returned
+     * @param {Integer} pageSize most papers to return, between 1 and 1000
+     * @param {String} bookmark bookmark of the previous page, empty for the first
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public PaperPage queryPapersMaturingBefore(CommercialPaperContext ctx, String maturityDateTime, int pageSize,
+            String bookmark) {
+        JSONObject selector = new JSONObject().put("maturityDateTime",
+                new JSONObject().put("$lt", maturityDateTime));
+        JSONArray sort = new JSONArray().put(new JSONObject().put("maturityDateTime", "asc"));
+        return queryPapers(ctx, selector, sort, "indexMaturity", pageSize, bookmark);
+    }
+
+    /**
+     * Read the history of a paper, newest first, one page at a time: the
+     * transaction id, timestamp, owner and state of each version. Must be
+     * evaluated, not submitted.
+     *
+     * @param {Context} ctx the transaction context
+     * @param {String} issuer commercial paper issuer
+     * @param {Integer} paperNumber paper number for this issuer
+     * @param {Integer} pageSize most versions to return, between 1 and 1000
+     * @param {String} bookmark bookmark of the previous page, empty for the first
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public PaperHistory getPaperHistory(CommercialPaperContext ctx, String issuer, String paperNumber, int pageSize,
+            String bookmark) {
+        checkPageSize(pageSize);
+        String paperKey = State.makeKey(new String[] { paperNumber });
+        LOG.fine(() -> "Reading history of paper " + issuer + paperNumber + " from " + bookmark);
+        return ctx.paperList.getPaperHistory(paperKey, pageSize, bookmark);
+    }
+
+    /**
+     * Summarize the whole history of a paper: the number of times it was
+     * bought and its first and last owner. Must be evaluated, not submitted.
+     *
+     * @param {Context} ctx the transaction context
+     * @param {String} issuer commercial paper issuer
+     * @param {Integer} paperNumber paper number for this issuer
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public PaperHistorySummary getPaperHistorySummary(CommercialPaperContext ctx, String issuer,
+            String paperNumber) {
+        String paperKey = State.makeKey(new String[] { paperNumber });
+        LOG.fine(() -> "Summarizing history of paper " + issuer + paperNumber);
+        return ctx.paperList.summarizePaperHistory(paperKey);
+    }
+
+    /**
+     * Run a Mango query against one of the indexes in
+     * META-INF/statedb/couchdb/indexes, each in the design document
+     * {@code <name>Doc}. The query is built with org.json, so the arguments are
+     * escaped rather than spliced into it.
+     */
+    private PaperPage queryPapers(CommercialPaperContext ctx, JSONObject selector, JSONArray sort, String index,
+            int pageSize, String bookmark) {
+        checkPageSize(pageSize);
+        JSONObject query = new JSONObject().put("selector", selector)
+                .put("use_index", new JSONArray().put("_design/" + index + "Doc").put(index));
+        if (sort != null) {
+            query.put("sort", sort);
+        }
+        LOG.fine(() -> "Querying papers " + query);
+        return ctx.paperList.queryPapers(query.toString(), pageSize, bookmark);
+    }
+
+    private static void checkPageSize(int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new RuntimeException("Page size must be between 1 and " + MAX_PAGE_SIZE + ", got " + pageSize);
+        }
+    }
+
+    /**
+     * Run a sample paper through the binary codec and org.json, so their classes
+     * are loaded before the first transaction rather than during it
+     */
+    static void warmUp() {
+        CommercialPaper paper = CommercialPaper.createInstance("MagnetoCorp", "00000", "2020-05-31", "2020-11-30",
+                5000000, "MagnetoCorp", CommercialPaper.ISSUED);
+        State.deserialize(State.serialize(paper, CommercialPaper.CODEC), CommercialPaper.CODEC,
+                CommercialPaper::deserialize);
+        State.deserialize(CommercialPaper.serialize(paper), CommercialPaper.CODEC, CommercialPaper::deserialize);
+        new JSONArray("[{\"paperNumber\":\"00000\",\"faceValue\":5000000}]").getJSONObject(0).getInt("faceValue");
+    }
+
 }
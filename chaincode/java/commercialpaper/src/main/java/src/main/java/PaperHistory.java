@@ -0,0 +1,88 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.List;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+/**
+ * One page of the history of a paper, newest first, together with the bookmark
+ * to fetch the next page. An empty bookmark means there are no more pages.
+ */
+@DataType()
+public class PaperHistory {
+
+    @Property()
+    private final List<Entry> records;
+
+    @Property()
+    private final String bookmark;
+
+    @Property()
+    private final int fetchedCount;
+
+    public PaperHistory(List<Entry> records, String bookmark) {
+        this.records = records;
+        this.bookmark = bookmark;
+        this.fetchedCount = records.size();
+    }
+
+    public List<Entry> getRecords() {
+        return records;
+    }
+
+    public String getBookmark() {
+        return bookmark;
+    }
+
+    public int getFetchedCount() {
+        return fetchedCount;
+    }
+
+    /**
+     * A transaction that changed the paper, with the owner and state it left
+     * the paper in; both are empty when the transaction deleted it.
+     */
+    @DataType()
+    public static class Entry {
+
+        @Property()
+        private final String txId;
+
+        @Property()
+        private final String timestamp;
+
+        @Property()
+        private final String owner;
+
+        @Property()
+        private final String state;
+
+        public Entry(String txId, String timestamp, String owner, String state) {
+            this.txId = txId;
+            this.timestamp = timestamp;
+            this.owner = owner;
+            this.state = state;
+        }
+
+        public String getTxId() {
+            return txId;
+        }
+
+        public String getTimestamp() {
+            return timestamp;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public String getState() {
+            return state;
+        }
+    }
+}
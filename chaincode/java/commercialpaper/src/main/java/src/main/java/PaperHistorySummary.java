@@ -0,0 +1,44 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+/**
+ * Totals over the whole history of a paper: the number of times it was
+ * bought, and its owner after the oldest and after the newest transaction.
+ * The owners are empty when the paper has no history.
+ */
+@DataType()
+public class PaperHistorySummary {
+
+    @Property()
+    private final int trades;
+
+    @Property()
+    private final String firstOwner;
+
+    @Property()
+    private final String lastOwner;
+
+    public PaperHistorySummary(int trades, String firstOwner, String lastOwner) {
+        this.trades = trades;
+        this.firstOwner = firstOwner;
+        this.lastOwner = lastOwner;
+    }
+
+    public int getTrades() {
+        return trades;
+    }
+
+    public String getFirstOwner() {
+        return firstOwner;
+    }
+
+    public String getLastOwner() {
+        return lastOwner;
+    }
+}
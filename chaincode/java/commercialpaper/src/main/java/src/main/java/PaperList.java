@@ -4,21 +4,66 @@ SPDX-License-Identifier: Apache-2.0
 
 package org.example;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.example.ledgerapi.State;
+import org.example.ledgerapi.StateHistory;
+import org.example.ledgerapi.StateIterator;
 import org.example.ledgerapi.StateList;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.annotation.Transaction;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
 
 public class PaperList {
 
+    /**
+     * Index entries maturity~yyyyMMdd~paperNumber, one empty value per paper
+     * not yet redeemed, keyed by its maturity day, so the papers due by a day
+     * are found in maturity order without reading the others. They are simple
+     * keys rather than composite ones, as the shim only runs ranges, which
+     * resume from a bookmark, over simple keys.
+     */
+    private final static String MATURITY_INDEX = "maturity~";
+
+    /** Sorts after every entry of a day, '~' being the separator. */
+    private final static String END_OF_DAY = "\u007f";
+
+    private final static int DAY_LENGTH = 8;
+
+    private final static byte[] INDEX_VALUE = { 0 };
+
+    private Context ctx;
+
     private StateList stateList;
 
     public PaperList(Context ctx) {
-        this.stateList = StateList.getStateList(ctx, PaperList.class.getSimpleName(), CommercialPaper::deserialize);
+        this.ctx = ctx;
+        // written as JSON so the CouchDB indexes in META-INF cover the papers;
+        // papers stored in the binary format are still read
+        this.stateList = StateList.getQueryableStateList(ctx, PaperList.class.getSimpleName(),
+                CommercialPaper::deserialize, CommercialPaper.CODEC);
     }
 
+    /**
+     * Add a new paper, and its entry in the maturity index
+     *
+     * @throws IllegalArgumentException if its maturity date does not start
+     *                                  with yyyy-MM-dd
+     */
     public PaperList addPaper(CommercialPaper paper) {
+        String maturityKey = maturityKey(paper);
+        if (maturityKey == null) {
+            throw new IllegalArgumentException(
+                    "Maturity date " + paper.getMaturityDateTime() + " does not start with yyyy-MM-dd");
+        }
         stateList.addState(paper);
+        this.ctx.getStub().putState(maturityKey, INDEX_VALUE);
         return this;
     }
 
@@ -26,8 +71,148 @@ public class PaperList {
         return (CommercialPaper) this.stateList.getState(paperKey);
     }
 
+    /**
+     * Update a paper; a redeemed paper leaves the maturity index
+     */
     public PaperList updatePaper(CommercialPaper paper) {
         this.stateList.updateState(paper);
+        // papers issued before the index, or with another date format, have no entry
+        String maturityKey = paper.isRedeemed() ? maturityKey(paper) : null;
+        if (maturityKey != null) {
+            this.ctx.getStub().delState(maturityKey);
+        }
+        return this;
+    }
+
+    /**
+     * Find up to limit papers maturing on or before dueDate, earliest first, by
+     * scanning the maturity index from bookmark. Redeemed papers have left the
+     * index, so the scan reads only the papers due, and the first entry past
+     * them. The scan stops there rather than being paginated, so it can run in
+     * a submitted transaction. Entries left behind by a paper that is missing
+     * or already redeemed are deleted rather than read again by every scan.
+     *
+     * @param dueDate  last maturity day to return, as yyyyMMdd
+     * @param limit    most papers to return
+     * @param bookmark bookmark of the previous page, empty for the first
+     * @return the papers, and the index key of the next paper due as the
+     *         bookmark, empty when no other paper is due
+     * @throws IllegalArgumentException if bookmark is not a maturity index key
+     */
+    public PaperPage getMaturedPapers(String dueDate, int limit, String bookmark) {
+        if (!bookmark.isEmpty() && !bookmark.startsWith(MATURITY_INDEX)) {
+            throw new IllegalArgumentException("Bookmark " + bookmark + " is not a maturity index key");
+        }
+        ChaincodeStub stub = this.ctx.getStub();
+        List<CommercialPaper> papers = new ArrayList<>(limit);
+        String next = "";
+        String start = bookmark.isEmpty() ? MATURITY_INDEX : bookmark;
+        QueryResultsIterator<KeyValue> results = stub.getStateByRange(start, MATURITY_INDEX + dueDate + END_OF_DAY);
+        try {
+            for (KeyValue result : results) {
+                if (papers.size() == limit) {
+                    next = result.getKey();
+                    break;
+                }
+                String paperNumber = result.getKey().substring(MATURITY_INDEX.length() + DAY_LENGTH + 1);
+                CommercialPaper paper = getPaper(State.makeKey(new String[] { paperNumber }));
+                if (paper != null && !paper.isRedeemed()) {
+                    papers.add(paper);
+                } else {
+                    stub.delState(result.getKey());
+                }
+            }
+        } finally {
+            try {
+                results.close();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to close the maturity index scan", e);
+            }
+        }
+        return new PaperPage(papers, next);
+    }
+
+    /**
+     * Run a Mango query over the papers, one page at a time. The transaction
+     * must be evaluated, not submitted.
+     */
+    public PaperPage queryPapers(String query, int pageSize, String bookmark) {
+        List<CommercialPaper> papers = new ArrayList<>();
+        try (StateIterator<CommercialPaper> results = this.stateList.queryStates(CommercialPaper.class, query,
+                pageSize, bookmark)) {
+            for (CommercialPaper paper : results) {
+                papers.add(paper);
+            }
+            return new PaperPage(papers, results.getBookmark());
+        }
+    }
+
+    /**
+     * Read one page of the history of a paper, newest first, keeping only the
+     * owner and state of each version. The transaction must be evaluated, not
+     * submitted.
+     */
+    public PaperHistory getPaperHistory(String paperKey, int pageSize, String bookmark) {
+        List<PaperHistory.Entry> entries = new ArrayList<>(pageSize);
+        try (StateHistory<CommercialPaper> history = this.stateList.getHistory(CommercialPaper.class, paperKey,
+                bookmark, pageSize)) {
+            for (StateHistory.Modification<CommercialPaper> modification : history) {
+                CommercialPaper paper = modification.getState();
+                entries.add(new PaperHistory.Entry(modification.getTxId(), modification.getTimestamp().toString(),
+                        paper == null ? "" : paper.getOwner(), paper == null ? "" : paper.getState()));
+            }
+            return new PaperHistory(entries, history.getBookmark());
+        }
+    }
+
+    /**
+     * Count the trades of a paper and find its first and last owner in one
+     * pass over its whole history, holding a single version at a time. Every
+     * buy leaves the paper TRADING, so each TRADING version is one trade. The
+     * transaction must be evaluated, not submitted.
+     */
+    public PaperHistorySummary summarizePaperHistory(String paperKey) {
+        int trades = 0;
+        String firstOwner = "";
+        String lastOwner = null;
+        try (StateHistory<CommercialPaper> history = this.stateList.getHistory(CommercialPaper.class, paperKey, "",
+                0)) {
+            // newest first, so the last version read is the oldest
+            for (StateHistory.Modification<CommercialPaper> modification : history) {
+                CommercialPaper paper = modification.getState();
+                if (paper == null) {
+                    continue;
+                }
+                if (lastOwner == null) {
+                    lastOwner = paper.getOwner();
+                }
+                firstOwner = paper.getOwner();
+                if (paper.isTrading()) {
+                    trades++;
+                }
+            }
+        }
+        return new PaperHistorySummary(trades, firstOwner, lastOwner == null ? "" : lastOwner);
+    }
+
+    /**
+     * Key of a paper in the maturity index, its maturity day taken from the
+     * leading yyyy-MM-dd of its maturity date, or null when it has none
+     */
+    private String maturityKey(CommercialPaper paper) {
+        String maturityDateTime = paper.getMaturityDateTime();
+        String maturityDay;
+        try {
+            maturityDay = LocalDate.parse(maturityDateTime.substring(0, Math.min(maturityDateTime.length(), 10)))
+                    .format(DateTimeFormatter.BASIC_ISO_DATE);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+        return MATURITY_INDEX + maturityDay + "~" + paper.getPaperNumber();
+    }
+
+    public PaperList flush() {
+        this.stateList.flush();
         return this;
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.List;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+/**
+ * One page of papers found by a query, together with the bookmark to fetch the
+ * next page. An empty bookmark means there are no more pages.
+ */
+@DataType()
+public class PaperPage {
+
+    @Property()
+    private final List<CommercialPaper> records;
+
+    @Property()
+    private final String bookmark;
+
+    @Property()
+    private final int fetchedCount;
+
+    public PaperPage(List<CommercialPaper> records, String bookmark) {
+        this.records = records;
+        this.bookmark = bookmark;
+        this.fetchedCount = records.size();
+    }
+
+    public List<CommercialPaper> getRecords() {
+        return records;
+    }
+
+    public String getBookmark() {
+        return bookmark;
+    }
+
+    public int getFetchedCount() {
+        return fetchedCount;
+    }
+}
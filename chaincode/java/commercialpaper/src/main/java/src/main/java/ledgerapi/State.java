@@ -5,6 +5,9 @@ package org.example.ledgerapi;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.samples.metrics.TransactionMetrics;
 import org.json.JSONObject;
 
 /**
@@ -13,6 +16,14 @@ import org.json.JSONObject;
  */
 public class State {
 
+    private final static Logger LOG = Logger.getLogger(State.class.getName());
+
+    /**
+     * Leading byte of a state written by a StateCodec. A JSON state starts with
+     * '{' or whitespace, so it can never be mistaken for a tagged one.
+     */
+    public final static byte BINARY_V1 = 0x01;
+
     protected String key;
 
     /**
@@ -39,8 +50,47 @@ public class State {
      * @return {buffer} buffer with the data to store
      */
     public static byte[] serialize(Object object) {
-        String jsonStr = new JSONObject(object).toString();
-        return jsonStr.getBytes(UTF_8);
+        long start = TransactionMetrics.serializationStart();
+        try {
+            String jsonStr = new JSONObject(object).toString();
+            return jsonStr.getBytes(UTF_8);
+        } finally {
+            TransactionMetrics.serialized(start);
+        }
+    }
+
+    /**
+     * Convert a state to a buffer in the binary format of codec, prefixed with
+     * its format tag
+     */
+    public static byte[] serialize(State state, StateCodec codec) {
+        long start = TransactionMetrics.serializationStart();
+        try {
+            StateOutput out = new StateOutput(BINARY_V1);
+            codec.write(state, out);
+            return out.toByteArray();
+        } finally {
+            TransactionMetrics.serialized(start);
+        }
+    }
+
+    /**
+     * Convert a buffer read from the ledger back to a state, with codec when it
+     * carries the binary format tag and with deserializer when it holds JSON
+     */
+    public static State deserialize(byte[] data, StateCodec codec, StateDeserializer deserializer) {
+        long start = TransactionMetrics.serializationStart();
+        try {
+            if (data[0] != BINARY_V1) {
+                return deserializer.deserialize(data);
+            }
+            if (codec == null) {
+                throw new IllegalArgumentException("State is in binary format but no codec was given");
+            }
+            return codec.read(new StateInput(data, 1));
+        } finally {
+            TransactionMetrics.serialized(start);
+        }
     }
 
     /**
@@ -53,7 +103,7 @@ public class State {
     }
 
     public static String[] splitKey(String key) {
-        System.out.println("splitting key " + key + "   " + java.util.Arrays.asList(key.split(":")));
+        LOG.finest(() -> "Splitting key " + key);
         return key.split(":");
     }
 
@@ -0,0 +1,20 @@
+/*
+SPDX-License-Identifier: Apache-2.0
+*/
+package org.example.ledgerapi;
+
+/**
+ * Binary layout of one kind of state. A StateList created with a codec writes
+ * its states as the State.BINARY_V1 tag followed by the fields the codec
+ * writes, in the order it writes them, and still reads values stored as JSON.
+ *
+ * The layout is positional, so a codec must read exactly the fields it wrote,
+ * in the same order. Changing a layout requires a new format tag.
+ */
+public interface StateCodec {
+
+    void write(State state, StateOutput out);
+
+    State read(StateInput in);
+
+}
@@ -0,0 +1,62 @@
+package org.example.ledgerapi;
+
+import java.time.Instant;
+
+/*
+SPDX-License-Identifier: Apache-2.0
+*/
+
+/**
+ * Streaming view over the history of one state, newest first as the peer
+ * returns it. Each version is deserialized only as iteration reaches it, so a
+ * long history can be walked in constant memory. Close it, typically with
+ * try-with-resources, to release the underlying history query.
+ */
+public interface StateHistory<T extends State> extends Iterable<StateHistory.Modification<T>>, AutoCloseable {
+
+    /**
+     * Bookmark to pass to StateList.getHistory() to resume after the last
+     * modification returned, or "" when the history has been read to its end.
+     */
+    public String getBookmark();
+
+    /**
+     * Close the underlying history query.
+     */
+    @Override
+    public void close();
+
+    /**
+     * One committed change of a state: the transaction that made it, its
+     * timestamp and the state it wrote, null when it deleted the state.
+     */
+    public final static class Modification<T extends State> {
+
+        private final String txId;
+        private final Instant timestamp;
+        private final T state;
+
+        public Modification(String txId, Instant timestamp, T state) {
+            this.txId = txId;
+            this.timestamp = timestamp;
+            this.state = state;
+        }
+
+        public String getTxId() {
+            return this.txId;
+        }
+
+        public Instant getTimestamp() {
+            return this.timestamp;
+        }
+
+        public T getState() {
+            return this.state;
+        }
+
+        public boolean isDeleted() {
+            return this.state == null;
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+SPDX-License-Identifier: Apache-2.0
+*/
+package org.example.ledgerapi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads back the fields of a binary state, in the order and encoding
+ * StateOutput wrote them.
+ */
+public final class StateInput {
+
+    private final byte[] data;
+    private int pos;
+
+    StateInput(byte[] data, int offset) {
+        this.data = data;
+        this.pos = offset;
+    }
+
+    public int readInt() {
+        int value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public String readString() {
+        int length = readVarint() - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > this.data.length - this.pos) {
+            throw new IllegalArgumentException("Truncated state at offset " + this.pos);
+        }
+        String value = new String(this.data, this.pos, length, UTF_8);
+        this.pos += length;
+        return value;
+    }
+
+    public List<String> readStringList() {
+        int size = readVarint() - 1;
+        if (size < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(Math.min(size, this.data.length - this.pos));
+        for (int i = 0; i < size; i++) {
+            values.add(readString());
+        }
+        return values;
+    }
+
+    private int readVarint() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (this.pos >= this.data.length) {
+                throw new IllegalArgumentException("Truncated state at offset " + this.pos);
+            }
+            byte b = this.data[this.pos++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint at offset " + this.pos);
+    }
+
+}
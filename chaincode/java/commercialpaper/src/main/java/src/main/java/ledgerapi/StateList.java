@@ -20,13 +20,32 @@ public interface StateList {
      * Store Fabric context for subsequent API access, and name of list
      */
     static StateList getStateList(Context ctx, String listName, StateDeserializer deserializer) {
-        return new StateListImpl(ctx, listName, deserializer);
+        return new StateListImpl(ctx, listName, deserializer, null);
+    }
+
+    /**
+     * Store Fabric context for subsequent API access, and name of list. States
+     * are written in the binary format of codec; states stored as JSON are still
+     * read with deserializer.
+     */
+    static StateList getStateList(Context ctx, String listName, StateDeserializer deserializer, StateCodec codec) {
+        return new StateListImpl(ctx, listName, deserializer, codec);
+    }
+
+    /**
+     * Store Fabric context for subsequent API access, and name of list. States
+     * are written as JSON, so CouchDB can index and query them; states stored in
+     * the binary format of codec are still read.
+     */
+    static StateList getQueryableStateList(Context ctx, String listName, StateDeserializer deserializer,
+            StateCodec codec) {
+        return new StateListImpl(ctx, listName, deserializer, codec, false);
     }
 
     /**
      * Add a state to the list. Creates a new state in worldstate with appropriate
      * composite key. Note that state defines its own key. State object is
-     * serialized before writing.
+     * serialized when the list is flushed.
      */
     public StateList addState(State state);
 
@@ -40,9 +59,74 @@ public interface StateList {
     /**
      * Update a state in the list. Puts the new state in world state with
      * appropriate composite key. Note that state defines its own key. A state is
-     * serialized before writing. Logic is very similar to addState() but kept
-     * separate becuase it is semantically distinct.
+     * serialized when the list is flushed. Logic is very similar to addState() but
+     * kept separate becuase it is semantically distinct.
      */
     public StateList updateState(State state);
 
+    /**
+     * Scan the states of the list whose keys start with keyParts, in key order,
+     * deserializing each one only when the iteration reaches it. States added or
+     * updated in this transaction are returned as getState() would return them.
+     *
+     * Resuming from a bookmark restarts the ledger scan at the beginning of
+     * keyParts and skips the keys up to the bookmark without deserializing them.
+     *
+     * @param type     class of the states, which the deserializer must return
+     * @param bookmark getBookmark() of an earlier scan to resume after its last
+     *                 state, or "" to start at the beginning
+     * @param limit    most states to return, or 0 for no limit
+     * @param keyParts leading parts of the state keys, none for the whole list
+     */
+    public <T extends State> StateIterator<T> getStates(Class<T> type, String bookmark, int limit,
+            String... keyParts);
+
+    /**
+     * Scan every state of the list, in key order.
+     */
+    default <T extends State> StateIterator<T> getStates(Class<T> type) {
+        return getStates(type, "", 0);
+    }
+
+    /**
+     * Run a CouchDB rich query, one page at a time, deserializing the matching
+     * states of the list as iteration reaches them. Unlike getStates(), only the
+     * ledger is queried, not the states added or updated in this transaction,
+     * and the transaction must be evaluated rather than submitted, as the peer
+     * cannot re-check a paginated query when it validates the transaction.
+     *
+     * Matches stored in the binary format are not JSON, so CouchDB cannot see
+     * them; lists meant to be queried are written as JSON.
+     *
+     * @param type     class of the states, which the deserializer must return
+     * @param query    Mango query, {"selector": {...}, ...}
+     * @param pageSize most states to return, at least 1
+     * @param bookmark getBookmark() of the previous page, or "" for the first
+     */
+    public <T extends State> StateIterator<T> queryStates(Class<T> type, String query, int pageSize,
+            String bookmark);
+
+    /**
+     * Walk the modifications the ledger has committed to a state, newest first,
+     * deserializing each version as iteration reaches it. States added or
+     * updated in this transaction are not included. The peer does not re-check
+     * a history query when it validates the transaction, so a transaction
+     * reading history should be evaluated rather than submitted.
+     *
+     * @param type     class of the states, which the deserializer must return
+     * @param key      key of the state, as passed to getState()
+     * @param bookmark getBookmark() of an earlier walk to resume after its last
+     *                 modification, or "" to start at the newest
+     * @param limit    most modifications to return, or 0 for no limit
+     * @throws IllegalArgumentException if the bookmark is not a transaction in
+     *                                  the history of the state
+     */
+    public <T extends State> StateHistory<T> getHistory(Class<T> type, String key, String bookmark, int limit);
+
+    /**
+     * Write the states added or updated since the last flush to world state. Must
+     * be called before the transaction returns, typically from afterTransaction().
+     */
+    public StateList flush();
+
 }
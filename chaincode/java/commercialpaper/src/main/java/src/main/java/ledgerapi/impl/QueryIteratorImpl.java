@@ -0,0 +1,102 @@
+package org.example.ledgerapi.impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.example.ledgerapi.State;
+import org.example.ledgerapi.StateCodec;
+import org.example.ledgerapi.StateDeserializer;
+import org.example.ledgerapi.StateIterator;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/*
+SPDX-License-Identifier: Apache-2.0
+*/
+
+/**
+ * One page of a rich query, in the order the query returned it. Results under
+ * another list's key prefix are skipped, and values are only deserialized when
+ * next() returns them.
+ *
+ * A CouchDB bookmark is never empty, so the query's bookmark is passed on only
+ * when the page came back full; a shorter page is the last one.
+ */
+class QueryIteratorImpl<T extends State> implements StateIterator<T>, Iterator<T> {
+
+    private final Class<T> type;
+    private final StateCodec codec;
+    private final StateDeserializer deserializer;
+    private final QueryResultsIteratorWithMetadata<KeyValue> results;
+    private final Iterator<KeyValue> ledger;
+    private final String prefix;
+    private final int pageSize;
+
+    private KeyValue next;
+
+    /**
+     * @param results  one page of a paginated rich query
+     * @param prefix   composite key prefix of the list's states
+     * @param pageSize page size the query was run with
+     */
+    QueryIteratorImpl(Class<T> type, StateCodec codec, StateDeserializer deserializer,
+            QueryResultsIteratorWithMetadata<KeyValue> results, String prefix, int pageSize) {
+        this.type = type;
+        this.codec = codec;
+        this.deserializer = deserializer;
+        this.results = results;
+        this.ledger = results.iterator();
+        this.prefix = prefix;
+        this.pageSize = pageSize;
+        advance();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.next != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        State state = State.deserialize(this.next.getValue(), this.codec, this.deserializer);
+        advance();
+        return this.type.cast(state);
+    }
+
+    @Override
+    public String getBookmark() {
+        if (this.results.getMetadata().getFetchedRecordsCount() < this.pageSize) {
+            return "";
+        }
+        return this.results.getMetadata().getBookmark();
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.results.close();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to close query of " + this.prefix, e);
+        }
+    }
+
+    private void advance() {
+        this.next = null;
+        while (this.ledger.hasNext()) {
+            KeyValue result = this.ledger.next();
+            if (result.getKey().startsWith(this.prefix)) {
+                this.next = result;
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package org.example.ledgerapi.impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.example.ledgerapi.State;
+import org.example.ledgerapi.StateCodec;
+import org.example.ledgerapi.StateDeserializer;
+import org.example.ledgerapi.StateHistory;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+/*
+SPDX-License-Identifier: Apache-2.0
+*/
+
+/**
+ * Walks a getHistoryForKey() query. Values are only deserialized when next()
+ * returns them, and the walk reads at most one modification ahead.
+ *
+ * The history cannot be paginated by the peer, so a bookmark is the id of the
+ * last transaction returned, and resuming skips the modifications up to it
+ * without deserializing them. A history only grows at its newest end, so the
+ * modifications after a bookmark never change.
+ */
+class StateHistoryImpl<T extends State> implements StateHistory<T>, Iterator<StateHistory.Modification<T>> {
+
+    private final Class<T> type;
+    private final StateCodec codec;
+    private final StateDeserializer deserializer;
+    private final QueryResultsIterator<KeyModification> results;
+    private final Iterator<KeyModification> ledger;
+    private final String key;
+    private final int limit;
+
+    private KeyModification next;
+    private String lastTxId;
+    private int returned;
+
+    /**
+     * @param results  history of the ledger key, newest first
+     * @param key      ledger key of the state
+     * @param bookmark transaction id to resume after, or "" to start at the
+     *                 newest modification
+     * @param limit    most modifications to return, or 0 for no limit
+     */
+    StateHistoryImpl(Class<T> type, StateCodec codec, StateDeserializer deserializer,
+            QueryResultsIterator<KeyModification> results, String key, String bookmark, int limit) {
+        this.type = type;
+        this.codec = codec;
+        this.deserializer = deserializer;
+        this.results = results;
+        this.ledger = results.iterator();
+        this.key = key;
+        this.limit = limit;
+        this.lastTxId = bookmark;
+        if (!bookmark.isEmpty()) {
+            skipPast(bookmark);
+        }
+        advance();
+    }
+
+    @Override
+    public Iterator<StateHistory.Modification<T>> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.limit > 0 && this.returned >= this.limit) {
+            return false;
+        }
+        return this.next != null;
+    }
+
+    @Override
+    public StateHistory.Modification<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        KeyModification modification = this.next;
+        T state = null;
+        if (!modification.isDeleted()) {
+            state = this.type.cast(State.deserialize(modification.getValue(), this.codec, this.deserializer));
+        }
+        this.lastTxId = modification.getTxId();
+        this.returned++;
+        advance();
+        return new StateHistory.Modification<>(modification.getTxId(), modification.getTimestamp(), state);
+    }
+
+    @Override
+    public String getBookmark() {
+        if (this.next == null) {
+            return "";
+        }
+        return this.lastTxId;
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.results.close();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to close history of " + this.key, e);
+        }
+    }
+
+    /**
+     * Skip the modifications up to and including txId's. A bookmark that is not
+     * in the history was not returned by a walk of this key, and rather than
+     * answering it with an empty page the query is closed and rejected.
+     */
+    private void skipPast(String txId) {
+        while (this.ledger.hasNext()) {
+            if (this.ledger.next().getTxId().equals(txId)) {
+                return;
+            }
+        }
+        close();
+        throw new IllegalArgumentException("Bookmark " + txId + " is not in the history of " + this.key);
+    }
+
+    private void advance() {
+        this.next = this.ledger.hasNext() ? this.ledger.next() : null;
+    }
+
+}
@@ -0,0 +1,154 @@
+package org.example.ledgerapi.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+
+import org.example.ledgerapi.State;
+import org.example.ledgerapi.StateCodec;
+import org.example.ledgerapi.StateDeserializer;
+import org.example.ledgerapi.StateIterator;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+/*
+SPDX-License-Identifier: Apache-2.0
+*/
+
+/**
+ * Merges a partial composite key scan of the ledger with the states added or
+ * updated in this transaction, both in ledger key order, so a scan sees the
+ * same states getState() would. Ledger values are only deserialized when
+ * next() returns them; the scan reads at most one record ahead.
+ *
+ * The unflushed states under the prefix are copied when the scan starts, so
+ * states may be added or updated while iterating; the scan does not see them.
+ */
+class StateIteratorImpl<T extends State> implements StateIterator<T>, Iterator<T> {
+
+    private final Class<T> type;
+    private final StateCodec codec;
+    private final StateDeserializer deserializer;
+    private final QueryResultsIterator<KeyValue> results;
+    private final Iterator<KeyValue> ledger;
+    private final Iterator<Map.Entry<String, State>> dirty;
+    private final String bookmark;
+    private final int limit;
+
+    private KeyValue nextLedger;
+    private Map.Entry<String, State> nextDirty;
+    private String lastKey;
+    private int returned;
+
+    /**
+     * @param results     ledger scan of the keys starting with prefix
+     * @param dirtyStates states not yet flushed, by ledger key
+     * @param prefix      composite key prefix of the scanned states
+     * @param bookmark    ledger key to resume after, or "" to start at prefix
+     * @param limit       most states to return, or 0 for no limit
+     */
+    StateIteratorImpl(Class<T> type, StateCodec codec, StateDeserializer deserializer,
+            QueryResultsIterator<KeyValue> results, SortedMap<String, State> dirtyStates, String prefix,
+            String bookmark, int limit) {
+        this.type = type;
+        this.codec = codec;
+        this.deserializer = deserializer;
+        this.results = results;
+        this.ledger = results.iterator();
+        this.dirty = new ArrayList<>(dirtyStates.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()).iterator();
+        this.bookmark = bookmark;
+        this.limit = limit;
+        this.lastKey = bookmark;
+        advanceLedger();
+        advanceDirty();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.limit > 0 && this.returned >= this.limit) {
+            return false;
+        }
+        return this.nextLedger != null || this.nextDirty != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        int order;
+        if (this.nextLedger == null) {
+            order = 1;
+        } else if (this.nextDirty == null) {
+            order = -1;
+        } else {
+            order = this.nextLedger.getKey().compareTo(this.nextDirty.getKey());
+        }
+
+        State state;
+        if (order < 0) {
+            this.lastKey = this.nextLedger.getKey();
+            state = State.deserialize(this.nextLedger.getValue(), this.codec, this.deserializer);
+            advanceLedger();
+        } else {
+            // an unflushed state replaces the ledger's copy
+            this.lastKey = this.nextDirty.getKey();
+            state = this.nextDirty.getValue();
+            advanceDirty();
+            if (order == 0) {
+                advanceLedger();
+            }
+        }
+
+        this.returned++;
+        return this.type.cast(state);
+    }
+
+    @Override
+    public String getBookmark() {
+        if (this.nextLedger == null && this.nextDirty == null) {
+            return "";
+        }
+        return this.lastKey;
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.results.close();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to close state scan at " + this.lastKey, e);
+        }
+    }
+
+    private void advanceLedger() {
+        this.nextLedger = null;
+        while (this.ledger.hasNext()) {
+            KeyValue result = this.ledger.next();
+            if (result.getKey().compareTo(this.bookmark) > 0) {
+                this.nextLedger = result;
+                return;
+            }
+        }
+    }
+
+    private void advanceDirty() {
+        this.nextDirty = null;
+        while (this.dirty.hasNext()) {
+            Map.Entry<String, State> entry = this.dirty.next();
+            if (entry.getKey().compareTo(this.bookmark) > 0) {
+                this.nextDirty = entry;
+                return;
+            }
+        }
+    }
+
+}
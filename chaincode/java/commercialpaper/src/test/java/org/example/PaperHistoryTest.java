@@ -0,0 +1,127 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the history transactions against an in-memory ledger that keeps the
+ * history of every key, each transaction with its own id and timestamp.
+ */
+public final class PaperHistoryTest {
+
+    private final InMemoryChaincodeStub stub = new InMemoryChaincodeStub().keepHistory();
+    private final CommercialPaperContract contract = new CommercialPaperContract();
+
+    private int transactions;
+
+    private CommercialPaperContext ctx() {
+        transactions++;
+        stub.setTxId("tx" + transactions).setTxTimestamp(Instant.ofEpochSecond(transactions));
+        return new CommercialPaperContext(stub);
+    }
+
+    private void buy(final String currentOwner, final String newOwner) {
+        CommercialPaperContext ctx = ctx();
+        contract.buy(ctx, "MagnetoCorp", "00001", currentOwner, newOwner, 4900000, "2020-05-31");
+        contract.afterTransaction(ctx, null);
+    }
+
+    private static List<String> entries(final PaperHistory history) {
+        List<String> entries = new ArrayList<>();
+        for (PaperHistory.Entry entry : history.getRecords()) {
+            entries.add(entry.getTxId() + " " + entry.getTimestamp() + " " + entry.getOwner() + " " + entry.getState());
+        }
+        return entries;
+    }
+
+    @BeforeEach
+    public void tradePaper() {
+        CommercialPaperContext ctx = ctx();
+        contract.issue(ctx, "MagnetoCorp", "00001", "2020-05-31", "2020-11-30", 5000000);
+        contract.afterTransaction(ctx, null);
+
+        buy("MagnetoCorp", "DigiBank");
+        buy("DigiBank", "BigFund");
+
+        ctx = ctx();
+        contract.redeem(ctx, "MagnetoCorp", "00001", "BigFund", "2020-11-30");
+        contract.afterTransaction(ctx, null);
+    }
+
+    @Test
+    public void returnsCompactEntriesNewestFirst() {
+        PaperHistory history = contract.getPaperHistory(ctx(), "MagnetoCorp", "00001", 10, "");
+
+        assertThat(entries(history)).containsExactly(
+                "tx4 1970-01-01T00:00:04Z MagnetoCorp REDEEMED",
+                "tx3 1970-01-01T00:00:03Z BigFund TRADING",
+                "tx2 1970-01-01T00:00:02Z DigiBank TRADING",
+                "tx1 1970-01-01T00:00:01Z MagnetoCorp ISSUED");
+        assertThat(history.getFetchedCount()).isEqualTo(4);
+        assertThat(history.getBookmark()).isEmpty();
+    }
+
+    @Test
+    public void resumesFromTheBookmark() {
+        List<List<String>> pages = new ArrayList<>();
+        String bookmark = "";
+        do {
+            PaperHistory history = contract.getPaperHistory(ctx(), "MagnetoCorp", "00001", 3, bookmark);
+            List<String> txIds = new ArrayList<>();
+            for (PaperHistory.Entry entry : history.getRecords()) {
+                txIds.add(entry.getTxId());
+            }
+            pages.add(txIds);
+            bookmark = history.getBookmark();
+        } while (!bookmark.isEmpty());
+
+        assertThat(pages).containsExactly(Arrays.asList("tx4", "tx3", "tx2"), Arrays.asList("tx1"));
+    }
+
+    @Test
+    public void rejectsABookmarkThatIsNotInTheHistory() {
+        assertThatThrownBy(() -> contract.getPaperHistory(ctx(), "MagnetoCorp", "00001", 10, "tx99"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Bookmark tx99 is not in the history");
+    }
+
+    @Test
+    public void summarizesTheTrades() {
+        PaperHistorySummary summary = contract.getPaperHistorySummary(ctx(), "MagnetoCorp", "00001");
+
+        assertThat(summary.getTrades()).isEqualTo(2);
+        assertThat(summary.getFirstOwner()).isEqualTo("MagnetoCorp");
+        assertThat(summary.getLastOwner()).isEqualTo("MagnetoCorp");
+    }
+
+    @Test
+    public void whenPaperHasNoHistory() {
+        PaperHistorySummary summary = contract.getPaperHistorySummary(ctx(), "MagnetoCorp", "00002");
+
+        assertThat(contract.getPaperHistory(ctx(), "MagnetoCorp", "00002", 10, "").getRecords()).isEmpty();
+        assertThat(summary.getTrades()).isZero();
+        assertThat(summary.getFirstOwner()).isEmpty();
+        assertThat(summary.getLastOwner()).isEmpty();
+    }
+
+    @Test
+    public void rejectsPageSizesOutOfRange() {
+        assertThatThrownBy(() -> contract.getPaperHistory(ctx(), "MagnetoCorp", "00001", 0, ""))
+                .hasMessageContaining("Page size");
+        assertThatThrownBy(() -> contract.getPaperHistory(ctx(), "MagnetoCorp", "00001", 1001, ""))
+                .hasMessageContaining("Page size");
+    }
+}
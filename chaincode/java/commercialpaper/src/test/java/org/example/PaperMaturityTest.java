@@ -0,0 +1,143 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the maturity index and redeemMatured against an in-memory world state,
+ * settling on 2020-11-30.
+ */
+public final class PaperMaturityTest {
+
+    private static final Instant SETTLEMENT = Instant.parse("2020-11-30T18:00:00Z");
+
+    private final InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+    private final CommercialPaperContract contract = new CommercialPaperContract();
+
+    private CommercialPaperContext ctx() {
+        stub.setTxTimestamp(SETTLEMENT);
+        return new CommercialPaperContext(stub);
+    }
+
+    private void issue(final String paperNumber, final String maturityDateTime) {
+        CommercialPaperContext ctx = ctx();
+        contract.issue(ctx, "MagnetoCorp", paperNumber, "2020-05-31", maturityDateTime, 5000000);
+        contract.afterTransaction(ctx, null);
+    }
+
+    private PaperPage redeemMatured(final int limit, final String bookmark) {
+        CommercialPaperContext ctx = ctx();
+        PaperPage page = contract.redeemMatured(ctx, limit, bookmark);
+        contract.afterTransaction(ctx, null);
+        return page;
+    }
+
+    private static List<String> paperNumbers(final PaperPage page) {
+        List<String> paperNumbers = new ArrayList<>();
+        for (CommercialPaper paper : page.getRecords()) {
+            paperNumbers.add(paper.getPaperNumber());
+        }
+        return paperNumbers;
+    }
+
+    private String state(final String paperNumber) {
+        return ctx().paperList.getPaper(paperNumber).getState();
+    }
+
+    private static String indexKey(final String maturityDay, final String paperNumber) {
+        return "maturity~" + maturityDay + "~" + paperNumber;
+    }
+
+    private boolean indexed(final String maturityDay, final String paperNumber) {
+        return stub.getState(indexKey(maturityDay, paperNumber)).length != 0;
+    }
+
+    @BeforeEach
+    public void issuePapers() {
+        issue("00001", "2020-11-30");
+        issue("00002", "2020-08-31");
+        issue("00003", "2021-02-28");
+        issue("00004", "2020-06-30T00:00:00Z");
+    }
+
+    @Test
+    public void issueIndexesThePaperByMaturityDay() {
+        assertThat(indexed("20201130", "00001")).isTrue();
+        assertThat(indexed("20200630", "00004")).isTrue();
+    }
+
+    @Test
+    public void redeemsThePapersDueEarliestFirst() {
+        PaperPage first = redeemMatured(2, "");
+
+        assertThat(paperNumbers(first)).containsExactly("00004", "00002");
+        assertThat(first.getBookmark()).isNotEmpty();
+        assertThat(state("00004")).isEqualTo(CommercialPaper.REDEEMED);
+        assertThat(indexed("20200630", "00004")).isFalse();
+
+        PaperPage second = redeemMatured(2, first.getBookmark());
+
+        assertThat(paperNumbers(second)).containsExactly("00001");
+        assertThat(second.getBookmark()).isEmpty();
+        assertThat(state("00003")).isEqualTo(CommercialPaper.ISSUED);
+        assertThat(indexed("20210228", "00003")).isTrue();
+    }
+
+    @Test
+    public void skipsPapersAlreadyRedeemed() {
+        CommercialPaperContext ctx = ctx();
+        contract.redeem(ctx, "MagnetoCorp", "00002", "MagnetoCorp", "2020-09-01");
+        contract.afterTransaction(ctx, null);
+
+        assertThat(indexed("20200831", "00002")).isFalse();
+        assertThat(paperNumbers(redeemMatured(10, ""))).containsExactly("00004", "00001");
+    }
+
+    @Test
+    public void resumesFromTheBookmark() {
+        PaperPage first = redeemMatured(1, "");
+
+        assertThat(first.getBookmark()).isEqualTo(indexKey("20200831", "00002"));
+        assertThat(paperNumbers(redeemMatured(1, first.getBookmark()))).containsExactly("00002");
+        assertThatThrownBy(() -> redeemMatured(1, "00001")).hasMessageContaining("not a maturity index key");
+    }
+
+    @Test
+    public void deletesEntriesOfMissingPapers() {
+        // left behind by a paper that is no longer on the ledger
+        stub.putState(indexKey("20200701", "00009"), new byte[] { 0 });
+
+        assertThat(paperNumbers(redeemMatured(10, ""))).containsExactly("00004", "00002", "00001");
+        assertThat(indexed("20200701", "00009")).isFalse();
+    }
+
+    @Test
+    public void rejectsMaturityDatesWithoutADay() {
+        assertThatThrownBy(() -> issue("00005", "30/11/2020")).hasMessageContaining("yyyy-MM-dd");
+
+        CommercialPaperContext ctx = ctx();
+        BatchResult result = contract.issuePapers(ctx, "[{\"issuer\":\"MagnetoCorp\",\"paperNumber\":\"00005\","
+                + "\"issueDateTime\":\"2020-05-31\",\"maturityDateTime\":\"soon\",\"faceValue\":5000000}]", true);
+
+        assertThat(result.getCreated()).isEmpty();
+        assertThat(result.getFailed().get(0).getMessage()).contains("yyyy-MM-dd");
+    }
+
+    @Test
+    public void rejectsLimitsOutOfRange() {
+        assertThatThrownBy(() -> redeemMatured(0, "")).hasMessageContaining("Limit");
+        assertThatThrownBy(() -> redeemMatured(1001, "")).hasMessageContaining("Limit");
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.example.ledgerapi.State;
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.hyperledger.fabric.samples.benchmark.MangoQuery;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the query transactions against an in-memory world state with the
+ * indexes shipped in META-INF/statedb/couchdb/indexes declared, so a query no
+ * index serves fails as a full scan would be refused.
+ */
+public final class PaperQueryTest {
+
+    private static final Path INDEXES = Paths.get("META-INF", "statedb", "couchdb", "indexes");
+
+    private final InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+    private final CommercialPaperContract contract = new CommercialPaperContract();
+
+    private CommercialPaperContext ctx() {
+        return new CommercialPaperContext(stub);
+    }
+
+    private void issue(final String issuer, final String paperNumber, final String maturityDateTime) {
+        CommercialPaperContext ctx = ctx();
+        contract.issue(ctx, issuer, paperNumber, "2020-05-31", maturityDateTime, 5000000);
+        contract.afterTransaction(ctx, null);
+    }
+
+    private void buy(final String issuer, final String paperNumber, final String newOwner) {
+        CommercialPaperContext ctx = ctx();
+        contract.buy(ctx, issuer, paperNumber, issuer, newOwner, 4900000, "2020-05-31");
+        contract.afterTransaction(ctx, null);
+    }
+
+    private static List<String> paperNumbers(final PaperPage page) {
+        List<String> paperNumbers = new ArrayList<>();
+        for (CommercialPaper paper : page.getRecords()) {
+            paperNumbers.add(paper.getPaperNumber());
+        }
+        return paperNumbers;
+    }
+
+    @BeforeEach
+    public void declareIndexes() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(INDEXES, "*.json")) {
+            for (Path file : files) {
+                stub.addIndex(new String(Files.readAllBytes(file), UTF_8));
+            }
+        }
+
+        issue("MagnetoCorp", "00001", "2020-11-30");
+        issue("MagnetoCorp", "00002", "2020-08-31");
+        issue("MagnetoCorp", "00003", "2021-02-28");
+        issue("DigiBank", "00004", "2020-06-30");
+        buy("MagnetoCorp", "00002", "DigiBank");
+    }
+
+    @Nested
+    class ByOwner {
+
+        @Test
+        public void returnsThePapersOfTheOwner() {
+            PaperPage page = contract.queryPapersByOwner(ctx(), "DigiBank", 10, "");
+
+            assertThat(paperNumbers(page)).containsExactly("00002", "00004");
+            assertThat(page.getFetchedCount()).isEqualTo(2);
+            assertThat(page.getBookmark()).isEmpty();
+        }
+
+        @Test
+        public void resumesFromTheBookmark() {
+            List<List<String>> pages = new ArrayList<>();
+            String bookmark = "";
+            do {
+                PaperPage page = contract.queryPapersByOwner(ctx(), "MagnetoCorp", 1, bookmark);
+                pages.add(paperNumbers(page));
+                bookmark = page.getBookmark();
+            } while (!bookmark.isEmpty());
+
+            assertThat(pages).containsExactly(Arrays.asList("00001"), Arrays.asList("00003"));
+        }
+
+        @Test
+        public void escapesTheOwner() {
+            PaperPage page = contract.queryPapersByOwner(ctx(), "\"}, \"owner\": {\"$gt\": \"\"", 10, "");
+
+            assertThat(page.getRecords()).isEmpty();
+        }
+
+        @Test
+        public void rejectsPageSizesOutOfRange() {
+            assertThatThrownBy(() -> contract.queryPapersByOwner(ctx(), "DigiBank", 0, ""))
+                    .hasMessageContaining("Page size");
+            assertThatThrownBy(() -> contract.queryPapersByOwner(ctx(), "DigiBank", 1001, ""))
+                    .hasMessageContaining("Page size");
+        }
+    }
+
+    @Nested
+    class ByIssuerAndState {
+
+        @Test
+        public void returnsThePapersInTheState() {
+            assertThat(paperNumbers(contract.queryPapersByIssuerAndState(ctx(), "MagnetoCorp",
+                    CommercialPaper.ISSUED, 10, ""))).containsExactly("00001", "00003");
+            assertThat(paperNumbers(contract.queryPapersByIssuerAndState(ctx(), "MagnetoCorp",
+                    CommercialPaper.TRADING, 10, ""))).containsExactly("00002");
+            assertThat(paperNumbers(contract.queryPapersByIssuerAndState(ctx(), "DigiBank",
+                    CommercialPaper.TRADING, 10, ""))).isEmpty();
+        }
+
+        @Test
+        public void rejectsUnknownStates() {
+            assertThatThrownBy(() -> contract.queryPapersByIssuerAndState(ctx(), "MagnetoCorp", "LOST", 10, ""))
+                    .hasMessageContaining("LOST");
+        }
+    }
+
+    @Nested
+    class MaturingBefore {
+
+        @Test
+        public void returnsEarliestFirst() {
+            PaperPage page = contract.queryPapersMaturingBefore(ctx(), "2021-01-01", 10, "");
+
+            assertThat(paperNumbers(page)).containsExactly("00004", "00002", "00001");
+        }
+
+        @Test
+        public void pagesInMaturityOrder() {
+            PaperPage first = contract.queryPapersMaturingBefore(ctx(), "2021-12-31", 2, "");
+            PaperPage second = contract.queryPapersMaturingBefore(ctx(), "2021-12-31", 2, first.getBookmark());
+
+            assertThat(paperNumbers(first)).containsExactly("00004", "00002");
+            assertThat(paperNumbers(second)).containsExactly("00001", "00003");
+        }
+    }
+
+    @Nested
+    class Indexes {
+
+        @Test
+        public void refuseQueriesNoIndexServes() {
+            assertThatThrownBy(() -> stub.getQueryResult("{\"selector\":{\"faceValue\":5000000}}"))
+                    .hasMessageContaining("No declared index");
+            assertThatThrownBy(() -> stub.getQueryResult(
+                    "{\"selector\":{\"owner\":\"DigiBank\"},\"sort\":[\"maturityDateTime\"]}"))
+                    .hasMessageContaining("No declared index");
+        }
+    }
+
+    @Nested
+    class StoredFormat {
+
+        @Test
+        public void papersAreWrittenAsJson() {
+            byte[] value = stub.getState(stub.createCompositeKey("PaperList", "00001").toString());
+
+            assertThat(new JSONObject(new String(value, UTF_8)).getString("owner")).isEqualTo("MagnetoCorp");
+        }
+
+        @Test
+        public void binaryPapersAreStillRead() {
+            CommercialPaper paper = CommercialPaper.createInstance("DigiBank", "00005", "2020-05-31", "2020-07-31",
+                    5000000, "DigiBank", CommercialPaper.ISSUED);
+            stub.putState(stub.createCompositeKey("PaperList", "00005").toString(),
+                    State.serialize(paper, CommercialPaper.CODEC));
+
+            assertThat(ctx().paperList.getPaper("00005").getMaturityDateTime()).isEqualTo("2020-07-31");
+        }
+    }
+
+    @Nested
+    class Evaluator {
+
+        private final JSONObject paper = new JSONObject()
+                .put("owner", "DigiBank")
+                .put("faceValue", 5000000)
+                .put("maturityDateTime", "2020-11-30");
+
+        private boolean matches(final String selector) {
+            return MangoQuery.parse("{\"selector\":" + selector + "}").matches(paper);
+        }
+
+        @Test
+        public void supportsConditionOperators() {
+            assertThat(matches("{\"owner\":\"DigiBank\"}")).isTrue();
+            assertThat(matches("{\"owner\":{\"$ne\":\"DigiBank\"}}")).isFalse();
+            assertThat(matches("{\"faceValue\":{\"$gte\":5000000,\"$lt\":6000000}}")).isTrue();
+            assertThat(matches("{\"owner\":{\"$in\":[\"MagnetoCorp\",\"DigiBank\"]}}")).isTrue();
+            assertThat(matches("{\"issuer\":{\"$exists\":false}}")).isTrue();
+            assertThat(matches("{\"issuer\":{\"$ne\":\"DigiBank\"}}")).isFalse();
+        }
+
+        @Test
+        public void supportsCombinationOperators() {
+            assertThat(matches("{\"$or\":[{\"owner\":\"MagnetoCorp\"},{\"faceValue\":5000000}]}")).isTrue();
+            assertThat(matches("{\"$and\":[{\"owner\":\"DigiBank\"},{\"faceValue\":1}]}")).isFalse();
+            assertThat(matches("{\"$not\":{\"owner\":\"DigiBank\"}}")).isFalse();
+        }
+
+        @Test
+        public void comparesAcrossTypesInCouchDbOrder() {
+            assertThat(matches("{\"faceValue\":{\"$lt\":\"0\"}}")).isTrue();
+            assertThat(matches("{\"owner\":{\"$gt\":9}}")).isTrue();
+        }
+
+        @Test
+        public void rejectsUnsupportedOperators() {
+            assertThatThrownBy(() -> matches("{\"owner\":{\"$regex\":\"^Digi\"}}"))
+                    .hasMessageContaining("$regex");
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.ledgerapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.example.CommercialPaper;
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+public final class StateListTest {
+
+    private final InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+    private final AtomicInteger decoded = new AtomicInteger();
+
+    private StateList list() {
+        Context ctx = mock(Context.class);
+        when(ctx.getStub()).thenReturn(stub);
+        return StateList.getStateList(ctx, "PaperList", CommercialPaper::deserialize, new StateCodec() {
+            @Override
+            public void write(final State state, final StateOutput out) {
+                CommercialPaper.CODEC.write(state, out);
+            }
+
+            @Override
+            public State read(final StateInput in) {
+                decoded.incrementAndGet();
+                return CommercialPaper.CODEC.read(in);
+            }
+        });
+    }
+
+    private static CommercialPaper paper(final String paperNumber, final String owner) {
+        return CommercialPaper.createInstance("MagnetoCorp", paperNumber, "2020-05-31", "2020-11-30", 5000000, owner,
+                CommercialPaper.ISSUED);
+    }
+
+    private StateList listWith(final String... paperNumbers) {
+        StateList list = list();
+        for (String paperNumber : paperNumbers) {
+            list.addState(paper(paperNumber, "MagnetoCorp"));
+        }
+        list.flush();
+        return list();
+    }
+
+    private static List<String> paperNumbers(final StateIterator<CommercialPaper> states) {
+        List<String> paperNumbers = new ArrayList<>();
+        try (StateIterator<CommercialPaper> scan = states) {
+            for (CommercialPaper paper : scan) {
+                paperNumbers.add(paper.getPaperNumber());
+            }
+        }
+        return paperNumbers;
+    }
+
+    @Nested
+    class WholeList {
+
+        @Test
+        public void whenListIsEmpty() {
+            StateIterator<CommercialPaper> states = list().getStates(CommercialPaper.class);
+
+            assertThat(paperNumbers(states)).isEmpty();
+            assertThat(states.getBookmark()).isEmpty();
+        }
+
+        @Test
+        public void returnsStatesInKeyOrder() {
+            StateList list = listWith("00003", "00001", "00002");
+
+            StateIterator<CommercialPaper> states = list.getStates(CommercialPaper.class);
+
+            assertThat(paperNumbers(states)).containsExactly("00001", "00002", "00003");
+            assertThat(states.getBookmark()).isEmpty();
+        }
+
+        @Test
+        public void decodesOnlyTheStatesReturned() {
+            StateList list = listWith("00001", "00002", "00003", "00004");
+
+            try (StateIterator<CommercialPaper> states = list.getStates(CommercialPaper.class)) {
+                states.iterator().next();
+            }
+
+            assertThat(decoded.get()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    class KeyPrefix {
+
+        @Test
+        public void returnsOnlyMatchingStates() {
+            StateList list = listWith("A:00001", "B:00001", "A:00002", "AB:00001");
+
+            assertThat(paperNumbers(list.getStates(CommercialPaper.class, "", 0, "A")))
+                    .containsExactly("A:00001", "A:00002");
+        }
+    }
+
+    @Nested
+    class LimitAndBookmark {
+
+        @Test
+        public void resumesAfterBookmark() {
+            StateList list = listWith("00001", "00002", "00003", "00004", "00005");
+
+            StateIterator<CommercialPaper> first = list.getStates(CommercialPaper.class, "", 2);
+            assertThat(paperNumbers(first)).containsExactly("00001", "00002");
+            assertThat(first.getBookmark()).isNotEmpty();
+
+            StateIterator<CommercialPaper> second = list.getStates(CommercialPaper.class, first.getBookmark(), 2);
+            assertThat(paperNumbers(second)).containsExactly("00003", "00004");
+
+            StateIterator<CommercialPaper> third = list.getStates(CommercialPaper.class, second.getBookmark(), 2);
+            assertThat(paperNumbers(third)).containsExactly("00005");
+            assertThat(third.getBookmark()).isEmpty();
+        }
+
+        @Test
+        public void whenLimitIsReachedAtTheEnd() {
+            StateList list = listWith("00001", "00002");
+
+            StateIterator<CommercialPaper> states = list.getStates(CommercialPaper.class, "", 2);
+
+            assertThat(paperNumbers(states)).containsExactly("00001", "00002");
+            assertThat(states.getBookmark()).isEmpty();
+        }
+    }
+
+    @Nested
+    class UnflushedStates {
+
+        @Test
+        public void areMergedWithTheLedger() {
+            StateList list = listWith("00001", "00003");
+            list.addState(paper("00002", "MagnetoCorp"));
+            list.updateState(paper("00003", "DigiBank"));
+
+            List<String> owners = new ArrayList<>();
+            try (StateIterator<CommercialPaper> states = list.getStates(CommercialPaper.class)) {
+                for (CommercialPaper paper : states) {
+                    owners.add(paper.getPaperNumber() + "=" + paper.getOwner());
+                }
+            }
+
+            assertThat(owners).containsExactly("00001=MagnetoCorp", "00002=MagnetoCorp", "00003=DigiBank");
+        }
+
+        @Test
+        public void mayBeUpdatedWhileScanning() {
+            StateList list = listWith("00001", "00002");
+
+            try (StateIterator<CommercialPaper> states = list.getStates(CommercialPaper.class)) {
+                for (CommercialPaper paper : states) {
+                    list.updateState(paper.setOwner("DigiBank"));
+                }
+            }
+            list.flush();
+
+            assertThat(((CommercialPaper) list.getState("00002")).getOwner()).isEqualTo("DigiBank");
+        }
+    }
+
+    @Nested
+    class History {
+
+        private List<String> versions(final StateHistory<CommercialPaper> history) {
+            List<String> versions = new ArrayList<>();
+            try (StateHistory<CommercialPaper> walk = history) {
+                for (StateHistory.Modification<CommercialPaper> modification : walk) {
+                    versions.add(modification.getTxId() + "="
+                            + (modification.isDeleted() ? "deleted" : modification.getState().getOwner()));
+                }
+            }
+            return versions;
+        }
+
+        private void write(final String txId, final String owner) {
+            stub.setTxId(txId);
+            StateList list = list();
+            list.updateState(paper("00001", owner));
+            list.flush();
+        }
+
+        @Test
+        public void returnsTheVersionsNewestFirst() {
+            stub.keepHistory();
+            write("tx1", "MagnetoCorp");
+            write("tx2", "DigiBank");
+            stub.setTxId("tx3").delState(stub.createCompositeKey("PaperList", "00001").toString());
+
+            StateHistory<CommercialPaper> history = list().getHistory(CommercialPaper.class, "00001", "", 0);
+
+            assertThat(versions(history)).containsExactly("tx3=deleted", "tx2=DigiBank", "tx1=MagnetoCorp");
+            assertThat(history.getBookmark()).isEmpty();
+        }
+
+        @Test
+        public void resumesAfterBookmarkWithoutDecodingTheSkippedVersions() {
+            stub.keepHistory();
+            write("tx1", "MagnetoCorp");
+            write("tx2", "DigiBank");
+            write("tx3", "BigFund");
+            decoded.set(0);
+
+            StateHistory<CommercialPaper> first = list().getHistory(CommercialPaper.class, "00001", "", 2);
+            assertThat(versions(first)).containsExactly("tx3=BigFund", "tx2=DigiBank");
+            assertThat(first.getBookmark()).isEqualTo("tx2");
+
+            StateHistory<CommercialPaper> second = list().getHistory(CommercialPaper.class, "00001",
+                    first.getBookmark(), 2);
+            assertThat(versions(second)).containsExactly("tx1=MagnetoCorp");
+            assertThat(second.getBookmark()).isEmpty();
+            assertThat(decoded.get()).isEqualTo(3);
+        }
+    }
+}
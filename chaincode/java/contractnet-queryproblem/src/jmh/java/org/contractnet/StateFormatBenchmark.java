@@ -0,0 +1,53 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serializing and deserializing one CallForProposal as JSON and in the binary
+ * format of CallForProposal.CODEC. The size of the stored value in each format
+ * is printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StateFormatBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    public String format;
+
+    private CallForProposal callForProposal;
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        callForProposal = CallForProposal.createInstance("Paul", "cfp1", "Paint car", CallForProposal.CALLING);
+        data = serialize();
+        System.out.println(format + " CallForProposal: " + data.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        if (format.equals("JSON")) {
+            return org.contractnet.ledgerapi.State.serialize(callForProposal);
+        }
+        return org.contractnet.ledgerapi.State.serialize(callForProposal, CallForProposal.CODEC);
+    }
+
+    @Benchmark
+    public org.contractnet.ledgerapi.State deserialize() {
+        return org.contractnet.ledgerapi.State.deserialize(data, CallForProposal.CODEC, CallForProposal::deserialize);
+    }
+}
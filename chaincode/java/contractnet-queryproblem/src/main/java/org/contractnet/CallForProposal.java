@@ -5,6 +5,9 @@
 package org.contractnet;
 
 import org.contractnet.ledgerapi.State;
+import org.contractnet.ledgerapi.StateCodec;
+import org.contractnet.ledgerapi.StateInput;
+import org.contractnet.ledgerapi.StateOutput;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 import org.json.JSONObject;
@@ -158,6 +161,27 @@ public class CallForProposal extends State {
         return State.serialize(paper);
     }
 
+    /**
+     * Binary layout of a call for proposal, in the field order of deserialize()
+     */
+    public final static StateCodec CODEC = new StateCodec() {
+        @Override
+        public void write(State state, StateOutput out) {
+            org.contractnet.CallForProposal callForProposal = (org.contractnet.CallForProposal) state;
+            out.writeString(callForProposal.getInitiator()).writeString(callForProposal.getId())
+                    .writeString(callForProposal.getTask()).writeString(callForProposal.getState());
+        }
+
+        @Override
+        public State read(StateInput in) {
+            String initiator = in.readString();
+            String id = in.readString();
+            String task = in.readString();
+            String state = in.readString();
+            return createInstance(initiator, id, task, state);
+        }
+    };
+
     /**
      * Factory method to create a commercial paper object
      */
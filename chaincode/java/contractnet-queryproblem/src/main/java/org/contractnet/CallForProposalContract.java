@@ -5,16 +5,13 @@ package org.contractnet;
 
 import com.owlike.genson.Genson;
 import org.contractnet.ledgerapi.State;
+import org.contractnet.ledgerapi.StateIterator;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.*;
 import org.hyperledger.fabric.shim.ChaincodeStub;
-import org.hyperledger.fabric.shim.ledger.CompositeKey;
-import org.hyperledger.fabric.shim.ledger.KeyValue;
-import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -39,6 +36,17 @@ public class CallForProposalContract implements ContractInterface {
 
     }
 
+    /**
+     * Write the calls for proposal and partecipants added or updated by the
+     * transaction to the ledger
+     */
+    @Override
+    public void afterTransaction(Context ctx, Object result) {
+        CallForProposalContext callForProposalContext = (CallForProposalContext) ctx;
+        callForProposalContext.callForProposalList.flush();
+        callForProposalContext.partecipantList.flush();
+    }
+
 
     /**
      * Instantiate to perform any setup of the ledger that might be required.
@@ -128,24 +136,28 @@ public class CallForProposalContract implements ContractInterface {
         return ctx.getClientIdentity();
     }
 
+    /**
+     * Ids of the calls for proposal from idStart to idEnd inclusive, in id order
+     *
+     * @param {Context} ctx the transaction context
+     * @param {String} idStart first id, or "" to start with the first call
+     * @param {String} idEnd last id, or "" to end with the last call
+     */
     @Transaction
     public String getAllCallForProposal(CallForProposalContext ctx, String idStart, String idEnd) {
 
-        ChaincodeStub stub = ctx.getStub();
-        String keyStart = State.makeKey(new String[] { idStart });
-        String keyEnd = State.makeKey(new String[] { idEnd });
-
-//        String[] splitKey = ctx.callForProposalList. state.getSplitKey();
-//        System.out.println("Split key " + Arrays.asList(splitKey));
-
-        CompositeKey ledgerKey = stub.createCompositeKey(org.contractnet.CallForProposalList.class.getSimpleName(), splitKey);
-
-        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(ledgerKey);
         List<String> queryResults = new ArrayList<>();
 
-        for (KeyValue result: results) {
-            CallForProposal cfp = genson.deserialize(result.getStringValue(), CallForProposal.class);
-            queryResults.add(cfp.getId());
+        // the list is scanned in id order, so stop at the first id past idEnd
+        try (StateIterator<CallForProposal> results = ctx.callForProposalList.getCallForProposals("", 0)) {
+            for (CallForProposal cfp : results) {
+                if (!idEnd.isEmpty() && cfp.getId().compareTo(idEnd) > 0) {
+                    break;
+                }
+                if (cfp.getId().compareTo(idStart) >= 0) {
+                    queryResults.add(cfp.getId());
+                }
+            }
         }
 
         final String response = genson.serialize(queryResults);
@@ -4,6 +4,7 @@ SPDX-License-Identifier: Apache-2.0
 
 package org.contractnet;
 
+import org.contractnet.ledgerapi.StateIterator;
 import org.contractnet.ledgerapi.StateList;
 import org.hyperledger.fabric.contract.Context;
 
@@ -12,7 +13,8 @@ public class CallForProposalList {
     private StateList stateList;
 
     public CallForProposalList(Context ctx) {
-        this.stateList = StateList.getStateList(ctx, org.contractnet.CallForProposalList.class.getSimpleName(), CallForProposal::deserialize);
+        this.stateList = StateList.getStateList(ctx, org.contractnet.CallForProposalList.class.getSimpleName(), CallForProposal::deserialize,
+                CallForProposal.CODEC);
     }
 
     public org.contractnet.CallForProposalList addCallForProposal(CallForProposal callForProposal) {
@@ -28,4 +30,16 @@ public class CallForProposalList {
         this.stateList.updateState(callForProposal);
         return this;
     }
+
+    /**
+     * Stream the calls for proposal in id order, see StateList.getStates()
+     */
+    public StateIterator<CallForProposal> getCallForProposals(String bookmark, int limit) {
+        return this.stateList.getStates(CallForProposal.class, bookmark, limit);
+    }
+
+    public org.contractnet.CallForProposalList flush() {
+        this.stateList.flush();
+        return this;
+    }
 }
@@ -5,6 +5,9 @@
 package org.contractnet;
 
 import org.contractnet.ledgerapi.State;
+import org.contractnet.ledgerapi.StateCodec;
+import org.contractnet.ledgerapi.StateInput;
+import org.contractnet.ledgerapi.StateOutput;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 import org.json.JSONObject;
@@ -106,6 +109,24 @@ public class Partecipant extends State {
         return State.serialize(paper);
     }
 
+    /**
+     * Binary layout of a partecipant, in the field order of deserialize()
+     */
+    public final static StateCodec CODEC = new StateCodec() {
+        @Override
+        public void write(State state, StateOutput out) {
+            Partecipant partecipant = (Partecipant) state;
+            out.writeString(partecipant.getName()).writeString(partecipant.getState());
+        }
+
+        @Override
+        public State read(StateInput in) {
+            String name = in.readString();
+            String state = in.readString();
+            return createInstance(name, state);
+        }
+    };
+
     /**
      * Factory method to create a partecipant object
      */
@@ -12,7 +12,8 @@ public class PartecipantList {
     private StateList stateList;
 
     public PartecipantList(Context ctx) {
-        this.stateList = StateList.getStateList(ctx, PartecipantList.class.getSimpleName(), Partecipant::deserialize);
+        this.stateList = StateList.getStateList(ctx, PartecipantList.class.getSimpleName(), Partecipant::deserialize,
+                Partecipant.CODEC);
     }
 
     public PartecipantList addPartecipant(Partecipant partecipant) {
@@ -29,4 +30,9 @@ public class PartecipantList {
         return this;
     }
 
+    public PartecipantList flush() {
+        this.stateList.flush();
+        return this;
+    }
+
 }
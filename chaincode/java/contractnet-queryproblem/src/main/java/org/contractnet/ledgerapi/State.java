@@ -5,6 +5,8 @@ package org.contractnet.ledgerapi;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.util.logging.Logger;
+
 import org.json.JSONObject;
 
 /**
@@ -13,6 +15,14 @@ import org.json.JSONObject;
  */
 public class State {
 
+    private final static Logger LOG = Logger.getLogger(State.class.getName());
+
+    /**
+     * Leading byte of a state written by a StateCodec. A JSON state starts with
+     * '{' or whitespace, so it can never be mistaken for a tagged one.
+     */
+    public final static byte BINARY_V1 = 0x01;
+
     protected String key;
 
     /**
@@ -43,6 +53,30 @@ public class State {
         return jsonStr.getBytes(UTF_8);
     }
 
+    /**
+     * Convert a state to a buffer in the binary format of codec, prefixed with
+     * its format tag
+     */
+    public static byte[] serialize(State state, StateCodec codec) {
+        StateOutput out = new StateOutput(BINARY_V1);
+        codec.write(state, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Convert a buffer read from the ledger back to a state, with codec when it
+     * carries the binary format tag and with deserializer when it holds JSON
+     */
+    public static State deserialize(byte[] data, StateCodec codec, StateDeserializer deserializer) {
+        if (data[0] != BINARY_V1) {
+            return deserializer.deserialize(data);
+        }
+        if (codec == null) {
+            throw new IllegalArgumentException("State is in binary format but no codec was given");
+        }
+        return codec.read(new StateInput(data, 1));
+    }
+
     /**
      * Join the keyParts to make a unififed string
      *
@@ -53,7 +87,7 @@ public class State {
     }
 
     public static String[] splitKey(String key) {
-        System.out.println("splitting key " + key + "   " + java.util.Arrays.asList(key.split(":")));
+        LOG.finest(() -> "Splitting key " + key);
         return key.split(":");
     }
 
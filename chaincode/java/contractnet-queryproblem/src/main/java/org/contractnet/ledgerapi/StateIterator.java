@@ -0,0 +1,28 @@
+package org.contractnet.ledgerapi;
+
+/*
+SPDX-License-Identifier: Apache-2.0
+*/
+
+/**
+ * Typed, streaming view over part of a StateList. States are read from the
+ * ledger and deserialized one at a time as iteration reaches them, so a list
+ * can be scanned in constant memory and a scan stopped early costs only the
+ * states it returned. Close it, typically with try-with-resources, to release
+ * the underlying ledger query.
+ */
+public interface StateIterator<T extends State> extends Iterable<T>, AutoCloseable {
+
+    /**
+     * Bookmark to pass to StateList.getStates() to resume after the last state
+     * returned, or "" when the scan has reached the end of the list.
+     */
+    public String getBookmark();
+
+    /**
+     * Close the underlying ledger query.
+     */
+    @Override
+    public void close();
+
+}
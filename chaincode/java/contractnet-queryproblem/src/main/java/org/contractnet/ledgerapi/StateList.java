@@ -20,13 +20,22 @@ public interface StateList {
      * Store Fabric context for subsequent API access, and name of list
      */
     static StateList getStateList(Context ctx, String listName, StateDeserializer deserializer) {
-        return new StateListImpl(ctx, listName, deserializer);
+        return new StateListImpl(ctx, listName, deserializer, null);
+    }
+
+    /**
+     * Store Fabric context for subsequent API access, and name of list. States
+     * are written in the binary format of codec; states stored as JSON are still
+     * read with deserializer.
+     */
+    static StateList getStateList(Context ctx, String listName, StateDeserializer deserializer, StateCodec codec) {
+        return new StateListImpl(ctx, listName, deserializer, codec);
     }
 
     /**
      * Add a state to the list. Creates a new state in worldstate with appropriate
      * composite key. Note that state defines its own key. State object is
-     * serialized before writing.
+     * serialized when the list is flushed.
      */
     public StateList addState(State state);
 
@@ -40,9 +49,39 @@ public interface StateList {
     /**
      * Update a state in the list. Puts the new state in world state with
      * appropriate composite key. Note that state defines its own key. A state is
-     * serialized before writing. Logic is very similar to addState() but kept
-     * separate becuase it is semantically distinct.
+     * serialized when the list is flushed. Logic is very similar to addState() but
+     * kept separate becuase it is semantically distinct.
      */
     public StateList updateState(State state);
 
+    /**
+     * Scan the states of the list whose keys start with keyParts, in key order,
+     * deserializing each one only when the iteration reaches it. States added or
+     * updated in this transaction are returned as getState() would return them.
+     *
+     * Resuming from a bookmark restarts the ledger scan at the beginning of
+     * keyParts and skips the keys up to the bookmark without deserializing them.
+     *
+     * @param type     class of the states, which the deserializer must return
+     * @param bookmark getBookmark() of an earlier scan to resume after its last
+     *                 state, or "" to start at the beginning
+     * @param limit    most states to return, or 0 for no limit
+     * @param keyParts leading parts of the state keys, none for the whole list
+     */
+    public <T extends State> StateIterator<T> getStates(Class<T> type, String bookmark, int limit,
+            String... keyParts);
+
+    /**
+     * Scan every state of the list, in key order.
+     */
+    default <T extends State> StateIterator<T> getStates(Class<T> type) {
+        return getStates(type, "", 0);
+    }
+
+    /**
+     * Write the states added or updated since the last flush to world state. Must
+     * be called before the transaction returns, typically from afterTransaction().
+     */
+    public StateList flush();
+
 }
@@ -0,0 +1,74 @@
+/*
+SPDX-License-Identifier: Apache-2.0
+*/
+package org.contractnet.ledgerapi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable buffer the fields of a binary state are written to. Integers are
+ * zig-zag varints and strings are a varint of their UTF-8 length plus one,
+ * zero standing for null, followed by the bytes.
+ */
+public final class StateOutput {
+
+    private byte[] buffer = new byte[64];
+    private int length;
+
+    StateOutput(byte tag) {
+        this.buffer[this.length++] = tag;
+    }
+
+    public StateOutput writeInt(int value) {
+        writeVarint((value << 1) ^ (value >> 31));
+        return this;
+    }
+
+    public StateOutput writeString(String value) {
+        if (value == null) {
+            writeVarint(0);
+            return this;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarint(bytes.length + 1);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, this.buffer, this.length, bytes.length);
+        this.length += bytes.length;
+        return this;
+    }
+
+    public StateOutput writeStringList(List<String> values) {
+        if (values == null) {
+            writeVarint(0);
+            return this;
+        }
+        writeVarint(values.size() + 1);
+        for (String value : values) {
+            writeString(value);
+        }
+        return this;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(this.buffer, this.length);
+    }
+
+    private void writeVarint(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7f) != 0) {
+            this.buffer[this.length++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        this.buffer[this.length++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (this.length + extra > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.length + extra));
+        }
+    }
+
+}
@@ -1,9 +1,14 @@
 package org.contractnet.ledgerapi.impl;
 
-import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
 
 import org.contractnet.ledgerapi.State;
+import org.contractnet.ledgerapi.StateCodec;
 import org.contractnet.ledgerapi.StateDeserializer;
+import org.contractnet.ledgerapi.StateIterator;
 import org.contractnet.ledgerapi.StateList;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.shim.ChaincodeStub;
@@ -18,47 +23,49 @@ SPDX-License-Identifier: Apache-2.0
  * state has a unique key which associates it with the container, rather than
  * the container containing a link to the state. This minimizes collisions for
  * parallel transactions on different states.
+ *
+ * Added and updated states are kept in an identity map keyed by ledger key
+ * until flush(), so a state touched several times in one transaction is
+ * serialized and written only once.
  */
 public class StateListImpl implements StateList {
 
+    private final static Logger LOG = Logger.getLogger(StateListImpl.class.getName());
+
     private Context ctx;
     private String name;
     private Object supportedClasses;
     private StateDeserializer deserializer;
+    private StateCodec codec;
+    private final SortedMap<String, State> dirtyStates = new TreeMap<>();
 
     /**
      * Store Fabric context for subsequent API access, and name of list
      *
-     * @param deserializer
+     * @param deserializer reads states stored as JSON
+     * @param codec         binary format states are written in, or null to
+     *                      write JSON
      */
-    public StateListImpl(Context ctx, String listName, StateDeserializer deserializer) {
+    public StateListImpl(Context ctx, String listName, StateDeserializer deserializer, StateCodec codec) {
         this.ctx = ctx;
         this.name = listName;
         this.deserializer = deserializer;
+        this.codec = codec;
 
     }
 
     /**
      * Add a state to the list. Creates a new state in worldstate with appropriate
      * composite key. Note that state defines its own key. State object is
-     * serialized before writing.
+     * serialized when the list is flushed.
      */
     @Override
     public StateList addState(State state) {
-        System.out.println("Adding state " + this.name);
         ChaincodeStub stub = this.ctx.getStub();
-        System.out.println("Stub=" + stub);
-        String[] splitKey = state.getSplitKey();
-        System.out.println("Split key " + Arrays.asList(splitKey));
-
-        CompositeKey ledgerKey = stub.createCompositeKey(this.name, splitKey);
-        System.out.println("ledgerkey is ");
-        System.out.println(ledgerKey);
+        CompositeKey ledgerKey = stub.createCompositeKey(this.name, state.getSplitKey());
+        LOG.fine(() -> "Adding state " + ledgerKey + " to " + this.name);
 
-        byte[] data = State.serialize(state);
-        System.out.println("ctx" + this.ctx);
-        System.out.println("stub" + this.ctx.getStub());
-        this.ctx.getStub().putState(ledgerKey.toString(), data);
+        this.dirtyStates.put(ledgerKey.toString(), state);
 
         return this;
     }
@@ -66,16 +73,22 @@ public class StateListImpl implements StateList {
     /**
      * Get a state from the list using supplied keys. Form composite keys to
      * retrieve state from world state. State data is deserialized into JSON object
-     * before being returned.
+     * before being returned. States added or updated in this transaction are
+     * returned as they are, without a round trip to the ledger.
      */
     @Override
     public State getState(String key) {
 
         CompositeKey ledgerKey = this.ctx.getStub().createCompositeKey(this.name, State.splitKey(key));
 
+        State dirtyState = this.dirtyStates.get(ledgerKey.toString());
+        if (dirtyState != null) {
+            return dirtyState;
+        }
+
         byte[] data = this.ctx.getStub().getState(ledgerKey.toString());
-        if (data != null) {
-            State state = this.deserializer.deserialize(data);
+        if (data != null && data.length > 0) {
+            State state = State.deserialize(data, this.codec, this.deserializer);
             return state;
         } else {
             return null;
@@ -85,16 +98,55 @@ public class StateListImpl implements StateList {
     /**
      * Update a state in the list. Puts the new state in world state with
      * appropriate composite key. Note that state defines its own key. A state is
-     * serialized before writing. Logic is very similar to addState() but kept
-     * separate becuase it is semantically distinct.
+     * serialized when the list is flushed. Logic is very similar to addState() but
+     * kept separate becuase it is semantically distinct.
      */
     @Override
     public StateList updateState(State state) {
         CompositeKey ledgerKey = this.ctx.getStub().createCompositeKey(this.name, state.getSplitKey());
-        byte[] data = State.serialize(state);
-        this.ctx.getStub().putState(ledgerKey.toString(), data);
+        this.dirtyStates.put(ledgerKey.toString(), state);
+
+        return this;
+    }
+
+    /**
+     * Scan the states of the list whose keys start with keyParts, merging the
+     * ledger's partial composite key scan with the unflushed states.
+     */
+    @Override
+    public <T extends State> StateIterator<T> getStates(Class<T> type, String bookmark, int limit,
+            String... keyParts) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative, got " + limit);
+        }
+        ChaincodeStub stub = this.ctx.getStub();
+        CompositeKey prefix = stub.createCompositeKey(this.name, keyParts);
+        LOG.fine(() -> "Scanning " + prefix + " from " + bookmark + " limit " + limit);
+
+        return new StateIteratorImpl<>(type, this.codec, this.deserializer, stub.getStateByPartialCompositeKey(prefix),
+                this.dirtyStates, prefix.toString(), bookmark == null ? "" : bookmark, limit);
+    }
+
+    /**
+     * Serialize every added or updated state and put it in world state, once per
+     * key and in ledger key order.
+     */
+    @Override
+    public StateList flush() {
+        ChaincodeStub stub = this.ctx.getStub();
+        for (Map.Entry<String, State> entry : this.dirtyStates.entrySet()) {
+            stub.putState(entry.getKey(), serialize(entry.getValue()));
+        }
+        this.dirtyStates.clear();
 
         return this;
     }
 
+    private byte[] serialize(State state) {
+        if (this.codec == null) {
+            return State.serialize(state);
+        }
+        return State.serialize(state, this.codec);
+    }
+
 }
@@ -0,0 +1,105 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.List;
+
+import org.hyperledger.fabric.samples.json.JsonReader;
+import org.hyperledger.fabric.samples.json.JsonWriter;
+import org.hyperledger.fabric.samples.metrics.TransactionMetrics;
+
+/**
+ * Reflection free JSON codec for CallForProposal that reads and writes the
+ * byte[] values of the world state directly. Properties are written in Genson's
+ * alphabetical order; the derived isXxx() flags Genson also emitted are not
+ * stored and are skipped when reading older values.
+ */
+public final class CallForProposalCodec {
+
+    private static final byte[][] FIELDS = {
+        "initiator".getBytes(UTF_8),
+        "partecipants".getBytes(UTF_8),
+        "state".getBytes(UTF_8),
+        "task".getBytes(UTF_8),
+        "winner".getBytes(UTF_8)
+    };
+
+    private static final byte[] INITIATOR = JsonWriter.name("initiator");
+    private static final byte[] PARTECIPANTS = JsonWriter.name("partecipants");
+    private static final byte[] STATE = JsonWriter.name("state");
+    private static final byte[] TASK = JsonWriter.name("task");
+    private static final byte[] WINNER = JsonWriter.name("winner");
+
+    private final ThreadLocal<JsonWriter> writers = ThreadLocal.withInitial(JsonWriter::new);
+
+    public byte[] encode(final CallForProposal callForProposal) {
+        long start = TransactionMetrics.serializationStart();
+        try {
+            return writers.get().beginObject()
+                    .field(INITIATOR, callForProposal.getInitiator())
+                    .field(PARTECIPANTS, callForProposal.getPartecipants())
+                    .field(STATE, callForProposal.getState())
+                    .field(TASK, callForProposal.getTask())
+                    .field(WINNER, callForProposal.getWinner())
+                    .endObject();
+        } finally {
+            TransactionMetrics.serialized(start);
+        }
+    }
+
+    public CallForProposal decode(final byte[] data) {
+        long start = TransactionMetrics.serializationStart();
+        try {
+            return read(data);
+        } finally {
+            TransactionMetrics.serialized(start);
+        }
+    }
+
+    private CallForProposal read(final byte[] data) {
+        String initiator = null;
+        List<String> partecipants = null;
+        String state = null;
+        String task = null;
+        String winner = null;
+
+        try {
+            JsonReader reader = new JsonReader(data);
+            reader.beginObject();
+            while (reader.hasNextField()) {
+                switch (reader.nextField(FIELDS)) {
+                    case 0:
+                        initiator = reader.nextString();
+                        break;
+                    case 1:
+                        partecipants = reader.nextStringArray();
+                        break;
+                    case 2:
+                        state = reader.nextString();
+                        break;
+                    case 3:
+                        task = reader.nextString();
+                        break;
+                    case 4:
+                        winner = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endDocument();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed JSON: unexpected end of document", e);
+        }
+
+        CallForProposal callForProposal = new CallForProposal(initiator, task, state, partecipants);
+        if (winner != null) {
+            callForProposal.setWinner(winner);
+        }
+        return callForProposal;
+    }
+}
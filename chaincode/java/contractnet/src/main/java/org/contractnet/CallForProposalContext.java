@@ -0,0 +1,20 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.samples.cache.QueryCache;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+class CallForProposalContext extends Context {
+
+    public CallForProposalContext(ChaincodeStub stub, QueryCache queryCache) {
+        super(stub);
+        this.stateCache = new StateCache(stub, queryCache);
+    }
+
+    public StateCache stateCache;
+
+}
@@ -8,15 +8,28 @@ import com.owlike.genson.Genson;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.*;
+import org.hyperledger.fabric.samples.cache.QueryCache;
+import org.hyperledger.fabric.samples.json.JsonReader;
+import org.hyperledger.fabric.samples.metrics.TransactionMetrics;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
-import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * Java implementation of the Fabric CallForProposal Contract described in the Writing Your
@@ -34,7 +47,85 @@ import java.util.List;
 @Default
 public final class CallForProposalContract implements ContractInterface {
 
-    private final Genson genson = new Genson();
+    /**
+     * Namespaces of the calls for proposal, cfp~key, and of the partecipants,
+     * prt~key: each kind is listed with one open-ended prefix scan whatever its
+     * keys. Those written by earlier versions under their plain keys are read
+     * until migrateKeys moves them.
+     */
+    private static final String CALL_FOR_PROPOSAL_NAMESPACE = "cfp";
+
+    private static final String PARTECIPANT_NAMESPACE = "prt";
+
+    private static final int MAX_CHUNK_SIZE = 1000;
+
+    /**
+     * Index of partecipant keys by partecipant state, one empty entry
+     * state~partecipantKey per partecipant, kept up to date by updatePartecipant.
+     */
+    private static final String STATE_INDEX = "state~partecipantKey";
+
+    private static final byte[] INDEX_VALUE = {0};
+
+    /**
+     * One write-only key per proposal, cfpKey~partecipantKey~txId, holding the
+     * offer. Bidders never rewrite the call for proposal, so concurrent
+     * proposals on the same call do not conflict.
+     */
+    private static final String BID_KEY = "cfp~partecipant~txid";
+
+    /**
+     * Membership of a call for proposal, one key cfpKey~partecipantKey per called
+     * partecipant holding its response, CALLED or REFUSED. A partecipant answers
+     * by writing its own key only, so responses to the same call commit in
+     * parallel; the partecipant list of the call is derived from these keys when
+     * it is queried.
+     */
+    private static final String MEMBER_KEY = "cfp~partecipant";
+
+    // ends every attribute of a composite key
+    private static final char COMPOSITE_KEY_DELIMITER = '\u0000';
+
+    // the highest code point, ending the range of the plain keys with a prefix
+    private static final String MAX_UNICODE_RUNE = "\udbff\udfff";
+
+    private static final String[] NOT_WAITING = {
+        Partecipant.CALLED, Partecipant.REFUSED, Partecipant.PROPOSED, Partecipant.WORKING
+    };
+
+    private static final String[] PARTECIPANT_STATES = {
+        Partecipant.WAITING, Partecipant.CALLED, Partecipant.REFUSED, Partecipant.PROPOSED, Partecipant.WORKING
+    };
+
+    // shared, as the shim creates a contract instance per transaction
+    private static final Genson GENSON = new Genson();
+
+    private static final CallForProposalCodec CALL_FOR_PROPOSAL_CODEC = new CallForProposalCodec();
+
+    private static final PartecipantCodec PARTECIPANT_CODEC = new PartecipantCodec();
+
+    private static final QueryCache QUERY_CACHE = QueryCache.fromEnvironment();
+
+    static final TransactionMetrics METRICS = new TransactionMetrics();
+
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new CallForProposalContext(METRICS.meter(stub), QUERY_CACHE);
+    }
+
+    @Override
+    public void beforeTransaction(final Context ctx) {
+        METRICS.begin();
+    }
+
+    /**
+     * Writes the state buffered by the transaction back to the ledger.
+     */
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        ((CallForProposalContext) ctx).stateCache.flush();
+        METRICS.end();
+    }
 
     private enum FabCallForProposalErrors {
         CallForProposal_NOT_FOUND,
@@ -44,9 +135,7 @@ public final class CallForProposalContract implements ContractInterface {
     }
 
      @Transaction()
-    public void initLedger(final Context ctx) {
-        ChaincodeStub stub = ctx.getStub();
-
+    public void initLedger(final CallForProposalContext ctx) {
         List<CallForProposal> calls = new ArrayList<>();
         calls.add(new CallForProposal("Paul", "Paint car", CallForProposal.CREATED, new ArrayList<String>()));
         calls.add(new CallForProposal("John", "Find best path", CallForProposal.CREATED, new ArrayList<String>()));
@@ -59,14 +148,12 @@ public final class CallForProposalContract implements ContractInterface {
 
         for (int i = 0; i < calls.size(); i++) {
             String key = String.format("cfp%d", i+1);
-            String callForProposalState = genson.serialize(calls.get(i));
-            stub.putStringState(key, callForProposalState);
+            ctx.stateCache.putState(callForProposalLedgerKey(key), CALL_FOR_PROPOSAL_CODEC.encode(calls.get(i)));
         }
 
         for (int i = 0; i < partecipants.size(); i++) {
             String key = String.format("prt%d", i+1);
-            String partecipantState = genson.serialize(partecipants.get(i));
-            stub.putStringState(key, partecipantState);
+            putPartecipant(ctx, key, partecipants.get(i));
         }
 
     }
@@ -75,119 +162,268 @@ public final class CallForProposalContract implements ContractInterface {
     /* Create */
 
     @Transaction()
-    public CallForProposal createCallForProposal(final Context ctx, final String key, final String initiator, final String task,
+    public CallForProposal createCallForProposal(final CallForProposalContext ctx, final String key, final String initiator, final String task,
                                                  final String state) {
-        ChaincodeStub stub = ctx.getStub();
-
-        String callForProposalState = stub.getStringState(key);
-        if (!callForProposalState.isEmpty()) {
+        byte[] callForProposalState = getCallForProposalState(ctx, key);
+        if (callForProposalState.length != 0) {
             String errorMessage = String.format("CallForProposal %s already exists", key);
             System.out.println(errorMessage);
             throw new ChaincodeException(errorMessage, FabCallForProposalErrors.CallForProposal_ALREADY_EXISTS.toString());
         }
 
         CallForProposal callForProposal = new CallForProposal(initiator, task, state, new ArrayList<String>());
-        callForProposalState = genson.serialize(callForProposal);
-        stub.putStringState(key, callForProposalState);
+        ctx.stateCache.putState(callForProposalLedgerKey(key), CALL_FOR_PROPOSAL_CODEC.encode(callForProposal));
 
         return callForProposal;
     }
     @Transaction()
-    public Partecipant createPartecipant(final Context ctx, final String key, final String name) {
-        ChaincodeStub stub = ctx.getStub();
-
-        String partecipantState = stub.getStringState(key);
-        if (!partecipantState.isEmpty()) {
+    public Partecipant createPartecipant(final CallForProposalContext ctx, final String key, final String name) {
+        byte[] partecipantState = getPartecipantState(ctx, key);
+        if (partecipantState.length != 0) {
             String errorMessage = String.format("Partecipant %s already exists", key);
             System.out.println(errorMessage);
             throw new ChaincodeException(errorMessage, FabCallForProposalErrors.Partecipant_ALREADY_EXISTS.toString());
         }
 
         Partecipant partecipant = new Partecipant(name, Partecipant.WAITING, -1);
-        partecipantState = genson.serialize(partecipant);
-        stub.putStringState(key, partecipantState);
+        putPartecipant(ctx, key, partecipant);
 
         return partecipant;
     }
 
     /* Update */
 
-    public CallForProposal updateCallForProposal(final Context ctx, final String key, final String initiator, final String task, final String state, final List<String> partecipants) {
+    public CallForProposal updateCallForProposal(final CallForProposalContext ctx, final String key, final String initiator, final String task, final String state, final List<String> partecipants) {
         CallForProposal newCallForProposal = new CallForProposal(initiator, task, state, partecipants);
-        String newCallForProposalState = genson.serialize(newCallForProposal);
-        ctx.getStub().putStringState(key, newCallForProposalState);
+        ctx.stateCache.putState(callForProposalLedgerKey(key), CALL_FOR_PROPOSAL_CODEC.encode(newCallForProposal));
         return newCallForProposal;
     }
 
-    public Partecipant updatePartecipant(final Context ctx, final String key, final String name, final String state, final int offer) {
+    public Partecipant updatePartecipant(final CallForProposalContext ctx, final String key, final String name, final String state, final int offer) {
         Partecipant newPartecipant = new Partecipant(name, state, offer);
-        String newPartecipantState = genson.serialize(newPartecipant);
-        ctx.getStub().putStringState(key, newPartecipantState);
+        putPartecipant(ctx, key, newPartecipant);
         return newPartecipant;
     }
 
+    /**
+     * Writes a partecipant and moves its state index entry from the state the
+     * transaction last left it in to its new state.
+     */
+    private void putPartecipant(final CallForProposalContext ctx, final String key, final Partecipant partecipant) {
+        byte[] current = ctx.stateCache.getLatestState(partecipantLedgerKey(key));
+        if (current.length == 0) {
+            current = ctx.stateCache.getState(key);
+        }
+        String currentState = current.length == 0 ? null : PARTECIPANT_CODEC.decode(current).getState();
+        putPartecipant(ctx, key, partecipant, currentState);
+    }
+
+    /**
+     * Writes a partecipant whose state the transaction has left at currentState,
+     * or null for a new partecipant.
+     */
+    private void putPartecipant(final CallForProposalContext ctx, final String key, final Partecipant partecipant, final String currentState) {
+        if (!Objects.equals(currentState, partecipant.getState())) {
+            if (currentState != null) {
+                ctx.stateCache.delState(stateIndexKey(ctx, currentState, key).toString());
+            }
+            ctx.stateCache.putState(stateIndexKey(ctx, partecipant.getState(), key).toString(), INDEX_VALUE);
+        }
+        ctx.stateCache.putState(partecipantLedgerKey(key), PARTECIPANT_CODEC.encode(partecipant));
+    }
+
+    /**
+     * The key of a call for proposal in its namespace.
+     */
+    static String callForProposalLedgerKey(final String key) {
+        return new CompositeKey(CALL_FOR_PROPOSAL_NAMESPACE, key).toString();
+    }
+
+    /**
+     * The key of a partecipant in its namespace.
+     */
+    static String partecipantLedgerKey(final String key) {
+        return new CompositeKey(PARTECIPANT_NAMESPACE, key).toString();
+    }
+
+    /**
+     * The state of a call for proposal, under its key in the namespace or,
+     * until migrateKeys has moved it, under its plain key.
+     */
+    private static byte[] getCallForProposalState(final CallForProposalContext ctx, final String key) {
+        byte[] state = ctx.stateCache.getState(callForProposalLedgerKey(key));
+        return state.length != 0 ? state : ctx.stateCache.getState(key);
+    }
+
+    /**
+     * The state of a partecipant, under its key in the namespace or, until
+     * migrateKeys has moved it, under its plain key.
+     */
+    private static byte[] getPartecipantState(final CallForProposalContext ctx, final String key) {
+        byte[] state = ctx.stateCache.getState(partecipantLedgerKey(key));
+        return state.length != 0 ? state : ctx.stateCache.getState(key);
+    }
+
+    /**
+     * The states of a namespace by their keys, in key order, including those
+     * still under the plain keys of earlier versions until migrateKeys has
+     * moved them. A state in the namespace is newer than the one under its
+     * plain key, which it shadows.
+     */
+    private static SortedMap<String, byte[]> namespaceStates(final CallForProposalContext ctx, final String namespaceName) {
+        CompositeKey namespace = new CompositeKey(namespaceName);
+        SortedMap<String, byte[]> states = new TreeMap<>();
+        for (KeyValue result : ctx.stateCache.getStateByPartialCompositeKey(namespace)) {
+            states.put(nextAttribute(result.getKey(), namespace.toString()), result.getValue());
+        }
+        // earlier versions prefixed the plain keys with the name of the namespace
+        for (KeyValue result : ctx.stateCache.getStateByRange(namespaceName, namespaceName + MAX_UNICODE_RUNE)) {
+            states.putIfAbsent(result.getKey(), result.getValue());
+        }
+        return states;
+    }
+
+    private CompositeKey stateIndexKey(final CallForProposalContext ctx, final String... attributes) {
+        return ctx.getStub().createCompositeKey(STATE_INDEX, attributes);
+    }
+
+    /**
+     * Records the response of a partecipant to a call, a blind write of its own
+     * membership key.
+     */
+    private void respond(final CallForProposalContext ctx, final String cfpKey, final String partecipantKey, final String response) {
+        CompositeKey memberKey = ctx.getStub().createCompositeKey(MEMBER_KEY, cfpKey, partecipantKey);
+        ctx.stateCache.putState(memberKey.toString(), response.getBytes(UTF_8));
+    }
+
+    /**
+     * Derives the partecipants still in a call: the list stored in the call by
+     * earlier versions of this contract, then the members in key order, less
+     * those that refused.
+     */
+    private List<String> partecipantsOf(final CallForProposalContext ctx, final String cfpKey, final CallForProposal callForProposal) {
+        Set<String> partecipants = new LinkedHashSet<>();
+        if (callForProposal.getPartecipants() != null) {
+            partecipants.addAll(callForProposal.getPartecipants());
+        }
+
+        Iterable<KeyValue> members = ctx.stateCache.getStateByPartialCompositeKey(
+                ctx.getStub().createCompositeKey(MEMBER_KEY, cfpKey));
+        for (KeyValue member : members) {
+            String partecipantKey = ctx.getStub().splitCompositeKey(member.getKey()).getAttributes().get(1);
+            if (Partecipant.REFUSED.equals(new String(member.getValue(), UTF_8))) {
+                partecipants.remove(partecipantKey);
+            } else {
+                partecipants.add(partecipantKey);
+            }
+        }
+        return new ArrayList<>(partecipants);
+    }
+
+    private CallForProposal withPartecipants(final CallForProposalContext ctx, final String cfpKey, final CallForProposal callForProposal) {
+        CallForProposal view = new CallForProposal(callForProposal.getInitiator(), callForProposal.getTask(),
+                callForProposal.getState(), partecipantsOf(ctx, cfpKey, callForProposal));
+        view.setWinner(callForProposal.getWinner());
+        return view;
+    }
+
     /* Query */
 
-    public CallForProposal getCallForProposal(final Context ctx, final String key){
-        ChaincodeStub stub = ctx.getStub();
-        String callForProposalState = stub.getStringState(key);
-        if (callForProposalState.isEmpty()) {
+    public CallForProposal getCallForProposal(final CallForProposalContext ctx, final String key){
+        byte[] callForProposalState = getCallForProposalState(ctx, key);
+        if (callForProposalState.length == 0) {
             String errorMessage = String.format("CallForProposal %s does not exist", key);
             System.out.println(errorMessage);
             throw new ChaincodeException(errorMessage, FabCallForProposalErrors.CallForProposal_NOT_FOUND.toString());
         }
-        CallForProposal callForProposal = genson.deserialize(callForProposalState, CallForProposal.class);
+        CallForProposal callForProposal = CALL_FOR_PROPOSAL_CODEC.decode(callForProposalState);
         return callForProposal;
     }
 
-    public Partecipant getPartecipant(final Context ctx, final String key){
-        ChaincodeStub stub = ctx.getStub();
-        String partecipantState = stub.getStringState(key);
-        if (partecipantState.isEmpty()) {
+    public Partecipant getPartecipant(final CallForProposalContext ctx, final String key){
+        byte[] partecipantState = getPartecipantState(ctx, key);
+        if (partecipantState.length == 0) {
             String errorMessage = String.format("Partecipant %s does not exist", key);
             System.out.println(errorMessage);
             throw new ChaincodeException(errorMessage, FabCallForProposalErrors.Partecipant_NOT_FOUND.toString());
         }
-        Partecipant partecipant = genson.deserialize(partecipantState, Partecipant.class);
+        Partecipant partecipant = PARTECIPANT_CODEC.decode(partecipantState);
         return partecipant;
     }
 
-    @Transaction()
-    public String queryAllCallForProposals(final Context ctx) {
-        ChaincodeStub stub = ctx.getStub();
+    /**
+     * Retrieves all calls for proposal with their current partecipants. The
+     * response may be served from the query cache, up to the cache TTL stale,
+     * when an evaluated proposal asks for it in its transient data.
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryAllCallForProposals(final CallForProposalContext ctx) {
+        final CompositeKey namespace = new CompositeKey(CALL_FOR_PROPOSAL_NAMESPACE);
+        final String prefix = namespace.toString();
+        final List<String> query = Collections.singletonList("queryAllCallForProposals");
+
+        String cached = QUERY_CACHE.get(ctx.getStub(), query);
+        if (cached != null) {
+            return cached;
+        }
 
-        final String startKey = "cfp1";
-        final String endKey = "cfp99";
+        final String memberPrefix = ctx.getStub().createCompositeKey(MEMBER_KEY).toString();
         List<CallForProposalQueryResult> queryResults = new ArrayList<>();
 
-        QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, endKey);
-
-        for (KeyValue result: results) {
-            CallForProposal callForProposal = genson.deserialize(result.getStringValue(), CallForProposal.class);
-            queryResults.add(new CallForProposalQueryResult(result.getKey(), callForProposal));
+        for (Map.Entry<String, byte[]> result : namespaceStates(ctx, CALL_FOR_PROPOSAL_NAMESPACE).entrySet()) {
+            String key = result.getKey();
+            CallForProposal callForProposal = CALL_FOR_PROPOSAL_CODEC.decode(result.getValue());
+            queryResults.add(new CallForProposalQueryResult(key, withPartecipants(ctx, key, callForProposal)));
         }
 
-        final String response = genson.serialize(queryResults);
+        final String response = GENSON.serialize(queryResults);
+        QUERY_CACHE.put(query, Arrays.asList(memberPrefix, prefix), response);
 
         return response;
     }
 
-    @Transaction()
-    public String queryAllPartecipants(final Context ctx) {
-        ChaincodeStub stub = ctx.getStub();
+    /**
+     * Retrieves a call for proposal with its current partecipants, those called
+     * that have not refused.
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public CallForProposal queryCallForProposal(final CallForProposalContext ctx, final String key) {
+        return withPartecipants(ctx, key, getCallForProposal(ctx, key));
+    }
 
-        final String startKey = "prt1";
-        final String endKey = "prt99";
-        List<PartecipantQueryResult> queryResults = new ArrayList<>();
+    /**
+     * Counts the partecipants called by a call for proposal that have not refused.
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public int countCallForProposalPartecipants(final CallForProposalContext ctx, final String key) {
+        return partecipantsOf(ctx, key, getCallForProposal(ctx, key)).size();
+    }
 
-        QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, endKey);
+    /**
+     * Retrieves all partecipants. The response may be served from the query
+     * cache, up to the cache TTL stale, when an evaluated proposal asks for it
+     * in its transient data.
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryAllPartecipants(final CallForProposalContext ctx) {
+        final CompositeKey namespace = new CompositeKey(PARTECIPANT_NAMESPACE);
+        final String prefix = namespace.toString();
+        final List<String> query = Collections.singletonList("queryAllPartecipants");
+
+        String cached = QUERY_CACHE.get(ctx.getStub(), query);
+        if (cached != null) {
+            return cached;
+        }
 
-        for (KeyValue result: results) {
-            Partecipant partecipant = genson.deserialize(result.getStringValue(), Partecipant.class);
+        List<PartecipantQueryResult> queryResults = new ArrayList<>();
+
+        for (Map.Entry<String, byte[]> result : namespaceStates(ctx, PARTECIPANT_NAMESPACE).entrySet()) {
+            Partecipant partecipant = PARTECIPANT_CODEC.decode(result.getValue());
             queryResults.add(new PartecipantQueryResult(result.getKey(), partecipant));
         }
 
-        final String response = genson.serialize(queryResults);
+        final String response = GENSON.serialize(queryResults);
+        QUERY_CACHE.put(query, Collections.singletonList(prefix), response);
 
         return response;
     }
@@ -196,34 +432,28 @@ public final class CallForProposalContract implements ContractInterface {
     /* operations */
 
     @Transaction()
-    public String callAllPartecipants(final Context ctx, final String key) {
-        ChaincodeStub stub = ctx.getStub();
-
+    public String callAllPartecipants(final CallForProposalContext ctx, final String key) {
         CallForProposal callForProposal = getCallForProposal(ctx, key);
 
-        final String startKey = "prt1";
-        final String endKey = "prt99";
-
-        List<PartecipantQueryResult> queryResults = new ArrayList<>();
         List<String> partecipants = new ArrayList<>();
-        QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, endKey);
+        Iterable<KeyValue> results = ctx.stateCache.getStateByPartialCompositeKey(stateIndexKey(ctx, Partecipant.WAITING));
 
         for (KeyValue result: results) {
-            Partecipant partecipant = getPartecipant(ctx, result.getKey());
+            String partecipantKey = ctx.getStub().splitCompositeKey(result.getKey()).getAttributes().get(1);
+            Partecipant partecipant = getPartecipant(ctx, partecipantKey);
             if (partecipant.isWaiting()) {
-                partecipants.add(result.getKey());
-                updatePartecipant(ctx, result.getKey(), partecipant.getName(), Partecipant.CALLED, -1);
+                partecipants.add(partecipantKey);
+                updatePartecipant(ctx, partecipantKey, partecipant.getName(), Partecipant.CALLED, -1);
+                respond(ctx, key, partecipantKey, Partecipant.CALLED);
             }
         }
 
-        updateCallForProposal(ctx, key, callForProposal.getInitiator(), callForProposal.getTask(), CallForProposal.CALLING, partecipants);
+        updateCallForProposal(ctx, key, callForProposal.getInitiator(), callForProposal.getTask(), CallForProposal.CALLING, callForProposal.getPartecipants());
         return partecipants.toString();
     }
 
     @Transaction()
-    public String refuseCallForProposal(final Context ctx, final String partecipantKey, final String cfpKey) {
-        ChaincodeStub stub = ctx.getStub();
-
+    public String refuseCallForProposal(final CallForProposalContext ctx, final String partecipantKey, final String cfpKey) {
         CallForProposal callForProposal = getCallForProposal(ctx, cfpKey);
         Partecipant partecipant = getPartecipant(ctx, partecipantKey);
 
@@ -234,19 +464,13 @@ public final class CallForProposalContract implements ContractInterface {
         }
 
         updatePartecipant(ctx, partecipantKey, partecipant.getName(), Partecipant.REFUSED, -1);
+        respond(ctx, cfpKey, partecipantKey, Partecipant.REFUSED);
 
-        List<String> partecipants = callForProposal.getPartecipants();
-        partecipants.remove(partecipantKey);
-
-        updateCallForProposal(ctx, cfpKey, callForProposal.getInitiator(), callForProposal.getTask(), CallForProposal.CALLING, partecipants);
-
-        return partecipants.toString();
+        return String.format("Partecipant %s refused call for proposal %s", partecipantKey, cfpKey);
     }
 
     @Transaction()
-    public String proposeForCallForProposal(final Context ctx, final String partecipantKey, final String cfpKey, final int offer) {
-        ChaincodeStub stub = ctx.getStub();
-
+    public String proposeForCallForProposal(final CallForProposalContext ctx, final String partecipantKey, final String cfpKey, final int offer) {
         CallForProposal callForProposal = getCallForProposal(ctx, cfpKey);
         Partecipant partecipant = getPartecipant(ctx, partecipantKey);
 
@@ -257,37 +481,163 @@ public final class CallForProposalContract implements ContractInterface {
         }
 
         updatePartecipant(ctx, partecipantKey, partecipant.getName(), Partecipant.PROPOSED, offer);
-        List<String> partecipants = callForProposal.getPartecipants();
-        updateCallForProposal(ctx, cfpKey, callForProposal.getInitiator(), callForProposal.getTask(), CallForProposal.CALLING, partecipants);
+        CompositeKey bidKey = ctx.getStub().createCompositeKey(BID_KEY, cfpKey, partecipantKey, ctx.getStub().getTxId());
+        ctx.stateCache.putState(bidKey.toString(), Integer.toString(offer).getBytes(UTF_8));
 
-        return partecipants.toString();
+        return String.format("Partecipant %s proposed %d for call for proposal %s", partecipantKey, offer, cfpKey);
     }
 
     @Transaction()
-    public String callForProposalResult(final Context ctx, final String winnerKey) {
-        ChaincodeStub stub = ctx.getStub();
+    public String callForProposalResult(final CallForProposalContext ctx, final String winnerKey) {
+        Partecipant winner = getPartecipant(ctx, winnerKey);
+        return awardCallForProposal(ctx, winnerKey, winner.getOffer());
+    }
+
+    /**
+     * Puts the winner to work at its winning offer and every other busy
+     * partecipant back to WAITING.
+     */
+    private String awardCallForProposal(final CallForProposalContext ctx, final String winnerKey, final int offer) {
+        List<String> updated = new ArrayList<>();
+
+        // WAITING partecipants already are where the others end up
+        for (String state : NOT_WAITING) {
+            Iterable<KeyValue> results = ctx.stateCache.getStateByPartialCompositeKey(stateIndexKey(ctx, state));
+            for (KeyValue result : results) {
+                String partecipantKey = ctx.getStub().splitCompositeKey(result.getKey()).getAttributes().get(1);
+                if (!partecipantKey.equals(winnerKey)) {
+                    Partecipant partecipant = getPartecipant(ctx, partecipantKey);
+                    updatePartecipant(ctx, partecipantKey, partecipant.getName(), Partecipant.WAITING, -1);
+                    updated.add(partecipantKey);
+                }
+            }
+        }
 
-        final String startKey = "prt1";
-        final String endKey = "prt99";
-        QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, endKey);
+        Partecipant winner = getPartecipant(ctx, winnerKey);
+        updatePartecipant(ctx, winnerKey, winner.getName(), Partecipant.WORKING, offer);
+        updated.add(winnerKey);
 
+        return GENSON.serialize(updated);
+    }
+
+    /**
+     * Retrieves one page of partecipant keys, in key order, starting from
+     * bookmark, empty for the first page. Used to feed
+     * rebuildPartecipantStateIndex one chunk at a time; only pageSize keys are
+     * read, so a large ledger is walked page by page using the returned
+     * bookmark.
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryPartecipantKeys(final CallForProposalContext ctx, final int pageSize, final String bookmark) {
+        checkChunkSize(pageSize);
+
+        CompositeKey namespace = new CompositeKey(PARTECIPANT_NAMESPACE);
+        QueryResultsIteratorWithMetadata<KeyValue> results =
+                ctx.getStub().getStateByPartialCompositeKeyWithPagination(namespace, pageSize, bookmark);
+
+        List<String> keys = new ArrayList<>(pageSize);
         for (KeyValue result : results) {
-            Partecipant partecipant = getPartecipant(ctx, result.getKey());
-            Partecipant newPartecipant;
-            if (result.getKey().equals(winnerKey)) {
-                updatePartecipant(ctx, result.getKey(), partecipant.getName(), Partecipant.WORKING, partecipant.getOffer());
+            keys.add(nextAttribute(result.getKey(), namespace.toString()));
+        }
+
+        return GENSON.serialize(new KeyPage(keys, results.getMetadata().getBookmark()));
+    }
+
+    /**
+     * Rebuilds the state~partecipantKey entries of the partecipants listed in
+     * partecipantKeys, a JSON array of at most the maximum chunk size keys, for
+     * ledgers written before the index existed. Each partecipant gets the entry
+     * of its state and loses those of the other states. Walk the partecipants
+     * with queryPartecipantKeys and submit each page here, once migrateKeys has
+     * moved every partecipant into its namespace.
+     *
+     * The shim only resumes ranges of simple keys, and paginated queries cannot
+     * be submitted, so the chunk is listed by an evaluated query and this
+     * transaction only reads the partecipants it is given.
+     */
+    @Transaction()
+    public int rebuildPartecipantStateIndex(final CallForProposalContext ctx, final String partecipantKeys) {
+        List<String> keys = readKeys(partecipantKeys);
+        checkChunkSize(keys.size());
+
+        for (String key : keys) {
+            String state = getPartecipant(ctx, key).getState();
+            for (String other : PARTECIPANT_STATES) {
+                if (!other.equals(state)) {
+                    ctx.stateCache.delState(stateIndexKey(ctx, other, key).toString());
+                }
+            }
+            ctx.stateCache.putState(stateIndexKey(ctx, state, key).toString(), INDEX_VALUE);
+        }
+
+        return keys.size();
+    }
+
+    /**
+     * Moves up to chunkSize calls for proposal and partecipants written by
+     * earlier versions of this contract from their plain keys into their
+     * namespaces, starting from bookmark, empty for the first chunk. Call it
+     * again with the returned bookmark until it comes back empty; each chunk is
+     * a transaction of its own, so a large ledger is converted while the
+     * contract keeps serving. Earlier versions keyed partecipants prt1, prt2, ...
+     * and calls for proposal cfp1, cfp2, ..., so a plain key is classified by
+     * its prefix; a key with neither prefix is not one of ours and fails the
+     * chunk rather than being moved into the wrong namespace. One already
+     * written under its new key is newer, and only its plain key is deleted.
+     */
+    @Transaction()
+    public String migrateKeys(final CallForProposalContext ctx, final int chunkSize, final String bookmark) {
+        checkChunkSize(chunkSize);
+
+        // an open range holds the plain keys only, composite keys sort before it;
+        // paginated queries cannot be submitted, so the chunk stops the scan itself
+        int migrated = 0;
+        String next = "";
+        for (KeyValue result : ctx.stateCache.getStateByRange(bookmark, "")) {
+            if (migrated == chunkSize) {
+                next = result.getKey();
+                break;
             }
-            else {
-                updatePartecipant(ctx, result.getKey(), partecipant.getName(), Partecipant.WAITING, -1);
+            String key = namespacedKey(result.getKey());
+            if (ctx.stateCache.getState(key).length == 0) {
+                ctx.stateCache.putState(key, result.getValue());
             }
+            ctx.stateCache.delState(result.getKey());
+            migrated++;
         }
-        return genson.serialize(results);
+
+        return GENSON.serialize(new KeyMigration(migrated, next));
+    }
+
+    /**
+     * Closes a call for proposal and awards it to the best proposal of the
+     * partecipants still in the call: the highest offer, ties going to the
+     * partecipant with the lowest key in String order, so prt10 wins over prt2.
+     * Returns the winner's key.
+     */
+    @Transaction()
+    public String closeCallForProposal(final CallForProposalContext ctx, final String cfpKey) {
+        return closeCall(ctx, cfpKey, 1).get(0).getPartecipantKey();
     }
 
+    /**
+     * Closes a call for proposal as closeCallForProposal does, and returns the
+     * best count proposals, best first; the first one is the winner.
+     */
     @Transaction()
-    public String closeCallForProposal(final Context ctx, final String cfpKey) {
-        ChaincodeStub stub = ctx.getStub();
+    public String closeCallForProposalTopK(final CallForProposalContext ctx, final String cfpKey, final int count) {
+        return GENSON.serialize(closeCall(ctx, cfpKey, count));
+    }
 
+    /**
+     * Ranks the proposals in one pass over the bids, merged with the membership
+     * keys since both are in partecipant key order, keeping only the best count
+     * proposals; the bids are consumed. Then settles every partecipant of the
+     * call with a single write: the winner goes to work at its offer and the
+     * others back to WAITING. Partecipants outside the call are not touched, so
+     * the cost of closing is bounded by the size of the call.
+     */
+    private List<Proposal> closeCall(final CallForProposalContext ctx, final String cfpKey, final int count) {
         CallForProposal callForProposal = getCallForProposal(ctx, cfpKey);
 
         if (!callForProposal.isCalling()) {
@@ -295,31 +645,149 @@ public final class CallForProposalContract implements ContractInterface {
             System.out.println(errorMessage);
             throw new ChaincodeException(errorMessage, errorMessage);
         }
+        if (count < 1) {
+            String errorMessage = String.format("Count must be at least 1, got %d", count);
+            System.out.println(errorMessage);
+            throw new ChaincodeException(errorMessage, errorMessage);
+        }
 
-        List<PartecipantQueryResult> proposed = new ArrayList<>();
-        for(String key: callForProposal.getPartecipants()){
-            Partecipant partecipant = getPartecipant(ctx, key);
-            if(partecipant.isProposed()){
-                proposed.add(new PartecipantQueryResult(key, partecipant));
+        // partecipants stored in the call by earlier versions of this contract
+        Set<String> listed = callForProposal.getPartecipants() == null
+                ? Collections.emptySet() : new LinkedHashSet<>(callForProposal.getPartecipants());
+        CompositeKey memberPrefix = ctx.getStub().createCompositeKey(MEMBER_KEY, cfpKey);
+        CompositeKey bidPrefix = ctx.getStub().createCompositeKey(BID_KEY, cfpKey);
+
+        ProposalRanking ranking = new ProposalRanking(count);
+        Iterator<KeyValue> members = ctx.stateCache.getStateByPartialCompositeKey(memberPrefix).iterator();
+        KeyValue member = null;
+        String memberKey = null;
+        String bidder = null;
+        boolean inCall = false;
+        int bestOffer = 0;
+        for (KeyValue bid : ctx.stateCache.getStateByPartialCompositeKey(bidPrefix)) {
+            String partecipantKey = nextAttribute(bid.getKey(), bidPrefix.toString());
+            int offer = Integer.parseInt(new String(bid.getValue(), UTF_8));
+            ctx.stateCache.delState(bid.getKey());
+
+            if (partecipantKey.equals(bidder)) {
+                bestOffer = Math.max(bestOffer, offer);
+                continue;
             }
-            updatePartecipant(ctx, key, partecipant.getName(), Partecipant.WAITING, -1);
+            if (inCall) {
+                ranking.offer(bidder, bestOffer);
+            }
+
+            bidder = partecipantKey;
+            bestOffer = offer;
+            while ((memberKey == null || memberKey.compareTo(partecipantKey) < 0) && members.hasNext()) {
+                member = members.next();
+                memberKey = nextAttribute(member.getKey(), memberPrefix.toString());
+            }
+            if (partecipantKey.equals(memberKey)) {
+                inCall = !Partecipant.REFUSED.equals(new String(member.getValue(), UTF_8));
+            } else {
+                inCall = listed.contains(partecipantKey);
+            }
+        }
+        if (inCall) {
+            ranking.offer(bidder, bestOffer);
+        }
+
+        if (ranking.isEmpty()) {
+            String errorMessage = String.format("Call for proposal %s has no proposals", cfpKey);
+            System.out.println(errorMessage);
+            throw new ChaincodeException(errorMessage, errorMessage);
+        }
+        List<Proposal> best = ranking.best();
+        Proposal winner = best.get(0);
+
+        Set<String> unsettled = new LinkedHashSet<>(listed);
+        for (KeyValue result : ctx.stateCache.getStateByPartialCompositeKey(memberPrefix)) {
+            String partecipantKey = nextAttribute(result.getKey(), memberPrefix.toString());
+            unsettled.remove(partecipantKey);
+            settlePartecipant(ctx, partecipantKey, winner);
+        }
+        for (String partecipantKey : unsettled) {
+            settlePartecipant(ctx, partecipantKey, winner);
         }
 
-        PartecipantQueryResult winner = Collections.max(proposed, Comparator.comparingInt(PartecipantQueryResult::getOffer));
-        callForProposalResult(ctx, winner.getKey());
         CallForProposal newCallForProposal = new CallForProposal(callForProposal.getInitiator(), callForProposal.getTask(),CallForProposal.WORKING, callForProposal.getPartecipants());
-        newCallForProposal.setWinner(winner.getKey());
-        String newCallForProposalState = genson.serialize(newCallForProposal);
-        ctx.getStub().putStringState(cfpKey, newCallForProposalState);
+        newCallForProposal.setWinner(winner.getPartecipantKey());
+        ctx.stateCache.putState(callForProposalLedgerKey(cfpKey), CALL_FOR_PROPOSAL_CODEC.encode(newCallForProposal));
 
-        return winner.getKey();
+        return best;
+    }
 
+    /**
+     * The key in its namespace of a plain key written by an earlier version.
+     */
+    private static String namespacedKey(final String plainKey) {
+        if (plainKey.startsWith(PARTECIPANT_NAMESPACE)) {
+            return partecipantLedgerKey(plainKey);
+        }
+        if (plainKey.startsWith(CALL_FOR_PROPOSAL_NAMESPACE)) {
+            return callForProposalLedgerKey(plainKey);
+        }
+        String errorMessage = String.format("Key %s is neither a partecipant nor a call for proposal key", plainKey);
+        System.out.println(errorMessage);
+        throw new ChaincodeException(errorMessage, errorMessage);
     }
 
-    @Transaction()
-    public String endCallForProposal(final Context ctx, final String cfpKey) {
-        ChaincodeStub stub = ctx.getStub();
+    /**
+     * The keys of a JSON array of strings, rejecting null and malformed input.
+     */
+    private static List<String> readKeys(final String json) {
+        List<String> keys;
+        try {
+            JsonReader reader = new JsonReader(json.getBytes(UTF_8));
+            keys = reader.nextStringArray();
+            reader.endDocument();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            keys = null;
+        }
+        if (keys == null || keys.contains(null)) {
+            String errorMessage = String.format("Keys must be a JSON array of strings: %s", json);
+            System.out.println(errorMessage);
+            throw new ChaincodeException(errorMessage, errorMessage);
+        }
+        return keys;
+    }
 
+    private static void checkChunkSize(final int chunkSize) {
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+            String errorMessage = String.format("Chunk size must be between 1 and %d", MAX_CHUNK_SIZE);
+            System.out.println(errorMessage);
+            throw new ChaincodeException(errorMessage, errorMessage);
+        }
+    }
+
+    /**
+     * The attribute following prefix in a composite key returned by a partial
+     * composite key query on prefix; cheaper than splitting the whole key.
+     */
+    private static String nextAttribute(final String compositeKey, final String prefix) {
+        int start = prefix.length();
+        return compositeKey.substring(start, compositeKey.indexOf(COMPOSITE_KEY_DELIMITER, start));
+    }
+
+    /**
+     * Puts the winner to work at its winning offer and any other partecipant of
+     * the call back to WAITING, skipping those already waiting.
+     */
+    private void settlePartecipant(final CallForProposalContext ctx, final String partecipantKey, final Proposal winner) {
+        // written at most once, so the state read is the one to move the index entry from
+        Partecipant partecipant = getPartecipant(ctx, partecipantKey);
+        if (partecipantKey.equals(winner.getPartecipantKey())) {
+            putPartecipant(ctx, partecipantKey, new Partecipant(partecipant.getName(), Partecipant.WORKING,
+                    winner.getOffer()), partecipant.getState());
+        } else if (!partecipant.isWaiting() || partecipant.getOffer() != -1) {
+            putPartecipant(ctx, partecipantKey, new Partecipant(partecipant.getName(), Partecipant.WAITING, -1),
+                    partecipant.getState());
+        }
+    }
+
+    @Transaction()
+    public String endCallForProposal(final CallForProposalContext ctx, final String cfpKey) {
         CallForProposal callForProposal = getCallForProposal(ctx, cfpKey);
 
         if (!callForProposal.isWorking()) {
@@ -332,10 +800,27 @@ public final class CallForProposalContract implements ContractInterface {
         updatePartecipant(ctx, callForProposal.getWinner(), partecipant.getName(), Partecipant.WAITING, -1);
         CallForProposal newCallForProposal = new CallForProposal(callForProposal.getInitiator(), callForProposal.getTask(),CallForProposal.ENDED, callForProposal.getPartecipants());
         newCallForProposal.setWinner(callForProposal.getWinner());
-        String newCallForProposalState = genson.serialize(newCallForProposal);
-        ctx.getStub().putStringState(cfpKey, newCallForProposalState);
+        ctx.stateCache.putState(callForProposalLedgerKey(cfpKey), CALL_FOR_PROPOSAL_CODEC.encode(newCallForProposal));
 
         return "Call for proposal ended";
     }
+
+    /**
+     * Runs sample documents through the codecs and Genson, so their classes are
+     * loaded and Genson's converters built before the first transaction rather
+     * than during it.
+     */
+    static void warmUp() {
+        CallForProposal callForProposal = new CallForProposal("Alice", "warm-up", CallForProposal.CREATED,
+                Collections.singletonList("PRT0"));
+        callForProposal = CALL_FOR_PROPOSAL_CODEC.decode(CALL_FOR_PROPOSAL_CODEC.encode(callForProposal));
+        Partecipant partecipant = PARTECIPANT_CODEC.decode(
+                PARTECIPANT_CODEC.encode(new Partecipant("Bob", Partecipant.WAITING, -1)));
+
+        GENSON.serialize(Collections.singletonList(new CallForProposalQueryResult("CFP0", callForProposal)));
+        GENSON.serialize(Collections.singletonList(new PartecipantQueryResult("PRT0", partecipant)));
+        GENSON.serialize(Collections.singletonList("PRT0"));
+        GENSON.serialize(new KeyMigration(0, ""));
+    }
 }
 
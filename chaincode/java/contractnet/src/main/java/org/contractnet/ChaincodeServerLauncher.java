@@ -0,0 +1,200 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.contract.ContractInterface;
+import org.hyperledger.fabric.contract.ContractRouter;
+import org.hyperledger.fabric.contract.annotation.Serializer;
+import org.hyperledger.fabric.contract.execution.JSONTransactionSerializer;
+import org.hyperledger.fabric.contract.routing.RoutingRegistry;
+import org.hyperledger.fabric.contract.routing.TypeRegistry;
+import org.hyperledger.fabric.contract.routing.impl.SerializerRegistryImpl;
+import org.hyperledger.fabric.samples.metrics.AccessProfiler;
+import org.hyperledger.fabric.shim.ChaincodeServer;
+import org.hyperledger.fabric.shim.ChaincodeServerProperties;
+import org.hyperledger.fabric.shim.NettyChaincodeServer;
+
+/**
+ * Runs the contracts of this module as an external chaincode service, the peer
+ * connecting to us, instead of under the peer's Java builder. This puts the
+ * shim's thread pool, the gRPC server and the JVM flags under our control.
+ *
+ * Configured from the environment, like the shim: CHAINCODE_SERVER_ADDRESS and
+ * CORE_CHAINCODE_ID_NAME (the package ID) are required, TLS uses the shim's own
+ * CHAINCODE_TLS_* variables, and the variables below tune the server.
+ */
+public final class ChaincodeServerLauncher {
+
+    /** Threads running transactions, the shim's pool size. */
+    static final String EXECUTOR_THREADS = "CHAINCODE_EXECUTOR_THREADS";
+
+    /** Transactions queued once every executor thread is busy. */
+    static final String EXECUTOR_QUEUE = "CHAINCODE_EXECUTOR_QUEUE";
+
+    /** Netty event loops serving the gRPC connections. */
+    static final String EVENT_LOOP_THREADS = "CHAINCODE_EVENT_LOOP_THREADS";
+
+    /** Largest message accepted from the peer, in bytes. */
+    static final String MAX_INBOUND_MESSAGE_SIZE = "CHAINCODE_MAX_INBOUND_MESSAGE_SIZE";
+
+    /** Run transactions on virtual threads, where the runtime and shim allow it. */
+    static final String VIRTUAL_THREADS = "CHAINCODE_VIRTUAL_THREADS";
+
+    /**
+     * Load the contracts and exit without serving, so a class list or a CDS
+     * archive can be recorded from the startup path.
+     */
+    static final String TRAINING_RUN = "CHAINCODE_TRAINING_RUN";
+
+    /**
+     * host:port to serve per transaction metrics on, in the Prometheus text
+     * format at /metrics; metrics are not recorded when unset.
+     */
+    static final String METRICS_ADDRESS = "CHAINCODE_METRICS_ADDRESS";
+
+    /**
+     * Profile the keys read and written by one transaction in this many, and
+     * serve the hot keys at /profile next to the metrics; needs METRICS_ADDRESS.
+     */
+    static final String PROFILE_SAMPLING = "CHAINCODE_PROFILE_SAMPLING";
+
+    private static final String NETTY_EVENT_LOOP_THREADS = "io.grpc.netty.shaded.io.netty.eventLoopThreads";
+
+    /** Set to "runtime" by GraalVM inside a native image. */
+    private static final String IMAGE_CODE = "org.graalvm.nativeimage.imagecode";
+
+    private static final Logger LOGGER = Logger.getLogger(ChaincodeServerLauncher.class.getName());
+
+    private ChaincodeServerLauncher() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        Map<String, String> env = System.getenv();
+
+        // read by Netty when its first event loop group is built
+        if (env.containsKey(EVENT_LOOP_THREADS)) {
+            System.setProperty(NETTY_EVENT_LOOP_THREADS, String.valueOf(positive(env, EVENT_LOOP_THREADS)));
+        }
+        if (Boolean.parseBoolean(env.get(VIRTUAL_THREADS))) {
+            // the shim builds its ThreadPoolExecutor without a ThreadFactory hook
+            LOGGER.warning(VIRTUAL_THREADS + " is set, but this shim cannot dispatch transactions on virtual"
+                    + " threads; using " + EXECUTOR_THREADS + " platform threads");
+        }
+
+        ContractRouter router = new ContractRouter(args);
+        if ("runtime".equals(System.getProperty(IMAGE_CODE))) {
+            registerContracts(router);
+        }
+
+        // the shim reads its pool settings from this Properties when the peer connects
+        Properties config = router.getChaincodeConfig();
+        if (env.containsKey(EXECUTOR_THREADS)) {
+            String threads = String.valueOf(positive(env, EXECUTOR_THREADS));
+            config.setProperty("TP_CORE_POOL_SIZE", threads);
+            config.setProperty("TP_MAX_POOL_SIZE", threads);
+        }
+        if (env.containsKey(EXECUTOR_QUEUE)) {
+            config.setProperty("TP_QUEUE_SIZE", String.valueOf(positive(env, EXECUTOR_QUEUE)));
+        }
+
+        ChaincodeServerProperties serverProperties = router.getChaincodeServerConfig();
+        if (env.containsKey(MAX_INBOUND_MESSAGE_SIZE)) {
+            serverProperties.setMaxInboundMessageSize(positive(env, MAX_INBOUND_MESSAGE_SIZE));
+        }
+
+        LOGGER.info(String.format("Serving on %s with %s executor threads, %s event loops, %d byte messages",
+                serverProperties.getServerAddress(), config.getProperty("TP_MAX_POOL_SIZE", "default"),
+                System.getProperty(NETTY_EVENT_LOOP_THREADS, "default"), serverProperties.getMaxInboundMessageSize()));
+
+        // off the transaction path: class loading, codec and serializer set-up
+        CallForProposalContract.warmUp();
+
+        ChaincodeServer server = new NettyChaincodeServer(router, serverProperties);
+        if (Boolean.parseBoolean(env.get(TRAINING_RUN))) {
+            // scans the contracts and builds their metadata, then returns at once
+            router.startRouterWithChaincodeServer(new ChaincodeServer() {
+                @Override
+                public void start() {
+                }
+
+                @Override
+                public void stop() {
+                }
+            });
+            server.stop();
+            LOGGER.info("Training run complete");
+            return;
+        }
+        if (env.containsKey(METRICS_ADDRESS)) {
+            InetSocketAddress address = address(env, METRICS_ADDRESS);
+            if (env.containsKey(PROFILE_SAMPLING)) {
+                CallForProposalContract.METRICS.profile(new AccessProfiler(positive(env, PROFILE_SAMPLING)));
+            }
+            CallForProposalContract.METRICS.serve(address);
+            LOGGER.info("Serving metrics on http://" + address.getHostString() + ":" + address.getPort()
+                    + "/metrics");
+        }
+        router.startRouterWithChaincodeServer(server);
+    }
+
+    /**
+     * A native image has no class path, so the shim's scans for contracts, data
+     * types and serializers find nothing; hand ours to its registries instead.
+     * The members used here are listed in this module's reflect-config.json.
+     */
+    @SuppressWarnings("unchecked")
+    private static void registerContracts(final ContractRouter router) throws ReflectiveOperationException {
+        Method routingRegistry = ContractRouter.class.getDeclaredMethod("getRoutingRegistry");
+        routingRegistry.setAccessible(true);
+        ((RoutingRegistry) routingRegistry.invoke(router))
+                .addNewContract((Class<ContractInterface>) (Class<?>) CallForProposalContract.class);
+
+        TypeRegistry types = TypeRegistry.getRegistry();
+        for (Class<?> type : Arrays.asList(CallForProposal.class, CallForProposalQueryResult.class, Partecipant.class,
+                PartecipantQueryResult.class, Proposal.class, KeyMigration.class)) {
+            types.addDataType(type);
+        }
+
+        Field serializers = ContractRouter.class.getDeclaredField("serializers");
+        serializers.setAccessible(true);
+        Method add = SerializerRegistryImpl.class.getDeclaredMethod("add", String.class, Serializer.TARGET.class,
+                Class.class);
+        add.setAccessible(true);
+        add.invoke(serializers.get(router), JSONTransactionSerializer.class.getCanonicalName(),
+                Serializer.TARGET.TRANSACTION, JSONTransactionSerializer.class);
+    }
+
+    private static InetSocketAddress address(final Map<String, String> env, final String name) {
+        String value = env.get(name).trim();
+        int colon = value.lastIndexOf(':');
+        try {
+            int port = Integer.parseInt(value.substring(colon + 1));
+            return colon < 1 ? new InetSocketAddress(port) : new InetSocketAddress(value.substring(0, colon), port);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(name + " must be host:port, got " + env.get(name), e);
+        }
+    }
+
+    private static int positive(final Map<String, String> env, final String name) {
+        int value;
+        try {
+            value = Integer.parseInt(env.get(name).trim());
+        } catch (NumberFormatException e) {
+            value = 0;
+        }
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be a positive integer, got " + env.get(name));
+        }
+        return value;
+    }
+}
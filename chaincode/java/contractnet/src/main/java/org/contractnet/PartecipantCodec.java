@@ -0,0 +1,85 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.hyperledger.fabric.samples.json.JsonReader;
+import org.hyperledger.fabric.samples.json.JsonWriter;
+import org.hyperledger.fabric.samples.metrics.TransactionMetrics;
+
+/**
+ * Reflection free JSON codec for Partecipant that reads and writes the byte[]
+ * values of the world state directly. Properties are written in Genson's
+ * alphabetical order; the derived isXxx() flags Genson also emitted are not
+ * stored and are skipped when reading older values.
+ */
+public final class PartecipantCodec {
+
+    private static final byte[][] FIELDS = {
+        "name".getBytes(UTF_8),
+        "offer".getBytes(UTF_8),
+        "state".getBytes(UTF_8)
+    };
+
+    private static final byte[] NAME = JsonWriter.name("name");
+    private static final byte[] OFFER = JsonWriter.name("offer");
+    private static final byte[] STATE = JsonWriter.name("state");
+
+    private final ThreadLocal<JsonWriter> writers = ThreadLocal.withInitial(JsonWriter::new);
+
+    public byte[] encode(final Partecipant partecipant) {
+        long start = TransactionMetrics.serializationStart();
+        try {
+            return writers.get().beginObject()
+                    .field(NAME, partecipant.getName())
+                    .field(OFFER, partecipant.getOffer())
+                    .field(STATE, partecipant.getState())
+                    .endObject();
+        } finally {
+            TransactionMetrics.serialized(start);
+        }
+    }
+
+    public Partecipant decode(final byte[] data) {
+        long start = TransactionMetrics.serializationStart();
+        try {
+            return read(data);
+        } finally {
+            TransactionMetrics.serialized(start);
+        }
+    }
+
+    private Partecipant read(final byte[] data) {
+        String name = null;
+        int offer = 0;
+        String state = null;
+
+        try {
+            JsonReader reader = new JsonReader(data);
+            reader.beginObject();
+            while (reader.hasNextField()) {
+                switch (reader.nextField(FIELDS)) {
+                    case 0:
+                        name = reader.nextString();
+                        break;
+                    case 1:
+                        offer = reader.nextInt();
+                        break;
+                    case 2:
+                        state = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endDocument();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed JSON: unexpected end of document", e);
+        }
+
+        return new Partecipant(name, state, offer);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import com.owlike.genson.annotation.JsonProperty;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import java.util.Objects;
+
+/**
+ * Best offer of a partecipant for a call for proposal, as ranked when the call
+ * is closed.
+ */
+@DataType()
+public final class Proposal {
+    @Property()
+    private final String partecipantKey;
+
+    @Property()
+    private final int offer;
+
+    public Proposal(@JsonProperty("partecipantKey") final String partecipantKey, @JsonProperty("offer") final int offer) {
+        this.partecipantKey = partecipantKey;
+        this.offer = offer;
+    }
+
+    public String getPartecipantKey() {
+        return partecipantKey;
+    }
+
+    public int getOffer() {
+        return offer;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+
+        Proposal other = (Proposal) obj;
+
+        return this.getOffer() == other.getOffer() && this.getPartecipantKey().equals(other.getPartecipantKey());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.getPartecipantKey(), this.getOffer());
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " [partecipantKey="
+                + partecipantKey + ", offer=" + offer + "]";
+    }
+}
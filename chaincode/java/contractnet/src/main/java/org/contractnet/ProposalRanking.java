@@ -0,0 +1,60 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the best size proposals seen so far, in O(size) memory whatever the
+ * number of proposals offered.
+ *
+ * Proposals rank by highest offer; equal offers rank by partecipant key, the
+ * lower key in String order first, so prt10 ranks before prt2. The ranking
+ * therefore depends only on the proposals, not on the order they are offered
+ * in, so every endorsing peer picks the same winner.
+ */
+final class ProposalRanking {
+
+    static final Comparator<Proposal> BEST_FIRST = Comparator.comparingInt(Proposal::getOffer).reversed()
+            .thenComparing(Proposal::getPartecipantKey);
+
+    private final int size;
+    // the head is the worst proposal kept, the one the next better proposal evicts
+    private final PriorityQueue<Proposal> kept;
+
+    ProposalRanking(final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Ranking size must be at least 1, got " + size);
+        }
+        this.size = size;
+        this.kept = new PriorityQueue<>(Math.min(size, 1024) + 1, BEST_FIRST.reversed());
+    }
+
+    void offer(final String partecipantKey, final int offer) {
+        Proposal proposal = new Proposal(partecipantKey, offer);
+        if (kept.size() < size) {
+            kept.add(proposal);
+        } else if (BEST_FIRST.compare(proposal, kept.peek()) < 0) {
+            kept.poll();
+            kept.add(proposal);
+        }
+    }
+
+    boolean isEmpty() {
+        return kept.isEmpty();
+    }
+
+    /**
+     * The proposals kept, best first.
+     */
+    List<Proposal> best() {
+        List<Proposal> best = new ArrayList<>(kept);
+        best.sort(BEST_FIRST);
+        return best;
+    }
+}
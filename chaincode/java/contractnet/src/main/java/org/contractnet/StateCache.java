@@ -0,0 +1,118 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import org.hyperledger.fabric.samples.cache.QueryCache;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Transaction scoped cache sitting between the contract and the ChaincodeStub.
+ *
+ * Point reads are served from memory after the first round trip to the peer and
+ * range scans fold the records they return into the cache. Writes are buffered,
+ * so several puts to the same key reach the peer as a single putState, in key
+ * order, when the transaction is flushed. As on the peer, reads never observe
+ * the pending writes of the same transaction; getLatestState is the one
+ * exception, for bookkeeping such as index maintenance that needs to know what
+ * the transaction has already written.
+ *
+ * Flushed keys are reported to the QueryCache, so cached query responses that
+ * depend on them are dropped. Only the writes of this chaincode instance are
+ * seen here; a response missing the writes of other peers stays cached until
+ * the QueryCache TTL runs out.
+ */
+public final class StateCache {
+
+    private final ChaincodeStub stub;
+    private final QueryCache queryCache;
+    private final Map<String, byte[]> reads = new HashMap<>();
+    // a null value is a pending delete
+    private final SortedMap<String, byte[]> writes = new TreeMap<>();
+
+    public StateCache(final ChaincodeStub stub, final QueryCache queryCache) {
+        this.stub = stub;
+        this.queryCache = queryCache;
+    }
+
+    public byte[] getState(final String key) {
+        byte[] value = reads.get(key);
+        if (value == null) {
+            value = stub.getState(key);
+            reads.put(key, value);
+        }
+        return value;
+    }
+
+    public void putState(final String key, final byte[] value) {
+        writes.put(key, value);
+    }
+
+    public void delState(final String key) {
+        writes.put(key, null);
+    }
+
+    /**
+     * Returns the value this transaction has written to key, or the ledger value
+     * when it has not written it. A pending delete reads as an empty value.
+     */
+    public byte[] getLatestState(final String key) {
+        if (!writes.containsKey(key)) {
+            return getState(key);
+        }
+        byte[] value = writes.get(key);
+        return value == null ? new byte[0] : value;
+    }
+
+    public Iterable<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        return cached(stub.getStateByRange(startKey, endKey));
+    }
+
+    public Iterable<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        return cached(stub.getStateByPartialCompositeKey(compositeKey));
+    }
+
+    /**
+     * Writes or deletes every buffered key on the peer, once, in key order.
+     */
+    public void flush() {
+        for (Map.Entry<String, byte[]> write : writes.entrySet()) {
+            if (write.getValue() == null) {
+                stub.delState(write.getKey());
+            } else {
+                stub.putState(write.getKey(), write.getValue());
+            }
+            queryCache.invalidate(write.getKey());
+        }
+        writes.clear();
+    }
+
+    private Iterable<KeyValue> cached(final QueryResultsIterator<KeyValue> results) {
+        return () -> {
+            Iterator<KeyValue> iterator = results.iterator();
+            return new Iterator<KeyValue>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public KeyValue next() {
+                    KeyValue result = iterator.next();
+                    reads.putIfAbsent(result.getKey(), result.getValue());
+                    return result;
+                }
+            };
+        };
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.hyperledger.fabric.samples.cache.QueryCache;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs closeCallForProposal and closeCallForProposalTopK against an in-memory
+ * world state, with prt1, prt2, prt3 and prt10 called by cfp1.
+ */
+public final class CloseCallForProposalTest {
+
+    private final InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+    private final CallForProposalContract contract = new CallForProposalContract();
+    private int transactions;
+
+    private <T> T run(final Function<CallForProposalContext, T> transaction) {
+        stub.setTxId("tx" + transactions++);
+        CallForProposalContext ctx = new CallForProposalContext(stub, new QueryCache(0, 0));
+        T result = transaction.apply(ctx);
+        contract.afterTransaction(ctx, result);
+        return result;
+    }
+
+    private void propose(final String partecipantKey, final String cfpKey, final int offer) {
+        run(ctx -> contract.proposeForCallForProposal(ctx, partecipantKey, cfpKey, offer));
+    }
+
+    private String close(final String cfpKey) {
+        return run(ctx -> contract.closeCallForProposal(ctx, cfpKey));
+    }
+
+    private String closeTopK(final String cfpKey, final int count) {
+        return run(ctx -> contract.closeCallForProposalTopK(ctx, cfpKey, count));
+    }
+
+    private Partecipant partecipant(final String key) {
+        return run(ctx -> contract.getPartecipant(ctx, key));
+    }
+
+    private CallForProposal callForProposal(final String key) {
+        return run(ctx -> contract.getCallForProposal(ctx, key));
+    }
+
+    @BeforeEach
+    public void callPartecipants() {
+        run(ctx -> contract.createCallForProposal(ctx, "cfp1", "Paul", "Paint car", CallForProposal.CREATED));
+        for (String key : Arrays.asList("prt1", "prt2", "prt3", "prt10")) {
+            run(ctx -> contract.createPartecipant(ctx, key, "name of " + key));
+        }
+        run(ctx -> contract.callAllPartecipants(ctx, "cfp1"));
+    }
+
+    @Nested
+    class Winner {
+
+        @Test
+        public void whenClosedTheHighestOfferWins() {
+            propose("prt1", "cfp1", 10);
+            propose("prt2", "cfp1", 30);
+            propose("prt3", "cfp1", 20);
+
+            assertThat(close("cfp1")).isEqualTo("prt2");
+
+            CallForProposal closed = callForProposal("cfp1");
+            assertThat(closed.getState()).isEqualTo(CallForProposal.WORKING);
+            assertThat(closed.getWinner()).isEqualTo("prt2");
+            assertThat(partecipant("prt2").getState()).isEqualTo(Partecipant.WORKING);
+            assertThat(partecipant("prt2").getOffer()).isEqualTo(30);
+            assertThat(partecipant("prt1").getState()).isEqualTo(Partecipant.WAITING);
+            assertThat(partecipant("prt1").getOffer()).isEqualTo(-1);
+            assertThat(partecipant("prt10").getState()).isEqualTo(Partecipant.WAITING);
+        }
+
+        @Test
+        public void whenAPartecipantBidsTwiceItsBestOfferCounts() {
+            propose("prt1", "cfp1", 50);
+            propose("prt1", "cfp1", 5);
+            propose("prt2", "cfp1", 40);
+
+            assertThat(close("cfp1")).isEqualTo("prt1");
+            assertThat(partecipant("prt1").getOffer()).isEqualTo(50);
+        }
+
+        @Test
+        public void whenOffersTieTheLowestKeyAsAStringWins() {
+            propose("prt2", "cfp1", 50);
+            propose("prt10", "cfp1", 50);
+
+            assertThat(close("cfp1")).isEqualTo("prt10");
+        }
+
+        @Test
+        public void whenClosedTheBidsAreConsumed() {
+            propose("prt1", "cfp1", 10);
+            close("cfp1");
+
+            assertThat(stub.getStateByPartialCompositeKey("cfp~partecipant~txid", "cfp1")).isEmpty();
+        }
+
+        @Test
+        public void whenNobodyBidTheCallStaysOpen() {
+            assertThatThrownBy(() -> close("cfp1"))
+                    .isInstanceOf(ChaincodeException.class).hasMessageContaining("has no proposals");
+            assertThat(callForProposal("cfp1").getState()).isEqualTo(CallForProposal.CALLING);
+        }
+
+        @Test
+        public void whenTheCallIsNotCallingItCannotBeClosed() {
+            propose("prt1", "cfp1", 10);
+            close("cfp1");
+
+            assertThatThrownBy(() -> close("cfp1")).hasMessageContaining("is not calling");
+        }
+    }
+
+    @Nested
+    class TopK {
+
+        @Test
+        public void whenClosedTheBestProposalsAreReturnedBestFirst() {
+            propose("prt1", "cfp1", 10);
+            propose("prt2", "cfp1", 30);
+            propose("prt3", "cfp1", 20);
+            propose("prt10", "cfp1", 20);
+
+            String best = closeTopK("cfp1", 3);
+
+            assertThat(best).isEqualTo("[{\"offer\":30,\"partecipantKey\":\"prt2\"},"
+                    + "{\"offer\":20,\"partecipantKey\":\"prt10\"},{\"offer\":20,\"partecipantKey\":\"prt3\"}]");
+            assertThat(callForProposal("cfp1").getWinner()).isEqualTo("prt2");
+        }
+
+        @Test
+        public void whenFewerProposalsThanCountAllAreReturned() {
+            propose("prt3", "cfp1", 20);
+
+            assertThat(closeTopK("cfp1", 10)).isEqualTo("[{\"offer\":20,\"partecipantKey\":\"prt3\"}]");
+        }
+
+        @Test
+        public void whenCountIsNotPositive() {
+            propose("prt3", "cfp1", 20);
+
+            assertThatThrownBy(() -> closeTopK("cfp1", 0)).hasMessageContaining("Count must be at least 1");
+        }
+    }
+
+    @Nested
+    class Membership {
+
+        @Test
+        public void whenAMemberRefusedItsBidIsIgnored() {
+            propose("prt1", "cfp1", 10);
+            propose("prt2", "cfp1", 100);
+            run(ctx -> contract.refuseCallForProposal(ctx, "prt2", "cfp1"));
+
+            assertThat(close("cfp1")).isEqualTo("prt1");
+            assertThat(partecipant("prt2").getState()).isEqualTo(Partecipant.WAITING);
+        }
+
+        @Test
+        public void whenANonMemberBidsItIsIgnoredAndLeftAlone() {
+            run(ctx -> contract.createPartecipant(ctx, "prt4", "name of prt4"));
+            propose("prt4", "cfp1", 1000);
+            propose("prt3", "cfp1", 1);
+
+            assertThat(close("cfp1")).isEqualTo("prt3");
+            assertThat(partecipant("prt4").getState()).isEqualTo(Partecipant.PROPOSED);
+            assertThat(partecipant("prt4").getOffer()).isEqualTo(1000);
+        }
+
+        @Test
+        public void whenOnlyNonMembersBidTheCallHasNoProposals() {
+            run(ctx -> contract.createPartecipant(ctx, "prt4", "name of prt4"));
+            propose("prt4", "cfp1", 1000);
+
+            assertThatThrownBy(() -> close("cfp1")).hasMessageContaining("has no proposals");
+        }
+
+        @Test
+        public void whenTheCallListsItsPartecipantsTheyAreMembers() {
+            run(ctx -> contract.createPartecipant(ctx, "prt5", "name of prt5"));
+            run(ctx -> contract.createPartecipant(ctx, "prt6", "name of prt6"));
+            // a call written by an earlier version, with its partecipant list and no membership keys
+            run(ctx -> contract.updateCallForProposal(ctx, "cfp2", "John", "Find best path",
+                    CallForProposal.CALLING, Arrays.asList("prt5", "prt6")));
+            propose("prt5", "cfp2", 7);
+            propose("prt6", "cfp2", 3);
+            propose("prt1", "cfp2", 70);
+
+            assertThat(close("cfp2")).isEqualTo("prt5");
+            assertThat(partecipant("prt5").getState()).isEqualTo(Partecipant.WORKING);
+            assertThat(partecipant("prt6").getState()).isEqualTo(Partecipant.WAITING);
+            assertThat(partecipant("prt1").getState()).isEqualTo(Partecipant.PROPOSED);
+        }
+    }
+}
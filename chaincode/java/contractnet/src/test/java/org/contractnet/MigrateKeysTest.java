@@ -0,0 +1,124 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.function.Function;
+
+import com.owlike.genson.Genson;
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.hyperledger.fabric.samples.cache.QueryCache;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs migrateKeys over calls for proposal and partecipants written under their
+ * plain keys by earlier versions, against an in-memory world state.
+ */
+public final class MigrateKeysTest {
+
+    private static final Genson GENSON = new Genson();
+
+    private final InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+    private final CallForProposalContract contract = new CallForProposalContract();
+    private final PartecipantCodec partecipantCodec = new PartecipantCodec();
+    private final CallForProposalCodec callForProposalCodec = new CallForProposalCodec();
+
+    private <T> T run(final Function<CallForProposalContext, T> transaction) {
+        CallForProposalContext ctx = new CallForProposalContext(stub, new QueryCache(0, 0));
+        T result = transaction.apply(ctx);
+        contract.afterTransaction(ctx, result);
+        return result;
+    }
+
+    private KeyMigration migrateKeys(final int chunkSize, final String bookmark) {
+        String json = run(ctx -> contract.migrateKeys(ctx, chunkSize, bookmark));
+        return GENSON.deserialize(json, KeyMigration.class);
+    }
+
+    private void putLegacyPartecipant(final String key, final String name) {
+        stub.putState(key, partecipantCodec.encode(new Partecipant(name, Partecipant.WAITING, -1)));
+    }
+
+    private void putLegacyCallForProposal(final String key, final String initiator) {
+        stub.putState(key, callForProposalCodec.encode(
+                new CallForProposal(initiator, "Paint car", CallForProposal.CREATED, new ArrayList<String>())));
+    }
+
+    @Test
+    public void whenRunInChunksEachKeyMovesToTheNamespaceOfItsPrefix() {
+        putLegacyCallForProposal("cfp1", "Paul");
+        putLegacyPartecipant("prt1", "Ann");
+        putLegacyPartecipant("prt2", "Bob");
+
+        KeyMigration first = migrateKeys(2, "");
+        assertThat(first.getMigrated()).isEqualTo(2);
+        assertThat(first.getBookmark()).isEqualTo("prt2");
+
+        KeyMigration second = migrateKeys(2, first.getBookmark());
+        assertThat(second.getMigrated()).isEqualTo(1);
+        assertThat(second.getBookmark()).isEmpty();
+
+        assertThat(stub.getState(CallForProposalContract.callForProposalLedgerKey("cfp1"))).isNotEmpty();
+        assertThat(stub.getState(CallForProposalContract.partecipantLedgerKey("prt1"))).isNotEmpty();
+        assertThat(stub.getState(CallForProposalContract.partecipantLedgerKey("prt2"))).isNotEmpty();
+        assertThat(stub.getStateByRange("", "")).isEmpty();
+        assertThat(run(ctx -> contract.getCallForProposal(ctx, "cfp1")).getInitiator()).isEqualTo("Paul");
+        assertThat(run(ctx -> contract.getPartecipant(ctx, "prt2")).getName()).isEqualTo("Bob");
+    }
+
+    @Test
+    public void whenHalfMigratedEveryAssetIsListedOnce() {
+        putLegacyCallForProposal("cfp1", "Paul");
+        putLegacyCallForProposal("cfp2", "Rosa");
+        putLegacyPartecipant("prt1", "Ann");
+        putLegacyPartecipant("prt2", "Bob");
+        migrateKeys(2, "");
+        run(ctx -> contract.createPartecipant(ctx, "prt3", "Cid"));
+        // rewritten in the namespace, its plain key not yet deleted
+        putLegacyPartecipant("prt3", "Old Cid");
+
+        String partecipants = run(ctx -> contract.queryAllPartecipants(ctx));
+        String callsForProposal = run(ctx -> contract.queryAllCallForProposals(ctx));
+
+        assertThat(partecipants).contains("\"Ann\"", "\"Bob\"", "\"Cid\"").doesNotContain("Old Cid");
+        assertThat(partecipants.split("\"key\"")).hasSize(4);
+        assertThat(callsForProposal).contains("\"Paul\"", "\"Rosa\"");
+        assertThat(callsForProposal.split("\"key\"")).hasSize(3);
+    }
+
+    @Test
+    public void whenAPartecipantHasNoNameItIsStillAPartecipant() {
+        putLegacyPartecipant("prt1", null);
+
+        migrateKeys(10, "");
+
+        assertThat(stub.getState(CallForProposalContract.partecipantLedgerKey("prt1"))).isNotEmpty();
+        assertThat(stub.getState(CallForProposalContract.callForProposalLedgerKey("prt1"))).isEmpty();
+    }
+
+    @Test
+    public void whenAKeyWasAlreadyRewrittenTheNewerOneIsKept() {
+        run(ctx -> contract.createPartecipant(ctx, "prt1", "Ann"));
+        putLegacyPartecipant("prt1", "Old Ann");
+
+        migrateKeys(10, "");
+
+        assertThat(run(ctx -> contract.getPartecipant(ctx, "prt1")).getName()).isEqualTo("Ann");
+        assertThat(stub.getState("prt1")).isEmpty();
+    }
+
+    @Test
+    public void whenAKeyHasNeitherPrefixTheChunkIsRejected() {
+        putLegacyPartecipant("prt1", "Ann");
+        putLegacyPartecipant("stray", "Eve");
+
+        assertThatThrownBy(() -> migrateKeys(10, ""))
+                .isInstanceOf(ChaincodeException.class).hasMessageContaining("Key stray is neither");
+    }
+}
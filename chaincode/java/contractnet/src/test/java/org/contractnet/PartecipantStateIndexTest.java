@@ -0,0 +1,233 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import com.owlike.genson.Genson;
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.hyperledger.fabric.samples.cache.QueryCache;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the state~partecipantKey index kept by putPartecipant and rebuilt by
+ * rebuildPartecipantStateIndex, against an in-memory world state.
+ */
+public final class PartecipantStateIndexTest {
+
+    private static final Genson GENSON = new Genson();
+
+    private final CountingStub stub = new CountingStub();
+    private final CallForProposalContract contract = new CallForProposalContract();
+    private final PartecipantCodec codec = new PartecipantCodec();
+
+    /**
+     * Counts the states read one at a time and the range scans opened.
+     */
+    private static final class CountingStub extends InMemoryChaincodeStub {
+
+        private int reads;
+        private int scans;
+
+        @Override
+        public byte[] getState(final String key) {
+            reads++;
+            return super.getState(key);
+        }
+
+        @Override
+        public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+            scans++;
+            return super.getStateByRange(startKey, endKey);
+        }
+
+        @Override
+        public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+            scans++;
+            return super.getStateByPartialCompositeKey(compositeKey);
+        }
+    }
+
+    private <T> T run(final Function<CallForProposalContext, T> transaction) {
+        CallForProposalContext ctx = new CallForProposalContext(stub, new QueryCache(0, 0));
+        T result = transaction.apply(ctx);
+        contract.afterTransaction(ctx, result);
+        return result;
+    }
+
+    /**
+     * The index entries, as "state partecipantKey".
+     */
+    private List<String> index() {
+        List<String> entries = new ArrayList<>();
+        for (KeyValue entry : stub.getStateByPartialCompositeKey("state~partecipantKey")) {
+            List<String> attributes = stub.splitCompositeKey(entry.getKey()).getAttributes();
+            entries.add(attributes.get(0) + " " + attributes.get(1));
+        }
+        return entries;
+    }
+
+    private String indexEntry(final String state, final String partecipantKey) {
+        return stub.createCompositeKey("state~partecipantKey", state, partecipantKey).toString();
+    }
+
+    @Nested
+    class PutPartecipant {
+
+        @Test
+        public void whenCreatedThePartecipantIsIndexedAsWaiting() {
+            run(ctx -> contract.createPartecipant(ctx, "prt1", "Ann"));
+
+            assertThat(index()).containsExactly("WAITING prt1");
+        }
+
+        @Test
+        public void whenItsStateChangesTheEntryMoves() {
+            run(ctx -> contract.createPartecipant(ctx, "prt1", "Ann"));
+            run(ctx -> contract.updatePartecipant(ctx, "prt1", "Ann", Partecipant.CALLED, -1));
+
+            assertThat(index()).containsExactly("CALLED prt1");
+        }
+
+        @Test
+        public void whenOnlyItsOfferChangesTheEntryStays() {
+            run(ctx -> contract.createPartecipant(ctx, "prt1", "Ann"));
+            run(ctx -> contract.updatePartecipant(ctx, "prt1", "Ann", Partecipant.PROPOSED, 10));
+            run(ctx -> contract.updatePartecipant(ctx, "prt1", "Ann", Partecipant.PROPOSED, 20));
+
+            assertThat(index()).containsExactly("PROPOSED prt1");
+        }
+
+        @Test
+        public void whenMovedTwiceInATransactionOnlyTheLastStateIsIndexed() {
+            run(ctx -> contract.createPartecipant(ctx, "prt1", "Ann"));
+            run(ctx -> {
+                contract.updatePartecipant(ctx, "prt1", "Ann", Partecipant.CALLED, -1);
+                return contract.updatePartecipant(ctx, "prt1", "Ann", Partecipant.PROPOSED, 10);
+            });
+
+            assertThat(index()).containsExactly("PROPOSED prt1");
+        }
+
+        @Test
+        public void whenStoredUnderItsPlainKeyTheEntryStillMoves() {
+            // written by an earlier version, before migrateKeys
+            stub.putState("prt1", codec.encode(new Partecipant("Ann", Partecipant.CALLED, -1)));
+            stub.putState(indexEntry(Partecipant.CALLED, "prt1"), new byte[] {0});
+
+            run(ctx -> contract.updatePartecipant(ctx, "prt1", "Ann", Partecipant.REFUSED, -1));
+
+            assertThat(index()).containsExactly("REFUSED prt1");
+        }
+    }
+
+    @Nested
+    class Rebuild {
+
+        private void putUnindexed(final String key, final String state) {
+            stub.putState(CallForProposalContract.partecipantLedgerKey(key),
+                    codec.encode(new Partecipant("name of " + key, state, -1)));
+        }
+
+        private KeyPage keys(final int pageSize, final String bookmark) {
+            String json = run(ctx -> contract.queryPartecipantKeys(ctx, pageSize, bookmark));
+            return GENSON.deserialize(json, KeyPage.class);
+        }
+
+        private int rebuild(final List<String> keys) {
+            return run(ctx -> contract.rebuildPartecipantStateIndex(ctx, GENSON.serialize(keys)));
+        }
+
+        @Test
+        public void whenRunInChunksEveryPartecipantIsIndexedOnce() {
+            putUnindexed("prt1", Partecipant.WAITING);
+            putUnindexed("prt2", Partecipant.CALLED);
+            putUnindexed("prt3", Partecipant.WORKING);
+            // left over by an earlier state of prt2
+            stub.putState(indexEntry(Partecipant.PROPOSED, "prt2"), new byte[] {0});
+
+            KeyPage first = keys(2, "");
+            assertThat(first.getKeys()).containsExactly("prt1", "prt2");
+            assertThat(first.getBookmark()).isNotEmpty();
+            assertThat(rebuild(first.getKeys())).isEqualTo(2);
+            assertThat(index()).containsExactlyInAnyOrder("WAITING prt1", "CALLED prt2");
+
+            KeyPage second = keys(2, first.getBookmark());
+            assertThat(second.getKeys()).containsExactly("prt3");
+            assertThat(second.getBookmark()).isEmpty();
+            assertThat(rebuild(second.getKeys())).isEqualTo(1);
+            assertThat(index()).containsExactlyInAnyOrder("WAITING prt1", "CALLED prt2", "WORKING prt3");
+        }
+
+        @Test
+        public void whenRunAgainNothingChanges() {
+            putUnindexed("prt1", Partecipant.REFUSED);
+            rebuild(keys(10, "").getKeys());
+
+            assertThat(rebuild(keys(10, "").getKeys())).isEqualTo(1);
+            assertThat(index()).containsExactly("REFUSED prt1");
+        }
+
+        @Test
+        public void whenRunLateInTheLedgerTheReadsStayWithinTheChunk() {
+            for (int i = 100; i < 400; i++) {
+                putUnindexed("prt" + i, Partecipant.WAITING);
+            }
+            String bookmark = "";
+            for (int chunk = 0; chunk < 2; chunk++) {
+                bookmark = keys(100, bookmark).getBookmark();
+            }
+            List<String> lastChunk = keys(100, bookmark).getKeys();
+            assertThat(lastChunk).hasSize(100).startsWith("prt300");
+
+            stub.reads = 0;
+            stub.scans = 0;
+            rebuild(lastChunk);
+
+            assertThat(stub.scans).isZero();
+            assertThat(stub.reads).isLessThanOrEqualTo(2 * lastChunk.size());
+            assertThat(index()).hasSize(100);
+        }
+
+        @Test
+        public void whenAPartecipantDoesNotExistTheChunkIsRejected() {
+            assertThatThrownBy(() -> rebuild(Arrays.asList("prt1")))
+                    .isInstanceOf(ChaincodeException.class).hasMessageContaining("prt1 does not exist");
+        }
+
+        @Test
+        public void whenTheKeysAreMalformedTheChunkIsRejected() {
+            assertThatThrownBy(() -> run(ctx -> contract.rebuildPartecipantStateIndex(ctx, "[\"prt1\" \"prt2\"]")))
+                    .isInstanceOf(ChaincodeException.class).hasMessageContaining("JSON array of strings");
+            assertThatThrownBy(() -> run(ctx -> contract.rebuildPartecipantStateIndex(ctx, "[\"prt1\", null]")))
+                    .isInstanceOf(ChaincodeException.class).hasMessageContaining("JSON array of strings");
+            assertThatThrownBy(() -> run(ctx -> contract.rebuildPartecipantStateIndex(ctx, "[\"prt1\"")))
+                    .isInstanceOf(ChaincodeException.class).hasMessageContaining("JSON array of strings");
+        }
+
+        @Test
+        public void whenChunkSizeIsOutOfRange() {
+            List<String> tooMany = new ArrayList<>();
+            for (int i = 0; i < 1001; i++) {
+                tooMany.add("prt" + i);
+            }
+            assertThatThrownBy(() -> keys(0, "")).hasMessageContaining("Chunk size");
+            assertThatThrownBy(() -> keys(1001, "")).hasMessageContaining("Chunk size");
+            assertThatThrownBy(() -> rebuild(new ArrayList<>())).hasMessageContaining("Chunk size");
+            assertThatThrownBy(() -> rebuild(tooMany)).hasMessageContaining("Chunk size");
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.contractnet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.hyperledger.fabric.samples.cache.QueryCache;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+public final class StateCacheTest {
+
+    private static final List<String> QUERY = Collections.singletonList("queryAllPartecipants");
+
+    private final QueryCache queryCache = new QueryCache(1024, 60_000);
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(UTF_8);
+    }
+
+    @Test
+    public void whenKeyIsReadTwiceThePeerIsAskedOnce() {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.getState("prt1")).thenReturn(bytes("1"));
+        StateCache cache = new StateCache(stub, queryCache);
+
+        assertThat(cache.getState("prt1")).isEqualTo(bytes("1"));
+        assertThat(cache.getState("prt1")).isEqualTo(bytes("1"));
+
+        verify(stub, times(1)).getState("prt1");
+    }
+
+    @Test
+    public void whenRangeIsScannedItsRecordsAreCached() {
+        InMemoryChaincodeStub ledger = new InMemoryChaincodeStub();
+        ledger.putState("prt1", bytes("1"));
+        ledger.putState("prt2", bytes("2"));
+        StateCache cache = new StateCache(ledger, queryCache);
+
+        int scanned = 0;
+        for (KeyValue result : cache.getStateByRange("prt1", "prt3")) {
+            scanned++;
+        }
+        ledger.putState("prt2", bytes("changed"));
+
+        assertThat(scanned).isEqualTo(2);
+        assertThat(cache.getState("prt2")).isEqualTo(bytes("2"));
+    }
+
+    @Test
+    public void whenKeyIsWrittenReadsStillSeeTheLedger() {
+        InMemoryChaincodeStub ledger = new InMemoryChaincodeStub();
+        ledger.putState("prt1", bytes("1"));
+        StateCache cache = new StateCache(ledger, queryCache);
+
+        cache.putState("prt1", bytes("written"));
+        cache.putState("prt2", bytes("new"));
+        cache.delState("prt3");
+
+        assertThat(cache.getState("prt1")).isEqualTo(bytes("1"));
+        assertThat(cache.getLatestState("prt1")).isEqualTo(bytes("written"));
+        assertThat(cache.getLatestState("prt2")).isEqualTo(bytes("new"));
+        assertThat(cache.getLatestState("prt3")).isEmpty();
+        assertThat(ledger.getState("prt1")).isEqualTo(bytes("1"));
+    }
+
+    @Test
+    public void whenFlushedEachKeyIsWrittenOnceInKeyOrder() {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        StateCache cache = new StateCache(stub, queryCache);
+
+        cache.putState("prt2", bytes("first"));
+        cache.delState("prt3");
+        cache.putState("prt1", bytes("1"));
+        cache.putState("prt2", bytes("second"));
+        cache.flush();
+        cache.flush();
+
+        InOrder order = inOrder(stub);
+        order.verify(stub).putState("prt1", bytes("1"));
+        order.verify(stub).putState("prt2", bytes("second"));
+        order.verify(stub).delState("prt3");
+        verify(stub, never()).putState("prt2", bytes("first"));
+    }
+
+    @Test
+    public void whenFlushedCachedResponsesReadFromTheKeysAreDropped() {
+        StateCache cache = new StateCache(new InMemoryChaincodeStub(), queryCache);
+        queryCache.put(QUERY, Collections.singletonList(new CompositeKey("prt").toString()), "[]");
+
+        cache.putState(CallForProposalContract.partecipantLedgerKey("prt1"), bytes("{}"));
+        assertThat(queryCache.get(QUERY)).isEqualTo("[]");
+
+        cache.flush();
+        assertThat(queryCache.get(QUERY)).isNull();
+    }
+}
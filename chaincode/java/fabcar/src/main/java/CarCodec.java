@@ -0,0 +1,135 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hyperledger.fabric.samples.json.JsonReader;
+import org.hyperledger.fabric.samples.json.JsonWriter;
+import org.hyperledger.fabric.samples.metrics.TransactionMetrics;
+
+/**
+ * Reflection free JSON codec for Car that reads and writes the byte[] values of
+ * the world state directly. The output matches Genson's, properties in
+ * alphabetical order, so values written by either can be read by the other.
+ */
+public final class CarCodec {
+
+    private static final byte[][] FIELDS = {
+        "color".getBytes(UTF_8),
+        "make".getBytes(UTF_8),
+        "model".getBytes(UTF_8),
+        "owner".getBytes(UTF_8),
+        "key".getBytes(UTF_8)
+    };
+
+    private static final byte[] COLOR = JsonWriter.name("color");
+    private static final byte[] MAKE = JsonWriter.name("make");
+    private static final byte[] MODEL = JsonWriter.name("model");
+    private static final byte[] OWNER = JsonWriter.name("owner");
+
+    private final ThreadLocal<JsonWriter> writers = ThreadLocal.withInitial(JsonWriter::new);
+
+    public byte[] encode(final Car car) {
+        long start = TransactionMetrics.serializationStart();
+        try {
+            return writers.get().beginObject()
+                    .field(COLOR, car.getColor())
+                    .field(MAKE, car.getMake())
+                    .field(MODEL, car.getModel())
+                    .field(OWNER, car.getOwner())
+                    .endObject();
+        } finally {
+            TransactionMetrics.serialized(start);
+        }
+    }
+
+    public Car decode(final byte[] data) {
+        long start = TransactionMetrics.serializationStart();
+        try {
+            return read(data);
+        } finally {
+            TransactionMetrics.serialized(start);
+        }
+    }
+
+    private Car read(final byte[] data) {
+        try {
+            JsonReader reader = new JsonReader(data);
+            Car car = readCar(reader, null);
+            reader.endDocument();
+            return car;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed JSON: unexpected end of document", e);
+        }
+    }
+
+    /**
+     * Decodes the JSON array taken by FabCar.createCars, where every car object
+     * also carries its ledger key in a "key" property.
+     */
+    public List<CarQueryResult> decodeBatch(final byte[] data) {
+        List<CarQueryResult> items = new ArrayList<>();
+        List<String> keys = new ArrayList<>(1);
+
+        try {
+            JsonReader reader = new JsonReader(data);
+            reader.beginArray();
+            while (reader.hasNextElement()) {
+                keys.clear();
+                Car car = readCar(reader, keys);
+                items.add(new CarQueryResult(keys.isEmpty() ? null : keys.get(0), car));
+            }
+            reader.endDocument();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed JSON: unexpected end of document", e);
+        }
+
+        return items;
+    }
+
+    /**
+     * Reads one car object. The value of a "key" property is added to keys, or
+     * skipped when keys is null.
+     */
+    private Car readCar(final JsonReader reader, final List<String> keys) {
+        String make = null;
+        String model = null;
+        String color = null;
+        String owner = null;
+
+        reader.beginObject();
+        while (reader.hasNextField()) {
+            switch (reader.nextField(FIELDS)) {
+                case 0:
+                    color = reader.nextString();
+                    break;
+                case 1:
+                    make = reader.nextString();
+                    break;
+                case 2:
+                    model = reader.nextString();
+                    break;
+                case 3:
+                    owner = reader.nextString();
+                    break;
+                case 4:
+                    if (keys != null) {
+                        keys.add(reader.nextString());
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        return new Car(make, model, color, owner);
+    }
+}
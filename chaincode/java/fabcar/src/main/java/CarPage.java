@@ -0,0 +1,49 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import java.util.List;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * One page of cars together with the bookmark to fetch the next page. An empty
+ * bookmark means there are no more pages.
+ */
+@DataType()
+public final class CarPage {
+
+    @Property()
+    private final List<CarQueryResult> records;
+
+    @Property()
+    private final String bookmark;
+
+    @Property()
+    private final int fetchedCount;
+
+    public CarPage(@JsonProperty("records") final List<CarQueryResult> records,
+            @JsonProperty("bookmark") final String bookmark,
+            @JsonProperty("fetchedCount") final int fetchedCount) {
+        this.records = records;
+        this.bookmark = bookmark;
+        this.fetchedCount = fetchedCount;
+    }
+
+    public List<CarQueryResult> getRecords() {
+        return records;
+    }
+
+    public String getBookmark() {
+        return bookmark;
+    }
+
+    public int getFetchedCount() {
+        return fetchedCount;
+    }
+}
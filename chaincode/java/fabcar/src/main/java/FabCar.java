@@ -4,8 +4,16 @@
 
 package org.hyperledger.fabric.samples.fabcar;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
@@ -15,10 +23,16 @@ import org.hyperledger.fabric.contract.annotation.Default;
 import org.hyperledger.fabric.contract.annotation.Info;
 import org.hyperledger.fabric.contract.annotation.License;
 import org.hyperledger.fabric.contract.annotation.Transaction;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.samples.cache.QueryCache;
+import org.hyperledger.fabric.samples.json.JsonReader;
+import org.hyperledger.fabric.samples.metrics.TransactionMetrics;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
 import com.owlike.genson.Genson;
 
@@ -42,11 +56,42 @@ import com.owlike.genson.Genson;
 @Default
 public final class FabCar implements ContractInterface {
 
-    private final Genson genson = new Genson();
+    /**
+     * Namespace of the cars, car~key: every car lives under a composite key, so
+     * all of them are listed with one open-ended prefix scan whatever their
+     * keys. Cars written by earlier versions under their plain keys are read
+     * until migrateKeys moves them.
+     */
+    private static final String CAR_NAMESPACE = "car";
+
+    /**
+     * Index entries owner~key and make~key, one empty value per car, so cars can
+     * be found by owner or make without a scan of the whole fleet.
+     */
+    private static final String OWNER_INDEX = "owner~key";
+
+    private static final String MAKE_INDEX = "make~key";
+
+    private static final byte[] INDEX_VALUE = {0};
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    // shared, as the shim creates a contract instance per transaction
+    private static final Genson GENSON = new Genson();
+
+    private static final CarCodec CAR_CODEC = new CarCodec();
+
+    private static final QueryCache QUERY_CACHE = QueryCache.fromEnvironment();
+
+    static final TransactionMetrics METRICS = new TransactionMetrics();
 
     private enum FabCarErrors {
         CAR_NOT_FOUND,
-        CAR_ALREADY_EXISTS
+        CAR_ALREADY_EXISTS,
+        INVALID_CAR,
+        INVALID_PAGE_SIZE,
+        INVALID_BATCH,
+        INVALID_CHUNK_SIZE
     }
 
     /**
@@ -59,15 +104,15 @@ public final class FabCar implements ContractInterface {
     @Transaction()
     public Car queryCar(final Context ctx, final String key) {
         ChaincodeStub stub = ctx.getStub();
-        String carState = stub.getStringState(key);
+        byte[] carState = getCarState(stub, key);
 
-        if (carState.isEmpty()) {
+        if (carState.length == 0) {
             String errorMessage = String.format("Car %s does not exist", key);
             System.out.println(errorMessage);
             throw new ChaincodeException(errorMessage, FabCarErrors.CAR_NOT_FOUND.toString());
         }
 
-        Car car = genson.deserialize(carState, Car.class);
+        Car car = CAR_CODEC.decode(carState);
 
         return car;
     }
@@ -81,25 +126,24 @@ public final class FabCar implements ContractInterface {
     public void initLedger(final Context ctx) {
         ChaincodeStub stub = ctx.getStub();
 
-        String[] carData = {
-                "{ \"make\": \"Toyota\", \"model\": \"Prius\", \"color\": \"blue\", \"owner\": \"Tomoko\" }",
-                "{ \"make\": \"Ford\", \"model\": \"Mustang\", \"color\": \"red\", \"owner\": \"Brad\" }",
-                "{ \"make\": \"Hyundai\", \"model\": \"Tucson\", \"color\": \"green\", \"owner\": \"Jin Soo\" }",
-                "{ \"make\": \"Volkswagen\", \"model\": \"Passat\", \"color\": \"yellow\", \"owner\": \"Max\" }",
-                "{ \"make\": \"Tesla\", \"model\": \"S\", \"color\": \"black\", \"owner\": \"Adrian\" }",
-                "{ \"make\": \"Peugeot\", \"model\": \"205\", \"color\": \"purple\", \"owner\": \"Michel\" }",
-                "{ \"make\": \"Chery\", \"model\": \"S22L\", \"color\": \"white\", \"owner\": \"Aarav\" }",
-                "{ \"make\": \"Fiat\", \"model\": \"Punto\", \"color\": \"violet\", \"owner\": \"Pari\" }",
-                "{ \"make\": \"Tata\", \"model\": \"nano\", \"color\": \"indigo\", \"owner\": \"Valeria\" }",
-                "{ \"make\": \"Holden\", \"model\": \"Barina\", \"color\": \"brown\", \"owner\": \"Shotaro\" }"
+        Car[] cars = {
+                new Car("Toyota", "Prius", "blue", "Tomoko"),
+                new Car("Ford", "Mustang", "red", "Brad"),
+                new Car("Hyundai", "Tucson", "green", "Jin Soo"),
+                new Car("Volkswagen", "Passat", "yellow", "Max"),
+                new Car("Tesla", "S", "black", "Adrian"),
+                new Car("Peugeot", "205", "purple", "Michel"),
+                new Car("Chery", "S22L", "white", "Aarav"),
+                new Car("Fiat", "Punto", "violet", "Pari"),
+                new Car("Tata", "nano", "indigo", "Valeria"),
+                new Car("Holden", "Barina", "brown", "Shotaro")
         };
 
-        for (int i = 0; i < carData.length; i++) {
+        for (int i = 0; i < cars.length; i++) {
             String key = String.format("CAR%d", i);
 
-            Car car = genson.deserialize(carData[i], Car.class);
-            String carState = genson.serialize(car);
-            stub.putStringState(key, carState);
+            putCar(stub, key, cars[i]);
+            putIndexEntries(stub, key, cars[i]);
         }
     }
 
@@ -119,42 +163,131 @@ public final class FabCar implements ContractInterface {
             final String color, final String owner) {
         ChaincodeStub stub = ctx.getStub();
 
-        String carState = stub.getStringState(key);
-        if (!carState.isEmpty()) {
+        Car car = new Car(make, model, color, owner);
+        String invalid = invalidCar(key, car);
+        if (invalid != null) {
+            System.out.println(invalid);
+            throw new ChaincodeException(invalid, FabCarErrors.INVALID_CAR.toString());
+        }
+
+        byte[] carState = getCarState(stub, key);
+        if (carState.length != 0) {
             String errorMessage = String.format("Car %s already exists", key);
             System.out.println(errorMessage);
             throw new ChaincodeException(errorMessage, FabCarErrors.CAR_ALREADY_EXISTS.toString());
         }
 
-        Car car = new Car(make, model, color, owner);
-        carState = genson.serialize(car);
-        stub.putStringState(key, carState);
+        putCar(stub, key, car);
+        putIndexEntries(stub, key, car);
 
         return car;
     }
 
     /**
-     * Retrieves all cars from the ledger.
+     * Creates many new cars on the ledger in one transaction.
      *
      * @param ctx the transaction context
-     * @return array of Cars found on the ledger
+     * @param cars JSON array of cars, each with its key in a "key" property next
+     *        to make, model, color and owner
+     * @param continueOnError true to write the valid cars and report the
+     *        rejected ones, false to fail the whole transaction on the first
+     *        rejected car
+     * @return the keys created and the cars rejected, as {created, failed}
      */
     @Transaction()
+    public String createCars(final Context ctx, final String cars, final boolean continueOnError) {
+        ChaincodeStub stub = ctx.getStub();
+
+        List<CarQueryResult> items;
+        try {
+            items = CAR_CODEC.decodeBatch(cars.getBytes(UTF_8));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            throw new ChaincodeException(e.getMessage(), FabCarErrors.INVALID_BATCH.toString());
+        }
+
+        List<String> created = new ArrayList<String>(items.size());
+        List<BatchResult.Failure> failed = new ArrayList<BatchResult.Failure>();
+        Set<String> batchKeys = new HashSet<String>();
+
+        for (int i = 0; i < items.size(); i++) {
+            String key = items.get(i).getKey();
+            Car car = items.get(i).getRecord();
+            String errorMessage = invalidCar(key, car);
+            FabCarErrors error = FabCarErrors.INVALID_BATCH;
+
+            if (errorMessage == null && !batchKeys.add(key)) {
+                errorMessage = String.format("Car %s appears more than once in the batch", key);
+            } else if (errorMessage == null && getCarState(stub, key).length != 0) {
+                errorMessage = String.format("Car %s already exists", key);
+                error = FabCarErrors.CAR_ALREADY_EXISTS;
+            }
+
+            if (errorMessage != null) {
+                if (!continueOnError) {
+                    errorMessage = String.format("Item %d: %s", i, errorMessage);
+                    System.out.println(errorMessage);
+                    throw new ChaincodeException(errorMessage, error.toString());
+                }
+                failed.add(new BatchResult.Failure(i, key, errorMessage));
+                continue;
+            }
+
+            putCar(stub, key, car);
+            putIndexEntries(stub, key, car);
+            created.add(key);
+        }
+
+        return GENSON.serialize(new BatchResult(created, failed));
+    }
+
+    /**
+     * Retrieves all cars from the ledger, including those still under the
+     * plain keys of earlier versions until migrateKeys has moved them.
+     *
+     * The response may be served from the query cache, up to the cache TTL
+     * stale, when an evaluated proposal asks for it in its transient data.
+     *
+     * @param ctx the transaction context
+     * @return array of Cars found on the ledger
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
     public String queryAllCars(final Context ctx) {
         ChaincodeStub stub = ctx.getStub();
 
-        final String startKey = "CAR1";
-        final String endKey = "CAR99";
-        List<CarQueryResult> queryResults = new ArrayList<CarQueryResult>();
+        final CompositeKey namespace = new CompositeKey(CAR_NAMESPACE);
+        final String prefix = namespace.toString();
+        final List<String> query = Collections.singletonList("queryAllCars");
+
+        String cached = QUERY_CACHE.get(stub, query);
+        if (cached != null) {
+            return cached;
+        }
 
-        QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, endKey);
+        // in key order, the plain keys of the cars migrateKeys has not moved yet
+        // merged in, and shadowed by their newer copy in the namespace if any
+        SortedMap<String, Car> cars = new TreeMap<String, Car>();
+
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(namespace);
 
         for (KeyValue result: results) {
-            Car car = genson.deserialize(result.getStringValue(), Car.class);
-            queryResults.add(new CarQueryResult(result.getKey(), car));
+            cars.put(nextAttribute(result.getKey(), prefix), CAR_CODEC.decode(result.getValue()));
+        }
+
+        // an open range holds the plain keys only, composite keys sort before it
+        for (KeyValue result : stub.getStateByRange("", "")) {
+            if (!cars.containsKey(result.getKey())) {
+                cars.put(result.getKey(), CAR_CODEC.decode(result.getValue()));
+            }
+        }
+
+        List<CarQueryResult> queryResults = new ArrayList<CarQueryResult>(cars.size());
+        for (Map.Entry<String, Car> car : cars.entrySet()) {
+            queryResults.add(new CarQueryResult(car.getKey(), car.getValue()));
         }
 
-        final String response = genson.serialize(queryResults);
+        final String response = GENSON.serialize(queryResults);
+        QUERY_CACHE.put(query, Collections.singletonList(prefix), response);
 
         return response;
     }
@@ -171,20 +304,299 @@ public final class FabCar implements ContractInterface {
     public Car changeCarOwner(final Context ctx, final String key, final String newOwner) {
         ChaincodeStub stub = ctx.getStub();
 
-        String carState = stub.getStringState(key);
+        byte[] carState = getCarState(stub, key);
 
-        if (carState.isEmpty()) {
+        if (carState.length == 0) {
             String errorMessage = String.format("Car %s does not exist", key);
             System.out.println(errorMessage);
             throw new ChaincodeException(errorMessage, FabCarErrors.CAR_NOT_FOUND.toString());
         }
 
-        Car car = genson.deserialize(carState, Car.class);
+        Car car = CAR_CODEC.decode(carState);
 
         Car newCar = new Car(car.getMake(), car.getModel(), car.getColor(), newOwner);
-        String newCarState = genson.serialize(newCar);
-        stub.putStringState(key, newCarState);
+        putCar(stub, key, newCar);
+
+        if (!newOwner.equals(car.getOwner())) {
+            stub.delState(stub.createCompositeKey(OWNER_INDEX, car.getOwner(), key).toString());
+            stub.putState(stub.createCompositeKey(OWNER_INDEX, newOwner, key).toString(), INDEX_VALUE);
+        }
 
         return newCar;
     }
+
+    /**
+     * Retrieves one page of the cars owned by owner, using the owner~key index.
+     *
+     * @param ctx the transaction context
+     * @param owner the owner
+     * @param pageSize the maximum number of cars to return
+     * @param bookmark the bookmark returned by the previous page, empty for the first page
+     * @return the page as {records, bookmark, fetchedCount}
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryCarsByOwner(final Context ctx, final String owner, final int pageSize,
+            final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+
+        return queryCarsByIndex(stub, stub.createCompositeKey(OWNER_INDEX, owner), pageSize, bookmark);
+    }
+
+    /**
+     * Retrieves one page of the cars of a make, using the make~key index.
+     *
+     * @param ctx the transaction context
+     * @param make the make
+     * @param pageSize the maximum number of cars to return
+     * @param bookmark the bookmark returned by the previous page, empty for the first page
+     * @return the page as {records, bookmark, fetchedCount}
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryCarsByMake(final Context ctx, final String make, final int pageSize,
+            final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+
+        return queryCarsByIndex(stub, stub.createCompositeKey(MAKE_INDEX, make), pageSize, bookmark);
+    }
+
+    /**
+     * Reads one page of index entries and then each car they point to, one
+     * getState per entry, so a page costs at most pageSize reads.
+     */
+    private String queryCarsByIndex(final ChaincodeStub stub, final CompositeKey prefix, final int pageSize,
+            final String bookmark) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            String errorMessage = String.format("Page size must be between 1 and %d", MAX_PAGE_SIZE);
+            System.out.println(errorMessage);
+            throw new ChaincodeException(errorMessage, FabCarErrors.INVALID_PAGE_SIZE.toString());
+        }
+
+        QueryResultsIteratorWithMetadata<KeyValue> results =
+                stub.getStateByPartialCompositeKeyWithPagination(prefix, pageSize, bookmark);
+
+        List<CarQueryResult> records = new ArrayList<CarQueryResult>(pageSize);
+        for (KeyValue result: results) {
+            String key = stub.splitCompositeKey(result.getKey()).getAttributes().get(1);
+            Car car = CAR_CODEC.decode(getCarState(stub, key));
+            records.add(new CarQueryResult(key, car));
+        }
+
+        QueryResponseMetadata metadata = results.getMetadata();
+        CarPage page = new CarPage(records, metadata.getBookmark(), metadata.getFetchedRecordsCount());
+
+        return GENSON.serialize(page);
+    }
+
+    /**
+     * Moves up to chunkSize cars written by earlier versions of this contract
+     * from their plain keys into the car namespace, starting from bookmark,
+     * empty for the first chunk. Call it again with the returned bookmark until
+     * it comes back empty; each chunk is a transaction of its own, so a large
+     * ledger is converted while the contract keeps serving. A moved car gets
+     * its owner~key and make~key entries, as cars written before the index
+     * existed have none. A car already written under its new key is newer, and
+     * only its plain key is deleted.
+     *
+     * @param ctx the transaction context
+     * @param chunkSize the maximum number of cars to move
+     * @param bookmark the bookmark returned by the previous chunk, empty for the first
+     * @return the chunk as {bookmark, migrated}
+     */
+    @Transaction()
+    public String migrateKeys(final Context ctx, final int chunkSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+        checkChunkSize(chunkSize);
+
+        // an open range holds the plain keys only, composite keys sort before it;
+        // paginated queries cannot be submitted, so the chunk stops the scan itself
+        int migrated = 0;
+        String next = "";
+        for (KeyValue result : stub.getStateByRange(bookmark, "")) {
+            if (migrated == chunkSize) {
+                next = result.getKey();
+                break;
+            }
+            String key = carKey(result.getKey()).toString();
+            if (stub.getState(key).length == 0) {
+                stub.putState(key, result.getValue());
+                QUERY_CACHE.invalidate(key);
+                putIndexEntries(stub, result.getKey(), CAR_CODEC.decode(result.getValue()));
+            }
+            stub.delState(result.getKey());
+            migrated++;
+        }
+
+        return GENSON.serialize(new KeyMigration(migrated, next));
+    }
+
+    /**
+     * Retrieves one page of car keys, in key order, starting from bookmark,
+     * empty for the first page. Used to feed backfillCarIndex one chunk at a
+     * time; only pageSize keys are read.
+     *
+     * @param ctx the transaction context
+     * @param pageSize the maximum number of keys to return
+     * @param bookmark the bookmark returned by the previous page, empty for the first page
+     * @return the page as {bookmark, keys}
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryCarKeys(final Context ctx, final int pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+        checkChunkSize(pageSize);
+
+        CompositeKey namespace = new CompositeKey(CAR_NAMESPACE);
+        QueryResultsIteratorWithMetadata<KeyValue> results =
+                stub.getStateByPartialCompositeKeyWithPagination(namespace, pageSize, bookmark);
+
+        List<String> keys = new ArrayList<String>(pageSize);
+        for (KeyValue result : results) {
+            keys.add(nextAttribute(result.getKey(), namespace.toString()));
+        }
+
+        return GENSON.serialize(new KeyPage(keys, results.getMetadata().getBookmark()));
+    }
+
+    /**
+     * Writes the owner~key and make~key entries of the cars listed in carKeys,
+     * for cars written before the index existed. Rewriting the entries of a car
+     * that has them changes nothing. Walk the cars with queryCarKeys and submit
+     * each page here, once migrateKeys has moved every car, which indexes the
+     * cars it moves.
+     *
+     * The shim only resumes ranges of simple keys, and paginated queries cannot
+     * be submitted, so the chunk is listed by an evaluated query and this
+     * transaction only reads the cars it is given.
+     *
+     * @param ctx the transaction context
+     * @param carKeys JSON array of the keys of the cars to index
+     * @return the number of cars indexed
+     */
+    @Transaction()
+    public int backfillCarIndex(final Context ctx, final String carKeys) {
+        ChaincodeStub stub = ctx.getStub();
+
+        List<String> keys;
+        try {
+            JsonReader reader = new JsonReader(carKeys.getBytes(UTF_8));
+            keys = reader.nextStringArray();
+            reader.endDocument();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            keys = null;
+        }
+        if (keys == null || keys.contains(null)) {
+            String errorMessage = String.format("Car keys must be a JSON array of strings: %s", carKeys);
+            System.out.println(errorMessage);
+            throw new ChaincodeException(errorMessage, FabCarErrors.INVALID_BATCH.toString());
+        }
+        checkChunkSize(keys.size());
+
+        for (String key : keys) {
+            putIndexEntries(stub, key, queryCar(ctx, key));
+        }
+
+        return keys.size();
+    }
+
+    private static void checkChunkSize(final int chunkSize) {
+        if (chunkSize < 1 || chunkSize > MAX_PAGE_SIZE) {
+            String errorMessage = String.format("Chunk size must be between 1 and %d", MAX_PAGE_SIZE);
+            System.out.println(errorMessage);
+            throw new ChaincodeException(errorMessage, FabCarErrors.INVALID_CHUNK_SIZE.toString());
+        }
+    }
+
+    /**
+     * Why a car cannot be written under key, or null when it can. Every field is
+     * required, and none may hold the composite key delimiter, as the key, the
+     * owner and the make become attributes of composite keys.
+     */
+    private static String invalidCar(final String key, final Car car) {
+        if (key == null || key.isEmpty()) {
+            return "Car key is missing";
+        }
+        String[] names = {"key", "make", "model", "color", "owner"};
+        String[] values = {key, car.getMake(), car.getModel(), car.getColor(), car.getOwner()};
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] == null) {
+                return String.format("Car %s has no %s", key, names[i]);
+            }
+            if (values[i].contains(CompositeKey.NAMESPACE)) {
+                return String.format("Car %s has a %s containing U+0000", key, names[i]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The key of a car in the car namespace.
+     */
+    static CompositeKey carKey(final String key) {
+        return new CompositeKey(CAR_NAMESPACE, key);
+    }
+
+    /**
+     * The state of a car, under its key in the car namespace or, until
+     * migrateKeys has moved it, under its plain key.
+     */
+    private static byte[] getCarState(final ChaincodeStub stub, final String key) {
+        byte[] carState = stub.getState(carKey(key).toString());
+        return carState.length != 0 ? carState : stub.getState(key);
+    }
+
+    /**
+     * The attribute following prefix in a composite key returned by a partial
+     * composite key query on prefix.
+     */
+    private static String nextAttribute(final String compositeKey, final String prefix) {
+        return compositeKey.substring(prefix.length(), compositeKey.length() - 1);
+    }
+
+    private void putCar(final ChaincodeStub stub, final String key, final Car car) {
+        String carKey = carKey(key).toString();
+        stub.putState(carKey, CAR_CODEC.encode(car));
+        QUERY_CACHE.invalidate(carKey);
+    }
+
+    private void putIndexEntries(final ChaincodeStub stub, final String key, final Car car) {
+        stub.putState(stub.createCompositeKey(OWNER_INDEX, car.getOwner(), key).toString(), INDEX_VALUE);
+        stub.putState(stub.createCompositeKey(MAKE_INDEX, car.getMake(), key).toString(), INDEX_VALUE);
+    }
+
+    /**
+     * Meters the transaction's stub when metrics are enabled.
+     */
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new Context(METRICS.meter(stub));
+    }
+
+    @Override
+    public void beforeTransaction(final Context ctx) {
+        METRICS.begin();
+    }
+
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        METRICS.end();
+    }
+
+    /**
+     * Runs sample documents through the codec and Genson, so their classes are
+     * loaded and Genson's converters built before the first transaction rather
+     * than during it.
+     */
+    static void warmUp() {
+        Car car = new Car("Toyota", "Prius", "blue", "Tomoko");
+        Car decoded = CAR_CODEC.decode(CAR_CODEC.encode(car));
+        CAR_CODEC.decodeBatch("[{\"key\":\"CAR0\",\"make\":\"Toyota\",\"model\":\"Prius\",\"color\":\"blue\"}]"
+                .getBytes(UTF_8));
+
+        List<CarQueryResult> records = Collections.singletonList(new CarQueryResult("CAR0", decoded));
+        GENSON.serialize(records);
+        GENSON.serialize(new CarPage(records, "", records.size()));
+        GENSON.serialize(new BatchResult(Collections.singletonList("CAR0"),
+                Collections.singletonList(new BatchResult.Failure(1, "CAR1", "warm-up"))));
+        GENSON.serialize(new KeyMigration(0, ""));
+        GENSON.deserialize(GENSON.serialize(car), Car.class);
+    }
 }
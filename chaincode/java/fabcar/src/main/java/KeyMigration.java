@@ -0,0 +1,39 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * Outcome of one chunk of migrateKeys: the number of keys moved into their
+ * namespace and the bookmark to pass to the next chunk. An empty bookmark
+ * means every key has been moved.
+ */
+@DataType()
+public final class KeyMigration {
+
+    @Property()
+    private final int migrated;
+
+    @Property()
+    private final String bookmark;
+
+    public KeyMigration(@JsonProperty("migrated") final int migrated,
+            @JsonProperty("bookmark") final String bookmark) {
+        this.migrated = migrated;
+        this.bookmark = bookmark;
+    }
+
+    public int getMigrated() {
+        return migrated;
+    }
+
+    public String getBookmark() {
+        return bookmark;
+    }
+}
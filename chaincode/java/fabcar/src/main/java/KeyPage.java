@@ -0,0 +1,40 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import java.util.List;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * One page of asset keys, in key order, and the bookmark of the next page. An
+ * empty bookmark means this is the last page.
+ */
+@DataType()
+public final class KeyPage {
+
+    @Property()
+    private final List<String> keys;
+
+    @Property()
+    private final String bookmark;
+
+    public KeyPage(@JsonProperty("keys") final List<String> keys,
+            @JsonProperty("bookmark") final String bookmark) {
+        this.keys = keys;
+        this.bookmark = bookmark;
+    }
+
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public String getBookmark() {
+        return bookmark;
+    }
+}
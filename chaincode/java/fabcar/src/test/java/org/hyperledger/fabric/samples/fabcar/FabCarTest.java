@@ -0,0 +1,428 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.samples.benchmark.InMemoryChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Runs the key namespace, its migration and the owner and make indexes
+ * against an in-memory world state.
+ */
+public final class FabCarTest {
+
+    private static final Genson GENSON = new Genson();
+
+    /**
+     * Counts the states read one at a time and the range scans opened.
+     */
+    private static final class CountingStub extends InMemoryChaincodeStub {
+
+        private int reads;
+        private int scans;
+
+        @Override
+        public byte[] getState(final String key) {
+            reads++;
+            return super.getState(key);
+        }
+
+        @Override
+        public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+            scans++;
+            return super.getStateByRange(startKey, endKey);
+        }
+
+        @Override
+        public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+            scans++;
+            return super.getStateByPartialCompositeKey(compositeKey);
+        }
+    }
+
+    private final CountingStub stub = new CountingStub();
+    private final FabCar contract = new FabCar();
+
+    private Context ctx() {
+        return new Context(stub);
+    }
+
+    private void createCar(final String key, final String make, final String owner) {
+        contract.createCar(ctx(), key, make, "model", "red", owner);
+    }
+
+    /**
+     * A car written by an earlier version of the contract, under its plain key
+     * and without index entries.
+     */
+    private void putLegacyCar(final String key, final String make, final String owner) {
+        stub.putState(key, new CarCodec().encode(new Car(make, "model", "red", owner)));
+    }
+
+    private KeyMigration migrateKeys(final int chunkSize, final String bookmark) {
+        return GENSON.deserialize(contract.migrateKeys(ctx(), chunkSize, bookmark), KeyMigration.class);
+    }
+
+    private KeyPage carKeys(final int pageSize, final String bookmark) {
+        return GENSON.deserialize(contract.queryCarKeys(ctx(), pageSize, bookmark), KeyPage.class);
+    }
+
+    private int backfillCarIndex(final List<String> keys) {
+        return contract.backfillCarIndex(ctx(), GENSON.serialize(keys));
+    }
+
+    /**
+     * A car moved into the namespace before migrateKeys indexed the cars it
+     * moves, so without index entries.
+     */
+    private void putUnindexedCar(final String key, final String make, final String owner) {
+        stub.putState(FabCar.carKey(key).toString(), new CarCodec().encode(new Car(make, "model", "red", owner)));
+    }
+
+    private String byOwner(final String owner, final int pageSize, final String bookmark) {
+        return contract.queryCarsByOwner(ctx(), owner, pageSize, bookmark);
+    }
+
+    private String byMake(final String make, final int pageSize, final String bookmark) {
+        return contract.queryCarsByMake(ctx(), make, pageSize, bookmark);
+    }
+
+    private static String bookmark(final String page) {
+        return (String) GENSON.deserialize(page, Map.class).get("bookmark");
+    }
+
+    /**
+     * The keys of the records, read from the JSON as Genson writes them, in
+     * lower case, while CarQueryResult reads them as "Key" and "Record".
+     */
+    @SuppressWarnings("unchecked")
+    private static List<String> keys(final List<?> records) {
+        List<String> keys = new ArrayList<>();
+        for (Object record : records) {
+            keys.add((String) ((Map<String, Object>) record).get("key"));
+        }
+        return keys;
+    }
+
+    private static List<String> keys(final String page) {
+        return keys((List<?>) GENSON.deserialize(page, Map.class).get("records"));
+    }
+
+    private List<String> allCarKeys() {
+        return keys(GENSON.deserialize(contract.queryAllCars(ctx()), List.class));
+    }
+
+    @Nested
+    class Namespace {
+
+        @Test
+        public void whenCarsAreCreatedTheyLiveUnderTheirCompositeKey() {
+            createCar("CAR1", "Toyota", "Tomoko");
+
+            assertThat(stub.getState(FabCar.carKey("CAR1").toString())).isNotEmpty();
+            assertThat(stub.getState("CAR1")).isEmpty();
+            assertThat(contract.queryCar(ctx(), "CAR1").getOwner()).isEqualTo("Tomoko");
+        }
+
+        @Test
+        public void whenAllCarsAreListedAnyKeyIsFoundAndIndexEntriesAreNot() {
+            createCar("CAR1", "Toyota", "Tomoko");
+            createCar("CAR100", "Ford", "Brad");
+            createCar("truck", "Tata", "Valeria");
+
+            assertThat(allCarKeys()).containsExactly("CAR1", "CAR100", "truck");
+        }
+
+        @Test
+        public void whenACarHasNotBeenMovedItIsReadFromItsPlainKey() {
+            putLegacyCar("CAR1", "Toyota", "Tomoko");
+
+            assertThat(contract.queryCar(ctx(), "CAR1").getMake()).isEqualTo("Toyota");
+            assertThatThrownBy(() -> createCar("CAR1", "Ford", "Brad")).hasMessageContaining("already exists");
+        }
+    }
+
+    @Nested
+    class MigrateKeys {
+
+        @Test
+        public void whenRunInChunksEveryCarIsMoved() {
+            putLegacyCar("CAR1", "Toyota", "Tomoko");
+            putLegacyCar("CAR2", "Ford", "Brad");
+            putLegacyCar("CAR3", "Toyota", "Jin Soo");
+
+            KeyMigration first = migrateKeys(2, "");
+            assertThat(first.getMigrated()).isEqualTo(2);
+            assertThat(first.getBookmark()).isEqualTo("CAR3");
+            assertThat(allCarKeys()).containsExactly("CAR1", "CAR2", "CAR3");
+
+            KeyMigration second = migrateKeys(2, first.getBookmark());
+            assertThat(second.getMigrated()).isEqualTo(1);
+            assertThat(second.getBookmark()).isEmpty();
+            assertThat(allCarKeys()).containsExactly("CAR1", "CAR2", "CAR3");
+            assertThat(stub.getState("CAR1")).isEmpty();
+            assertThat(stub.getState("CAR3")).isEmpty();
+        }
+
+        @Test
+        public void whenHalfMigratedEveryCarIsListedOnce() {
+            putLegacyCar("CAR1", "Toyota", "Tomoko");
+            putLegacyCar("CAR10", "Ford", "Brad");
+            putLegacyCar("CAR2", "Toyota", "Jin Soo");
+            migrateKeys(1, "");
+            createCar("CAR3", "Tata", "Valeria");
+            // rewritten in the namespace, its plain key not yet deleted
+            stub.putState(FabCar.carKey("CAR2").toString(),
+                    new CarCodec().encode(new Car("Toyota", "model", "red", "Brad")));
+
+            List<?> cars = GENSON.deserialize(contract.queryAllCars(ctx()), List.class);
+
+            assertThat(keys(cars)).containsExactly("CAR1", "CAR10", "CAR2", "CAR3");
+            assertThat(cars.get(2).toString()).contains("owner=Brad");
+        }
+
+        @Test
+        public void whenCarsAreMovedTheyAreIndexed() {
+            putLegacyCar("CAR1", "Toyota", "Tomoko");
+            putLegacyCar("CAR2", "Ford", "Tomoko");
+            assertThat(keys(byOwner("Tomoko", 10, ""))).isEmpty();
+
+            migrateKeys(10, "");
+
+            assertThat(keys(byOwner("Tomoko", 10, ""))).containsExactly("CAR1", "CAR2");
+            assertThat(keys(byMake("Ford", 10, ""))).containsExactly("CAR2");
+        }
+
+        @Test
+        public void whenACarWasAlreadyRewrittenTheNewerOneIsKept() {
+            createCar("CAR1", "Toyota", "Tomoko");
+            contract.changeCarOwner(ctx(), "CAR1", "Brad");
+            putLegacyCar("CAR1", "Toyota", "Tomoko");
+
+            migrateKeys(10, "");
+
+            assertThat(contract.queryCar(ctx(), "CAR1").getOwner()).isEqualTo("Brad");
+            assertThat(keys(byOwner("Tomoko", 10, ""))).isEmpty();
+            assertThat(stub.getState("CAR1")).isEmpty();
+        }
+
+        @Test
+        public void whenChunkSizeIsOutOfRange() {
+            assertThatThrownBy(() -> migrateKeys(0, "")).hasMessageContaining("Chunk size");
+            assertThatThrownBy(() -> migrateKeys(1001, "")).hasMessageContaining("Chunk size");
+        }
+    }
+
+    @Nested
+    class Indexes {
+
+        @Test
+        public void whenQueriedByOwnerOnlyTheirCarsAreReturned() {
+            createCar("CAR1", "Toyota", "Tomoko");
+            createCar("CAR2", "Ford", "Brad");
+            createCar("CAR3", "Tesla", "Tomoko");
+
+            String page = byOwner("Tomoko", 10, "");
+
+            assertThat(keys(page)).containsExactly("CAR1", "CAR3");
+            assertThat(page).contains("\"make\":\"Tesla\"").doesNotContain("Ford");
+        }
+
+        @Test
+        public void whenQueriedByMakeOnlyItsCarsAreReturned() {
+            createCar("CAR1", "Toyota", "Tomoko");
+            createCar("CAR2", "Ford", "Brad");
+            createCar("CAR3", "Toyota", "Max");
+
+            assertThat(keys(byMake("Toyota", 10, ""))).containsExactly("CAR1", "CAR3");
+            assertThat(keys(byMake("Fiat", 10, ""))).isEmpty();
+        }
+
+        @Test
+        public void whenTheOwnerChangesTheCarMovesToTheNewOwner() {
+            createCar("CAR1", "Toyota", "Tomoko");
+
+            contract.changeCarOwner(ctx(), "CAR1", "Brad");
+
+            assertThat(keys(byOwner("Tomoko", 10, ""))).isEmpty();
+            assertThat(keys(byOwner("Brad", 10, ""))).containsExactly("CAR1");
+        }
+
+        @Test
+        public void whenResultsSpanPagesTheBookmarkResumes() {
+            for (int i = 0; i < 5; i++) {
+                createCar("CAR" + i, "Toyota", "Tomoko");
+            }
+
+            String first = byOwner("Tomoko", 2, "");
+            String second = byOwner("Tomoko", 2, bookmark(first));
+            String third = byOwner("Tomoko", 2, bookmark(second));
+
+            assertThat(keys(first)).containsExactly("CAR0", "CAR1");
+            assertThat(keys(second)).containsExactly("CAR2", "CAR3");
+            assertThat(keys(third)).containsExactly("CAR4");
+            assertThat(bookmark(third)).isEmpty();
+        }
+
+        @Test
+        public void whenAnIndexedCarIsStillUnderItsPlainKeyItIsFound() {
+            // indexed by an earlier version, before the car namespace
+            putLegacyCar("CAR1", "Toyota", "Tomoko");
+            stub.putState(stub.createCompositeKey("owner~key", "Tomoko", "CAR1").toString(), new byte[] {0});
+
+            String page = byOwner("Tomoko", 10, "");
+
+            assertThat(keys(page)).containsExactly("CAR1");
+            assertThat(page).contains("\"make\":\"Toyota\"");
+        }
+
+        @Test
+        public void whenPageSizeIsOutOfRange() {
+            assertThatThrownBy(() -> byOwner("Tomoko", 0, "")).hasMessageContaining("Page size");
+            assertThatThrownBy(() -> byMake("Toyota", 1001, "")).hasMessageContaining("Page size");
+        }
+    }
+
+    @Nested
+    class BackfillCarIndex {
+
+        @Test
+        public void whenRunInChunksEveryCarIsIndexed() {
+            putUnindexedCar("CAR1", "Toyota", "Tomoko");
+            putUnindexedCar("CAR10", "Ford", "Brad");
+            putUnindexedCar("CAR2", "Toyota", "Brad");
+
+            KeyPage first = carKeys(2, "");
+            assertThat(first.getKeys()).containsExactly("CAR1", "CAR10");
+            assertThat(backfillCarIndex(first.getKeys())).isEqualTo(2);
+            assertThat(keys(byMake("Toyota", 10, ""))).containsExactly("CAR1");
+
+            KeyPage second = carKeys(2, first.getBookmark());
+            assertThat(second.getKeys()).containsExactly("CAR2");
+            assertThat(second.getBookmark()).isEmpty();
+            assertThat(backfillCarIndex(second.getKeys())).isEqualTo(1);
+            assertThat(keys(byMake("Toyota", 10, ""))).containsExactly("CAR1", "CAR2");
+            assertThat(keys(byOwner("Brad", 10, ""))).containsExactly("CAR10", "CAR2");
+        }
+
+        @Test
+        public void whenRunAgainNothingChanges() {
+            createCar("CAR1", "Toyota", "Tomoko");
+            contract.changeCarOwner(ctx(), "CAR1", "Brad");
+
+            assertThat(backfillCarIndex(carKeys(10, "").getKeys())).isEqualTo(1);
+            assertThat(keys(byOwner("Brad", 10, ""))).containsExactly("CAR1");
+            assertThat(keys(byOwner("Tomoko", 10, ""))).isEmpty();
+            assertThat(keys(byMake("Toyota", 10, ""))).containsExactly("CAR1");
+        }
+
+        @Test
+        public void whenRunLateInTheLedgerTheReadsStayWithinTheChunk() {
+            for (int i = 100; i < 400; i++) {
+                putUnindexedCar("CAR" + i, "Toyota", "Tomoko");
+            }
+            String bookmark = "";
+            for (int chunk = 0; chunk < 2; chunk++) {
+                bookmark = carKeys(100, bookmark).getBookmark();
+            }
+            List<String> lastChunk = carKeys(100, bookmark).getKeys();
+            assertThat(lastChunk).hasSize(100).startsWith("CAR300");
+
+            stub.reads = 0;
+            stub.scans = 0;
+            backfillCarIndex(lastChunk);
+
+            assertThat(stub.scans).isZero();
+            assertThat(stub.reads).isLessThanOrEqualTo(2 * lastChunk.size());
+            assertThat(keys(byOwner("Tomoko", 1000, ""))).hasSize(100);
+        }
+
+        @Test
+        public void whenACarDoesNotExistTheChunkIsRejected() {
+            assertThatThrownBy(() -> backfillCarIndex(Arrays.asList("CAR1"))).hasMessage("Car CAR1 does not exist");
+        }
+
+        @Test
+        public void whenTheKeysAreMalformedTheChunkIsRejected() {
+            assertThatThrownBy(() -> contract.backfillCarIndex(ctx(), "[\"CAR1\" \"CAR2\"]"))
+                    .hasMessageContaining("JSON array of strings");
+            assertThatThrownBy(() -> contract.backfillCarIndex(ctx(), "null"))
+                    .hasMessageContaining("JSON array of strings");
+        }
+
+        @Test
+        public void whenChunkSizeIsOutOfRange() {
+            List<String> tooMany = new ArrayList<>();
+            for (int i = 0; i < 1001; i++) {
+                tooMany.add("CAR" + i);
+            }
+            assertThatThrownBy(() -> carKeys(0, "")).hasMessageContaining("Chunk size");
+            assertThatThrownBy(() -> carKeys(1001, "")).hasMessageContaining("Chunk size");
+            assertThatThrownBy(() -> backfillCarIndex(new ArrayList<>())).hasMessageContaining("Chunk size");
+            assertThatThrownBy(() -> backfillCarIndex(tooMany)).hasMessageContaining("Chunk size");
+        }
+    }
+
+    @Nested
+    class CreateCars {
+
+        @Test
+        public void whenACarHasNoOwnerItIsReportedAndTheOthersAreCreated() {
+            String result = contract.createCars(ctx(), "[{\"key\":\"CAR1\",\"make\":\"Toyota\",\"model\":\"Prius\","
+                    + "\"color\":\"blue\"},{\"key\":\"CAR2\",\"make\":\"Ford\",\"model\":\"Mustang\","
+                    + "\"color\":\"red\",\"owner\":\"Brad\"}]", true);
+
+            assertThat(result).isEqualTo("{\"created\":[\"CAR2\"],\"failed\":["
+                    + "{\"index\":0,\"key\":\"CAR1\",\"message\":\"Car CAR1 has no owner\"}]}");
+            assertThat(allCarKeys()).containsExactly("CAR2");
+            assertThat(keys(byOwner("Brad", 10, ""))).containsExactly("CAR2");
+        }
+
+        @Test
+        public void whenAnIndexedFieldHoldsTheDelimiterItIsReported() {
+            String result = contract.createCars(ctx(), "[{\"key\":\"CAR1\",\"make\":\"Toy\\u0000ota\","
+                    + "\"model\":\"Prius\",\"color\":\"blue\",\"owner\":\"Tomoko\"}]", true);
+
+            assertThat(result).contains("Car CAR1 has a make containing U+0000");
+            assertThat(allCarKeys()).isEmpty();
+        }
+
+        @Test
+        public void whenStoppingOnErrorTheBadCarFailsTheBatch() {
+            assertThatThrownBy(() -> contract.createCars(ctx(), "[{\"key\":\"CAR1\",\"make\":\"Toyota\"}]", false))
+                    .hasMessage("Item 0: Car CAR1 has no model");
+            assertThatThrownBy(() -> createCar("CAR1", "Toyota", null)).hasMessage("Car CAR1 has no owner");
+        }
+
+        @Test
+        public void whenTheBatchIsMalformedNothingIsWritten() {
+            String car = "{\"key\":\"%s\",\"make\":\"Toyota\",\"model\":\"Prius\",\"color\":\"blue\","
+                    + "\"owner\":\"Tomoko\"}";
+
+            assertThatThrownBy(() -> contract.createCars(ctx(),
+                    "[" + String.format(car, "CAR4") + String.format(car, "CAR5") + "]", true))
+                    .hasMessageContaining("',' expected");
+            assertThatThrownBy(() -> contract.createCars(ctx(),
+                    "[" + String.format(car, "CAR3") + "] trailing", true))
+                    .hasMessageContaining("unexpected data after the document");
+            assertThat(allCarKeys()).isEmpty();
+        }
+    }
+}
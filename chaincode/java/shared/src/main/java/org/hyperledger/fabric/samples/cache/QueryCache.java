@@ -0,0 +1,194 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Opt-in LRU cache of the responses of EVALUATE transactions, keyed by function
+ * and arguments and bounded by the total length of the cached responses.
+ *
+ * An entry is dropped as soon as this chaincode writes a key starting with one
+ * of the prefixes it was read from. Writes endorsed by other peers, and writes
+ * that commit after the entry was filled, are only picked up once the entry is
+ * older than the TTL: a cached response can miss the changes of the last TTL
+ * milliseconds, 1000 by default and at most MAX_TTL_MILLIS.
+ *
+ * A response served from the cache reads nothing from the ledger, so if it were
+ * endorsed for a submitted transaction its read set would be empty and MVCC
+ * validation could not reject it for a stale response. The chaincode cannot
+ * tell an evaluated proposal from a submitted one, so the cache only answers
+ * proposals whose transient data holds TRANSIENT_KEY, which clients set when
+ * evaluating and never when submitting; any other proposal reads the ledger.
+ *
+ * Disabled unless CHAINCODE_QUERY_CACHE_SIZE, the size in characters, is set;
+ * CHAINCODE_QUERY_CACHE_TTL sets the TTL in milliseconds.
+ */
+public final class QueryCache {
+
+    public static final String SIZE_VARIABLE = "CHAINCODE_QUERY_CACHE_SIZE";
+    public static final String TTL_VARIABLE = "CHAINCODE_QUERY_CACHE_TTL";
+
+    /** The transient data entry with which an evaluated proposal accepts a cached response. */
+    public static final String TRANSIENT_KEY = "queryCache";
+
+    public static final long MAX_TTL_MILLIS = 60_000;
+
+    private static final long DEFAULT_TTL_MILLIS = 1000;
+
+    private final long maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<List<String>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** The cached queries by the key prefixes they were read from. */
+    private final Map<String, Set<List<String>>> byPrefix = new HashMap<>();
+    /** Lengths of the prefixes ever indexed, a handful, so invalidate() looks up one prefix of each. */
+    private final Set<Integer> prefixLengths = new TreeSet<>();
+    private long size;
+
+    public QueryCache(final long maxSize, final long ttlMillis) {
+        if (ttlMillis < 0 || ttlMillis > MAX_TTL_MILLIS) {
+            throw new IllegalArgumentException(String.format("%s must be between 0 and %d, not %d",
+                    TTL_VARIABLE, MAX_TTL_MILLIS, ttlMillis));
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis * 1_000_000;
+    }
+
+    public static QueryCache fromEnvironment() {
+        return new QueryCache(parse(System.getenv(SIZE_VARIABLE), 0),
+                parse(System.getenv(TTL_VARIABLE), DEFAULT_TTL_MILLIS));
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @return the cached response, or null when there is none that is fresh or
+     *         the proposal did not ask for one by its transient data
+     */
+    public String get(final ChaincodeStub stub, final List<String> query) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Map<String, byte[]> transientData = stub.getTransient();
+        if (transientData == null || !transientData.containsKey(TRANSIENT_KEY)) {
+            return null;
+        }
+        return get(query);
+    }
+
+    /**
+     * @return the cached response, or null when there is none that is fresh
+     */
+    public synchronized String get(final List<String> query) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry entry = entries.get(query);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.createdAt >= ttlNanos) {
+            remove(query);
+            return null;
+        }
+        return entry.response;
+    }
+
+    /**
+     * Caches a response until the TTL runs out or a key starting with one of
+     * prefixes is written, evicting the least recently used responses to make
+     * room.
+     */
+    public synchronized void put(final List<String> query, final List<String> prefixes, final String response) {
+        if (!isEnabled() || response.length() > maxSize) {
+            return;
+        }
+        remove(query);
+        entries.put(query, new Entry(response, prefixes, System.nanoTime()));
+        size += response.length();
+        for (String prefix : prefixes) {
+            byPrefix.computeIfAbsent(prefix, name -> new HashSet<>()).add(query);
+            prefixLengths.add(prefix.length());
+        }
+
+        while (size > maxSize) {
+            remove(entries.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Drops every response read from a prefix of key, which this chaincode is
+     * writing.
+     */
+    public void invalidate(final String key) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            if (entries.isEmpty()) {
+                return;
+            }
+            for (int length : prefixLengths) {
+                if (length > key.length()) {
+                    break;
+                }
+                Set<List<String>> queries = byPrefix.get(key.substring(0, length));
+                if (queries != null) {
+                    for (List<String> query : new ArrayList<>(queries)) {
+                        remove(query);
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void remove(final List<String> query) {
+        Entry entry = entries.remove(query);
+        if (entry == null) {
+            return;
+        }
+        size -= entry.response.length();
+        for (String prefix : entry.prefixes) {
+            Set<List<String>> queries = byPrefix.get(prefix);
+            if (queries != null && queries.remove(query) && queries.isEmpty()) {
+                byPrefix.remove(prefix);
+            }
+        }
+    }
+
+    private static long parse(final String value, final long defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        return Long.parseLong(value);
+    }
+
+    private static final class Entry {
+        private final String response;
+        private final List<String> prefixes;
+        private final long createdAt;
+
+        Entry(final String response, final List<String> prefixes, final long createdAt) {
+            this.response = response;
+            this.prefixes = prefixes;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.json;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal pull parser over the UTF-8 bytes of a JSON object, just enough to
+ * decode the flat state documents of the chaincodes without reflection. Field
+ * names are matched against pre-encoded names, so only values are allocated.
+ */
+public final class JsonReader {
+
+    private final byte[] data;
+    private int pos;
+    // true until the first element or field of the innermost open container
+    private boolean first;
+
+    public JsonReader(final byte[] data) {
+        this.data = data;
+    }
+
+    public void beginObject() {
+        expect('{');
+        first = true;
+    }
+
+    public void beginArray() {
+        expect('[');
+        first = true;
+    }
+
+    /**
+     * Moves to the next element of the current array, past the comma
+     * separating it from the previous one.
+     *
+     * @return false once the closing bracket has been consumed
+     */
+    public boolean hasNextElement() {
+        return hasNext(']');
+    }
+
+    /**
+     * Moves to the next field of the current object, past the comma separating
+     * it from the previous one.
+     *
+     * @return false once the closing brace has been consumed
+     */
+    public boolean hasNextField() {
+        return hasNext('}');
+    }
+
+    /**
+     * Checks that nothing but whitespace follows the top-level value.
+     */
+    public void endDocument() {
+        skipWhitespace();
+        if (pos < data.length) {
+            throw error("unexpected data after the document");
+        }
+    }
+
+    /**
+     * Reads a field name and its colon.
+     *
+     * @return the index of the name in names, or -1 for a field this reader
+     *         does not know about
+     */
+    public int nextField(final byte[][] names) {
+        skipWhitespace();
+        expect('"');
+        int start = pos;
+        while (data[pos] != '"') {
+            if (data[pos] == '\\') {
+                pos++;
+            }
+            pos++;
+        }
+        int end = pos++;
+        expect(':');
+        for (int i = 0; i < names.length; i++) {
+            if (matches(names[i], start, end)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String nextString() {
+        skipWhitespace();
+        if (peek() == 'n') {
+            skipLiteral();
+            return null;
+        }
+        expect('"');
+        int start = pos;
+        while (data[pos] != '"' && data[pos] != '\\') {
+            pos++;
+        }
+        if (data[pos] == '"') {
+            return new String(data, start, pos++ - start, UTF_8);
+        }
+        pos = start;
+        return nextEscapedString();
+    }
+
+    public int nextInt() {
+        skipWhitespace();
+        boolean negative = peek() == '-';
+        if (negative) {
+            pos++;
+        }
+        long value = 0;
+        int start = pos;
+        while (pos < data.length && data[pos] >= '0' && data[pos] <= '9') {
+            value = value * 10 + (data[pos++] - '0');
+            if (value > 1L + Integer.MAX_VALUE) {
+                throw error("integer out of range");
+            }
+        }
+        if (pos == start) {
+            throw error("number expected");
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            throw error("integer out of range");
+        }
+        return (int) value;
+    }
+
+    public List<String> nextStringArray() {
+        skipWhitespace();
+        if (peek() == 'n') {
+            skipLiteral();
+            return null;
+        }
+        expect('[');
+        List<String> values = new ArrayList<>();
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return values;
+        }
+        do {
+            values.add(nextString());
+            skipWhitespace();
+        } while (data[pos++] == ',');
+        if (data[pos - 1] != ']') {
+            throw error("']' expected");
+        }
+        return values;
+    }
+
+    /**
+     * Skips the value of a field this reader does not know about.
+     */
+    public void skipValue() {
+        skipWhitespace();
+        byte c = peek();
+        if (c == '"') {
+            nextString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = data[pos++];
+                if (c == '"') {
+                    pos--;
+                    nextString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        } else {
+            skipLiteral();
+        }
+    }
+
+    private String nextEscapedString() {
+        StringBuilder value = new StringBuilder();
+        int start = pos;
+        while (true) {
+            byte c = data[pos];
+            if (c == '"') {
+                break;
+            }
+            if (c != '\\') {
+                pos++;
+                continue;
+            }
+            value.append(new String(data, start, pos - start, UTF_8));
+            char escaped = (char) data[pos + 1];
+            pos += 2;
+            switch (escaped) {
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'u':
+                    value.append((char) Integer.parseInt(new String(data, pos, 4, UTF_8), 16));
+                    pos += 4;
+                    break;
+                default:
+                    value.append(escaped);
+            }
+            start = pos;
+        }
+        value.append(new String(data, start, pos - start, UTF_8));
+        pos++;
+        return value.toString();
+    }
+
+    private boolean hasNext(final char close) {
+        skipWhitespace();
+        if (peek() == close) {
+            pos++;
+            // the enclosing container, if any, now has an element
+            first = false;
+            return false;
+        }
+        if (first) {
+            first = false;
+        } else {
+            expect(',');
+        }
+        return true;
+    }
+
+    private boolean matches(final byte[] name, final int start, final int end) {
+        if (name.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (name[i] != data[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipLiteral() {
+        while (pos < data.length && data[pos] != ',' && data[pos] != '}' && data[pos] != ']'
+                && data[pos] > ' ') {
+            pos++;
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < data.length && data[pos] <= ' ') {
+            pos++;
+        }
+    }
+
+    private byte peek() {
+        if (pos >= data.length) {
+            throw error("unexpected end of document");
+        }
+        return data[pos];
+    }
+
+    private void expect(final char c) {
+        skipWhitespace();
+        if (peek() != c) {
+            throw error("'" + c + "' expected");
+        }
+        pos++;
+    }
+
+    private IllegalArgumentException error(final String message) {
+        return new IllegalArgumentException("Malformed JSON at offset " + pos + ": " + message);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.json;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal JSON object writer that encodes straight to UTF-8 bytes.
+ *
+ * The backing buffer is reused across documents, so an instance must not be
+ * shared between threads. Null fields are omitted, as Genson does.
+ */
+public final class JsonWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(UTF_8);
+
+    private byte[] buffer = new byte[256];
+    private int length;
+    private boolean firstField;
+
+    /**
+     * Encodes a field name once, ready to be passed to the field methods.
+     */
+    public static byte[] name(final String name) {
+        return ("\"" + name + "\":").getBytes(UTF_8);
+    }
+
+    public JsonWriter beginObject() {
+        length = 0;
+        firstField = true;
+        write('{');
+        return this;
+    }
+
+    public JsonWriter field(final byte[] name, final String value) {
+        if (value != null) {
+            writeName(name);
+            writeString(value);
+        }
+        return this;
+    }
+
+    public JsonWriter field(final byte[] name, final int value) {
+        writeName(name);
+        writeInt(value);
+        return this;
+    }
+
+    public JsonWriter field(final byte[] name, final List<String> values) {
+        if (values != null) {
+            writeName(name);
+            write('[');
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    write(',');
+                }
+                writeString(values.get(i));
+            }
+            write(']');
+        }
+        return this;
+    }
+
+    public byte[] endObject() {
+        write('}');
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void writeName(final byte[] name) {
+        if (!firstField) {
+            write(',');
+        }
+        firstField = false;
+        ensureCapacity(name.length);
+        System.arraycopy(name, 0, buffer, length, name.length);
+        length += name.length;
+    }
+
+    private void writeInt(final int value) {
+        if (value == Integer.MIN_VALUE) {
+            byte[] digits = Integer.toString(value).getBytes(UTF_8);
+            ensureCapacity(digits.length);
+            System.arraycopy(digits, 0, buffer, length, digits.length);
+            length += digits.length;
+            return;
+        }
+        int remaining = value;
+        if (remaining < 0) {
+            write('-');
+            remaining = -remaining;
+        }
+        int digits = 1;
+        for (int bound = 10; digits < 10 && remaining >= bound; bound *= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        length += digits;
+    }
+
+    private void writeString(final String value) {
+        if (value == null) {
+            ensureCapacity(4);
+            buffer[length++] = 'n';
+            buffer[length++] = 'u';
+            buffer[length++] = 'l';
+            buffer[length++] = 'l';
+            return;
+        }
+        // worst case is a six byte escape per char
+        ensureCapacity(value.length() * 6 + 2);
+        buffer[length++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer[length++] = '\\';
+                buffer[length++] = (byte) c;
+            } else if (c < 0x20) {
+                writeControl(c);
+            } else if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xc0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[length++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else {
+                buffer[length++] = (byte) (0xe0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[length++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        buffer[length++] = '"';
+    }
+
+    private void writeControl(final char c) {
+        buffer[length++] = '\\';
+        switch (c) {
+            case '\n':
+                buffer[length++] = 'n';
+                break;
+            case '\r':
+                buffer[length++] = 'r';
+                break;
+            case '\t':
+                buffer[length++] = 't';
+                break;
+            case '\b':
+                buffer[length++] = 'b';
+                break;
+            case '\f':
+                buffer[length++] = 'f';
+                break;
+            default:
+                buffer[length++] = 'u';
+                buffer[length++] = '0';
+                buffer[length++] = '0';
+                buffer[length++] = HEX[c >> 4];
+                buffer[length++] = HEX[c & 0xf];
+        }
+    }
+
+    private void write(final char c) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) c;
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
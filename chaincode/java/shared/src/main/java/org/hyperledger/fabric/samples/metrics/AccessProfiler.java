@@ -0,0 +1,458 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Which keys the transactions of a contract read, scan and write, to find the
+ * keys that serialize its throughput: a key written by many transactions
+ * makes concurrent ones fail MVCC validation, and so does a key one function
+ * writes while another reads it or scans a range holding it.
+ *
+ * profile() wraps the stub of one transaction in every sampleEvery, named by
+ * its function, and end() adds what it accessed, counting each key once per
+ * transaction. Only the world state is profiled; private data, rich queries,
+ * which are not validated at commit, and paginated queries, only allowed in
+ * read-only transactions, are not. Used on its own in tests, or by
+ * TransactionMetrics when given one with profile(), sampling a production
+ * service. At most MAX_KEYS keys are tracked; keys first seen after that are
+ * counted in getUntrackedKeys() only.
+ */
+public final class AccessProfiler {
+
+    /** Distinct keys tracked, over all functions. */
+    static final int MAX_KEYS = 100_000;
+
+    /** Distinct ranges tracked per function. */
+    static final int MAX_RANGES = 1_000;
+
+    /** Share of the sampled transactions that makes a function frequent. */
+    static final double FREQUENT_SHARE = 0.05;
+
+    private static final ThreadLocal<Access> CURRENT = new ThreadLocal<>();
+
+    private final int sampleEvery;
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong untrackedKeys = new AtomicLong();
+    private final Map<String, FunctionStats> functions = new ConcurrentHashMap<>();
+    private final Map<String, KeyStats> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Profiles every transaction.
+     */
+    public AccessProfiler() {
+        this(1);
+    }
+
+    /**
+     * Profiles one transaction in sampleEvery.
+     */
+    public AccessProfiler(final int sampleEvery) {
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("sampleEvery must be positive, got " + sampleEvery);
+        }
+        this.sampleEvery = sampleEvery;
+    }
+
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    /**
+     * Returns the stub to give the transaction stub is running, recording its
+     * accesses when it is sampled, or stub itself when it is not.
+     */
+    public ChaincodeStub profile(final ChaincodeStub stub) {
+        if (transactions.getAndIncrement() % sampleEvery != 0) {
+            CURRENT.remove();
+            return stub;
+        }
+        Access access = new Access(transactionName(stub.getFunction()));
+        CURRENT.set(access);
+        return ProfiledChaincodeStub.wrap(stub, access);
+    }
+
+    /**
+     * Adds the accesses of the sampled transaction that ran on this thread.
+     */
+    public void end() {
+        Access access = CURRENT.get();
+        if (access == null) {
+            return;
+        }
+        CURRENT.remove();
+
+        FunctionStats function = functions.computeIfAbsent(access.function, name -> new FunctionStats());
+        function.transactions.incrementAndGet();
+        for (String key : access.reads) {
+            KeyStats stats = key(key);
+            if (stats != null) {
+                stats.reads.incrementAndGet();
+                stats.readers.computeIfAbsent(access.function, name -> new AtomicLong()).incrementAndGet();
+            }
+        }
+        for (String key : access.writes) {
+            KeyStats stats = key(key);
+            if (stats != null) {
+                stats.writes.incrementAndGet();
+                stats.writers.computeIfAbsent(access.function, name -> new AtomicLong()).incrementAndGet();
+            }
+        }
+        for (Range range : access.ranges) {
+            if (function.ranges.size() < MAX_RANGES) {
+                function.ranges.add(range);
+            }
+        }
+    }
+
+    /**
+     * Number of sampled transactions recorded.
+     */
+    public long getSampledTransactions() {
+        long sampled = 0;
+        for (FunctionStats function : functions.values()) {
+            sampled += function.transactions.get();
+        }
+        return sampled;
+    }
+
+    public long getUntrackedKeys() {
+        return untrackedKeys.get();
+    }
+
+    /**
+     * The top keys, those written by the most transactions first, then those
+     * read by the most.
+     */
+    public List<HotKey> getHotKeys(final int top) {
+        List<HotKey> hotKeys = new ArrayList<>();
+        for (Map.Entry<String, KeyStats> entry : keys.entrySet()) {
+            KeyStats stats = entry.getValue();
+            hotKeys.add(new HotKey(entry.getKey(), stats.writes.get(), stats.reads.get(), counts(stats.writers),
+                    counts(stats.readers)));
+        }
+        hotKeys.sort(Comparator.comparingLong(HotKey::getWrites).thenComparingLong(HotKey::getReads).reversed()
+                .thenComparing(HotKey::getKey));
+        return hotKeys.subList(0, Math.min(top, hotKeys.size()));
+    }
+
+    /**
+     * For every function, the other frequent functions that read or scan keys
+     * it writes, those sharing the most keys first. A function is frequent
+     * when it is at least FREQUENT_SHARE of the sampled transactions. The
+     * written keys are sorted once and each range is looked up in them, so a
+     * report costs the keys the ranges hold, not every key times every range.
+     */
+    public List<Overlap> getOverlaps() {
+        long sampled = getSampledTransactions();
+        Set<String> frequent = new HashSet<>();
+        for (Map.Entry<String, FunctionStats> entry : functions.entrySet()) {
+            if (entry.getValue().transactions.get() >= sampled * FREQUENT_SHARE) {
+                frequent.add(entry.getKey());
+            }
+        }
+
+        // the written keys, sorted once so each scanned range is a sub map
+        TreeMap<String, KeyStats> written = new TreeMap<>();
+        for (Map.Entry<String, KeyStats> entry : keys.entrySet()) {
+            if (!entry.getValue().writers.isEmpty()) {
+                written.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        // writer -> reader -> {keys read, keys in scanned ranges}
+        Map<String, Map<String, long[]>> shared = new TreeMap<>();
+        for (KeyStats stats : written.values()) {
+            for (String writer : stats.writers.keySet()) {
+                for (String reader : stats.readers.keySet()) {
+                    if (frequent.contains(reader) && !reader.equals(writer)) {
+                        count(shared, writer, reader)[0]++;
+                    }
+                }
+            }
+        }
+        for (String reader : frequent) {
+            for (Range range : merge(functions.get(reader).ranges)) {
+                Map<String, KeyStats> scanned = range.endKey.isEmpty() ? written.tailMap(range.startKey, true)
+                        : written.subMap(range.startKey, true, range.endKey, false);
+                for (KeyStats stats : scanned.values()) {
+                    if (stats.readers.containsKey(reader)) {
+                        continue;
+                    }
+                    for (String writer : stats.writers.keySet()) {
+                        if (!reader.equals(writer)) {
+                            count(shared, writer, reader)[1]++;
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Overlap> overlaps = new ArrayList<>();
+        for (Map.Entry<String, Map<String, long[]>> writer : shared.entrySet()) {
+            for (Map.Entry<String, long[]> reader : writer.getValue().entrySet()) {
+                overlaps.add(new Overlap(writer.getKey(), reader.getKey(), reader.getValue()[0],
+                        reader.getValue()[1]));
+            }
+        }
+        overlaps.sort(Comparator.comparingLong(Overlap::getSharedKeys).reversed());
+        return overlaps;
+    }
+
+    /**
+     * A plain text report of the top hot keys and of the overlaps.
+     */
+    public String report(final int top) {
+        StringBuilder out = new StringBuilder();
+        out.append("Sampled transactions: ").append(getSampledTransactions()).append(", one in ")
+                .append(sampleEvery).append('\n');
+        for (Map.Entry<String, FunctionStats> entry : new TreeMap<>(functions).entrySet()) {
+            out.append("  ").append(entry.getKey()).append(' ').append(entry.getValue().transactions.get())
+                    .append('\n');
+        }
+
+        out.append("\nHot keys, by transactions writing and reading them:\n");
+        for (HotKey hotKey : getHotKeys(top)) {
+            out.append("  ").append(hotKey).append('\n');
+        }
+        if (untrackedKeys.get() > 0) {
+            out.append("  (").append(untrackedKeys.get()).append(" accesses to untracked keys)\n");
+        }
+
+        out.append("\nWrites read by other frequent functions:\n");
+        for (Overlap overlap : getOverlaps()) {
+            out.append("  ").append(overlap).append('\n');
+        }
+        return out.toString();
+    }
+
+    private KeyStats key(final String key) {
+        KeyStats stats = keys.get(key);
+        if (stats != null) {
+            return stats;
+        }
+        if (keys.size() >= MAX_KEYS) {
+            untrackedKeys.incrementAndGet();
+            return null;
+        }
+        return keys.computeIfAbsent(key, name -> new KeyStats());
+    }
+
+    private static long[] count(final Map<String, Map<String, long[]>> shared, final String writer,
+            final String reader) {
+        return shared.computeIfAbsent(writer, name -> new TreeMap<>()).computeIfAbsent(reader, name -> new long[2]);
+    }
+
+    /**
+     * The ranges sorted by start key, with the overlapping ones joined, so no
+     * key is in more than one.
+     */
+    static List<Range> merge(final Set<Range> ranges) {
+        List<Range> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparing(range -> range.startKey));
+        List<Range> merged = new ArrayList<>();
+        for (Range range : sorted) {
+            Range last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last == null || !last.endKey.isEmpty() && last.endKey.compareTo(range.startKey) < 0) {
+                merged.add(range);
+            } else if (!last.endKey.isEmpty() && (range.endKey.isEmpty() || range.endKey.compareTo(last.endKey) > 0)) {
+                merged.set(merged.size() - 1, new Range(last.startKey, range.endKey));
+            }
+        }
+        return merged;
+    }
+
+    private static Map<String, Long> counts(final Map<String, AtomicLong> functions) {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : functions.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    /**
+     * The function name without its contract name, as in "contract:function".
+     */
+    private static String transactionName(final String function) {
+        if (function == null || function.isEmpty()) {
+            return "unknown";
+        }
+        return function.substring(function.lastIndexOf(':') + 1);
+    }
+
+    /**
+     * Composite keys start with, and separate their attributes with, U+0000.
+     */
+    private static String printable(final String key) {
+        return key.replace('\u0000', '~');
+    }
+
+    /**
+     * A key and the transactions that accessed it.
+     */
+    public static final class HotKey {
+
+        private final String key;
+        private final long writes;
+        private final long reads;
+        private final Map<String, Long> writers;
+        private final Map<String, Long> readers;
+
+        HotKey(final String key, final long writes, final long reads, final Map<String, Long> writers,
+                final Map<String, Long> readers) {
+            this.key = key;
+            this.writes = writes;
+            this.reads = reads;
+            this.writers = writers;
+            this.readers = readers;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /** Transactions that wrote or deleted the key. */
+        public long getWrites() {
+            return writes;
+        }
+
+        /** Transactions that read the key, or iterated over it in a range. */
+        public long getReads() {
+            return reads;
+        }
+
+        /** Transactions that wrote the key, by function. */
+        public Map<String, Long> getWriters() {
+            return writers;
+        }
+
+        /** Transactions that read the key, by function. */
+        public Map<String, Long> getReaders() {
+            return readers;
+        }
+
+        @Override
+        public String toString() {
+            return printable(key) + " writes " + writes + " " + writers + " reads " + reads + " " + readers;
+        }
+    }
+
+    /**
+     * Keys a function writes that another function reads, making them
+     * invalidate each other when they run concurrently.
+     */
+    public static final class Overlap {
+
+        private final String writer;
+        private final String reader;
+        private final long readKeys;
+        private final long scannedKeys;
+
+        Overlap(final String writer, final String reader, final long readKeys, final long scannedKeys) {
+            this.writer = writer;
+            this.reader = reader;
+            this.readKeys = readKeys;
+            this.scannedKeys = scannedKeys;
+        }
+
+        public String getWriter() {
+            return writer;
+        }
+
+        public String getReader() {
+            return reader;
+        }
+
+        /** Keys written by writer that reader reads. */
+        public long getReadKeys() {
+            return readKeys;
+        }
+
+        /** Keys written by writer, not read by reader, but within a range it scans. */
+        public long getScannedKeys() {
+            return scannedKeys;
+        }
+
+        public long getSharedKeys() {
+            return readKeys + scannedKeys;
+        }
+
+        @Override
+        public String toString() {
+            return writer + " writes " + getSharedKeys() + " keys " + reader + " reads (" + readKeys + " read, "
+                    + scannedKeys + " in scanned ranges)";
+        }
+    }
+
+    /**
+     * What one sampled transaction accessed; only touched by the thread running
+     * it.
+     */
+    static final class Access {
+
+        final String function;
+        final Set<String> reads = new HashSet<>();
+        final Set<String> writes = new HashSet<>();
+        final Set<Range> ranges = new HashSet<>();
+
+        Access(final String function) {
+            this.function = function;
+        }
+    }
+
+    /**
+     * A scanned range of keys, from startKey inclusive to endKey exclusive; an
+     * empty endKey is unbounded.
+     */
+    static final class Range {
+
+        final String startKey;
+        final String endKey;
+
+        Range(final String startKey, final String endKey) {
+            this.startKey = startKey == null ? "" : startKey;
+            this.endKey = endKey == null ? "" : endKey;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Range)) {
+                return false;
+            }
+            Range range = (Range) other;
+            return startKey.equals(range.startKey) && endKey.equals(range.endKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return startKey.hashCode() * 31 + endKey.hashCode();
+        }
+    }
+
+    private static final class FunctionStats {
+
+        final AtomicLong transactions = new AtomicLong();
+        final Set<Range> ranges = ConcurrentHashMap.newKeySet();
+    }
+
+    private static final class KeyStats {
+
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong writes = new AtomicLong();
+        final Map<String, AtomicLong> writers = new ConcurrentHashMap<>();
+        final Map<String, AtomicLong> readers = new ConcurrentHashMap<>();
+    }
+}
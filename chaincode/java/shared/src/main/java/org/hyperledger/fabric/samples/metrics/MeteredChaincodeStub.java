@@ -0,0 +1,162 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.metrics;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * Counts the state calls a transaction makes through its stub, and the bytes
+ * of the values it reads and writes, into the transaction's sample. A dynamic
+ * proxy, so every method of the stub, present or future, is passed through;
+ * the iterators of range, rich and history queries are wrapped to count the
+ * values read as they are iterated.
+ */
+final class MeteredChaincodeStub implements InvocationHandler {
+
+    private static final Map<String, Integer> CALLS = new HashMap<>();
+
+    static {
+        for (String name : new String[] {"getState", "getStringState", "getPrivateData", "getPrivateDataUTF8",
+                "getPrivateDataHash"}) {
+            CALLS.put(name, TransactionMetrics.GET);
+        }
+        for (String name : new String[] {"putState", "putStringState", "putPrivateData"}) {
+            CALLS.put(name, TransactionMetrics.PUT);
+        }
+        for (String name : new String[] {"delState", "delPrivateData"}) {
+            CALLS.put(name, TransactionMetrics.DELETE);
+        }
+        for (String name : new String[] {"getStateByRange", "getStateByRangeWithPagination",
+                "getStateByPartialCompositeKey", "getStateByPartialCompositeKeyWithPagination",
+                "getPrivateDataByRange", "getPrivateDataByPartialCompositeKey"}) {
+            CALLS.put(name, TransactionMetrics.RANGE);
+        }
+        for (String name : new String[] {"getQueryResult", "getQueryResultWithPagination",
+                "getPrivateDataQueryResult"}) {
+            CALLS.put(name, TransactionMetrics.QUERY);
+        }
+        CALLS.put("getHistoryForKey", TransactionMetrics.HISTORY);
+    }
+
+    private final ChaincodeStub stub;
+    private final TransactionMetrics.Sample sample;
+
+    private MeteredChaincodeStub(final ChaincodeStub stub, final TransactionMetrics.Sample sample) {
+        this.stub = stub;
+        this.sample = sample;
+    }
+
+    static ChaincodeStub wrap(final ChaincodeStub stub, final TransactionMetrics.Sample sample) {
+        return (ChaincodeStub) Proxy.newProxyInstance(ChaincodeStub.class.getClassLoader(),
+                new Class<?>[] {ChaincodeStub.class}, new MeteredChaincodeStub(stub, sample));
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        Object result;
+        try {
+            result = method.invoke(stub, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+
+        Integer call = CALLS.get(method.getName());
+        if (call == null) {
+            return result;
+        }
+        sample.calls[call]++;
+        switch (call) {
+        case TransactionMetrics.GET:
+            sample.bytesRead += size(result);
+            return result;
+        case TransactionMetrics.PUT:
+            sample.bytesWritten += size(args[args.length - 1]);
+            return result;
+        case TransactionMetrics.DELETE:
+            return result;
+        default:
+            return new MeteredResults<>(result);
+        }
+    }
+
+    private static long size(final Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof String) {
+            return ((String) value).getBytes(UTF_8).length;
+        }
+        return 0;
+    }
+
+    /**
+     * Results of a range, rich or history query, counting the bytes of the
+     * values iterated.
+     */
+    private final class MeteredResults<T> implements QueryResultsIterator<T>, QueryResultsIteratorWithMetadata<T> {
+
+        private final Object results;
+
+        MeteredResults(final Object results) {
+            this.results = results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Iterator<T> iterator() {
+            Iterator<T> iterator = ((Iterable<T>) results).iterator();
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    T next = iterator.next();
+                    if (next instanceof KeyValue) {
+                        sample.bytesRead += size(((KeyValue) next).getValue());
+                    } else if (next instanceof KeyModification) {
+                        sample.bytesRead += size(((KeyModification) next).getValue());
+                    }
+                    return next;
+                }
+            };
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return ((QueryResultsIteratorWithMetadata<?>) results).getMetadata();
+        }
+
+        /**
+         * Closes the peer's results. Declared without the Exception of
+         * AutoCloseable, which could be an InterruptedException, so closing the
+         * results in a try-with-resources block compiles without a warning.
+         */
+        @Override
+        public void close() {
+            try {
+                ((AutoCloseable) results).close();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to close query results", e);
+            }
+        }
+    }
+}
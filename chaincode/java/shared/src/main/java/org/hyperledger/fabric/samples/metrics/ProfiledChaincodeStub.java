@@ -0,0 +1,140 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Iterator;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+/**
+ * Records the world state keys a transaction reads and writes, and the ranges
+ * it scans, into its access. A dynamic proxy like MeteredChaincodeStub; the
+ * iterators of range scans are wrapped to record the keys iterated as reads.
+ */
+final class ProfiledChaincodeStub implements InvocationHandler {
+
+    /** Where an open range starts, past every composite key. */
+    private static final String UNSPECIFIED_START_KEY = "\u0001";
+
+    /** Largest code point, the open end of a partial composite key range. */
+    private static final String MAX_UNICODE_RUNE = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+    private final ChaincodeStub stub;
+    private final AccessProfiler.Access access;
+
+    private ProfiledChaincodeStub(final ChaincodeStub stub, final AccessProfiler.Access access) {
+        this.stub = stub;
+        this.access = access;
+    }
+
+    static ChaincodeStub wrap(final ChaincodeStub stub, final AccessProfiler.Access access) {
+        return (ChaincodeStub) Proxy.newProxyInstance(ChaincodeStub.class.getClassLoader(),
+                new Class<?>[] {ChaincodeStub.class}, new ProfiledChaincodeStub(stub, access));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        Object result;
+        try {
+            result = method.invoke(stub, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+
+        switch (method.getName()) {
+        case "getState":
+        case "getStringState":
+            access.reads.add((String) args[0]);
+            return result;
+        case "putState":
+        case "putStringState":
+        case "delState":
+            access.writes.add((String) args[0]);
+            return result;
+        case "getStateByRange":
+            String startKey = (String) args[0];
+            if (startKey == null || startKey.isEmpty()) {
+                startKey = UNSPECIFIED_START_KEY;
+            }
+            access.ranges.add(new AccessProfiler.Range(startKey, (String) args[1]));
+            return new ProfiledResults((QueryResultsIterator<KeyValue>) result);
+        case "getStateByPartialCompositeKey":
+            String prefix = prefix(args);
+            access.ranges.add(new AccessProfiler.Range(prefix, prefix + MAX_UNICODE_RUNE));
+            return new ProfiledResults((QueryResultsIterator<KeyValue>) result);
+        default:
+            return result;
+        }
+    }
+
+    /**
+     * The key prefix a partial composite key query scans, from any of its
+     * overloads, resolved as the shim resolves it.
+     */
+    private static String prefix(final Object[] args) {
+        if (args[0] instanceof CompositeKey) {
+            return args[0].toString();
+        }
+        String objectType = (String) args[0];
+        if (args.length > 1) {
+            return new CompositeKey(objectType, (String[]) args[1]).toString();
+        }
+        if (objectType.startsWith(CompositeKey.NAMESPACE)) {
+            return objectType;
+        }
+        return new CompositeKey(objectType).toString();
+    }
+
+    /**
+     * Results of a range scan, recording the keys iterated.
+     */
+    private final class ProfiledResults implements QueryResultsIterator<KeyValue> {
+
+        private final QueryResultsIterator<KeyValue> results;
+
+        ProfiledResults(final QueryResultsIterator<KeyValue> results) {
+            this.results = results;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            Iterator<KeyValue> iterator = results.iterator();
+            return new Iterator<KeyValue>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public KeyValue next() {
+                    KeyValue next = iterator.next();
+                    access.reads.add(next.getKey());
+                    return next;
+                }
+            };
+        }
+
+        /**
+         * Closes the peer's results, declared without the Exception of
+         * AutoCloseable as in MeteredChaincodeStub.
+         */
+        @Override
+        public void close() {
+            try {
+                results.close();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to close query results", e);
+            }
+        }
+    }
+}
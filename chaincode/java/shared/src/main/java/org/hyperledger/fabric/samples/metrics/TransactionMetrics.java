@@ -0,0 +1,397 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.metrics;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Per transaction metrics of a contract, recorded around its dispatch by the
+ * shim: createContext() meters the stub with meter(), beforeTransaction()
+ * calls begin() and afterTransaction() calls end(), after any buffered writes
+ * are flushed. For every transaction name it keeps the wall time, the number
+ * of state calls of each kind, the bytes read and written and the time spent
+ * in the state codecs, which report it through serializationStart() and
+ * serialized().
+ *
+ * Off until enabled, typically by serve() when running as a chaincode service;
+ * while off, meter() returns the stub as it is and nothing is recorded. The
+ * shim skips afterTransaction() when a transaction throws, so failed
+ * transactions are not recorded.
+ *
+ * Given an AccessProfiler with profile(), meter() also hands the stub to it,
+ * so the transactions it samples record the keys they access, and serve()
+ * serves its report at /profile.
+ */
+public final class TransactionMetrics {
+
+    /** Kinds of state call counted, the "call" label of the scrape. */
+    static final String[] CALLS = {"get", "put", "delete", "range", "query", "history"};
+    static final int GET = 0;
+    static final int PUT = 1;
+    static final int DELETE = 2;
+    static final int RANGE = 3;
+    static final int QUERY = 4;
+    static final int HISTORY = 5;
+
+    /** Transaction names tracked; any further names are counted as "other". */
+    private static final int MAX_TRANSACTIONS = 256;
+
+    /** Hot keys listed at /profile unless its top parameter says otherwise. */
+    private static final int PROFILE_TOP = 20;
+
+    /** Scrape bucket boundaries, 2^k - 1 ns for k = 10, 12, ... 36: about 1 us to 69 s. */
+    private static final int MIN_BUCKET_BITS = 10;
+    private static final int MAX_BUCKET_BITS = 36;
+
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+    private static final ThreadLocal<Sample> CURRENT = new ThreadLocal<>();
+
+    // any metrics enabled, so the codecs skip the thread-local lookup when none are
+    private static volatile boolean recording;
+
+    private final Map<String, TransactionStats> transactions = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled;
+    private volatile AccessProfiler profiler;
+
+    public TransactionMetrics() {
+    }
+
+    public TransactionMetrics enable() {
+        enabled = true;
+        recording = true;
+        return this;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Profiles the state accesses of the transactions metered from now on with
+     * profiler, which samples them.
+     */
+    public TransactionMetrics profile(final AccessProfiler profiler) {
+        this.profiler = profiler;
+        return this;
+    }
+
+    /**
+     * The profiler given to profile(), or null.
+     */
+    public AccessProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Starts a sample for the transaction stub is running, named by its
+     * function, and returns the stub to give the transaction context, which
+     * counts the state calls made through it.
+     */
+    public ChaincodeStub meter(final ChaincodeStub stub) {
+        if (!enabled) {
+            return stub;
+        }
+        Sample sample = new Sample(stats(transactionName(stub.getFunction())));
+        CURRENT.set(sample);
+        AccessProfiler accessProfiler = profiler;
+        return MeteredChaincodeStub.wrap(accessProfiler == null ? stub : accessProfiler.profile(stub), sample);
+    }
+
+    /**
+     * Restarts the clock of the sample meter() started on this thread, so its
+     * wall time covers the transaction from beforeTransaction() on.
+     */
+    public void begin() {
+        Sample sample = CURRENT.get();
+        if (sample != null) {
+            sample.start = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records the sample of the transaction that ran on this thread.
+     */
+    public void end() {
+        Sample sample = CURRENT.get();
+        if (sample != null) {
+            CURRENT.remove();
+            sample.stats.record(sample, System.nanoTime() - sample.start);
+        }
+        AccessProfiler accessProfiler = profiler;
+        if (accessProfiler != null) {
+            accessProfiler.end();
+        }
+    }
+
+    /**
+     * Start of a serialization to pass to serialized(), or 0 when no
+     * transaction on this thread is metered.
+     */
+    public static long serializationStart() {
+        if (!recording || CURRENT.get() == null) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds the time since start to the serialization time of the transaction
+     * running on this thread.
+     */
+    public static void serialized(final long start) {
+        if (start != 0) {
+            Sample sample = CURRENT.get();
+            if (sample != null) {
+                sample.serializationNanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * Wall time of the transactions recorded under name, or null when there
+     * are none.
+     */
+    public LatencyHistogram getDuration(final String name) {
+        TransactionStats stats = transactions.get(name);
+        return stats == null ? null : stats.duration;
+    }
+
+    /**
+     * Number of state calls of a kind, one of CALLS, made by the transactions
+     * recorded under name.
+     */
+    public long getCalls(final String name, final String call) {
+        TransactionStats stats = transactions.get(name);
+        for (int i = 0; stats != null && i < CALLS.length; i++) {
+            if (CALLS[i].equals(call)) {
+                return stats.calls.get(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Renders the metrics in the Prometheus text exposition format.
+     */
+    public String scrape() {
+        Map<String, TransactionStats> sorted = new ConcurrentSkipListMap<>(transactions);
+        StringBuilder out = new StringBuilder();
+
+        help(out, "chaincode_transaction_duration_seconds", "histogram",
+                "Wall time of a transaction, from beforeTransaction to afterTransaction.");
+        for (Map.Entry<String, TransactionStats> entry : sorted.entrySet()) {
+            histogram(out, "chaincode_transaction_duration_seconds", entry.getKey(), entry.getValue().duration);
+        }
+
+        help(out, "chaincode_transaction_duration_percentile_seconds", "gauge",
+                "Wall time percentiles of a transaction since start, to within 6.25%.");
+        for (Map.Entry<String, TransactionStats> entry : sorted.entrySet()) {
+            for (double percentile : PERCENTILES) {
+                sample(out, "chaincode_transaction_duration_percentile_seconds", entry.getKey(),
+                        "percentile", String.valueOf(percentile),
+                        seconds(entry.getValue().duration.getValueAtPercentile(percentile)));
+            }
+        }
+
+        help(out, "chaincode_serialization_seconds", "histogram",
+                "Time a transaction spent encoding and decoding state values.");
+        for (Map.Entry<String, TransactionStats> entry : sorted.entrySet()) {
+            histogram(out, "chaincode_serialization_seconds", entry.getKey(), entry.getValue().serialization);
+        }
+
+        help(out, "chaincode_state_calls_total", "counter", "State calls made by transactions, by kind.");
+        for (Map.Entry<String, TransactionStats> entry : sorted.entrySet()) {
+            for (int i = 0; i < CALLS.length; i++) {
+                sample(out, "chaincode_state_calls_total", entry.getKey(), "call", CALLS[i],
+                        Long.toString(entry.getValue().calls.get(i)));
+            }
+        }
+
+        help(out, "chaincode_state_read_bytes_total", "counter", "Bytes of state values read by transactions.");
+        for (Map.Entry<String, TransactionStats> entry : sorted.entrySet()) {
+            sample(out, "chaincode_state_read_bytes_total", entry.getKey(), null, null,
+                    Long.toString(entry.getValue().bytesRead.get()));
+        }
+
+        help(out, "chaincode_state_written_bytes_total", "counter", "Bytes of state values written by transactions.");
+        for (Map.Entry<String, TransactionStats> entry : sorted.entrySet()) {
+            sample(out, "chaincode_state_written_bytes_total", entry.getKey(), null, null,
+                    Long.toString(entry.getValue().bytesWritten.get()));
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Enables the metrics and serves scrape() at /metrics on address, from a
+     * thread of its own, and the report of the profiler, if any, at
+     * /profile?top=n.
+     */
+    public HttpServer serve(final InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream response = exchange.getResponseBody()) {
+                response.write(body);
+            }
+        });
+        server.createContext("/profile", exchange -> {
+            AccessProfiler accessProfiler = profiler;
+            byte[] body = accessProfiler == null ? new byte[0]
+                    : accessProfiler.report(top(exchange.getRequestURI().getQuery())).getBytes(UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(accessProfiler == null ? 404 : 200, body.length == 0 ? -1 : body.length);
+            try (OutputStream response = exchange.getResponseBody()) {
+                response.write(body);
+            }
+        });
+        enable();
+        server.start();
+        return server;
+    }
+
+    private static int top(final String query) {
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("top=")) {
+                    try {
+                        return Math.max(0, Integer.parseInt(parameter.substring(4)));
+                    } catch (NumberFormatException e) {
+                        return PROFILE_TOP;
+                    }
+                }
+            }
+        }
+        return PROFILE_TOP;
+    }
+
+    private TransactionStats stats(final String name) {
+        TransactionStats stats = transactions.get(name);
+        if (stats != null) {
+            return stats;
+        }
+        if (transactions.size() >= MAX_TRANSACTIONS) {
+            return transactions.computeIfAbsent("other", key -> new TransactionStats());
+        }
+        return transactions.computeIfAbsent(name, key -> new TransactionStats());
+    }
+
+    /**
+     * The function name without its contract name, as in "contract:function".
+     */
+    private static String transactionName(final String function) {
+        if (function == null || function.isEmpty()) {
+            return "unknown";
+        }
+        return function.substring(function.lastIndexOf(':') + 1);
+    }
+
+    private static void help(final StringBuilder out, final String name, final String type, final String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void histogram(final StringBuilder out, final String name, final String transaction,
+            final LatencyHistogram histogram) {
+        for (int bits = MIN_BUCKET_BITS; bits <= MAX_BUCKET_BITS; bits += 2) {
+            long bound = (1L << bits) - 1;
+            sample(out, name + "_bucket", transaction, "le", seconds(bound),
+                    Long.toString(histogram.getCountAtOrBelow(bound)));
+        }
+        sample(out, name + "_bucket", transaction, "le", "+Inf", Long.toString(histogram.getTotalCount()));
+        sample(out, name + "_sum", transaction, null, null, seconds(histogram.getSum()));
+        sample(out, name + "_count", transaction, null, null, Long.toString(histogram.getTotalCount()));
+    }
+
+    private static void sample(final StringBuilder out, final String name, final String transaction,
+            final String label, final String labelValue, final String value) {
+        out.append(name).append("{transaction=\"");
+        escape(out, transaction);
+        out.append('"');
+        if (label != null) {
+            out.append(',').append(label).append("=\"");
+            escape(out, labelValue);
+            out.append('"');
+        }
+        out.append("} ").append(value).append('\n');
+    }
+
+    private static void escape(final StringBuilder out, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static String seconds(final long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    /**
+     * Totals of the transactions recorded under one name.
+     */
+    static final class TransactionStats {
+
+        final LatencyHistogram duration = new LatencyHistogram();
+        final LatencyHistogram serialization = new LatencyHistogram();
+        final AtomicLongArray calls = new AtomicLongArray(CALLS.length);
+        final AtomicLong bytesRead = new AtomicLong();
+        final AtomicLong bytesWritten = new AtomicLong();
+
+        void record(final Sample sample, final long nanos) {
+            duration.record(nanos);
+            serialization.record(sample.serializationNanos);
+            for (int i = 0; i < CALLS.length; i++) {
+                if (sample.calls[i] != 0) {
+                    calls.addAndGet(i, sample.calls[i]);
+                }
+            }
+            bytesRead.addAndGet(sample.bytesRead);
+            bytesWritten.addAndGet(sample.bytesWritten);
+        }
+    }
+
+    /**
+     * What one transaction has done so far; only touched by the thread running
+     * it.
+     */
+    static final class Sample {
+
+        final TransactionStats stats;
+        final long[] calls = new long[CALLS.length];
+        long start = System.nanoTime();
+        long bytesRead;
+        long bytesWritten;
+        long serializationNanos;
+
+        Sample(final TransactionStats stats) {
+            this.stats = stats;
+        }
+    }
+}
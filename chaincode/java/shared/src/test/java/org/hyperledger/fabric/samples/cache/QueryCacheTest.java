@@ -0,0 +1,128 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public final class QueryCacheTest {
+
+    private static final List<String> FIRST = Collections.singletonList("first");
+
+    private static final List<String> SECOND = Collections.singletonList("second");
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    @Test
+    public void whenSizeIsExceededEvictsLeastRecentlyUsed() {
+        QueryCache cache = new QueryCache(8, 60_000);
+        cache.put(FIRST, NONE, "1111");
+        cache.put(SECOND, NONE, "2222");
+
+        cache.get(FIRST);
+        cache.put(Collections.singletonList("third"), NONE, "33");
+
+        assertThat(cache.get(FIRST)).isEqualTo("1111");
+        assertThat(cache.get(SECOND)).isNull();
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void whenResponseIsLargerThanCache() {
+        QueryCache cache = new QueryCache(2, 60_000);
+        cache.put(FIRST, NONE, "111");
+
+        assertThat(cache.get(FIRST)).isNull();
+    }
+
+    @Test
+    public void whenDependedOnKeyIsWritten() {
+        QueryCache cache = new QueryCache(64, 60_000);
+        cache.put(FIRST, Collections.singletonList("ARG"), "1");
+        cache.put(SECOND, Collections.singletonList("CAR"), "2");
+
+        cache.invalidate("ARG001");
+
+        assertThat(cache.get(FIRST)).isNull();
+        assertThat(cache.get(SECOND)).isEqualTo("2");
+    }
+
+    @Test
+    public void whenResponsesShareAPrefixTheyAreBothDropped() {
+        QueryCache cache = new QueryCache(64, 60_000);
+        cache.put(FIRST, Arrays.asList("\u0000member\u0000", "\u0000cfp\u0000"), "1");
+        cache.put(SECOND, Collections.singletonList("\u0000cfp\u0000"), "2");
+        cache.put(Collections.singletonList("third"), Collections.singletonList("\u0000prt\u0000"), "3");
+
+        cache.invalidate("\u0000cfp\u0000CFP1\u0000");
+
+        assertThat(cache.get(FIRST)).isNull();
+        assertThat(cache.get(SECOND)).isNull();
+        assertThat(cache.get(Collections.singletonList("third"))).isEqualTo("3");
+
+        cache.put(FIRST, Collections.singletonList("\u0000member\u0000"), "1");
+        cache.invalidate("\u0000cfp\u0000CFP1\u0000");
+
+        assertThat(cache.get(FIRST)).isEqualTo("1");
+    }
+
+    @Test
+    public void whenKeyIsShorterThanThePrefixes() {
+        QueryCache cache = new QueryCache(64, 60_000);
+        cache.put(FIRST, Collections.singletonList("ARG"), "1");
+
+        cache.invalidate("AR");
+        cache.invalidate("");
+
+        assertThat(cache.get(FIRST)).isEqualTo("1");
+    }
+
+    @Test
+    public void whenDisabledNothingIsCached() {
+        QueryCache cache = new QueryCache(0, 60_000);
+        cache.put(FIRST, Collections.singletonList("ARG"), "");
+        cache.invalidate("ARG001");
+
+        assertThat(cache.isEnabled()).isFalse();
+        assertThat(cache.get(FIRST)).isNull();
+    }
+
+    @Test
+    public void whenTtlHasExpired() {
+        QueryCache cache = new QueryCache(64, 0);
+        cache.put(FIRST, NONE, "1");
+
+        assertThat(cache.get(FIRST)).isNull();
+    }
+
+    @Test
+    public void whenTtlIsOutOfRangeTheCacheIsRejected() {
+        assertThatThrownBy(() -> new QueryCache(64, -1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new QueryCache(64, QueryCache.MAX_TTL_MILLIS + 1))
+                .hasMessageContaining(QueryCache.TTL_VARIABLE);
+    }
+
+    @Test
+    public void whenTheProposalDoesNotAskForTheCacheTheLedgerIsRead() {
+        QueryCache cache = new QueryCache(64, 60_000);
+        cache.put(FIRST, NONE, "1");
+        ChaincodeStub submitted = mock(ChaincodeStub.class);
+        when(submitted.getTransient()).thenReturn(Collections.emptyMap());
+        ChaincodeStub evaluated = mock(ChaincodeStub.class);
+        when(evaluated.getTransient()).thenReturn(Collections.singletonMap(QueryCache.TRANSIENT_KEY, new byte[0]));
+
+        assertThat(cache.get(submitted, FIRST)).isNull();
+        assertThat(cache.get(evaluated, FIRST)).isEqualTo("1");
+    }
+}
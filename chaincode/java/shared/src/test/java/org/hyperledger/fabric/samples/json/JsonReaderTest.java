@@ -0,0 +1,78 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public final class JsonReaderTest {
+
+    private static final byte[][] FIELDS = {"key".getBytes(UTF_8)};
+
+    /**
+     * The keys of an array of objects, read the way the codecs read a batch.
+     */
+    private static List<String> keys(final String json) {
+        JsonReader reader = new JsonReader(json.getBytes(UTF_8));
+        List<String> keys = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNextElement()) {
+            reader.beginObject();
+            while (reader.hasNextField()) {
+                if (reader.nextField(FIELDS) == 0) {
+                    keys.add(reader.nextString());
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+        reader.endDocument();
+        return keys;
+    }
+
+    @Test
+    public void whenWellFormedEveryElementIsRead() {
+        assertThat(keys(" [ {\"key\":\"CAR4\", \"make\":\"Ford\"} , {} , {\"key\":\"CAR5\"} ] \n"))
+                .containsExactly("CAR4", "CAR5");
+        assertThat(keys("[]")).isEmpty();
+    }
+
+    @Test
+    public void whenElementsAreNotSeparatedByACommaTheDocumentIsRejected() {
+        assertThatThrownBy(() -> keys("[{\"key\":\"CAR4\"}{\"key\":\"CAR5\"}]"))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("',' expected");
+        assertThatThrownBy(() -> keys("[{}{}]")).hasMessageContaining("',' expected");
+    }
+
+    @Test
+    public void whenFieldsAreNotSeparatedByACommaTheDocumentIsRejected() {
+        assertThatThrownBy(() -> keys("[{\"make\":\"Ford\" \"key\":\"CAR4\"}]")).hasMessageContaining("',' expected");
+    }
+
+    @Test
+    public void whenAFieldHasNoColonTheDocumentIsRejected() {
+        assertThatThrownBy(() -> keys("[{\"key\" \"CAR4\"}]")).hasMessageContaining("':' expected");
+    }
+
+    @Test
+    public void whenACommaIsTrailingTheDocumentIsRejected() {
+        assertThatThrownBy(() -> keys("[{\"key\":\"CAR4\"},]")).hasMessageContaining("'{' expected");
+        assertThatThrownBy(() -> keys("[{\"key\":\"CAR4\",}]")).hasMessageContaining("'\"' expected");
+        assertThatThrownBy(() -> keys("[,{\"key\":\"CAR4\"}]")).hasMessageContaining("'{' expected");
+    }
+
+    @Test
+    public void whenDataFollowsTheDocumentItIsRejected() {
+        assertThatThrownBy(() -> keys("[{\"key\":\"CAR3\"}] [{\"key\":\"CAR4\"}]"))
+                .hasMessageContaining("unexpected data after the document");
+        assertThatThrownBy(() -> keys("[]x")).hasMessageContaining("unexpected data after the document");
+    }
+}
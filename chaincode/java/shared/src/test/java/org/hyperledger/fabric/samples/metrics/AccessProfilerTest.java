@@ -0,0 +1,176 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.metrics;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public final class AccessProfilerTest {
+
+    private final AccessProfiler profiler = new AccessProfiler();
+
+    private static ChaincodeStub stub(final String function) {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.getFunction()).thenReturn(function);
+        when(stub.getState("ARG000")).thenReturn("{}".getBytes(UTF_8));
+        when(stub.createCompositeKey("owner~key", "Alice"))
+                .thenReturn(new CompositeKey("owner~key", "Alice"));
+        return stub;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static QueryResultsIterator<KeyValue> results(final String... keys) {
+        KeyValue[] values = new KeyValue[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = mock(KeyValue.class);
+            when(values[i].getKey()).thenReturn(keys[i]);
+        }
+        List<KeyValue> list = Arrays.asList(values);
+        QueryResultsIterator<KeyValue> results = mock(QueryResultsIterator.class);
+        when(results.iterator()).thenReturn(list.iterator());
+        return results;
+    }
+
+    private void changeStatus(final String key) {
+        ChaincodeStub profiled = profiler.profile(stub("Agreements:changeAgreementStatus"));
+        profiled.getState(key);
+        profiled.getState(key);
+        profiled.putState(key, "{}".getBytes(UTF_8));
+        profiler.end();
+    }
+
+    @Test
+    public void whenKeyIsAccessedTwiceItCountsOncePerTransaction() {
+        changeStatus("ARG000");
+        changeStatus("ARG000");
+        changeStatus("ARG001");
+
+        List<AccessProfiler.HotKey> hotKeys = profiler.getHotKeys(10);
+
+        assertThat(profiler.getSampledTransactions()).isEqualTo(3);
+        assertThat(hotKeys).extracting(AccessProfiler.HotKey::getKey).containsExactly("ARG000", "ARG001");
+        assertThat(hotKeys.get(0).getWrites()).isEqualTo(2);
+        assertThat(hotKeys.get(0).getReads()).isEqualTo(2);
+        assertThat(hotKeys.get(0).getWriters()).containsEntry("changeAgreementStatus", 2L);
+        assertThat(profiler.getHotKeys(1)).hasSize(1);
+    }
+
+    @Test
+    public void whenSamplingOnlyOneTransactionInNIsProfiled() {
+        AccessProfiler sampled = new AccessProfiler(3);
+        for (int i = 0; i < 6; i++) {
+            ChaincodeStub stub = stub("createAgreement");
+            ChaincodeStub profiled = sampled.profile(stub);
+            assertThat(profiled == stub).isEqualTo(i % 3 != 0);
+            profiled.putState("ARG00" + i, "{}".getBytes(UTF_8));
+            sampled.end();
+        }
+
+        assertThat(sampled.getSampledTransactions()).isEqualTo(2);
+        assertThat(sampled.getHotKeys(10)).extracting(AccessProfiler.HotKey::getKey)
+                .containsExactlyInAnyOrder("ARG000", "ARG003");
+        assertThatThrownBy(() -> new AccessProfiler(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void whenWritesFallInAnotherFunctionsReadsOrScansTheyOverlap() {
+        ChaincodeStub scanning = stub("GetAllAgreements");
+        QueryResultsIterator<KeyValue> scanned = results("ARG000");
+        when(scanning.getStateByRange("ARG000", "ARG999")).thenReturn(scanned);
+        ChaincodeStub profiled = profiler.profile(scanning);
+        for (KeyValue keyValue : profiled.getStateByRange("ARG000", "ARG999")) {
+            assertThat(keyValue.getKey()).isEqualTo("ARG000");
+        }
+        profiler.end();
+
+        changeStatus("ARG000");
+        ChaincodeStub creating = profiler.profile(stub("createAgreement"));
+        creating.putState("ARG001", "{}".getBytes(UTF_8));
+        creating.putState("ZZZ", "{}".getBytes(UTF_8));
+        profiler.end();
+
+        List<AccessProfiler.Overlap> overlaps = profiler.getOverlaps();
+
+        assertThat(overlaps).extracting(Object::toString).containsExactlyInAnyOrder(
+                "changeAgreementStatus writes 1 keys GetAllAgreements reads (1 read, 0 in scanned ranges)",
+                "createAgreement writes 1 keys GetAllAgreements reads (0 read, 1 in scanned ranges)");
+        assertThat(profiler.report(5)).contains("Hot keys").contains("  ARG000 writes 1")
+                .contains("createAgreement writes 1 keys GetAllAgreements reads");
+    }
+
+    @Test
+    public void whenPartialCompositeKeyIsScannedItsPrefixIsTheRange() {
+        ChaincodeStub scanning = stub("queryByOwner");
+        QueryResultsIterator<KeyValue> scanned = results();
+        when(scanning.getStateByPartialCompositeKey("owner~key", "Alice")).thenReturn(scanned);
+        profiler.profile(scanning).getStateByPartialCompositeKey("owner~key", "Alice");
+        profiler.end();
+
+        ChaincodeStub writing = profiler.profile(stub("transfer"));
+        writing.putState(new CompositeKey("owner~key", "Alice", "ARG000").toString(), new byte[] {0});
+        writing.putState(new CompositeKey("owner~key", "Bob", "ARG000").toString(), new byte[] {0});
+        profiler.end();
+
+        assertThat(profiler.getOverlaps()).hasSize(1);
+        assertThat(profiler.getOverlaps().get(0).getScannedKeys()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenScannedRangesOverlapAKeyInBothCountsOnce() {
+        ChaincodeStub scanning = stub("GetAllAgreements");
+        QueryResultsIterator<KeyValue> scanned = results();
+        when(scanning.getStateByRange("ARG000", "ARG500")).thenReturn(scanned);
+        when(scanning.getStateByRange("ARG100", "")).thenReturn(scanned);
+        ChaincodeStub profiled = profiler.profile(scanning);
+        profiled.getStateByRange("ARG000", "ARG500");
+        profiled.getStateByRange("ARG100", "");
+        profiler.end();
+
+        ChaincodeStub writing = profiler.profile(stub("createAgreement"));
+        writing.putState("ARG200", new byte[] {0});
+        writing.putState("ARG900", new byte[] {0});
+        writing.putState("AAA000", new byte[] {0});
+        profiler.end();
+
+        assertThat(profiler.getOverlaps()).hasSize(1);
+        assertThat(profiler.getOverlaps().get(0).getScannedKeys()).isEqualTo(2);
+    }
+
+    @Test
+    public void whenRangesAreMergedTheOverlappingOnesAreJoined() {
+        List<AccessProfiler.Range> merged = AccessProfiler.merge(new HashSet<>(Arrays.asList(
+                new AccessProfiler.Range("C", "D"), new AccessProfiler.Range("A", "B2"),
+                new AccessProfiler.Range("B", "C"), new AccessProfiler.Range("E", ""),
+                new AccessProfiler.Range("F", "G"))));
+
+        assertThat(merged).containsExactly(new AccessProfiler.Range("A", "D"), new AccessProfiler.Range("E", ""));
+    }
+
+    @Test
+    public void whenGivenToMetricsItProfilesTheMeteredTransactions() {
+        TransactionMetrics metrics = new TransactionMetrics().enable().profile(profiler);
+
+        ChaincodeStub metered = metrics.meter(stub("changeAgreementStatus"));
+        metrics.begin();
+        metered.getState("ARG000");
+        metrics.end();
+
+        assertThat(metrics.getProfiler()).isSameAs(profiler);
+        assertThat(profiler.getHotKeys(1).get(0).getReaders()).containsEntry("changeAgreementStatus", 1L);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public final class LatencyHistogramTest {
+
+    @Test
+    public void whenValueIsSmallItIsExact() {
+        for (long value = 0; value < 16; value++) {
+            assertThat(LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(value)))
+                    .isEqualTo(value);
+        }
+    }
+
+    @Test
+    public void whenValueIsLargeItIsWithinOneSixteenth() {
+        for (long value = 16; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 7) {
+            long highest = LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(value));
+
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat((double) (highest - value)).isLessThanOrEqualTo(value / 16.0);
+        }
+        assertThat(LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(Long.MAX_VALUE)))
+                .isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void whenCountingAtPowersOfTwoTheCountIsExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1023);
+        histogram.record(1024);
+        histogram.record(4095);
+        histogram.record(4096);
+
+        assertThat(histogram.getCountAtOrBelow(1023)).isEqualTo(1);
+        assertThat(histogram.getCountAtOrBelow(4095)).isEqualTo(3);
+        assertThat(histogram.getCountAtOrBelow(Long.MAX_VALUE)).isEqualTo(4);
+        assertThat(histogram.getSum()).isEqualTo(1023 + 1024 + 4095 + 4096);
+    }
+
+    @Test
+    public void whenValuesAreRecordedPercentilesAreWithinOneSixteenth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertThat((double) histogram.getValueAtPercentile(50)).isCloseTo(50_000_000, within(50_000_000 / 16.0));
+        assertThat((double) histogram.getValueAtPercentile(99)).isCloseTo(99_000_000, within(99_000_000 / 16.0));
+        assertThat(histogram.getValueAtPercentile(100)).isGreaterThanOrEqualTo(100_000_000);
+        assertThat(histogram.getTotalCount()).isEqualTo(100_000);
+    }
+
+    @Test
+    public void whenNothingIsRecorded() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0);
+        assertThat(new LatencyHistogram().getValueAtPercentile(99)).isEqualTo(0);
+    }
+}
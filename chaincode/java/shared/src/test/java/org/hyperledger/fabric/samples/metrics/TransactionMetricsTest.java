@@ -0,0 +1,117 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class TransactionMetricsTest {
+
+    private final TransactionMetrics metrics = new TransactionMetrics().enable();
+
+    private final ChaincodeStub stub = mock(ChaincodeStub.class);
+
+    private static KeyValue keyValue(final String key, final String value) {
+        KeyValue keyValue = mock(KeyValue.class);
+        when(keyValue.getKey()).thenReturn(key);
+        when(keyValue.getValue()).thenReturn(value.getBytes(UTF_8));
+        return keyValue;
+    }
+
+    @Test
+    public void whenStateIsReadAndWritten() {
+        when(stub.getFunction()).thenReturn("Agreements:changeAgreementStatus");
+        when(stub.getState("ARG000")).thenReturn("1234".getBytes(UTF_8));
+
+        ChaincodeStub metered = metrics.meter(stub);
+        metrics.begin();
+        metered.getState("ARG000");
+        metered.getState("ARG001");
+        metered.putState("ARG000", "123456".getBytes(UTF_8));
+        metered.delState("ARG001");
+        metrics.end();
+
+        verify(stub).putState("ARG000", "123456".getBytes(UTF_8));
+        assertThat(metrics.getCalls("changeAgreementStatus", "get")).isEqualTo(2);
+        assertThat(metrics.getCalls("changeAgreementStatus", "put")).isEqualTo(1);
+        assertThat(metrics.getCalls("changeAgreementStatus", "delete")).isEqualTo(1);
+        assertThat(metrics.getDuration("changeAgreementStatus").getTotalCount()).isEqualTo(1);
+        assertThat(metrics.scrape())
+                .contains("chaincode_state_read_bytes_total{transaction=\"changeAgreementStatus\"} 4\n")
+                .contains("chaincode_state_written_bytes_total{transaction=\"changeAgreementStatus\"} 6\n");
+    }
+
+    @Test
+    public void whenRangeIsIterated() throws Exception {
+        @SuppressWarnings("unchecked")
+        QueryResultsIterator<KeyValue> results = mock(QueryResultsIterator.class);
+        List<KeyValue> values = Arrays.asList(keyValue("ARG000", "12"), keyValue("ARG001", "345"));
+        when(results.iterator()).thenReturn(values.iterator());
+        when(stub.getFunction()).thenReturn("GetAllAgreements");
+        when(stub.getStateByRange("", "")).thenReturn(results);
+
+        ChaincodeStub metered = metrics.meter(stub);
+        try (QueryResultsIterator<KeyValue> range = metered.getStateByRange("", "")) {
+            for (KeyValue keyValue : range) {
+                assertThat(keyValue.getKey()).startsWith("ARG");
+            }
+        }
+        metrics.end();
+
+        verify(results).close();
+        assertThat(metrics.getCalls("GetAllAgreements", "range")).isEqualTo(1);
+        assertThat(metrics.scrape()).contains("chaincode_state_read_bytes_total{transaction=\"GetAllAgreements\"} 5\n");
+    }
+
+    @Test
+    public void whenValuesAreEncodedInATransaction() {
+        when(stub.getFunction()).thenReturn("createAgreement");
+
+        metrics.meter(stub);
+        long start = TransactionMetrics.serializationStart();
+        new StringBuilder("{\"name\":\"Alice\"}").toString();
+        TransactionMetrics.serialized(start);
+        metrics.end();
+
+        assertThat(metrics.scrape())
+                .contains("chaincode_serialization_seconds_count{transaction=\"createAgreement\"} 1\n")
+                .doesNotContain("chaincode_serialization_seconds_sum{transaction=\"createAgreement\"} 0.000000000\n");
+    }
+
+    @Test
+    public void whenScrapedTheBucketsAreCumulative() {
+        when(stub.getFunction()).thenReturn("get\"Agreement\"");
+
+        metrics.meter(stub);
+        metrics.end();
+        String scrape = metrics.scrape();
+
+        assertThat(scrape)
+                .contains("# TYPE chaincode_transaction_duration_seconds histogram\n")
+                .contains("chaincode_transaction_duration_seconds_bucket{transaction=\"get\\\"Agreement\\\"\",le=\"+Inf\"} 1\n")
+                .contains("chaincode_transaction_duration_seconds_bucket{transaction=\"get\\\"Agreement\\\"\",le=\"68.719476735\"} 1\n")
+                .contains("chaincode_transaction_duration_seconds_count{transaction=\"get\\\"Agreement\\\"\"} 1\n");
+    }
+
+    @Test
+    public void whenDisabledTheStubIsNotMetered() {
+        TransactionMetrics disabled = new TransactionMetrics();
+
+        assertThat(disabled.meter(stub)).isSameAs(stub);
+        disabled.end();
+        assertThat(disabled.scrape()).doesNotContain("transaction=");
+    }
+}